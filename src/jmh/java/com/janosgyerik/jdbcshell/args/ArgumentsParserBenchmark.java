@@ -0,0 +1,51 @@
+package com.janosgyerik.jdbcshell.args;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentsParserBenchmark {
+
+  @Param({"2", "20"})
+  public int optionCount;
+
+  private ArgumentsParser parser;
+  private String[] args;
+
+  @Setup
+  public void setUp() {
+    ArgumentsParser.Builder builder = ArgumentsParser.newBuilder();
+    List<String> argsList = new ArrayList<>();
+    for (int i = 0; i < optionCount; i++) {
+      String name = "-option" + i;
+      builder.addOption(name, "description of " + name, Validators.create(String::length));
+      argsList.add(name);
+      argsList.add("value" + i);
+    }
+    builder.addGlobalValidator(GlobalValidators.requires("-option0", "-option1"));
+    parser = builder.build();
+    args = argsList.toArray(new String[0]);
+  }
+
+  @Benchmark
+  public ArgumentsParser.Result parseArgs() {
+    return parser.parseArgs(args);
+  }
+}
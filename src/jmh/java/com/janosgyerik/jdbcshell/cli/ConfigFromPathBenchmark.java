@@ -0,0 +1,49 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigFromPathBenchmark {
+
+  private final CliApplication application = new CliApplication(new System2(), (system2, config, options) -> {
+    // not executed
+  });
+
+  private Path path;
+
+  @Setup
+  public void setUp() throws IOException {
+    path = Files.createTempFile("jdbcshell", ".properties");
+    Files.write(path, "jdbc.url = jdbc:postgresql://localhost:5432/sonar\njdbc.username = sonar\njdbc.password = sonar\n".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.delete(path);
+  }
+
+  @Benchmark
+  public ConnectionConfig configFromPath() {
+    return application.configFromPath(path.toString());
+  }
+}
@@ -0,0 +1,107 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measure fetching and formatting query results, against an in-memory H2 database,
+ * with output discarded into a Blackhole instead of written to a file or terminal.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchAndFormatBenchmark {
+
+  private static final String URL = "jdbc:h2:mem:FetchAndFormatBenchmark;DB_CLOSE_DELAY=-1";
+
+  @Param({"1000", "100000"})
+  public int rowCount;
+
+  @Param({"1", "10"})
+  public int columnCount;
+
+  @Param({"INT", "BIGINT", "DOUBLE", "DECIMAL(12,2)", "VARCHAR(40)", "TIMESTAMP"})
+  public String columnType;
+
+  private Connection keepAlive;
+  private JdbcShell shell;
+
+  @Setup(Level.Trial)
+  public void setUp(Blackhole blackhole) throws SQLException {
+    keepAlive = DriverManager.getConnection(URL);
+    try (Statement statement = keepAlive.createStatement()) {
+      List<String> columns = new ArrayList<>();
+      List<String> values = new ArrayList<>();
+      for (int i = 0; i < columnCount; i++) {
+        columns.add("c" + i + " " + columnType);
+        values.add(valueExpression(i));
+      }
+      statement.execute("drop table if exists bench");
+      statement.execute("create table bench (" + String.join(", ", columns) + ")");
+      statement.execute("insert into bench select " + String.join(", ", values) + " from system_range(1, " + rowCount + ")");
+    }
+
+    System2 system2 = new System2() {
+      @Override
+      void printlnOut(String s) {
+        blackhole.consume(s);
+      }
+
+      @Override
+      void printlnOut(CharSequence line) {
+        blackhole.consume(line);
+      }
+    };
+    ConnectionConfig config = new ConnectionConfig(URL, null, null);
+    shell = new JdbcShell(system2, config, ShellOptions.builder().setQuery("select * from bench").build());
+  }
+
+  private String valueExpression(int column) {
+    String type = columnType.replaceAll("\\(.*", "");
+    switch (type) {
+      case "VARCHAR":
+        return "'value-' || x || '-" + column + "'";
+      case "TIMESTAMP":
+        return "dateadd('SECOND', x, timestamp '2019-01-01 00:00:00')";
+      case "DECIMAL":
+      case "DOUBLE":
+        return "x * 1.25";
+      default:
+        return "x + " + column;
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException, SQLException {
+    shell.close();
+    keepAlive.close();
+  }
+
+  @Benchmark
+  public void fetchAndFormat() throws Exception {
+    shell.run();
+  }
+}
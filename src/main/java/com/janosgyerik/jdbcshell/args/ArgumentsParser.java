@@ -45,7 +45,18 @@ public class ArgumentsParser {
       if (options.containsKey(name)) {
         throw new IllegalArgumentException("Option already defined: " + name);
       }
-      this.options.put(name, new Option<>(name, description, validator));
+      this.options.put(name, new Option<>(name, description, validator, false));
+      return this;
+    }
+
+    /**
+     * Add an option without a parameter. Its validator receives "true" when the option is present.
+     */
+    public Builder addFlag(String name, String description, Validator<Boolean> validator) {
+      if (options.containsKey(name)) {
+        throw new IllegalArgumentException("Option already defined: " + name);
+      }
+      this.options.put(name, new Option<>(name, description, validator, true));
       return this;
     }
 
@@ -67,10 +78,11 @@ public class ArgumentsParser {
         .append(NEWLINE);
 
       options.values().forEach(option -> {
-        sb.append(option.name)
-          .append(' ')
-          .append(option.name.substring(1).toUpperCase(Locale.ENGLISH))
-          .append(NEWLINE)
+        sb.append(option.name);
+        if (!option.flag) {
+          sb.append(' ').append(option.name.substring(1).toUpperCase(Locale.ENGLISH));
+        }
+        sb.append(NEWLINE)
           .append("  ")
           .append(option.description)
           .append(NEWLINE);
@@ -104,6 +116,11 @@ public class ArgumentsParser {
           return builder.build();
         }
 
+        if (options.get(arg).flag) {
+          rawOptions.put(arg, Boolean.TRUE.toString());
+          continue;
+        }
+
         i++;
         if (i == args.length) {
           builder.addError("Option " + arg + " requires a parameter");
@@ -146,11 +163,13 @@ public class ArgumentsParser {
     private final String name;
     private final String description;
     private final Validator<T> validator;
+    private final boolean flag;
 
-    private Option(String name, String description, Validator<T> validator) {
+    private Option(String name, String description, Validator<T> validator, boolean flag) {
       this.name = name;
       this.description = description;
       this.validator = validator;
+      this.flag = flag;
     }
 
     void validate(String rawValue) {
@@ -1,5 +1,7 @@
 package com.janosgyerik.jdbcshell.args;
 
+import java.util.Arrays;
+
 public class GlobalValidators {
   private GlobalValidators() {
     // utility class, forbidden constructor
@@ -13,6 +15,36 @@ public class GlobalValidators {
     };
   }
 
+  /**
+   * Apply the validator only when the option is absent, for example to not require options that a mode does not use.
+   */
+  public static GlobalValidator unlessPresent(String name, GlobalValidator validator) {
+    return rawOptions -> {
+      if (!rawOptions.containsKey(name)) {
+        validator.validate(rawOptions);
+      }
+    };
+  }
+
+  public static GlobalValidator atMostOneIsPresent(String... names) {
+    return rawOptions -> {
+      if (Arrays.stream(names).filter(rawOptions::containsKey).count() > 1) {
+        fail("At most one of these options is allowed: " + String.join(", ", names));
+      }
+    };
+  }
+
+  public static GlobalValidator requires(String name, String... requiredNames) {
+    return rawOptions -> {
+      if (rawOptions.containsKey(name) && Arrays.stream(requiredNames).noneMatch(rawOptions::containsKey)) {
+        if (requiredNames.length == 1) {
+          fail(String.format("Option %s requires option %s", name, requiredNames[0]));
+        }
+        fail(String.format("Option %s requires one of these options: %s", name, String.join(", ", requiredNames)));
+      }
+    };
+  }
+
   public static void fail(String message) {
     throw new IllegalStateException(message);
   }
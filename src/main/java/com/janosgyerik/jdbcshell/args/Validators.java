@@ -1,6 +1,9 @@
 package com.janosgyerik.jdbcshell.args;
 
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class Validators {
   private Validators() {
@@ -38,4 +41,80 @@ public class Validators {
       }
     };
   }
+
+  /**
+   * Create a validator that accepts strictly positive integers.
+   */
+  public static Validator<Integer> positiveInteger() {
+    return create(Validators::parsePositiveInteger);
+  }
+
+  /**
+   * Create a validator that accepts zero or positive integers.
+   */
+  public static Validator<Integer> nonNegativeInteger() {
+    return create(Validators::parseNonNegativeInteger);
+  }
+
+  /**
+   * Create a validator that accepts non-blank strings.
+   */
+  public static Validator<String> nonBlank() {
+    return create(rawValue -> {
+      if (rawValue.trim().isEmpty()) {
+        throw new IllegalArgumentException("Expected a non-blank value");
+      }
+      return rawValue;
+    });
+  }
+
+  /**
+   * Create a validator for options without a parameter.
+   */
+  public static Validator<Boolean> flag() {
+    return create(Boolean::valueOf);
+  }
+
+  /**
+   * Create a validator that accepts the names of the constants of an enum, in lower case.
+   */
+  public static <E extends Enum<E>> Validator<E> oneOf(Class<E> type) {
+    return create(rawValue -> {
+      for (E constant : type.getEnumConstants()) {
+        if (constant.name().toLowerCase(Locale.ENGLISH).equals(rawValue)) {
+          return constant;
+        }
+      }
+      String names = Arrays.stream(type.getEnumConstants())
+        .map(constant -> constant.name().toLowerCase(Locale.ENGLISH))
+        .collect(Collectors.joining(", "));
+      throw new IllegalArgumentException("Expected one of " + names + ", got: " + rawValue);
+    });
+  }
+
+  private static int parseNonNegativeInteger(String rawValue) {
+    int value;
+    try {
+      value = Integer.parseInt(rawValue);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Expected a non-negative integer, got: " + rawValue);
+    }
+    if (value < 0) {
+      throw new IllegalArgumentException("Expected a non-negative integer, got: " + rawValue);
+    }
+    return value;
+  }
+
+  private static int parsePositiveInteger(String rawValue) {
+    int value;
+    try {
+      value = Integer.parseInt(rawValue);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Expected a positive integer, got: " + rawValue);
+    }
+    if (value <= 0) {
+      throw new IllegalArgumentException("Expected a positive integer, got: " + rawValue);
+    }
+    return value;
+  }
 }
@@ -0,0 +1,153 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.stats.LatencyHistogram;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Execute a statement repeatedly on concurrent connections, and report throughput and latency percentiles.
+ * <p>
+ * Iterations are shared by all threads: each thread takes the next iteration until all are done.
+ * All threads finish the warmup iterations before measurement starts.
+ * The latency of an iteration includes executing the statement and fetching all its rows.
+ */
+class Benchmark {
+
+  private final System2 system2;
+  private final ConnectionPool pool;
+  private final String sql;
+  private final int iterations;
+  private final int warmupIterations;
+  private final int threads;
+  @Nullable
+  private final Path histogramPath;
+
+  private final AtomicLong warmupCounter = new AtomicLong();
+  private final AtomicLong counter = new AtomicLong();
+  private final CyclicBarrier warmupDone;
+  private final AtomicLong measureStartNanos = new AtomicLong();
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  private volatile boolean failed;
+
+  Benchmark(System2 system2, ConnectionPool pool, String sql, ShellOptions options) {
+    this.system2 = system2;
+    this.pool = pool;
+    this.sql = sql;
+    this.iterations = options.iterations;
+    this.warmupIterations = options.warmupIterations;
+    this.threads = options.threads;
+    this.histogramPath = options.histogramPath;
+    this.warmupDone = new CyclicBarrier(threads, () -> measureStartNanos.set(System.nanoTime()));
+  }
+
+  void run() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<LatencyHistogram>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(this::runThread));
+      }
+      for (Future<LatencyHistogram> future : futures) {
+        try {
+          histogram.add(future.get());
+        } catch (ExecutionException e) {
+          failure.compareAndSet(null, e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    if (failure.get() != null) {
+      Exception e = failure.get();
+      throw e instanceof ExecutionException && e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    }
+    long elapsedNanos = System.nanoTime() - measureStartNanos.get();
+
+    system2.printlnOut(String.format(Locale.ENGLISH, "Benchmark: %d iteration(s) on %d connection(s) after %d warmup iteration(s)",
+      iterations, threads, warmupIterations));
+    system2.printlnOut(String.format(Locale.ENGLISH, "Throughput: %.1f ops/s (elapsed %.3f s)",
+      iterations / (elapsedNanos / 1e9), elapsedNanos / 1e9));
+    system2.printlnOut("Latency: " + histogram.formatPercentiles());
+    system2.flushOut();
+
+    if (histogramPath != null) {
+      try (Writer writer = Files.newBufferedWriter(histogramPath, StandardCharsets.UTF_8)) {
+        histogram.writeTo(writer);
+      }
+    }
+  }
+
+  private LatencyHistogram runThread() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    try (Connection connection = pool.borrow(); PreparedStatement statement = connection.prepareStatement(sql)) {
+      while (!failed && warmupCounter.getAndIncrement() < warmupIterations) {
+        executeOnce(statement);
+      }
+      warmupDone.await();
+
+      while (!failed && counter.getAndIncrement() < iterations) {
+        long start = System.nanoTime();
+        executeOnce(statement);
+        histogram.record(System.nanoTime() - start);
+      }
+    } catch (Exception e) {
+      if (!(e instanceof BrokenBarrierException)) {
+        failure.compareAndSet(null, e);
+      }
+      failed = true;
+      // release the threads waiting for the warmup of this one
+      warmupDone.reset();
+      throw e;
+    }
+    return histogram;
+  }
+
+  /**
+   * Execute the statement and fetch all its rows, as the latency of an iteration includes fetching.
+   */
+  static void executeOnce(PreparedStatement statement) throws SQLException {
+    if (statement.execute()) {
+      fetchAll(statement.getResultSet());
+    }
+  }
+
+  /**
+   * Execute the SQL as a plain statement and fetch all its rows, for SQL with a ? that is not a parameter.
+   */
+  static void executeOnce(Statement statement, String sql) throws SQLException {
+    if (statement.execute(sql)) {
+      fetchAll(statement.getResultSet());
+    }
+  }
+
+  private static void fetchAll(ResultSet resultSet) throws SQLException {
+    try (ResultSet rows = resultSet) {
+      int columnCount = rows.getMetaData().getColumnCount();
+      while (rows.next()) {
+        for (int i = 1; i <= columnCount; i++) {
+          rows.getObject(i);
+        }
+      }
+    }
+  }
+}
@@ -4,30 +4,46 @@ import com.janosgyerik.jdbcshell.args.ArgumentsParser;
 import com.janosgyerik.jdbcshell.args.GlobalValidators;
 import com.janosgyerik.jdbcshell.args.Validator;
 import com.janosgyerik.jdbcshell.args.Validators;
+import com.janosgyerik.jdbcshell.io.BlockCompressingChannel;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 public class CliApplication {
-
-  private static final String JDBC_URL_PROPERTY = "jdbc.url";
-  private static final String JDBC_USERNAME_PROPERTY = "jdbc.username";
-  private static final String JDBC_PASSWORD_PROPERTY = "jdbc.password";
+  private static final Pattern COLUMN_NAME = Pattern.compile("[\\w$\"\\[\\]`]+");
 
   private final System2 system2;
   private final ConnectionConfigConsumer connectionConfigConsumer;
+  private final Path workingDirectory;
 
   private CliApplication() {
-    this(new System2(), (s, config) -> {
-      JdbcShell jdbcShell = new JdbcShell(s, config);
-      jdbcShell.testConnection();
+    this(new System2(), (s, config, options) -> {
+      try (JdbcShell jdbcShell = new JdbcShell(s, config, options)) {
+        jdbcShell.run();
+      }
     });
   }
 
   CliApplication(System2 system2, ConnectionConfigConsumer connectionConfigConsumer) {
+    this(system2, connectionConfigConsumer, Paths.get(""));
+  }
+
+  /**
+   * @param workingDirectory directory to resolve relative paths against, for example the one of a daemon client
+   */
+  CliApplication(System2 system2, ConnectionConfigConsumer connectionConfigConsumer, Path workingDirectory) {
     this.system2 = system2;
     this.connectionConfigConsumer = connectionConfigConsumer;
+    this.workingDirectory = workingDirectory;
   }
 
   public static void main(String[] args) {
@@ -35,14 +51,194 @@ public class CliApplication {
   }
 
   void run(String[] args) {
-    Validator<ConnectionConfig> configValidator = Validators.create(this::configFromPath);
+    Validator<ConnectionProfiles> configValidator = Validators.create(this::profilesFromPath);
+    Validator<String> profileValidator = Validators.nonBlank();
     Validator<ConnectionConfig> urlValidator = Validators.create(this::configFromJdbcUrl);
+    Validator<String> queryValidator = Validators.nonBlank();
+    Validator<Path> scriptValidator = Validators.create(this::readableFile);
+    Validator<Boolean> autoBatchValidator = Validators.flag();
+    Validator<Integer> fetchSizeValidator = Validators.positiveInteger();
+    Validator<Path> outputValidator = Validators.create(this::path);
+    Validator<BlockCompressingChannel.Format> compressValidator = Validators.oneOf(BlockCompressingChannel.Format.class);
+    Validator<Path> importValidator = Validators.create(this::readableFile);
+    Validator<String> tableValidator = Validators.nonBlank();
+    Validator<Integer> batchSizeValidator = Validators.positiveInteger();
+    Validator<Integer> commitIntervalValidator = Validators.positiveInteger();
+    Validator<Integer> threadsValidator = Validators.positiveInteger();
+    Validator<String> benchValidator = Validators.nonBlank();
+    Validator<Integer> iterationsValidator = Validators.positiveInteger();
+    Validator<Integer> warmupValidator = Validators.nonNegativeInteger();
+    Validator<Path> histogramValidator = Validators.create(this::path);
+    Validator<Integer> connectionsValidator = Validators.positiveInteger();
+    Validator<Integer> poolMinSizeValidator = Validators.positiveInteger();
+    Validator<Integer> poolMaxSizeValidator = Validators.positiveInteger();
+    Validator<String> validationQueryValidator = Validators.nonBlank();
+    Validator<Integer> idleTimeoutValidator = Validators.positiveInteger();
+    Validator<Integer> borrowTimeoutValidator = Validators.positiveInteger();
+    Validator<Integer> statementCacheSizeValidator = Validators.positiveInteger();
+    Validator<ShellOptions.Format> formatValidator = Validators.oneOf(ShellOptions.Format.class);
+    Validator<Integer> lookaheadValidator = Validators.nonNegativeInteger();
+    Validator<Integer> maxColumnWidthValidator = Validators.positiveInteger();
+    Validator<TableFormatter.Overflow> overflowValidator = Validators.oneOf(TableFormatter.Overflow.class);
+    Validator<Boolean> statsValidator = Validators.flag();
+    Validator<Path> statsLogValidator = Validators.create(this::path);
+    Validator<Path> captureValidator = Validators.create(this::path);
+    Validator<String> copyValidator = Validators.nonBlank();
+    Validator<ConnectionConfig> targetUrlValidator = Validators.create(this::configFromJdbcUrl);
+    Validator<ConnectionConfig> targetConfigValidator = Validators.create(this::configFromPath);
+    Validator<Path> snapshotValidator = Validators.create(this::snapshotPath);
+    Validator<List<List<String>>> indexValidator = Validators.create(CliApplication::indexes);
+    Validator<String> exportValidator = Validators.nonBlank();
+    Validator<String> partitionColumnValidator = Validators.nonBlank();
+    Validator<Boolean> partFilesValidator = Validators.flag();
+    Validator<String> diffValidator = Validators.nonBlank();
+    Validator<Integer> chunkSizeValidator = Validators.positiveInteger();
+    Validator<Boolean> clientChecksumsValidator = Validators.flag();
+    Validator<Path> replayValidator = Validators.create(this::readableFile);
+    Validator<Integer> speedValidator = Validators.positiveInteger();
+    Validator<String> describeValidator = Validators.nonBlank();
+    Validator<String> tablesValidator = Validators.create(String::trim);
+    Validator<Integer> metadataTtlValidator = Validators.positiveInteger();
+    Validator<Boolean> healthCheckValidator = Validators.flag();
+    Validator<Integer> connectTimeoutValidator = Validators.positiveInteger();
+    Validator<Integer> queryTimeoutValidator = Validators.positiveInteger();
+    Validator<Integer> deadlineValidator = Validators.positiveInteger();
+    Validator<Boolean> jsonValidator = Validators.flag();
+    Validator<Boolean> daemonValidator = Validators.flag();
+    Validator<Boolean> clientValidator = Validators.flag();
+    Validator<Integer> prefetchValidator = Validators.nonNegativeInteger();
+    Validator<Integer> resultCacheTtlValidator = Validators.positiveInteger();
+    Validator<Integer> resultCacheSizeValidator = Validators.positiveInteger();
+    Validator<Path> resultCacheDirValidator = Validators.create(this::path);
 
     ArgumentsParser parser = ArgumentsParser.newBuilder()
       .setUsageLine("Usage: jdbcshell [-help] [OPTIONS...]")
       .addOption("-url", "Jdbc Url; for example jdbc:mysql://localhost:3306/sonar", urlValidator)
       .addOption("-config", "Path to config.properties file", configValidator)
-      .addGlobalValidator(GlobalValidators.eitherIsPresent("-config", "-url"))
+      .addOption("-profile", "Name of the profile to use in the -config file, defined by its PROFILE.jdbc.url property", profileValidator)
+      .addOption("-query", "SQL statement to execute; rows are printed as they are fetched", queryValidator)
+      .addOption("-script", "Path to SQL script file to execute statement by statement; rows are printed as they are fetched", scriptValidator)
+      .addFlag("-autoBatch", "Execute consecutive INSERT, UPDATE and DELETE statements of -script that differ only in their literals as batches",
+        autoBatchValidator)
+      .addOption("-fetchSize", "Number of rows to fetch per round-trip in -query, -script, -copy, -export and -diff modes; default: " + ShellOptions.DEFAULT_FETCH_SIZE, fetchSizeValidator)
+      .addOption("-output", "Path to file to write output to, instead of standard output", outputValidator)
+      .addOption("-compress", "Compress the -output file in parallel blocks: gzip, or the faster lz4", compressValidator)
+      .addOption("-import", "Path to CSV, TSV or NDJSON file to load into the table specified by -table", importValidator)
+      .addOption("-table", "Name of the table to load in -import mode, or to copy into in -copy mode", tableValidator)
+      .addOption("-batchSize", "Number of rows per JDBC batch in -import and -copy modes, and of statements with -autoBatch; default: " + ShellOptions.DEFAULT_BATCH_SIZE, batchSizeValidator)
+      .addOption("-commitInterval", "Number of rows per transaction in -import and -copy modes; default: " + ShellOptions.DEFAULT_COMMIT_INTERVAL,
+        commitIntervalValidator)
+      .addOption("-threads", "Number of parallel connections in -import, -copy, -export, -diff, -replay, -bench and -connections modes; default: " + ShellOptions.DEFAULT_THREADS,
+        threadsValidator)
+      .addOption("-bench", "SQL statement to benchmark; prints throughput and latency percentiles", benchValidator)
+      .addOption("-iterations", "Number of measured executions in -bench mode; default: " + ShellOptions.DEFAULT_ITERATIONS, iterationsValidator)
+      .addOption("-warmup", "Number of unmeasured executions before measuring in -bench mode; default: " + ShellOptions.DEFAULT_WARMUP_ITERATIONS, warmupValidator)
+      .addOption("-histogram", "Path to file to write the raw latency histogram of -bench mode to", histogramValidator)
+      .addOption("-connections", "Number of connections to open, timing each phase of connecting; prints the distribution of each", connectionsValidator)
+      .addOption("-poolMinSize", "Number of idle connections kept open by the connection pool; default: " + ConnectionPool.DEFAULT_MIN_SIZE, poolMinSizeValidator)
+      .addOption("-poolMaxSize", "Maximum number of connections in the connection pool; default: " + ConnectionPool.DEFAULT_MAX_SIZE, poolMaxSizeValidator)
+      .addOption("-validationQuery", "SQL query to validate idle pooled connections with, and to run in -healthCheck mode; default: use Connection.isValid",
+        validationQueryValidator)
+      .addOption("-idleTimeout", "Seconds after which idle pooled connections are closed; default: " + ConnectionPool.DEFAULT_IDLE_TIMEOUT_SECONDS, idleTimeoutValidator)
+      .addOption("-borrowTimeout", "Seconds to wait for a pooled connection when all are in use; default: " + ConnectionPool.DEFAULT_BORROW_TIMEOUT_SECONDS, borrowTimeoutValidator)
+      .addOption("-statementCacheSize", "Maximum number of prepared statements cached per connection; default: " + StatementCache.DEFAULT_CAPACITY, statementCacheSizeValidator)
+      .addOption("-format", "Output format of query results: tsv or table; default: tsv", formatValidator)
+      .addOption("-lookahead", "Number of rows to compute column widths from in table format, 0 to use column display sizes; default: "
+        + TableFormatter.DEFAULT_LOOKAHEAD, lookaheadValidator)
+      .addOption("-maxColumnWidth", "Maximum column width in table format; default: " + TableFormatter.DEFAULT_MAX_COLUMN_WIDTH, maxColumnWidthValidator)
+      .addOption("-overflow", "How to print values wider than their column in table format: truncate or wrap; default: truncate", overflowValidator)
+      .addOption("-copy", "Table name or query to copy to the database specified by -targetUrl, -targetConfig or -snapshot", copyValidator)
+      .addOption("-targetUrl", "Jdbc Url of the database to copy to in -copy mode, or to compare with in -diff mode", targetUrlValidator)
+      .addOption("-targetConfig", "Path to config.properties file of the database to copy to in -copy mode, or to compare with in -diff mode",
+        targetConfigValidator)
+      .addOption("-snapshot", "Path to local H2 database file to copy to in -copy mode, replacing the table if it exists", snapshotValidator)
+      .addOption("-index", "Columns to index after copying in -copy mode, comma-separated, and separate indexes separated by semicolons", indexValidator)
+      .addOption("-export", "Name of the table to export in parallel, split into -threads ranges of the -partitionColumn key", exportValidator)
+      .addOption("-partitionColumn", "Numeric or date column to split the table into key ranges in -export and -diff modes", partitionColumnValidator)
+      .addFlag("-partFiles", "Write each key range of -export mode to its own file, named after the -output file", partFilesValidator)
+      .addOption("-diff", "Table name or query to compare with the database specified by -targetUrl or -targetConfig, "
+        + "by checksums of -partitionColumn key ranges; prints the rows that differ", diffValidator)
+      .addOption("-chunkSize", "Number of rows of a key range below which differing ranges of -diff mode are compared row by row "
+        + "instead of split further; default: " + ShellOptions.DEFAULT_CHUNK_SIZE, chunkSizeValidator)
+      .addFlag("-clientChecksums", "Compute the checksums of -diff mode from the fetched rows instead of in the databases; "
+        + "the default for databases of different kinds", clientChecksumsValidator)
+      .addOption("-replay", "Path to -capture log to replay with its original timing, running sessions concurrently on up to -threads connections; "
+        + "prints latency percentiles per statement shape", replayValidator)
+      .addOption("-speed", "Factor to shorten the intervals between statements of -replay mode by; default: " + ShellOptions.DEFAULT_SPEED, speedValidator)
+      .addOption("-prefetch", "Number of -fetchSize batches of rows to fetch ahead on a background thread in -query, -script and -export modes, "
+        + "0 to not fetch ahead; default: 0", prefetchValidator)
+      .addOption("-resultCacheTtl", "Seconds to reuse the output of identical read-only queries in -query and -script modes, "
+        + "until a statement writes to their tables; default: no caching", resultCacheTtlValidator)
+      .addOption("-resultCacheSize", "Megabytes of query output to keep in memory with -resultCacheTtl; default: " + ResultCache.DEFAULT_MAX_MEGABYTES,
+        resultCacheSizeValidator)
+      .addOption("-resultCacheDir", "Path to directory to spill the -resultCacheTtl cache to, and to share it with later runs", resultCacheDirValidator)
+      .addOption("-describe", "Name of the table to describe, optionally qualified with its schema; prints its columns and indexes", describeValidator)
+      .addOption("-tables", "Prefix of the names of the tables to list, '' to list all tables", tablesValidator)
+      .addOption("-metadataTtl", "Seconds after which the cached metadata of -describe and -tables is refreshed; default: "
+        + MetadataCache.DEFAULT_TTL_SECONDS, metadataTtlValidator)
+      .addFlag("-healthCheck", "Connect to all the profiles of the -config file concurrently and run -validationQuery; prints a summary", healthCheckValidator)
+      .addOption("-connectTimeout", "Seconds to wait for each connection in -healthCheck mode; default: " + ShellOptions.DEFAULT_CONNECT_TIMEOUT_SECONDS,
+        connectTimeoutValidator)
+      .addOption("-queryTimeout", "Seconds to wait for the validation query of each connection in -healthCheck mode; default: "
+        + ShellOptions.DEFAULT_QUERY_TIMEOUT_SECONDS, queryTimeoutValidator)
+      .addOption("-deadline", "Seconds to wait for all checks of -healthCheck mode; default: " + ShellOptions.DEFAULT_DEADLINE_SECONDS, deadlineValidator)
+      .addFlag("-json", "Print the summary of -healthCheck mode as JSON instead of a table", jsonValidator)
+      .addFlag("-stats", "Print the time spent connecting, executing, fetching and formatting, and the rows and bytes fetched", statsValidator)
+      .addOption("-statsLog", "Path to file to write the stats of each statement to, as JSON lines", statsLogValidator)
+      .addOption("-capture", "Path to file to append the statements of -query and -script modes to, with their bind values and timing, "
+        + "for -replay mode", captureValidator)
+      .addFlag("-daemon", "Run commands sent with -client in this process, keeping connection pools open between them", daemonValidator)
+      .addFlag("-client", "Send the command to the running -daemon instead of running it in this process", clientValidator)
+      .addGlobalValidator(GlobalValidators.unlessPresent("-daemon", GlobalValidators.eitherIsPresent("-config", "-url")))
+      .addGlobalValidator(GlobalValidators.atMostOneIsPresent("-daemon", "-config", "-url"))
+      .addGlobalValidator(GlobalValidators.atMostOneIsPresent("-daemon", "-client"))
+      .addGlobalValidator(GlobalValidators.atMostOneIsPresent("-query", "-script", "-import", "-copy", "-export", "-diff", "-replay", "-bench", "-connections",
+        "-describe", "-tables", "-healthCheck", "-daemon"))
+      .addGlobalValidator(GlobalValidators.requires("-profile", "-config"))
+      .addGlobalValidator(GlobalValidators.requires("-healthCheck", "-config"))
+      .addGlobalValidator(GlobalValidators.atMostOneIsPresent("-profile", "-healthCheck"))
+      .addGlobalValidator(GlobalValidators.requires("-connectTimeout", "-healthCheck"))
+      .addGlobalValidator(GlobalValidators.requires("-queryTimeout", "-healthCheck"))
+      .addGlobalValidator(GlobalValidators.requires("-deadline", "-healthCheck"))
+      .addGlobalValidator(GlobalValidators.requires("-json", "-healthCheck"))
+      .addGlobalValidator(GlobalValidators.requires("-fetchSize", "-query", "-script", "-copy", "-export", "-diff"))
+      .addGlobalValidator(GlobalValidators.requires("-import", "-table"))
+      .addGlobalValidator(GlobalValidators.requires("-table", "-import", "-copy"))
+      .addGlobalValidator(GlobalValidators.requires("-batchSize", "-import", "-copy", "-autoBatch"))
+      .addGlobalValidator(GlobalValidators.requires("-commitInterval", "-import", "-copy"))
+      .addGlobalValidator(GlobalValidators.requires("-threads", "-import", "-copy", "-export", "-diff", "-replay", "-bench", "-connections"))
+      .addGlobalValidator(GlobalValidators.requires("-copy", "-targetUrl", "-targetConfig", "-snapshot"))
+      .addGlobalValidator(GlobalValidators.atMostOneIsPresent("-targetUrl", "-targetConfig", "-snapshot"))
+      .addGlobalValidator(GlobalValidators.requires("-diff", "-targetUrl", "-targetConfig"))
+      .addGlobalValidator(GlobalValidators.requires("-targetUrl", "-copy", "-diff"))
+      .addGlobalValidator(GlobalValidators.requires("-targetConfig", "-copy", "-diff"))
+      .addGlobalValidator(GlobalValidators.requires("-snapshot", "-copy"))
+      .addGlobalValidator(GlobalValidators.requires("-index", "-copy"))
+      .addGlobalValidator(GlobalValidators.requires("-export", "-partitionColumn"))
+      .addGlobalValidator(GlobalValidators.requires("-diff", "-partitionColumn"))
+      .addGlobalValidator(GlobalValidators.requires("-partitionColumn", "-export", "-diff"))
+      .addGlobalValidator(GlobalValidators.requires("-chunkSize", "-diff"))
+      .addGlobalValidator(GlobalValidators.requires("-clientChecksums", "-diff"))
+      .addGlobalValidator(GlobalValidators.requires("-speed", "-replay"))
+      .addGlobalValidator(GlobalValidators.requires("-partFiles", "-export"))
+      .addGlobalValidator(GlobalValidators.requires("-partFiles", "-output"))
+      .addGlobalValidator(GlobalValidators.requires("-compress", "-output"))
+      .addGlobalValidator(GlobalValidators.requires("-autoBatch", "-script"))
+      .addGlobalValidator(GlobalValidators.requires("-iterations", "-bench"))
+      .addGlobalValidator(GlobalValidators.requires("-warmup", "-bench"))
+      .addGlobalValidator(GlobalValidators.requires("-histogram", "-bench"))
+      .addGlobalValidator(GlobalValidators.requires("-format", "-query", "-script"))
+      .addGlobalValidator(GlobalValidators.requires("-lookahead", "-format"))
+      .addGlobalValidator(GlobalValidators.requires("-maxColumnWidth", "-format"))
+      .addGlobalValidator(GlobalValidators.requires("-overflow", "-format"))
+      .addGlobalValidator(GlobalValidators.requires("-prefetch", "-query", "-script", "-export"))
+      .addGlobalValidator(GlobalValidators.requires("-resultCacheTtl", "-query", "-script"))
+      .addGlobalValidator(GlobalValidators.requires("-resultCacheSize", "-resultCacheTtl"))
+      .addGlobalValidator(GlobalValidators.requires("-resultCacheDir", "-resultCacheTtl"))
+      .addGlobalValidator(GlobalValidators.requires("-metadataTtl", "-describe", "-tables"))
+      .addGlobalValidator(GlobalValidators.requires("-stats", "-query", "-script"))
+      .addGlobalValidator(GlobalValidators.requires("-statsLog", "-stats"))
+      .addGlobalValidator(GlobalValidators.requires("-capture", "-query", "-script"))
       .build();
 
     ArgumentsParser.Result result = parser.parseArgs(args);
@@ -53,10 +249,74 @@ public class CliApplication {
     } else if (!result.isValid()) {
       system2.printlnErr(result.errorString());
       system2.exit(1);
+    } else if (daemonValidator.used()) {
+      runDaemon();
+    } else if (clientValidator.used()) {
+      runClient(args);
     } else {
-      ConnectionConfig connectionConfig = findConnectionConfig(urlValidator, configValidator);
+      ShellOptions.Builder options = ShellOptions.builder();
+      ifUsed(queryValidator, options::setQuery);
+      ifUsed(scriptValidator, options::setScriptPath);
+      ifUsed(autoBatchValidator, options::setAutoBatch);
+      ifUsed(fetchSizeValidator, options::setFetchSize);
+      ifUsed(importValidator, options::setImportPath);
+      ifUsed(tableValidator, options::setTable);
+      ifUsed(batchSizeValidator, options::setBatchSize);
+      ifUsed(commitIntervalValidator, options::setCommitInterval);
+      ifUsed(threadsValidator, options::setThreads);
+      ifUsed(benchValidator, options::setBenchQuery);
+      ifUsed(iterationsValidator, options::setIterations);
+      ifUsed(warmupValidator, options::setWarmupIterations);
+      ifUsed(histogramValidator, options::setHistogramPath);
+      ifUsed(connectionsValidator, options::setConnections);
+      ifUsed(poolMinSizeValidator, options::setPoolMinSize);
+      ifUsed(poolMaxSizeValidator, options::setPoolMaxSize);
+      ifUsed(validationQueryValidator, options::setValidationQuery);
+      ifUsed(idleTimeoutValidator, options::setIdleTimeoutSeconds);
+      ifUsed(borrowTimeoutValidator, options::setBorrowTimeoutSeconds);
+      ifUsed(statementCacheSizeValidator, options::setStatementCacheSize);
+      ifUsed(formatValidator, options::setFormat);
+      ifUsed(lookaheadValidator, options::setLookahead);
+      ifUsed(maxColumnWidthValidator, options::setMaxColumnWidth);
+      ifUsed(overflowValidator, options::setOverflow);
+      ifUsed(statsValidator, options::setStats);
+      ifUsed(statsLogValidator, options::setStatsLogPath);
+      ifUsed(captureValidator, options::setCapturePath);
+      ifUsed(copyValidator, options::setCopySource);
+      ifUsed(targetUrlValidator, options::setTargetConfig);
+      ifUsed(targetConfigValidator, options::setTargetConfig);
+      ifUsed(snapshotValidator, path -> options.setSnapshotPath(path).setTargetConfig(Copier.snapshotConfig(path)));
+      ifUsed(indexValidator, options::setIndexes);
+      ifUsed(exportValidator, options::setExportTable);
+      ifUsed(partitionColumnValidator, options::setPartitionColumn);
+      ifUsed(partFilesValidator, options::setPartFiles);
+      ifUsed(diffValidator, options::setDiffSource);
+      ifUsed(chunkSizeValidator, options::setChunkSize);
+      ifUsed(clientChecksumsValidator, options::setClientChecksums);
+      ifUsed(replayValidator, options::setReplayPath);
+      ifUsed(speedValidator, options::setSpeed);
+      ifUsed(outputValidator, options::setOutputPath);
+      ifUsed(compressValidator, options::setCompression);
+      ifUsed(prefetchValidator, options::setPrefetchDepth);
+      ifUsed(resultCacheTtlValidator, options::setResultCacheTtlSeconds);
+      ifUsed(resultCacheSizeValidator, megabytes -> options.setResultCacheMaxBytes(megabytes * 1024L * 1024L));
+      ifUsed(resultCacheDirValidator, options::setResultCacheDirectory);
+      ifUsed(describeValidator, options::setDescribeTable);
+      ifUsed(tablesValidator, options::setTablePrefix);
+      ifUsed(metadataTtlValidator, options::setMetadataTtlSeconds);
+      ifUsed(connectTimeoutValidator, options::setConnectTimeoutSeconds);
+      ifUsed(queryTimeoutValidator, options::setQueryTimeoutSeconds);
+      ifUsed(deadlineValidator, options::setDeadlineSeconds);
+      ifUsed(jsonValidator, options::setJson);
+      if (healthCheckValidator.used()) {
+        options.setHealthCheckTargets(configValidator.value().all());
+      }
       try {
-        connectionConfigConsumer.execute(system2, connectionConfig);
+        ConnectionConfig connectionConfig = findConnectionConfig(urlValidator, configValidator, profileValidator, healthCheckValidator);
+        if (outputValidator.used() && !partFilesValidator.used()) {
+          system2.redirectOut(outputValidator.value(), compressValidator.used() ? compressValidator.value() : null);
+        }
+        connectionConfigConsumer.execute(system2, connectionConfig, options.build());
         system2.exit(0);
       } catch (Exception e) {
         system2.printlnErr(e.getMessage());
@@ -65,22 +325,77 @@ public class CliApplication {
     }
   }
 
-  private ConnectionConfig findConnectionConfig(Validator<ConnectionConfig> urlValidator, Validator<ConnectionConfig> configValidator) {
+  private void runDaemon() {
+    try (DaemonServer server = new DaemonServer(system2, DaemonServer.DEFAULT_STATE_FILE)) {
+      Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+      server.run();
+      system2.exit(0);
+    } catch (IOException e) {
+      system2.printlnErr("Could not run daemon: " + e.getMessage());
+      system2.exit(1);
+    }
+  }
+
+  private void runClient(String[] args) {
+    List<String> forwarded = new ArrayList<>(Arrays.asList(args));
+    forwarded.remove("-client");
+    try {
+      system2.exit(new DaemonClient(system2, DaemonServer.DEFAULT_STATE_FILE).run(forwarded, workingDirectory));
+    } catch (Exception e) {
+      system2.printlnErr(e.getMessage());
+      system2.exit(1);
+    }
+  }
+
+  private static <T> void ifUsed(Validator<T> validator, Consumer<T> setter) {
+    if (validator.used()) {
+      setter.accept(validator.value());
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the config file has no default url and no profile is selected,
+   * except in -healthCheck mode, which connects to every profile
+   */
+  private static ConnectionConfig findConnectionConfig(Validator<ConnectionConfig> urlValidator, Validator<ConnectionProfiles> configValidator,
+    Validator<String> profileValidator, Validator<Boolean> healthCheckValidator) {
     if (urlValidator.used()) {
       return urlValidator.value();
     }
-    return configValidator.value();
+    ConnectionProfiles profiles = configValidator.value();
+    if (profileValidator.used()) {
+      return profiles.get(profileValidator.value());
+    }
+    ConnectionConfig defaultConfig = profiles.defaultConfig();
+    if (defaultConfig != null) {
+      return defaultConfig;
+    }
+    if (healthCheckValidator.used()) {
+      return profiles.all().values().iterator().next();
+    }
+    throw new IllegalArgumentException("Missing required configuration: " + ConnectionProfiles.JDBC_URL_PROPERTY);
   }
 
   private Properties loadProperties(String configPath) throws IOException {
-    try (Reader reader = new FileReader(configPath)) {
+    try (Reader reader = new FileReader(path(configPath).toFile())) {
       Properties properties = new Properties();
       properties.load(reader);
       return properties;
     }
   }
 
-  private ConnectionConfig configFromPath(String path) {
+  ConnectionConfig configFromPath(String path) {
+    ConnectionConfig config = profilesFromPath(path).defaultConfig();
+    if (config == null) {
+      throw new IllegalArgumentException("Missing required configuration: " + ConnectionProfiles.JDBC_URL_PROPERTY);
+    }
+    return config;
+  }
+
+  /**
+   * @throws IllegalArgumentException if the file cannot be read, defines no url, or defines an invalid url
+   */
+  ConnectionProfiles profilesFromPath(String path) {
     Properties properties;
     try {
       properties = loadProperties(path);
@@ -88,15 +403,48 @@ public class CliApplication {
       throw new IllegalArgumentException("Could not read configuration file: " + e.getMessage());
     }
 
-    String url = properties.getProperty(JDBC_URL_PROPERTY);
-    if (url == null) {
-      throw new IllegalArgumentException("Missing required configuration: " + JDBC_URL_PROPERTY);
+    ConnectionProfiles profiles = ConnectionProfiles.of(properties);
+    if (profiles.isEmpty()) {
+      throw new IllegalArgumentException("Missing required configuration: " + ConnectionProfiles.JDBC_URL_PROPERTY);
+    }
+    for (ConnectionConfig config : profiles.all().values()) {
+      validateJdbcDriverClassName(config.url);
     }
+    return profiles;
+  }
 
-    validateJdbcDriverClassName(url);
-    String username = properties.getProperty(JDBC_USERNAME_PROPERTY);
-    String password = properties.getProperty(JDBC_PASSWORD_PROPERTY);
-    return new ConnectionConfig(url, username, password);
+  private Path path(String path) {
+    return workingDirectory.resolve(path);
+  }
+
+  private Path snapshotPath(String path) {
+    return Copier.snapshotPath(path(path));
+  }
+
+  /**
+   * Parse index definitions such as "customer_id;region,day" into lists of columns.
+   */
+  private static List<List<String>> indexes(String spec) {
+    List<List<String>> indexes = new ArrayList<>();
+    for (String index : spec.split(";", -1)) {
+      List<String> columns = new ArrayList<>();
+      for (String column : index.split(",", -1)) {
+        if (!COLUMN_NAME.matcher(column.trim()).matches()) {
+          throw new IllegalArgumentException("Invalid index column: '" + column.trim() + "' in: " + spec);
+        }
+        columns.add(column.trim());
+      }
+      indexes.add(columns);
+    }
+    return indexes;
+  }
+
+  private Path readableFile(String path) {
+    Path file = path(path);
+    if (!Files.isRegularFile(file) || !Files.isReadable(file)) {
+      throw new IllegalArgumentException("Not a readable file: " + path);
+    }
+    return file;
   }
 
   private ConnectionConfig configFromJdbcUrl(String url) {
@@ -116,6 +464,6 @@ public class CliApplication {
   }
 
   interface ConnectionConfigConsumer {
-    void execute(System2 system2, ConnectionConfig connectionConfig) throws Exception;
+    void execute(System2 system2, ConnectionConfig connectionConfig, ShellOptions shellOptions) throws Exception;
   }
 }
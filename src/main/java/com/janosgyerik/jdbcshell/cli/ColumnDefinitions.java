@@ -0,0 +1,141 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Types;
+
+/**
+ * Map JDBC types to column definitions in the dialect of a target database,
+ * for creating the tables of copied data.
+ * <p>
+ * The mapping covers the bundled drivers; other subprotocols get standard SQL types.
+ */
+class ColumnDefinitions {
+  private static final int MAX_VARCHAR_LENGTH = 4000;
+  private static final int MAX_DECIMAL_PRECISION = 38;
+
+  private ColumnDefinitions() {
+    // utility class, forbidden constructor
+  }
+
+  static String of(String subprotocol, int sqlType, int precision, int scale) {
+    switch (sqlType) {
+      case Types.BIT:
+      case Types.BOOLEAN:
+        return "sqlserver".equals(subprotocol) ? "bit" : "boolean";
+      case Types.TINYINT:
+      case Types.SMALLINT:
+        return "smallint";
+      case Types.INTEGER:
+        return "integer";
+      case Types.BIGINT:
+        return "bigint";
+      case Types.REAL:
+        return "real";
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return doubleType(subprotocol);
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        if (precision > 0 && precision <= MAX_DECIMAL_PRECISION) {
+          return String.format("decimal(%d, %d)", precision, Math.max(0, scale));
+        }
+        if (scale > 0) {
+          // values with more integer digits than fit fail to insert, instead of losing precision
+          return String.format("decimal(%d, %d)", MAX_DECIMAL_PRECISION, Math.min(scale, MAX_DECIMAL_PRECISION));
+        }
+        // the unknown scale of an unconstrained numeric of PostgreSQL, or more integer digits than fit: text keeps every digit
+        return textType(subprotocol);
+      case Types.CHAR:
+      case Types.NCHAR:
+        return precision > 0 && precision <= MAX_VARCHAR_LENGTH ? String.format("char(%d)", precision) : textType(subprotocol);
+      case Types.VARCHAR:
+      case Types.NVARCHAR:
+        if (precision <= 0 || precision > MAX_VARCHAR_LENGTH) {
+          return textType(subprotocol);
+        }
+        return String.format("sqlserver".equals(subprotocol) ? "nvarchar(%d)" : "varchar(%d)", precision);
+      case Types.DATE:
+        return "date";
+      case Types.TIME:
+      case Types.TIME_WITH_TIMEZONE:
+        return "time";
+      case Types.TIMESTAMP:
+        return timestampType(subprotocol);
+      case Types.TIMESTAMP_WITH_TIMEZONE:
+        return timestampWithTimeZoneType(subprotocol);
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return binaryType(subprotocol);
+      default:
+        return textType(subprotocol);
+    }
+  }
+
+  private static String doubleType(String subprotocol) {
+    switch (subprotocol) {
+      case "postgresql":
+        return "double precision";
+      case "sqlserver":
+        return "float";
+      default:
+        return "double";
+    }
+  }
+
+  private static String textType(String subprotocol) {
+    switch (subprotocol) {
+      case "postgresql":
+        return "text";
+      case "sqlserver":
+        return "nvarchar(max)";
+      case "mysql":
+      case "mariadb":
+        return "longtext";
+      case "h2":
+        // unbounded, and unlike clob can be indexed, for example in snapshots
+        return "varchar";
+      default:
+        return "clob";
+    }
+  }
+
+  private static String timestampType(String subprotocol) {
+    switch (subprotocol) {
+      case "sqlserver":
+        return "datetime2";
+      case "mysql":
+      case "mariadb":
+        return "datetime(6)";
+      default:
+        return "timestamp";
+    }
+  }
+
+  private static String timestampWithTimeZoneType(String subprotocol) {
+    switch (subprotocol) {
+      case "postgresql":
+        return "timestamptz";
+      case "sqlserver":
+        return "datetimeoffset";
+      case "h2":
+        return "timestamp with time zone";
+      default:
+        return timestampType(subprotocol);
+    }
+  }
+
+  private static String binaryType(String subprotocol) {
+    switch (subprotocol) {
+      case "postgresql":
+        return "bytea";
+      case "sqlserver":
+        return "varbinary(max)";
+      case "mysql":
+      case "mariadb":
+        return "longblob";
+      default:
+        return "blob";
+    }
+  }
+}
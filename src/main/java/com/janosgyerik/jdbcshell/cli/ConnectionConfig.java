@@ -1,5 +1,6 @@
 package com.janosgyerik.jdbcshell.cli;
 
+import java.util.Objects;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
@@ -18,4 +19,28 @@ class ConnectionConfig {
     this.username = username;
     this.password = password;
   }
+
+  /**
+   * @return the driver identifier in the url, for example "mysql" in jdbc:mysql://localhost:3306/sonar
+   */
+  String subprotocol() {
+    return url.split(":", 3)[1];
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    ConnectionConfig that = (ConnectionConfig) o;
+    return url.equals(that.url) && Objects.equals(username, that.username) && Objects.equals(password, that.password);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(url, username, password);
+  }
 }
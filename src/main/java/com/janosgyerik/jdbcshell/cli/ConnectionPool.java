@@ -0,0 +1,403 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A small pool of connections created from a {@link ConnectionConfig}.
+ * <p>
+ * The minimum number of connections is opened when the pool is built, and the others on demand, up to the maximum size.
+ * Closing a borrowed connection returns it to the pool.
+ * Connections idle for longer than the idle timeout are closed in the background,
+ * but never below the minimum size; connections closed because they were broken are replaced in the background too.
+ * Connections idle for more than a second are validated before they are handed out again.
+ */
+@ThreadSafe
+class ConnectionPool implements AutoCloseable {
+  static final int DEFAULT_MIN_SIZE = 1;
+  static final int DEFAULT_MAX_SIZE = 8;
+  static final int DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+  static final int DEFAULT_BORROW_TIMEOUT_SECONDS = 30;
+
+  private static final long VALIDATION_INTERVAL_MILLIS = 1000;
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+  private final ConnectionConfig config;
+  private final int minSize;
+  private volatile int maxSize;
+  @Nullable
+  private final String validationQuery;
+  private final long idleTimeoutMillis;
+  private final long borrowTimeoutMillis;
+
+  private final Semaphore permits;
+  private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+  private final ScheduledExecutorService evictor;
+  private volatile boolean closed;
+
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger peakActive = new AtomicInteger();
+  private final AtomicLong borrows = new AtomicLong();
+  private final AtomicLong opened = new AtomicLong();
+  private final AtomicLong evicted = new AtomicLong();
+  private final AtomicLong totalWaitNanos = new AtomicLong();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  private ConnectionPool(Builder builder) {
+    config = builder.config;
+    minSize = builder.minSize;
+    maxSize = builder.maxSize;
+    validationQuery = builder.validationQuery;
+    idleTimeoutMillis = builder.idleTimeoutMillis;
+    borrowTimeoutMillis = builder.borrowTimeoutMillis;
+    permits = new Semaphore(maxSize, true);
+
+    openMinimumConnections();
+    evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "connection-pool-evictor");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long evictionPeriodMillis = Math.max(1, idleTimeoutMillis / 2);
+    evictor.scheduleWithFixedDelay(() -> {
+      evictIdleConnections();
+      openMinimumConnections();
+    }, evictionPeriodMillis, evictionPeriodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  static Builder builder(ConnectionConfig config) {
+    return new Builder(config);
+  }
+
+  /**
+   * Borrow a connection, waiting up to the borrow timeout if all connections are in use.
+   *
+   * @return a connection that returns to the pool when closed
+   * @throws SQLException if no connection became available in time, or a new connection could not be opened
+   */
+  Connection borrow() throws SQLException {
+    if (closed) {
+      throw new SQLException("Connection pool is closed");
+    }
+
+    long start = System.nanoTime();
+    try {
+      if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLException(String.format("Timed out after %d ms waiting for a connection; all %d connections are in use", borrowTimeoutMillis, maxSize));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a connection", e);
+    }
+
+    try {
+      PooledConnection pooled = takeValidIdleConnection();
+      if (pooled == null) {
+        pooled = new PooledConnection(Connections.open(config));
+        size.incrementAndGet();
+        opened.incrementAndGet();
+      }
+      recordBorrow(System.nanoTime() - start);
+      return pooled.lend();
+    } catch (SQLException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Raise the maximum size, for a pool shared by uses that need different numbers of connections; never lowers it.
+   */
+  synchronized void growMaxSize(int newMaxSize) {
+    if (newMaxSize > maxSize) {
+      permits.release(newMaxSize - maxSize);
+      maxSize = newMaxSize;
+    }
+  }
+
+  int maxSize() {
+    return maxSize;
+  }
+
+  @CheckForNull
+  private PooledConnection takeValidIdleConnection() {
+    PooledConnection pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      if (System.currentTimeMillis() - pooled.lastReturnedMillis < VALIDATION_INTERVAL_MILLIS || isValid(pooled.connection)) {
+        return pooled;
+      }
+      discard(pooled);
+    }
+    return null;
+  }
+
+  private boolean isValid(Connection connection) {
+    try {
+      if (validationQuery == null) {
+        return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+        statement.execute(validationQuery);
+        return true;
+      }
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private void recordBorrow(long waitNanos) {
+    borrows.incrementAndGet();
+    totalWaitNanos.addAndGet(waitNanos);
+    maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+  }
+
+  private void giveBack(PooledConnection pooled) {
+    active.decrementAndGet();
+    try {
+      if (closed || !reset(pooled.connection)) {
+        discard(pooled);
+      } else {
+        pooled.lastReturnedMillis = System.currentTimeMillis();
+        idle.offerFirst(pooled);
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  /**
+   * Roll back unfinished work and restore default settings, so the next borrower starts clean.
+   *
+   * @return false if the connection is not reusable
+   */
+  private static boolean reset(Connection connection) {
+    try {
+      if (connection.isClosed()) {
+        return false;
+      }
+      if (!connection.getAutoCommit()) {
+        connection.rollback();
+        connection.setAutoCommit(true);
+      }
+      if (connection.isReadOnly()) {
+        connection.setReadOnly(false);
+      }
+      return true;
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private void evictIdleConnections() {
+    long now = System.currentTimeMillis();
+    // the oldest connections are at the end of the deque
+    Iterator<PooledConnection> iterator = idle.descendingIterator();
+    while (iterator.hasNext() && size.get() > minSize) {
+      PooledConnection pooled = iterator.next();
+      if (now - pooled.lastReturnedMillis > idleTimeoutMillis && idle.remove(pooled)) {
+        discard(pooled);
+        evicted.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Open idle connections up to the minimum size. If a connection cannot be opened, borrowing reports the failure,
+   * and opening is tried again on the next run of the evictor.
+   */
+  private void openMinimumConnections() {
+    while (!closed && size.get() < minSize) {
+      PooledConnection pooled;
+      try {
+        pooled = new PooledConnection(Connections.open(config));
+      } catch (SQLException | RuntimeException e) {
+        return;
+      }
+      size.incrementAndGet();
+      opened.incrementAndGet();
+      pooled.lastReturnedMillis = System.currentTimeMillis();
+      idle.offerLast(pooled);
+      if (closed && idle.remove(pooled)) {
+        discard(pooled);
+      }
+    }
+  }
+
+  private void discard(PooledConnection pooled) {
+    size.decrementAndGet();
+    try {
+      pooled.connection.close();
+    } catch (SQLException e) {
+      // the connection is unusable anyway
+    }
+  }
+
+  Stats stats() {
+    return new Stats(this);
+  }
+
+  /**
+   * Close idle connections, and connections in use as soon as they are returned.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    evictor.shutdownNow();
+    PooledConnection pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      discard(pooled);
+    }
+  }
+
+  private class PooledConnection {
+    private final Connection connection;
+    private volatile long lastReturnedMillis;
+
+    PooledConnection(Connection connection) {
+      this.connection = connection;
+    }
+
+    Connection lend() {
+      Lease lease = new Lease(this);
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, lease::invoke);
+    }
+  }
+
+  /**
+   * A borrowed connection: delegates to the physical connection until closed,
+   * then returns it to the pool exactly once.
+   */
+  private class Lease {
+    private final PooledConnection pooled;
+    private boolean returned;
+
+    Lease(PooledConnection pooled) {
+      this.pooled = pooled;
+    }
+
+    synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (!returned) {
+            returned = true;
+            giveBack(pooled);
+          }
+          return null;
+        case "isClosed":
+          return returned || pooled.connection.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled" + pooled.connection;
+        default:
+          if (returned) {
+            throw new SQLException("Connection was already returned to the pool");
+          }
+          try {
+            return method.invoke(pooled.connection, args);
+          } catch (InvocationTargetException e) {
+            throw e.getCause();
+          }
+      }
+    }
+  }
+
+  @Immutable
+  static class Stats {
+    final long borrows;
+    final long opened;
+    final long evicted;
+    final int active;
+    final int idle;
+    final int peakActive;
+    final double averageWaitMillis;
+    final double maxWaitMillis;
+
+    private Stats(ConnectionPool pool) {
+      borrows = pool.borrows.get();
+      opened = pool.opened.get();
+      evicted = pool.evicted.get();
+      active = pool.active.get();
+      idle = pool.idle.size();
+      peakActive = pool.peakActive.get();
+      averageWaitMillis = borrows > 0 ? pool.totalWaitNanos.get() / 1e6 / borrows : 0;
+      maxWaitMillis = pool.maxWaitNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Connection pool: %d borrow(s), %d connection(s) opened, %d evicted, wait avg %.3f ms max %.3f ms, %d active (peak %d), %d idle",
+        borrows, opened, evicted, averageWaitMillis, maxWaitMillis, active, peakActive, idle);
+    }
+  }
+
+  static class Builder {
+    private final ConnectionConfig config;
+    private int minSize = DEFAULT_MIN_SIZE;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private String validationQuery;
+    private long idleTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_IDLE_TIMEOUT_SECONDS);
+    private long borrowTimeoutMillis = TimeUnit.SECONDS.toMillis(DEFAULT_BORROW_TIMEOUT_SECONDS);
+
+    private Builder(ConnectionConfig config) {
+      this.config = config;
+    }
+
+    Builder setMinSize(int minSize) {
+      this.minSize = minSize;
+      return this;
+    }
+
+    Builder setMaxSize(int maxSize) {
+      this.maxSize = maxSize;
+      return this;
+    }
+
+    /**
+     * @param validationQuery query to validate idle connections with, or null to use Connection.isValid
+     */
+    Builder setValidationQuery(@Nullable String validationQuery) {
+      this.validationQuery = validationQuery;
+      return this;
+    }
+
+    Builder setIdleTimeoutMillis(long idleTimeoutMillis) {
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      return this;
+    }
+
+    Builder setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+      this.borrowTimeoutMillis = borrowTimeoutMillis;
+      return this;
+    }
+
+    ConnectionPool build() {
+      if (minSize > maxSize) {
+        throw new IllegalArgumentException(String.format("Minimum pool size %d is greater than maximum pool size %d", minSize, maxSize));
+      }
+      return new ConnectionPool(this);
+    }
+  }
+}
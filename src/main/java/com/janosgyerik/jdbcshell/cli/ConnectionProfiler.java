@@ -0,0 +1,197 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.stats.LatencyHistogram;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * Open connections serially or concurrently, and report the distribution of the time spent in each phase.
+ * <p>
+ * JDBC drivers don't expose the phases of connecting, so the TCP connect time is measured
+ * with a separate probe socket to the server address found in the url,
+ * and the login time (TLS handshake and authentication) is the driver's connect time minus the probe's.
+ * Urls without a server address, such as jdbc:h2:mem:, skip the dns and tcp phases.
+ * <p>
+ * MySQL and MariaDB count a connection closed before the handshake as a connect error of the client host,
+ * and block the host after max_connect_errors of them, so they are not probed: their login time includes the tcp connect.
+ */
+class ConnectionProfiler {
+  private static final int ROUND_TRIP_TIMEOUT_SECONDS = 30;
+  private static final int SOCKET_TIMEOUT_MILLIS = 30_000;
+  private static final Set<String> UNPROBED_SUBPROTOCOLS = new HashSet<>(Arrays.asList("mysql", "mariadb"));
+
+  enum Phase {
+    LOOKUP("driver lookup"),
+    DNS("dns"),
+    TCP("tcp connect"),
+    LOGIN("login"),
+    ROUND_TRIP("round-trip"),
+    TOTAL("total");
+
+    private final String label;
+
+    Phase(String label) {
+      this.label = label;
+    }
+  }
+
+  private final System2 system2;
+  private final ConnectionConfig config;
+  private final int connections;
+  private final int threads;
+  @Nullable
+  private final String validationQuery;
+  @Nullable
+  private final InetSocketAddress serverAddress;
+  private final boolean tcpProbe;
+
+  private final AtomicInteger remaining;
+  private final AtomicInteger failures = new AtomicInteger();
+  private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+
+  ConnectionProfiler(System2 system2, ConnectionConfig config, ShellOptions options) {
+    this.system2 = system2;
+    this.config = config;
+    this.connections = options.connections;
+    this.threads = options.threads;
+    this.validationQuery = options.validationQuery;
+    this.serverAddress = JdbcUrls.serverAddress(config);
+    this.tcpProbe = serverAddress != null && isProbed(config);
+    this.remaining = new AtomicInteger(connections);
+  }
+
+  void run() throws Exception {
+    Map<Phase, LatencyHistogram> histograms = newHistograms();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<Map<Phase, LatencyHistogram>>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(this::runThread));
+      }
+      for (Future<Map<Phase, LatencyHistogram>> future : futures) {
+        future.get().forEach((phase, histogram) -> histograms.get(phase).add(histogram));
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      executor.shutdownNow();
+    }
+
+    system2.printlnOut(String.format(Locale.ENGLISH, "Connection profile: %d connection(s) on %d thread(s), %d failed%s%s",
+      connections, threads, failures.get(), serverAddress != null ? ", server " + serverAddress.getHostString() + ":" + serverAddress.getPort() : "",
+      serverAddress != null && !tcpProbe ? ", tcp connect included in login" : ""));
+    for (Phase phase : Phase.values()) {
+      LatencyHistogram histogram = histograms.get(phase);
+      if (histogram.totalCount() > 0) {
+        system2.printlnOut(String.format(Locale.ENGLISH, "%-14s %s", phase.label + ":", histogram.formatPercentiles()));
+      }
+    }
+    system2.flushOut();
+
+    Exception failure = firstFailure.get();
+    if (failure != null) {
+      system2.printlnErr(String.format("First failure of %d: %s", failures.get(), failure.getMessage()));
+      if (failures.get() == connections) {
+        throw failure;
+      }
+    }
+  }
+
+  /**
+   * @return false for the databases that count probe connections as connect errors, see the class comment
+   */
+  static boolean isProbed(ConnectionConfig config) {
+    return !UNPROBED_SUBPROTOCOLS.contains(config.subprotocol().toLowerCase(Locale.ENGLISH));
+  }
+
+  private Map<Phase, LatencyHistogram> runThread() {
+    Map<Phase, LatencyHistogram> histograms = newHistograms();
+    while (remaining.getAndDecrement() > 0) {
+      try {
+        profileOnce(histograms);
+      } catch (SQLException | IOException e) {
+        failures.incrementAndGet();
+        firstFailure.compareAndSet(null, e);
+      }
+    }
+    return histograms;
+  }
+
+  private void profileOnce(Map<Phase, LatencyHistogram> histograms) throws SQLException, IOException {
+    long start = System.nanoTime();
+    Driver driver = Drivers.find(config);
+    long lookupDone = System.nanoTime();
+    histograms.get(Phase.LOOKUP).record(lookupDone - start);
+
+    long tcpNanos = 0;
+    if (serverAddress != null) {
+      InetAddress address = InetAddress.getByName(serverAddress.getHostString());
+      long dnsDone = System.nanoTime();
+      histograms.get(Phase.DNS).record(dnsDone - lookupDone);
+      if (tcpProbe) {
+        try (Socket socket = new Socket()) {
+          socket.connect(new InetSocketAddress(address, serverAddress.getPort()), SOCKET_TIMEOUT_MILLIS);
+        }
+        tcpNanos = System.nanoTime() - dnsDone;
+        histograms.get(Phase.TCP).record(tcpNanos);
+      }
+    }
+
+    long connectStart = System.nanoTime();
+    try (Connection connection = driver.connect(config.url, Connections.properties(config))) {
+      if (connection == null) {
+        throw new SQLException("Driver " + driver.getClass().getName() + " does not accept url: " + config.url);
+      }
+      long connected = System.nanoTime();
+      histograms.get(Phase.LOGIN).record(Math.max(0, connected - connectStart - tcpNanos));
+
+      roundTrip(connection);
+      long roundTripDone = System.nanoTime();
+      histograms.get(Phase.ROUND_TRIP).record(roundTripDone - connected);
+      // the probe socket is not part of the real connection sequence
+      histograms.get(Phase.TOTAL).record((lookupDone - start) + (roundTripDone - connectStart));
+    }
+  }
+
+  private void roundTrip(Connection connection) throws SQLException {
+    if (validationQuery == null) {
+      if (!connection.isValid(ROUND_TRIP_TIMEOUT_SECONDS)) {
+        throw new SQLException("Connection is not valid after " + ROUND_TRIP_TIMEOUT_SECONDS + " seconds");
+      }
+      return;
+    }
+    try (Statement statement = connection.createStatement()) {
+      statement.setQueryTimeout(ROUND_TRIP_TIMEOUT_SECONDS);
+      statement.execute(validationQuery);
+    }
+  }
+
+  private static Map<Phase, LatencyHistogram> newHistograms() {
+    Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+    for (Phase phase : Phase.values()) {
+      histograms.put(phase, new LatencyHistogram());
+    }
+    return histograms;
+  }
+}
@@ -0,0 +1,83 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The connection configurations of a config file: the default one, in jdbc.url, jdbc.username and jdbc.password,
+ * and named profiles, in NAME.jdbc.url, NAME.jdbc.username and NAME.jdbc.password.
+ * Profiles without credentials of their own use the default credentials.
+ */
+@Immutable
+class ConnectionProfiles {
+  static final String DEFAULT_PROFILE = "default";
+
+  static final String JDBC_URL_PROPERTY = "jdbc.url";
+  static final String JDBC_USERNAME_PROPERTY = "jdbc.username";
+  static final String JDBC_PASSWORD_PROPERTY = "jdbc.password";
+
+  @Nullable
+  private final ConnectionConfig defaultConfig;
+  private final Map<String, ConnectionConfig> profiles;
+
+  private ConnectionProfiles(@Nullable ConnectionConfig defaultConfig, Map<String, ConnectionConfig> profiles) {
+    this.defaultConfig = defaultConfig;
+    this.profiles = Collections.unmodifiableMap(profiles);
+  }
+
+  static ConnectionProfiles of(Properties properties) {
+    String defaultUsername = properties.getProperty(JDBC_USERNAME_PROPERTY);
+    String defaultPassword = properties.getProperty(JDBC_PASSWORD_PROPERTY);
+    String defaultUrl = properties.getProperty(JDBC_URL_PROPERTY);
+    ConnectionConfig defaultConfig = defaultUrl != null ? new ConnectionConfig(defaultUrl, defaultUsername, defaultPassword) : null;
+
+    Map<String, ConnectionConfig> profiles = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      if (key.length() > JDBC_URL_PROPERTY.length() + 1 && key.endsWith("." + JDBC_URL_PROPERTY)) {
+        String name = key.substring(0, key.length() - JDBC_URL_PROPERTY.length() - 1);
+        String username = properties.getProperty(name + "." + JDBC_USERNAME_PROPERTY, defaultUsername);
+        String password = properties.getProperty(name + "." + JDBC_PASSWORD_PROPERTY, defaultPassword);
+        profiles.put(name, new ConnectionConfig(properties.getProperty(key), username, password));
+      }
+    }
+    return new ConnectionProfiles(defaultConfig, profiles);
+  }
+
+  boolean isEmpty() {
+    return defaultConfig == null && profiles.isEmpty();
+  }
+
+  @CheckForNull
+  ConnectionConfig defaultConfig() {
+    return defaultConfig;
+  }
+
+  /**
+   * @throws IllegalArgumentException if there is no profile with this name
+   */
+  ConnectionConfig get(String name) {
+    ConnectionConfig config = profiles.get(name);
+    if (config == null) {
+      throw new IllegalArgumentException(String.format("Unknown profile: %s, expected one of: %s", name, String.join(", ", profiles.keySet())));
+    }
+    return config;
+  }
+
+  /**
+   * @return all configurations by profile name, the default one first, then the named ones in alphabetical order
+   */
+  Map<String, ConnectionConfig> all() {
+    Map<String, ConnectionConfig> all = new LinkedHashMap<>();
+    if (defaultConfig != null) {
+      all.put(DEFAULT_PROFILE, defaultConfig);
+    }
+    all.putAll(profiles);
+    return all;
+  }
+}
@@ -0,0 +1,42 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+class Connections {
+  private Connections() {
+    // utility class, forbidden constructor
+  }
+
+  static Connection open(ConnectionConfig config) throws SQLException {
+    return Drivers.connect(config);
+  }
+
+  /**
+   * @return the connection properties to pass to the driver, with the credentials if specified
+   */
+  static Properties properties(ConnectionConfig config) {
+    Properties properties = new Properties();
+    if (config.username != null) {
+      properties.setProperty("user", config.username);
+    }
+    if (config.password != null) {
+      properties.setProperty("password", config.password);
+    }
+    return properties;
+  }
+
+  /**
+   * MySQL Connector/J ignores positive fetch sizes unless useCursorFetch=true is set in the url,
+   * and streams rows one by one only when the fetch size is Integer.MIN_VALUE.
+   *
+   * @return the fetch size to set on statements, so that the driver streams results instead of buffering them
+   */
+  static int streamingFetchSize(ConnectionConfig config, int fetchSize) {
+    if ("mysql".equals(config.subprotocol()) && !config.url.contains("useCursorFetch=true")) {
+      return Integer.MIN_VALUE;
+    }
+    return fetchSize;
+  }
+}
@@ -0,0 +1,413 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.nio.file.Path;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Copy a table or query result from one database to another, without intermediate files.
+ * <p>
+ * The calling thread reads rows from the source and hands them in batches to writer threads through a bounded queue,
+ * so that reading and writing overlap, and a slow target slows down the reader instead of filling the memory.
+ * Each writer inserts on its own target connection with JDBC batches, and so in its own transactions.
+ * The target table is created with mapped column types if it does not exist.
+ * Each writer commits every -commitInterval rows: when reading or writing fails, the writers roll back their uncommitted rows,
+ * so that the target has no truncated tail of rows, only the rows committed before.
+ * <p>
+ * In snapshot mode the target is a local H2 file database, whose table is replaced on each copy,
+ * so that results can be queried again offline, without loading the source database.
+ * Indexes are created after loading, which is faster than maintaining them during the inserts.
+ */
+class Copier {
+  private static final Pattern TABLE_NAME = Pattern.compile("[\\w.$\"\\[\\]`]+");
+  private static final List<Object[]> END_OF_ROWS = new ArrayList<>(0);
+  private static final List<Object[]> ROLLBACK = new ArrayList<>(0);
+  private static final long POLL_MILLIS = 100;
+  private static final String H2_FILE_EXTENSION = ".mv.db";
+
+  private final System2 system2;
+  private final ConnectionPool sourcePool;
+  private final ConnectionConfig sourceConfig;
+  private final ConnectionConfig targetConfig;
+  private final ShellOptions options;
+  private final String sourceSql;
+  private final String targetTable;
+
+  private final BlockingQueue<List<Object[]>> queue;
+  private final AtomicLong readerBlockedNanos = new AtomicLong();
+  private final AtomicLong writersIdleNanos = new AtomicLong();
+  private volatile boolean failed;
+
+  Copier(System2 system2, ConnectionPool sourcePool, ConnectionConfig sourceConfig, ConnectionConfig targetConfig, ShellOptions options) {
+    this.system2 = system2;
+    this.sourcePool = sourcePool;
+    this.sourceConfig = sourceConfig;
+    this.targetConfig = targetConfig;
+    this.options = options;
+
+    String source = options.copySource.trim();
+    boolean isTable = TABLE_NAME.matcher(source).matches();
+    this.sourceSql = isTable ? "SELECT * FROM " + source : source;
+    if (options.table != null) {
+      this.targetTable = options.table;
+    } else if (isTable) {
+      this.targetTable = source;
+    } else {
+      throw new IllegalArgumentException("Option -table is required when copying the result of a query");
+    }
+    // two batches per writer keep the writers busy while the reader fetches the next
+    this.queue = new ArrayBlockingQueue<>(2 * options.threads);
+  }
+
+  void run() throws Exception {
+    long start = System.nanoTime();
+    long rows = 0;
+    List<List<String>> indexes;
+    try (ConnectionPool targetPool = ConnectionPool.builder(targetConfig).setMaxSize(options.threads + 1).build();
+      Connection source = sourcePool.borrow()) {
+      source.setAutoCommit(false);
+      try (Statement statement = source.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        statement.setFetchSize(Connections.streamingFetchSize(sourceConfig, options.fetchSize));
+        try (ResultSet resultSet = statement.executeQuery(sourceSql)) {
+          ResultSetMetaData metaData = resultSet.getMetaData();
+          TargetColumns targetColumns = prepareTargetTable(targetPool, metaData);
+          String insertSql = String.format("INSERT INTO %s (%s) VALUES (%s)",
+            targetTable, String.join(", ", targetColumns.names), String.join(", ", Collections.nCopies(targetColumns.names.size(), "?")));
+
+          // before loading, to fail early on an unknown column
+          indexes = indexColumns(targetColumns);
+
+          rows = pipeline(targetPool, resultSet, targetColumns.types, insertSql);
+        }
+      }
+      createIndexes(targetPool, indexes);
+    }
+
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    system2.printlnOut(String.format(Locale.ENGLISH, "Copied %d row(s) into %s in %d ms (%d rows/s); reader blocked %d ms, writers idle %d ms",
+      rows, targetTable, millis, millis > 0 ? rows * 1000 / millis : rows,
+      TimeUnit.NANOSECONDS.toMillis(readerBlockedNanos.get()), TimeUnit.NANOSECONDS.toMillis(writersIdleNanos.get())));
+    if (options.snapshotPath != null) {
+      system2.printlnOut(String.format("Snapshot saved in %s%s, query it with: -url %s", options.snapshotPath, H2_FILE_EXTENSION, targetConfig.url));
+    }
+    system2.flushOut();
+  }
+
+  /**
+   * @param path path of the H2 database file, with or without the .mv.db extension
+   * @return the path without the extension, as H2 expects it in the url
+   */
+  static Path snapshotPath(Path path) {
+    String name = path.getFileName().toString();
+    if (name.endsWith(H2_FILE_EXTENSION)) {
+      return path.resolveSibling(name.substring(0, name.length() - H2_FILE_EXTENSION.length()));
+    }
+    return path;
+  }
+
+  static ConnectionConfig snapshotConfig(Path snapshotPath) {
+    return new ConnectionConfig("jdbc:h2:file:" + snapshotPath.toAbsolutePath(), null, null);
+  }
+
+  /**
+   * Create the target table if it does not exist yet, with the column labels of the source quoted,
+   * as they may be reserved words or mixed case.
+   *
+   * @return the quoted names and the SQL types of the target columns, in the order of the source columns
+   */
+  private TargetColumns prepareTargetTable(ConnectionPool targetPool, ResultSetMetaData sourceMetaData) throws SQLException {
+    try (Connection connection = targetPool.borrow(); Statement statement = connection.createStatement()) {
+      DatabaseMetaData targetMetaData = connection.getMetaData();
+      String quote = targetMetaData.getIdentifierQuoteString();
+      if (options.snapshotPath != null) {
+        statement.execute("DROP TABLE IF EXISTS " + targetTable);
+      }
+      try (ResultSet resultSet = statement.executeQuery("SELECT * FROM " + targetTable + " WHERE 1 = 0")) {
+        return existingColumns(sourceMetaData, resultSet.getMetaData(), quote);
+      } catch (SQLException e) {
+        // the table does not exist, or the probe failed for another reason which creating the table will report
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+        }
+      }
+
+      String subprotocol = targetConfig.subprotocol();
+      List<String> labels = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      List<String> definitions = new ArrayList<>();
+      for (int i = 1; i <= sourceMetaData.getColumnCount(); i++) {
+        String label = SqlText.storedCase(targetMetaData, sourceMetaData.getColumnLabel(i));
+        String name = SqlText.quoteIdentifier(label, quote);
+        labels.add(label);
+        names.add(name);
+        definitions.add(name + " "
+          + ColumnDefinitions.of(subprotocol, sourceMetaData.getColumnType(i), sourceMetaData.getPrecision(i), sourceMetaData.getScale(i)));
+      }
+      statement.execute(String.format("CREATE TABLE %s (%s)", targetTable, String.join(", ", definitions)));
+      try (ResultSet resultSet = statement.executeQuery(String.format("SELECT %s FROM %s WHERE 1 = 0", String.join(", ", names), targetTable))) {
+        return new TargetColumns(labels, names, columnTypes(resultSet.getMetaData()));
+      }
+    }
+  }
+
+  /**
+   * Match the source columns with the columns of the existing target table by label, ignoring case if there is no exact match.
+   */
+  private TargetColumns existingColumns(ResultSetMetaData sourceMetaData, ResultSetMetaData targetMetaData, String quote) throws SQLException {
+    Map<String, Integer> byLabel = new HashMap<>();
+    Map<String, Integer> byUpperCaseLabel = new HashMap<>();
+    for (int i = 1; i <= targetMetaData.getColumnCount(); i++) {
+      byLabel.put(targetMetaData.getColumnLabel(i), i);
+      byUpperCaseLabel.putIfAbsent(targetMetaData.getColumnLabel(i).toUpperCase(Locale.ENGLISH), i);
+    }
+    List<String> labels = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    int[] types = new int[sourceMetaData.getColumnCount()];
+    for (int i = 1; i <= types.length; i++) {
+      String label = sourceMetaData.getColumnLabel(i);
+      Integer target = byLabel.getOrDefault(label, byUpperCaseLabel.get(label.toUpperCase(Locale.ENGLISH)));
+      if (target == null) {
+        throw new IllegalArgumentException(String.format("Column %s of the source does not exist in table %s", label, targetTable));
+      }
+      labels.add(targetMetaData.getColumnLabel(target));
+      names.add(SqlText.quoteIdentifier(targetMetaData.getColumnLabel(target), quote));
+      types[i - 1] = targetMetaData.getColumnType(target);
+    }
+    return new TargetColumns(labels, names, types);
+  }
+
+  /**
+   * Match the columns of -index with the target columns, as the target columns are quoted,
+   * by name, ignoring case if there is no exact match.
+   *
+   * @return the quoted names of the columns of each index
+   */
+  private List<List<String>> indexColumns(TargetColumns targetColumns) {
+    List<List<String>> indexes = new ArrayList<>();
+    for (List<String> columns : options.indexes) {
+      List<String> names = new ArrayList<>();
+      for (String column : columns) {
+        int index = targetColumns.labels.indexOf(column);
+        for (int i = 0; index < 0 && i < targetColumns.labels.size(); i++) {
+          if (targetColumns.labels.get(i).equalsIgnoreCase(column)) {
+            index = i;
+          }
+        }
+        if (index < 0) {
+          throw new IllegalArgumentException(String.format("Index column %s is not a column of table %s", column, targetTable));
+        }
+        names.add(targetColumns.names.get(index));
+      }
+      indexes.add(names);
+    }
+    return indexes;
+  }
+
+  private void createIndexes(ConnectionPool targetPool, List<List<String>> indexes) throws SQLException {
+    if (indexes.isEmpty()) {
+      return;
+    }
+    try (Connection connection = targetPool.borrow(); Statement statement = connection.createStatement()) {
+      for (int i = 0; i < indexes.size(); i++) {
+        List<String> columns = indexes.get(i);
+        long start = System.nanoTime();
+        String indexName = (targetTable + "_" + String.join("_", options.indexes.get(i)) + "_idx").replaceAll("\\W+", "_");
+        statement.execute(String.format("CREATE INDEX %s ON %s (%s)", indexName, targetTable, String.join(", ", columns)));
+        if (!connection.getAutoCommit()) {
+          connection.commit();
+        }
+        system2.printlnErr(String.format("Created index %s in %d ms", indexName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+      }
+    }
+  }
+
+  private static int[] columnTypes(ResultSetMetaData metaData) throws SQLException {
+    int[] sqlTypes = new int[metaData.getColumnCount()];
+    for (int i = 0; i < sqlTypes.length; i++) {
+      sqlTypes[i] = metaData.getColumnType(i + 1);
+    }
+    return sqlTypes;
+  }
+
+  private long pipeline(ConnectionPool targetPool, ResultSet resultSet, int[] targetTypes, String insertSql) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+    List<Future<Long>> futures = new ArrayList<>();
+    try {
+      for (int i = 0; i < options.threads; i++) {
+        futures.add(executor.submit(() -> write(targetPool, targetTypes, insertSql)));
+      }
+      Exception readFailure = null;
+      try {
+        read(resultSet, targetTypes.length);
+      } catch (Exception e) {
+        readFailure = e;
+      }
+      endOfRows(readFailure == null && !failed ? END_OF_ROWS : ROLLBACK);
+
+      long rows = 0;
+      for (Future<Long> future : futures) {
+        rows += future.get();
+      }
+      if (readFailure != null) {
+        throw readFailure;
+      }
+      return rows;
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      failed = true;
+      executor.shutdownNow();
+    }
+  }
+
+  private void read(ResultSet resultSet, int columnCount) throws SQLException, InterruptedException {
+    List<Object[]> batch = new ArrayList<>(options.batchSize);
+    while (!failed && resultSet.next()) {
+      Object[] row = new Object[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        row[i] = detach(resultSet.getObject(i + 1));
+      }
+      batch.add(row);
+      if (batch.size() == options.batchSize) {
+        enqueue(batch);
+        batch = new ArrayList<>(options.batchSize);
+      }
+    }
+    if (!batch.isEmpty()) {
+      enqueue(batch);
+    }
+  }
+
+  /**
+   * Convert values that are only valid while the source result set is open, or that only the source driver understands.
+   */
+  private static Object detach(Object value) throws SQLException {
+    if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+      || value instanceof java.util.Date || value instanceof byte[]) {
+      return value;
+    }
+    if (value instanceof Clob) {
+      Clob clob = (Clob) value;
+      return clob.getSubString(1, (int) clob.length());
+    }
+    if (value instanceof Blob) {
+      Blob blob = (Blob) value;
+      return blob.getBytes(1, (int) blob.length());
+    }
+    if (value instanceof SQLXML) {
+      return ((SQLXML) value).getString();
+    }
+    // for example UUID, PGobject, java.time values of newer drivers
+    return value.toString();
+  }
+
+  private void enqueue(List<Object[]> batch) throws InterruptedException {
+    long start = System.nanoTime();
+    while (!queue.offer(batch, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+      if (failed) {
+        return;
+      }
+    }
+    readerBlockedNanos.addAndGet(System.nanoTime() - start);
+  }
+
+  /**
+   * Tell each writer that there are no more rows, and whether to commit or roll back the rows it did not commit yet.
+   * Every writer gets a marker, also when another one failed, so that none waits for rows forever.
+   *
+   * @param marker {@link #END_OF_ROWS} or {@link #ROLLBACK}
+   */
+  private void endOfRows(List<Object[]> marker) throws InterruptedException {
+    int delivered = 0;
+    while (delivered < options.threads) {
+      if (failed || marker == ROLLBACK) {
+        // the queued rows are not written anyway; removing them, and the markers not taken yet, makes room for
+        // a marker per writer, as the queue holds twice as many batches as there are writers
+        queue.clear();
+        for (int i = 0; i < options.threads; i++) {
+          queue.put(ROLLBACK);
+        }
+        return;
+      }
+      if (queue.offer(marker, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        delivered++;
+      }
+    }
+  }
+
+  private long write(ConnectionPool targetPool, int[] targetTypes, String insertSql) throws Exception {
+    try (Connection connection = targetPool.borrow(); PreparedStatement statement = connection.prepareStatement(insertSql)) {
+      connection.setAutoCommit(false);
+      long rows = 0;
+      long committedRows = 0;
+      while (true) {
+        long start = System.nanoTime();
+        List<Object[]> batch = queue.take();
+        writersIdleNanos.addAndGet(System.nanoTime() - start);
+        if (batch == END_OF_ROWS) {
+          break;
+        }
+        if (batch == ROLLBACK) {
+          connection.rollback();
+          return committedRows;
+        }
+        for (Object[] row : batch) {
+          for (int i = 0; i < row.length; i++) {
+            if (row[i] == null) {
+              statement.setNull(i + 1, targetTypes[i]);
+            } else {
+              statement.setObject(i + 1, row[i]);
+            }
+          }
+          statement.addBatch();
+        }
+        statement.executeBatch();
+        rows += batch.size();
+        if (rows - committedRows >= options.commitInterval) {
+          connection.commit();
+          committedRows = rows;
+        }
+      }
+      connection.commit();
+      return rows;
+    } catch (Exception e) {
+      failed = true;
+      throw e;
+    }
+  }
+
+  private static class TargetColumns {
+    private final List<String> labels;
+    private final List<String> names;
+    private final int[] types;
+
+    private TargetColumns(List<String> labels, List<String> names, int[] types) {
+      this.labels = labels;
+      this.names = names;
+      this.types = types;
+    }
+  }
+}
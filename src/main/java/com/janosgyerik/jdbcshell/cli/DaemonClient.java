@@ -0,0 +1,92 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Send a command line to the {@link DaemonServer} of the state file, and replay its output, errors and exit status.
+ */
+class DaemonClient {
+  private static final String NOT_RUNNING = "No jdbcshell daemon is running, start one with: jdbcshell -daemon";
+
+  private final System2 system2;
+  private final Path stateFile;
+
+  DaemonClient(System2 system2, Path stateFile) {
+    this.system2 = system2;
+    this.stateFile = stateFile;
+  }
+
+  /**
+   * @param workingDirectory directory to resolve the relative paths of the arguments against
+   * @return the exit status of the command
+   * @throws IllegalStateException if no daemon is running
+   */
+  int run(List<String> args, Path workingDirectory) throws IOException {
+    Properties state = readState();
+    int port = Integer.parseInt(state.getProperty(DaemonServer.PORT_PROPERTY));
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+      out.writeInt(DaemonServer.PROTOCOL_VERSION);
+      DaemonServer.writeString(out, state.getProperty(DaemonServer.TOKEN_PROPERTY));
+      DaemonServer.writeString(out, workingDirectory.toAbsolutePath().toString());
+      out.writeInt(args.size());
+      for (String arg : args) {
+        DaemonServer.writeString(out, arg);
+      }
+      out.flush();
+      return replay(in);
+    } catch (ConnectException e) {
+      // the daemon was killed without deleting its state file
+      throw new IllegalStateException(NOT_RUNNING, e);
+    }
+  }
+
+  private Properties readState() throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.ISO_8859_1)) {
+      properties.load(reader);
+    } catch (NoSuchFileException e) {
+      throw new IllegalStateException(NOT_RUNNING, e);
+    }
+    if (properties.getProperty(DaemonServer.PORT_PROPERTY) == null || properties.getProperty(DaemonServer.TOKEN_PROPERTY) == null) {
+      throw new IllegalStateException("Invalid daemon state file: " + stateFile);
+    }
+    return properties;
+  }
+
+  private int replay(DataInputStream in) throws IOException {
+    while (true) {
+      byte frame = in.readByte();
+      switch (frame) {
+        case DaemonServer.FRAME_OUT:
+          system2.printlnOut(DaemonServer.readString(in));
+          break;
+        case DaemonServer.FRAME_ERR:
+          system2.printlnErr(DaemonServer.readString(in));
+          break;
+        case DaemonServer.FRAME_FLUSH:
+          system2.flushOut();
+          break;
+        case DaemonServer.FRAME_EXIT:
+          return in.readInt();
+        default:
+          throw new IOException("Unexpected frame from daemon: " + frame);
+      }
+    }
+  }
+}
@@ -0,0 +1,391 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.OutputSink;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Run command lines sent by {@link DaemonClient} in a long-lived JVM, so that they skip JVM startup,
+ * driver loading and connecting: connection pools are kept per {@link ConnectionConfig} across requests.
+ * A pool grows to the connections of the request needing the most, and is closed after no request used it for a while.
+ * <p>
+ * Java 8 cannot listen on Unix domain sockets, so the daemon listens on a loopback TCP port.
+ * The port and a random token are written to a state file readable only by its owner,
+ * and requests without the token are rejected, so that other local users cannot use the connections.
+ * <p>
+ * A request is the token, the working directory of the client and the arguments.
+ * The response is a sequence of frames: lines of standard output and standard error, flushes,
+ * and finally the exit status.
+ */
+@ThreadSafe
+class DaemonServer implements AutoCloseable {
+  static final Path DEFAULT_STATE_FILE = Paths.get(System.getProperty("user.home"), ".jdbcshell", "daemon.properties");
+
+  static final int PROTOCOL_VERSION = 1;
+  static final byte FRAME_OUT = 1;
+  static final byte FRAME_ERR = 2;
+  static final byte FRAME_FLUSH = 3;
+  static final byte FRAME_EXIT = 4;
+
+  static final String PORT_PROPERTY = "port";
+  static final String TOKEN_PROPERTY = "token";
+
+  /**
+   * Time after which the pool of a database that no request used is closed, with its connections.
+   */
+  static final long POOL_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final int TOKEN_LENGTH = 32;
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private final System2 system2;
+  private final Path stateFile;
+  private final String token;
+  private final ServerSocket serverSocket;
+  private final ExecutorService workers;
+  private final ScheduledExecutorService poolCloser;
+  @GuardedBy("pools")
+  private final Map<ConnectionConfig, SharedPool> pools = new HashMap<>();
+
+  DaemonServer(System2 system2, Path stateFile) throws IOException {
+    this.system2 = system2;
+    this.stateFile = stateFile;
+    this.token = newToken();
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    this.workers = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "daemon-request");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.poolCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "daemon-pool-closer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long periodMillis = POOL_IDLE_TIMEOUT_MILLIS / 10;
+    poolCloser.scheduleWithFixedDelay(() -> closeIdlePools(POOL_IDLE_TIMEOUT_MILLIS), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private static String newToken() {
+    byte[] bytes = new byte[TOKEN_LENGTH / 2];
+    new SecureRandom().nextBytes(bytes);
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  int poolCount() {
+    synchronized (pools) {
+      return pools.size();
+    }
+  }
+
+  /**
+   * Write the state file and serve requests until closed.
+   */
+  void run() throws IOException {
+    writeStateFile();
+    system2.printlnErr(String.format("Daemon listening on %s:%d, state in %s", serverSocket.getInetAddress().getHostAddress(), port(), stateFile));
+    try {
+      while (!serverSocket.isClosed()) {
+        Socket socket;
+        try {
+          socket = serverSocket.accept();
+        } catch (SocketException e) {
+          // closed
+          break;
+        }
+        workers.execute(() -> serve(socket));
+      }
+    } finally {
+      close();
+    }
+  }
+
+  private void writeStateFile() throws IOException {
+    Files.createDirectories(stateFile.getParent());
+    Path temp = Files.createTempFile(stateFile.getParent(), stateFile.getFileName().toString(), ".tmp");
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+    }
+    Properties properties = new Properties();
+    properties.setProperty(PORT_PROPERTY, Integer.toString(port()));
+    properties.setProperty(TOKEN_PROPERTY, token);
+    try (Writer writer = new OutputStreamWriter(Files.newOutputStream(temp), StandardCharsets.ISO_8859_1)) {
+      properties.store(writer, "jdbcshell daemon");
+    }
+    Files.move(temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void serve(Socket socket) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+      FrameWriter frames = new FrameWriter(out);
+      if (in.readInt() != PROTOCOL_VERSION) {
+        frames.line(FRAME_ERR, "Unsupported daemon protocol version, restart the daemon");
+        frames.exit(1);
+        return;
+      }
+      String requestToken = readString(in);
+      if (!MessageDigest.isEqual(requestToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+        frames.line(FRAME_ERR, "Invalid daemon token, restart the daemon");
+        frames.exit(1);
+        return;
+      }
+      Path workingDirectory = Paths.get(readString(in));
+      String[] args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = readString(in);
+      }
+
+      RemoteSystem2 remote = new RemoteSystem2(frames);
+      new CliApplication(remote, this::execute, workingDirectory).run(args);
+      frames.exit(remote.status);
+    } catch (IOException | UncheckedIOException e) {
+      // the client went away
+    } finally {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // already closed
+      }
+    }
+  }
+
+  private void execute(System2 remote, ConnectionConfig config, ShellOptions options) throws Exception {
+    SharedPool shared = acquirePool(config, options);
+    try (JdbcShell jdbcShell = new JdbcShell(remote, config, options, shared.pool)) {
+      jdbcShell.run();
+    } finally {
+      releasePool(shared);
+    }
+  }
+
+  private SharedPool acquirePool(ConnectionConfig config, ShellOptions options) {
+    synchronized (pools) {
+      SharedPool shared = pools.computeIfAbsent(config, c -> new SharedPool(JdbcShell.newPool(c, options)));
+      // a pool created for an earlier request may be too small for the threads of this one
+      shared.pool.growMaxSize(JdbcShell.poolMaxSize(options));
+      shared.users++;
+      return shared;
+    }
+  }
+
+  private void releasePool(SharedPool shared) {
+    synchronized (pools) {
+      shared.users--;
+      shared.lastUsedMillis = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Close the pools that no request is using and that no request used for the given time.
+   */
+  void closeIdlePools(long idleMillis) {
+    List<ConnectionPool> idle = new ArrayList<>();
+    synchronized (pools) {
+      long now = System.currentTimeMillis();
+      Iterator<SharedPool> iterator = pools.values().iterator();
+      while (iterator.hasNext()) {
+        SharedPool shared = iterator.next();
+        if (shared.users == 0 && now - shared.lastUsedMillis >= idleMillis) {
+          iterator.remove();
+          idle.add(shared.pool);
+        }
+      }
+    }
+    idle.forEach(ConnectionPool::close);
+  }
+
+  /**
+   * Write a string as its length and UTF-8 bytes; unlike writeUTF, without a 64 KB limit.
+   */
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Stop accepting requests, close the connection pools and delete the state file.
+   */
+  @Override
+  public void close() {
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      // already closed
+    }
+    workers.shutdown();
+    poolCloser.shutdownNow();
+    synchronized (pools) {
+      pools.values().forEach(shared -> shared.pool.close());
+      pools.clear();
+    }
+    try {
+      Files.deleteIfExists(stateFile);
+    } catch (IOException e) {
+      system2.printlnErr("Could not delete daemon state file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * A connection pool kept across the requests to the same database, and the requests using it.
+   */
+  private static class SharedPool {
+    private final ConnectionPool pool;
+    private int users;
+    private long lastUsedMillis = System.currentTimeMillis();
+
+    SharedPool(ConnectionPool pool) {
+      this.pool = pool;
+    }
+  }
+
+  /**
+   * Write frames of a response; lines of output and errors come from different threads in some modes.
+   */
+  private static class FrameWriter {
+    private final DataOutputStream out;
+
+    FrameWriter(DataOutputStream out) {
+      this.out = out;
+    }
+
+    synchronized void line(byte type, CharSequence line) {
+      try {
+        out.writeByte(type);
+        writeString(out, line.toString());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    synchronized void flush() {
+      try {
+        out.writeByte(FRAME_FLUSH);
+        out.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    synchronized void exit(int status) throws IOException {
+      out.writeByte(FRAME_EXIT);
+      out.writeInt(status);
+      out.flush();
+    }
+  }
+
+  /**
+   * Standard output of a request, sent to the client line by line.
+   */
+  private static class FrameSink implements OutputSink {
+    private final FrameWriter frames;
+
+    FrameSink(FrameWriter frames) {
+      this.frames = frames;
+    }
+
+    @Override
+    public void println(CharSequence line) {
+      frames.line(FRAME_OUT, line);
+    }
+
+    @Override
+    public void append(Path file) {
+      try (BufferedReader reader = Files.newBufferedReader(file, Charset.defaultCharset())) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          println(line);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void flush() {
+      frames.flush();
+    }
+
+    @Override
+    public void close() {
+      flush();
+    }
+  }
+
+  /**
+   * The standard streams and exit of a request: output and errors go to the client,
+   * and exiting records the status instead of stopping the daemon.
+   */
+  private static class RemoteSystem2 extends System2 {
+    private final FrameWriter frames;
+    private int status;
+
+    RemoteSystem2(FrameWriter frames) {
+      super(new FrameSink(frames));
+      this.frames = frames;
+    }
+
+    @Override
+    void printlnErr(String s) {
+      flushOut();
+      frames.line(FRAME_ERR, s);
+    }
+
+    @Override
+    void exit(int status) {
+      this.status = closeOut(status);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Find the driver of a url by its subprotocol, loading only that driver class.
+ * <p>
+ * DriverManager loads and initializes every driver on the classpath before it connects,
+ * which is a large part of the startup time of a short run.
+ * Subprotocols without a known driver class fall back to DriverManager.
+ * On Java 8 DriverManager still loads all drivers when the first one registers itself;
+ * since Java 9 it does that only when it is used to connect.
+ */
+class Drivers {
+  private static final Map<String, String> DRIVER_CLASS_NAMES = new HashMap<>();
+  private static final ConcurrentMap<String, Driver> DRIVERS = new ConcurrentHashMap<>();
+
+  static {
+    DRIVER_CLASS_NAMES.put("postgresql", "org.postgresql.Driver");
+    DRIVER_CLASS_NAMES.put("mysql", "com.mysql.jdbc.Driver");
+    DRIVER_CLASS_NAMES.put("mariadb", "org.mariadb.jdbc.Driver");
+    DRIVER_CLASS_NAMES.put("sqlserver", "com.microsoft.sqlserver.jdbc.SQLServerDriver");
+    DRIVER_CLASS_NAMES.put("oracle", "oracle.jdbc.OracleDriver");
+    DRIVER_CLASS_NAMES.put("h2", "org.h2.Driver");
+  }
+
+  private Drivers() {
+    // utility class, forbidden constructor
+  }
+
+  static Connection connect(ConnectionConfig config) throws SQLException {
+    Driver driver = find(config);
+    Connection connection = driver.connect(config.url, Connections.properties(config));
+    if (connection == null) {
+      throw new SQLException("Driver " + driver.getClass().getName() + " does not accept url: " + config.url, "08001");
+    }
+    return connection;
+  }
+
+  static Driver find(ConnectionConfig config) throws SQLException {
+    String className = DRIVER_CLASS_NAMES.get(config.subprotocol());
+    if (className == null) {
+      return DriverManager.getDriver(config.url);
+    }
+    Driver driver = DRIVERS.get(className);
+    if (driver == null) {
+      driver = load(className);
+      if (driver == null) {
+        // not in the distribution, but may have been added to the classpath for DriverManager
+        return DriverManager.getDriver(config.url);
+      }
+      DRIVERS.putIfAbsent(className, driver);
+    }
+    return driver;
+  }
+
+  private static Driver load(String className) throws SQLException {
+    try {
+      return Class.forName(className).asSubclass(Driver.class).newInstance();
+    } catch (ClassNotFoundException e) {
+      return null;
+    } catch (InstantiationException | IllegalAccessException e) {
+      throw new SQLException("Could not instantiate driver " + className + ": " + e.getMessage(), e);
+    }
+  }
+}
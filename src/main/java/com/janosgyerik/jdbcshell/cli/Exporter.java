@@ -0,0 +1,164 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.OutputSink;
+import com.janosgyerik.jdbcshell.io.OutputSinks;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Export a table in parallel, splitting it into ranges of a numeric or date key column exported on separate connections.
+ * <p>
+ * The output is either one file per range, each with a header line, or a single output in the order of the ranges:
+ * the first range is written directly, the others are spooled to temporary files and appended when their turn comes.
+ * Rows with a null key are exported with the first range. Within a range, rows are in the order the database returns them.
+ */
+class Exporter {
+  private static final Pattern COMPRESSED_EXTENSION = Pattern.compile("\\.(gz|lz4)", Pattern.CASE_INSENSITIVE);
+
+  private final System2 system2;
+  private final ConnectionPool pool;
+  private final ConnectionConfig config;
+  private final ShellOptions options;
+  private final String table;
+  private final String keyColumn;
+
+  Exporter(System2 system2, ConnectionPool pool, ConnectionConfig config, ShellOptions options) {
+    this.system2 = system2;
+    this.pool = pool;
+    this.config = config;
+    this.options = options;
+    this.table = options.exportTable;
+    this.keyColumn = options.partitionColumn;
+  }
+
+  void run() throws Exception {
+    long start = System.nanoTime();
+    List<KeyRanges.KeyRange> ranges = findRanges();
+
+    ExecutorService executor = Executors.newFixedThreadPool(ranges.size());
+    List<Path> spooled = new ArrayList<>();
+    long rows = 0;
+    try {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int i = 0; i < ranges.size(); i++) {
+        KeyRanges.KeyRange range = ranges.get(i);
+        if (options.partFiles) {
+          Path path = partPath(options.outputPath, i + 1);
+          futures.add(executor.submit(() -> exportToFile(range, true, path)));
+        } else if (i == 0) {
+          futures.add(executor.submit(() -> export(range, true, system2::printlnOut)));
+        } else {
+          Path path = Files.createTempFile(spoolDirectory(), "jdbcshell-export-", ".part");
+          spooled.add(path);
+          futures.add(executor.submit(() -> exportToFile(range, false, path)));
+        }
+      }
+
+      for (int i = 0; i < futures.size(); i++) {
+        rows += futures.get(i).get();
+        if (!options.partFiles && i > 0) {
+          system2.appendOut(spooled.get(i - 1));
+        }
+      }
+      system2.flushOut();
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      executor.shutdownNow();
+      for (Path path : spooled) {
+        Files.deleteIfExists(path);
+      }
+    }
+
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    // not on standard output, which may be the exported data
+    system2.printlnErr(String.format(Locale.ENGLISH, "Exported %d row(s) from %s in %d part(s) in %d ms (%d rows/s)",
+      rows, table, ranges.size(), millis, millis > 0 ? rows * 1000 / millis : rows));
+  }
+
+  private List<KeyRanges.KeyRange> findRanges() throws SQLException {
+    String sql = String.format("SELECT MIN(%s), MAX(%s) FROM %s", keyColumn, keyColumn, table);
+    try (Connection connection = pool.borrow();
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      return KeyRanges.split(resultSet.getObject(1), resultSet.getObject(2), options.threads);
+    }
+  }
+
+  private long exportToFile(KeyRanges.KeyRange range, boolean header, Path path) throws IOException, SQLException {
+    // spooled parts are appended to the output, and compressed with it
+    try (OutputSink sink = OutputSinks.file(path, options.partFiles ? options.compression : null)) {
+      return export(range, header, sink::println);
+    }
+  }
+
+  private long export(KeyRanges.KeyRange range, boolean header, Consumer<CharSequence> out) throws SQLException {
+    try (Connection connection = pool.borrow()) {
+      // PostgreSQL ignores the fetch size and buffers everything when autocommit is on
+      connection.setAutoCommit(false);
+      try (PreparedStatement statement = connection.prepareStatement(sql(range), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+        statement.setFetchSize(Connections.streamingFetchSize(config, options.fetchSize));
+        if (!range.isUnbounded()) {
+          statement.setObject(1, range.lower);
+          statement.setObject(2, range.upper);
+        }
+        try (ResultSet resultSet = statement.executeQuery()) {
+          TsvFormatter formatter = new TsvFormatter(out);
+          if (header) {
+            formatter.printHeader(resultSet.getMetaData());
+          }
+          if (options.prefetchDepth > 0) {
+            try (PrefetchingReader reader = new PrefetchingReader(resultSet, options.fetchSize, options.prefetchDepth)) {
+              return formatter.printRows(reader, new StatementStats(table));
+            }
+          }
+          return formatter.printRows(resultSet, new StatementStats(table));
+        } finally {
+          connection.commit();
+        }
+      }
+    }
+  }
+
+  private String sql(KeyRanges.KeyRange range) {
+    String condition = range.condition(keyColumn);
+    return condition == null ? "SELECT * FROM " + table : String.format("SELECT * FROM %s WHERE %s", table, condition);
+  }
+
+  private Path spoolDirectory() {
+    Path parent = options.outputPath != null ? options.outputPath.toAbsolutePath().getParent() : null;
+    return parent != null ? parent : Paths.get(System.getProperty("java.io.tmpdir"));
+  }
+
+  /**
+   * @return the path of a part file, with the part number before the extension; for example data-00002.tsv for data.tsv,
+   * and data-00002.tsv.gz for data.tsv.gz
+   */
+  static Path partPath(Path output, int part) {
+    String filename = output.getFileName().toString();
+    int dot = filename.lastIndexOf('.');
+    if (dot > 0 && COMPRESSED_EXTENSION.matcher(filename.substring(dot)).matches() && filename.lastIndexOf('.', dot - 1) > 0) {
+      dot = filename.lastIndexOf('.', dot - 1);
+    }
+    String name = dot > 0 ? filename.substring(0, dot) : filename;
+    String extension = dot > 0 ? filename.substring(dot) : "";
+    return output.resolveSibling(String.format("%s-%05d%s", name, part, extension));
+  }
+}
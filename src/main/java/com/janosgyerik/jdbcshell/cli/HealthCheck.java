@@ -0,0 +1,284 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.JsonObjectWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Check the connection profiles of a config file concurrently, one thread per profile,
+ * and print a single summary of all of them.
+ * <p>
+ * Each check connects and runs the validation query, or Connection.isValid, within its own timeouts,
+ * and all checks are abandoned at the global deadline. Drivers may ignore interrupts and login timeouts,
+ * so the timeouts are enforced by the coordinating thread: a check that overruns is reported as timed out
+ * and its thread is left to finish in the background.
+ */
+class HealthCheck {
+  private static final long POLL_INTERVAL_MILLIS = 10;
+
+  enum Status {
+    OK, FAILED, TIMEOUT
+  }
+
+  @Immutable
+  static class Result {
+    final String profile;
+    final String url;
+    final Status status;
+    /**
+     * Time to connect in milliseconds, or -1 if the check did not connect.
+     */
+    final long connectMillis;
+    /**
+     * Time of the validation query in milliseconds, or -1 if it did not complete.
+     */
+    final long queryMillis;
+    @Nullable
+    final String message;
+
+    Result(String profile, String url, Status status, long connectMillis, long queryMillis, @Nullable String message) {
+      this.profile = profile;
+      this.url = url;
+      this.status = status;
+      this.connectMillis = connectMillis;
+      this.queryMillis = queryMillis;
+      this.message = message;
+    }
+  }
+
+  private final System2 system2;
+  private final Map<String, ConnectionConfig> targets;
+  private final long connectTimeoutNanos;
+  private final long queryTimeoutNanos;
+  private final int queryTimeoutSeconds;
+  private final long deadlineNanos;
+  @Nullable
+  private final String validationQuery;
+  private final boolean json;
+
+  HealthCheck(System2 system2, ShellOptions options) {
+    this.system2 = system2;
+    this.targets = options.healthCheckTargets;
+    this.connectTimeoutNanos = TimeUnit.SECONDS.toNanos(options.connectTimeoutSeconds);
+    this.queryTimeoutNanos = TimeUnit.SECONDS.toNanos(options.queryTimeoutSeconds);
+    this.queryTimeoutSeconds = options.queryTimeoutSeconds;
+    this.deadlineNanos = TimeUnit.SECONDS.toNanos(options.deadlineSeconds);
+    this.validationQuery = options.validationQuery;
+    this.json = options.json;
+  }
+
+  /**
+   * Check all targets and print the summary.
+   *
+   * @throws IllegalStateException if any target is not healthy
+   */
+  void run() {
+    long start = System.nanoTime();
+    List<Result> results = check();
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    if (json) {
+      printJson(results);
+    } else {
+      printTable(results);
+    }
+    system2.flushOut();
+
+    long failed = results.stream().filter(result -> result.status == Status.FAILED).count();
+    long timedOut = results.stream().filter(result -> result.status == Status.TIMEOUT).count();
+    system2.printlnErr(String.format("Checked %d target(s) in %d ms: %d ok, %d failed, %d timed out",
+      results.size(), elapsedMillis, results.size() - failed - timedOut, failed, timedOut));
+    if (failed + timedOut > 0) {
+      throw new IllegalStateException(String.format("%d of %d target(s) are not healthy", failed + timedOut, results.size()));
+    }
+  }
+
+  List<Result> check() {
+    List<Target> checks = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(targets.size());
+    targets.forEach((profile, config) -> checks.add(new Target(profile, config, done)));
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, checks.size()), runnable -> {
+      Thread thread = new Thread(runnable, "health-check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long start = System.nanoTime();
+    try {
+      for (Target target : checks) {
+        executor.execute(target::check);
+      }
+      while (!done.await(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+        long now = System.nanoTime();
+        if (now - start >= deadlineNanos) {
+          break;
+        }
+        for (Target target : checks) {
+          target.expireIfOverdue(now);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      // before interrupting the checks in progress, so that they are reported as timed out rather than failed
+      for (Target target : checks) {
+        target.timeOut("deadline of " + TimeUnit.NANOSECONDS.toSeconds(deadlineNanos) + " s exceeded");
+      }
+      executor.shutdownNow();
+    }
+
+    List<Result> results = new ArrayList<>();
+    for (Target target : checks) {
+      results.add(target.result.get());
+    }
+    return results;
+  }
+
+  private class Target {
+    private final String profile;
+    private final ConnectionConfig config;
+    private final CountDownLatch done;
+    private final AtomicReference<Result> result = new AtomicReference<>();
+
+    private volatile long startNanos;
+    private volatile long connectedNanos;
+
+    Target(String profile, ConnectionConfig config, CountDownLatch done) {
+      this.profile = profile;
+      this.config = config;
+      this.done = done;
+    }
+
+    void check() {
+      startNanos = System.nanoTime();
+      try (Connection connection = Connections.open(config)) {
+        connectedNanos = System.nanoTime();
+        roundTrip(connection);
+        complete(Status.OK, null);
+      } catch (SQLException | RuntimeException e) {
+        complete(Status.FAILED, e.getMessage());
+      }
+    }
+
+    private void roundTrip(Connection connection) throws SQLException {
+      if (validationQuery == null) {
+        if (!connection.isValid(queryTimeoutSeconds)) {
+          throw new SQLException("Connection is not valid");
+        }
+        return;
+      }
+      try (Statement statement = connection.createStatement()) {
+        statement.setQueryTimeout(queryTimeoutSeconds);
+        statement.execute(validationQuery);
+      }
+    }
+
+    void expireIfOverdue(long now) {
+      long start = startNanos;
+      long connected = connectedNanos;
+      if (start == 0 || result.get() != null) {
+        return;
+      }
+      if (connected == 0 && now - start > connectTimeoutNanos) {
+        timeOut("connect timeout of " + TimeUnit.NANOSECONDS.toSeconds(connectTimeoutNanos) + " s exceeded");
+      } else if (connected != 0 && now - connected > queryTimeoutNanos) {
+        timeOut("query timeout of " + TimeUnit.NANOSECONDS.toSeconds(queryTimeoutNanos) + " s exceeded");
+      }
+    }
+
+    void timeOut(String message) {
+      complete(Status.TIMEOUT, message);
+    }
+
+    /**
+     * Record the result, unless the check already completed or timed out.
+     */
+    private void complete(Status status, @Nullable String message) {
+      long now = System.nanoTime();
+      long start = startNanos;
+      long connected = connectedNanos;
+      long connectMillis = connected != 0 ? TimeUnit.NANOSECONDS.toMillis(connected - start) : -1;
+      long queryMillis = connected != 0 && status == Status.OK ? TimeUnit.NANOSECONDS.toMillis(now - connected) : -1;
+      if (result.compareAndSet(null, new Result(profile, config.url, status, connectMillis, queryMillis, message))) {
+        done.countDown();
+      }
+    }
+  }
+
+  private void printTable(List<Result> results) {
+    String[] headers = {"PROFILE", "STATUS", "CONNECT_MS", "QUERY_MS", "MESSAGE"};
+    List<String[]> rows = new ArrayList<>();
+    for (Result result : results) {
+      rows.add(new String[]{result.profile, result.status.name(), millis(result.connectMillis), millis(result.queryMillis),
+        result.message != null ? result.message.replace('\n', ' ') : ""});
+    }
+
+    int[] widths = new int[headers.length];
+    for (int i = 0; i < headers.length; i++) {
+      widths[i] = headers[i].length();
+      for (String[] row : rows) {
+        widths[i] = Math.max(widths[i], row[i].length());
+      }
+    }
+    system2.printlnOut(formatRow(headers, widths));
+    for (String[] row : rows) {
+      system2.printlnOut(formatRow(row, widths));
+    }
+  }
+
+  private static String formatRow(String[] values, int[] widths) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        sb.append("  ");
+      }
+      sb.append(values[i]);
+      if (i < values.length - 1) {
+        for (int pad = values[i].length(); pad < widths[i]; pad++) {
+          sb.append(' ');
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String millis(long millis) {
+    return millis < 0 ? "-" : Long.toString(millis);
+  }
+
+  private void printJson(List<Result> results) {
+    JsonObjectWriter writer = new JsonObjectWriter();
+    system2.printlnOut("[");
+    for (int i = 0; i < results.size(); i++) {
+      Result result = results.get(i);
+      writer.begin()
+        .add("profile", result.profile)
+        .add("url", result.url)
+        .add("status", result.status.name());
+      addMillis(writer, "connectMillis", result.connectMillis);
+      addMillis(writer, "queryMillis", result.queryMillis);
+      writer.add("message", result.message);
+      system2.printlnOut("  " + writer.end() + (i < results.size() - 1 ? "," : ""));
+    }
+    system2.printlnOut("]");
+  }
+
+  private static void addMillis(JsonObjectWriter writer, String name, long millis) {
+    if (millis < 0) {
+      writer.add(name, (CharSequence) null);
+    } else {
+      writer.add(name, millis);
+    }
+  }
+}
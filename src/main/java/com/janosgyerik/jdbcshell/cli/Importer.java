@@ -0,0 +1,268 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.DelimitedRecordParser;
+import com.janosgyerik.jdbcshell.io.JsonObjectParser;
+import com.janosgyerik.jdbcshell.io.RangeLineReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load a CSV, TSV or NDJSON file into a table, using JDBC batches.
+ * <p>
+ * The file is split into byte ranges that are parsed and loaded in parallel, each on its own connection,
+ * and so in its own transactions.
+ * The ranges of CSV and TSV files start at record boundaries, found by reading the file once before loading it,
+ * as a quoted value with line breaks could otherwise be split between ranges and loaded as corrupt rows.
+ */
+class Importer {
+
+  private final System2 system2;
+  private final ConnectionPool pool;
+  private final ShellOptions options;
+  private final Path path;
+  private final boolean ndjson;
+  private final char delimiter;
+
+  Importer(System2 system2, ConnectionPool pool, ShellOptions options, Path path) {
+    this.system2 = system2;
+    this.pool = pool;
+    this.options = options;
+    this.path = path;
+
+    String filename = path.getFileName().toString().toLowerCase(Locale.ENGLISH);
+    this.ndjson = filename.endsWith(".ndjson") || filename.endsWith(".jsonl");
+    this.delimiter = filename.endsWith(".tsv") ? '\t' : ',';
+  }
+
+  void run() throws Exception {
+    long start = System.nanoTime();
+
+    List<String> columns = new ArrayList<>();
+    long dataStart;
+    long size;
+    try (FileChannel channel = FileChannel.open(path)) {
+      size = channel.size();
+      RangeLineReader reader = new RangeLineReader(channel, 0, size);
+      String firstLine = reader.readLine();
+      if (firstLine == null) {
+        throw new IllegalArgumentException("Input file is empty: " + path);
+      }
+      if (ndjson) {
+        Map<String, String> members = new LinkedHashMap<>();
+        new JsonObjectParser().parse(firstLine, members);
+        columns.addAll(members.keySet());
+        dataStart = 0;
+      } else {
+        new DelimitedRecordParser(delimiter).parse(firstLine, columns);
+        dataStart = reader.position();
+      }
+    }
+
+    int[] sqlTypes = new int[columns.size()];
+    String insertSql = insertSql(columns, sqlTypes);
+
+    long[] boundaries;
+    if (ndjson || options.threads == 1) {
+      boundaries = RangeLineReader.split(dataStart, size, options.threads);
+    } else {
+      try (FileChannel channel = FileChannel.open(path)) {
+        boundaries = RangeLineReader.splitRecords(channel, dataStart, size, options.threads, delimiter);
+      }
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+    long rows = 0;
+    try {
+      List<Future<Long>> futures = new ArrayList<>();
+      for (int i = 0; i < options.threads; i++) {
+        long rangeStart = boundaries[i];
+        long rangeEnd = boundaries[i + 1];
+        futures.add(executor.submit(() -> load(rangeStart, rangeEnd, columns, sqlTypes, insertSql)));
+      }
+      for (Future<Long> future : futures) {
+        rows += future.get();
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      executor.shutdownNow();
+    }
+
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    system2.printlnOut(String.format("Imported %d row(s) into %s in %d ms (%d rows/s)",
+      rows, options.table, millis, millis > 0 ? rows * 1000 / millis : rows));
+    system2.flushOut();
+  }
+
+  /**
+   * Match the columns of the file with the columns of the table by name, ignoring case if there is no exact match,
+   * and quote the names of both, as they may be reserved words or mixed case.
+   *
+   * @param sqlTypes filled with the SQL types of the columns
+   * @throws IllegalArgumentException if a column of the file is not a column of the table
+   */
+  private String insertSql(List<String> columns, int[] sqlTypes) throws SQLException {
+    try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+      DatabaseMetaData databaseMetaData = connection.getMetaData();
+      String quote = databaseMetaData.getIdentifierQuoteString();
+      String table = SqlText.quoteQualifiedName(databaseMetaData, options.table);
+      try (ResultSet resultSet = statement.executeQuery("SELECT * FROM " + table + " WHERE 1 = 0")) {
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        Map<String, Integer> byLabel = new HashMap<>();
+        Map<String, Integer> byUpperCaseLabel = new HashMap<>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+          byLabel.put(metaData.getColumnLabel(i), i);
+          byUpperCaseLabel.putIfAbsent(metaData.getColumnLabel(i).toUpperCase(Locale.ENGLISH), i);
+        }
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < sqlTypes.length; i++) {
+          String column = columns.get(i);
+          Integer target = byLabel.getOrDefault(column, byUpperCaseLabel.get(column.toUpperCase(Locale.ENGLISH)));
+          if (target == null) {
+            throw new IllegalArgumentException(String.format("Column %s of %s does not exist in table %s", column, path, options.table));
+          }
+          names.add(SqlText.quoteIdentifier(metaData.getColumnLabel(target), quote));
+          sqlTypes[i] = metaData.getColumnType(target);
+        }
+        return String.format("INSERT INTO %s (%s) VALUES (%s)",
+          table, String.join(", ", names), String.join(", ", Collections.nCopies(names.size(), "?")));
+      }
+    }
+  }
+
+  private long load(long start, long end, List<String> columns, int[] sqlTypes, String insertSql) throws IOException, SQLException {
+    try (FileChannel channel = FileChannel.open(path); Connection connection = pool.borrow()) {
+      connection.setAutoCommit(false);
+      RangeLineReader reader = new RangeLineReader(channel, start, end);
+      RecordReader recordReader = ndjson ? new NdjsonRecordReader(columns) : new DelimitedRecordReader(delimiter);
+      List<String> values = new ArrayList<>();
+
+      long rows = 0;
+      long committedRows = 0;
+      int batchedRows = 0;
+      try (PreparedStatement statement = connection.prepareStatement(insertSql)) {
+        while (true) {
+          long position = reader.position();
+          try {
+            if (!recordReader.read(reader, values)) {
+              break;
+            }
+            if (values.size() != sqlTypes.length) {
+              throw new IllegalArgumentException(String.format("Expected %d values, got %d", sqlTypes.length, values.size()));
+            }
+            for (int i = 0; i < sqlTypes.length; i++) {
+              TextParameters.bind(statement, i + 1, values.get(i), sqlTypes[i]);
+            }
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid record at byte offset %d of %s: %s", position, path, e.getMessage()), e);
+          }
+          statement.addBatch();
+          rows++;
+          batchedRows++;
+
+          if (batchedRows == options.batchSize) {
+            statement.executeBatch();
+            batchedRows = 0;
+            if (rows - committedRows >= options.commitInterval) {
+              connection.commit();
+              committedRows = rows;
+            }
+          }
+        }
+        if (batchedRows > 0) {
+          statement.executeBatch();
+        }
+        connection.commit();
+      }
+      return rows;
+    }
+  }
+
+  private interface RecordReader {
+    /**
+     * @return false if there are no more records
+     */
+    boolean read(RangeLineReader reader, List<String> values) throws IOException;
+  }
+
+  private static class DelimitedRecordReader implements RecordReader {
+    private final DelimitedRecordParser parser;
+    private final StringBuilder record = new StringBuilder();
+
+    DelimitedRecordReader(char delimiter) {
+      parser = new DelimitedRecordParser(delimiter);
+    }
+
+    @Override
+    public boolean read(RangeLineReader reader, List<String> values) throws IOException {
+      String line;
+      do {
+        line = reader.readLine();
+        if (line == null) {
+          return false;
+        }
+      } while (line.isEmpty());
+
+      if (parser.parse(line, values)) {
+        return true;
+      }
+
+      record.setLength(0);
+      record.append(line);
+      do {
+        String continuation = reader.readContinuationLine();
+        if (continuation == null) {
+          throw new IllegalArgumentException("Unterminated quoted value");
+        }
+        record.append('\n').append(continuation);
+      } while (!parser.parse(record, values));
+      return true;
+    }
+  }
+
+  private static class NdjsonRecordReader implements RecordReader {
+    private final JsonObjectParser parser = new JsonObjectParser();
+    private final Map<String, String> members = new LinkedHashMap<>();
+    private final List<String> columns;
+
+    NdjsonRecordReader(List<String> columns) {
+      this.columns = columns;
+    }
+
+    @Override
+    public boolean read(RangeLineReader reader, List<String> values) throws IOException {
+      String line;
+      do {
+        line = reader.readLine();
+        if (line == null) {
+          return false;
+        }
+      } while (line.trim().isEmpty());
+
+      parser.parse(line, members);
+      values.clear();
+      for (String column : columns) {
+        values.add(members.get(column));
+      }
+      return true;
+    }
+  }
+}
@@ -1,29 +1,361 @@
 package com.janosgyerik.jdbcshell.cli;
 
+import com.janosgyerik.jdbcshell.io.SqlScriptReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Properties;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 
-class JdbcShell {
+class JdbcShell implements AutoCloseable {
+
+  static final String NULL_VALUE = "NULL";
+  private static final int VALIDATION_TIMEOUT_SECONDS = 5;
 
   private final System2 system2;
   private final ConnectionConfig config;
+  private final ShellOptions options;
+  private final ConnectionPool pool;
+  private final boolean ownsPool;
+  private final Session session;
+  private final MetadataCache metadataCache;
+  @Nullable
+  private final ResultCache resultCache;
+  @Nullable
+  private final StatsReport statsReport;
+  @Nullable
+  private final WorkloadLog.Writer capture;
+
+  public JdbcShell(System2 system2, ConnectionConfig config, ShellOptions options) {
+    this(system2, config, options, newPool(config, options), true);
+  }
+
+  /**
+   * Create a shell using a pool that outlives it, such as a pool of the daemon, which the shell does not close.
+   */
+  JdbcShell(System2 system2, ConnectionConfig config, ShellOptions options, ConnectionPool sharedPool) {
+    this(system2, config, options, sharedPool, false);
+  }
 
-  public JdbcShell(System2 system2, ConnectionConfig config) {
+  private JdbcShell(System2 system2, ConnectionConfig config, ShellOptions options, ConnectionPool pool, boolean ownsPool) {
     this.system2 = system2;
     this.config = config;
+    this.options = options;
+    this.pool = pool;
+    this.ownsPool = ownsPool;
+    this.session = new Session(pool, options.statementCacheSize);
+    this.metadataCache = new MetadataCache(pool, config, options.metadataCacheDirectory, TimeUnit.SECONDS.toMillis(options.metadataTtlSeconds));
+    this.resultCache = options.resultCacheTtlSeconds > 0 ? newResultCache(config, options) : null;
+    this.statsReport = options.stats ? new StatsReport(system2, options.statsLogPath) : null;
+    // a random session id, so that concurrent runs and daemon requests capture to the same log without coordinating
+    this.capture = options.capturePath != null
+      ? new WorkloadLog.Writer(options.capturePath, ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE)
+      : null;
+  }
+
+  static ConnectionPool newPool(ConnectionConfig config, ShellOptions options) {
+    return ConnectionPool.builder(config)
+      .setMinSize(options.poolMinSize)
+      .setMaxSize(poolMaxSize(options))
+      .setValidationQuery(options.validationQuery)
+      .setIdleTimeoutMillis(TimeUnit.SECONDS.toMillis(options.idleTimeoutSeconds))
+      .setBorrowTimeoutMillis(TimeUnit.SECONDS.toMillis(options.borrowTimeoutSeconds))
+      .build();
+  }
+
+  /**
+   * Every import and benchmark thread holds a connection for its whole run.
+   */
+  static int poolMaxSize(ShellOptions options) {
+    return Math.max(options.poolMaxSize, options.threads);
+  }
+
+  private static ResultCache newResultCache(ConnectionConfig config, ShellOptions options) {
+    String variant = options.format + "," + options.lookahead + "," + options.maxColumnWidth + "," + options.overflow;
+    return new ResultCache(config, variant, TimeUnit.SECONDS.toMillis(options.resultCacheTtlSeconds), options.resultCacheMaxBytes,
+      options.resultCacheDirectory);
+  }
+
+  void run() throws Exception {
+    if (options.importPath != null) {
+      new Importer(system2, pool, options, options.importPath).run();
+    } else if (options.benchQuery != null) {
+      new Benchmark(system2, pool, options.benchQuery, options).run();
+    } else if (options.copySource != null) {
+      new Copier(system2, pool, config, options.targetConfig, options).run();
+    } else if (options.exportTable != null) {
+      new Exporter(system2, pool, config, options).run();
+    } else if (options.diffSource != null) {
+      new TableDiff(system2, pool, config, options.targetConfig, options).run();
+    } else if (options.replayPath != null) {
+      new WorkloadReplay(system2, pool, options.replayPath, options).run();
+    } else if (options.query != null) {
+      executeQuery(options.query);
+    } else if (options.scriptPath != null) {
+      executeScript(options.scriptPath);
+    } else if (options.describeTable != null) {
+      describe(options.describeTable);
+    } else if (options.tablePrefix != null) {
+      listTables(options.tablePrefix);
+    } else if (!options.healthCheckTargets.isEmpty()) {
+      new HealthCheck(system2, options).run();
+    } else if (options.connections > 0) {
+      new ConnectionProfiler(system2, config, options).run();
+    } else {
+      testConnection();
+    }
   }
 
   void testConnection() throws SQLException {
-    Properties properties = new Properties();
-    properties.setProperty("user", config.username);
-    properties.setProperty("password", config.password);
-    try (Connection unused = DriverManager.getConnection(config.url, properties)) {
+    try (Connection connection = pool.borrow()) {
+      if (!connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+        throw new SQLException("Connection is not valid");
+      }
       system2.printlnOut("Connection test successful!");
     } catch (SQLException e) {
       system2.printlnErr("Connection test failed!");
       throw e;
     }
   }
+
+  /**
+   * Execute a statement and stream its results row by row.
+   * <p>
+   * The statement uses a forward-only, read-only cursor with the configured fetch size,
+   * so that drivers fetch rows in chunks instead of buffering the entire result in memory.
+   * Statements are prepared once per session and reused when the same SQL is executed again.
+   */
+  void executeQuery(String sql) throws SQLException {
+    execute(sql, true);
+  }
+
+  /**
+   * Execute the statements of a script one at a time, as they are split from the file, stopping at the first failure.
+   * Each statement is executed like a query, in its own transaction,
+   * unless consecutive DML statements of the same shape are batched.
+   */
+  void executeScript(Path path) throws IOException, SQLException {
+    long start = System.nanoTime();
+    long count = 0;
+    SqlScriptReader.Dialect dialect = scriptDialect(config);
+    ScriptBatcher.Executor executor = statement -> executeScriptStatement(path, statement);
+    ScriptBatcher batcher = options.autoBatch ? new ScriptBatcher(system2, session, options.batchSize, dialect, executor, capture) : null;
+    try (FileChannel channel = FileChannel.open(path)) {
+      SqlScriptReader reader = new SqlScriptReader(channel, dialect);
+      SqlScriptReader.Statement statement;
+      while ((statement = reader.next()) != null) {
+        if (batcher != null) {
+          if (resultCache != null && !SqlText.isReadOnlyQuery(statement.sql())) {
+            // batched statements do not go through execute
+            resultCache.invalidate(statement.sql());
+          }
+          batcher.execute(statement);
+        } else {
+          executor.execute(statement);
+        }
+        count++;
+      }
+      if (batcher != null) {
+        batcher.flush();
+      }
+    } finally {
+      system2.flushOut();
+    }
+    String batched = batcher != null ? String.format(", %d of them in %d batch(es)", batcher.batchedStatements, batcher.batches) : "";
+    system2.printlnErr(String.format("Executed %d statement(s) from %s in %d ms%s", count, path, (System.nanoTime() - start) / 1_000_000, batched));
+  }
+
+  private void executeScriptStatement(Path path, SqlScriptReader.Statement statement) throws SQLException {
+    try {
+      execute(statement.sql(), false);
+    } catch (SQLException e) {
+      throw new SQLException(String.format("Statement at line %d of %s failed: %s", statement.line(), path, e.getMessage()),
+        e.getSQLState(), e.getErrorCode(), e);
+    }
+  }
+
+  /**
+   * Print the columns and indexes of a table, from the metadata cache.
+   */
+  void describe(String name) throws SQLException {
+    MetadataCache.Description description = metadataCache.describe(name);
+    system2.printlnOut("COLUMN\tTYPE\tNULLABLE");
+    for (MetadataCache.Column column : description.columns) {
+      system2.printlnOut(column.name + "\t" + column.displayType() + "\t" + (column.nullable ? "YES" : "NO"));
+    }
+    if (!description.indexes.isEmpty()) {
+      system2.printlnOut("");
+      system2.printlnOut("INDEX\tUNIQUE\tCOLUMNS");
+      for (MetadataCache.Index index : description.indexes) {
+        system2.printlnOut(index.name + "\t" + (index.unique ? "YES" : "NO") + "\t" + String.join(", ", index.columns));
+      }
+    }
+    system2.flushOut();
+  }
+
+  /**
+   * Print the qualified names of the tables starting with the prefix, from the metadata cache.
+   */
+  void listTables(String prefix) throws SQLException {
+    for (MetadataCache.Table table : metadataCache.tables(prefix)) {
+      system2.printlnOut(table.qualifiedName());
+    }
+    system2.flushOut();
+  }
+
+  static SqlScriptReader.Dialect scriptDialect(ConnectionConfig config) {
+    switch (config.subprotocol()) {
+      case "mysql":
+      case "mariadb":
+        return SqlScriptReader.Dialect.MYSQL;
+      case "postgresql":
+        return SqlScriptReader.Dialect.POSTGRESQL;
+      case "sqlserver":
+      case "jtds":
+        return SqlScriptReader.Dialect.SQLSERVER;
+      default:
+        return SqlScriptReader.Dialect.STANDARD;
+    }
+  }
+
+  /**
+   * @param flush whether to flush the output after the statement, as opposed to when the buffer is full
+   */
+  private void execute(String sql, boolean flush) throws SQLException {
+    boolean cacheable = resultCache != null && SqlText.isReadOnlyQuery(sql);
+    if (cacheable) {
+      List<String> lines = resultCache.get(sql);
+      if (lines != null) {
+        lines.forEach(system2::printlnOut);
+        if (flush) {
+          system2.flushOut();
+        }
+        return;
+      }
+    } else if (resultCache != null) {
+      resultCache.invalidate(sql);
+    }
+    ResultCache.Recorder recorder = cacheable ? resultCache.recorder(system2) : null;
+    System2 out = recorder != null ? recorder : system2;
+
+    StatementStats stats = new StatementStats(sql);
+    Connection connection = session.connection();
+    stats.connected();
+    // not including connecting, which a replay on pooled connections does not do
+    long start = System.nanoTime();
+    try {
+      // PostgreSQL ignores the fetch size and buffers everything when autocommit is on
+      connection.setAutoCommit(false);
+      // a ? outside of quotes is an operator of the database, such as the jsonb ? of PostgreSQL,
+      // that a prepared statement would take for a parameter
+      PreparedStatement prepared = SqlText.hasQuestionMark(sql) ? null : session.prepare(sql);
+      try (Statement plain = prepared == null ? connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY) : null) {
+        Statement statement = prepared != null ? prepared : plain;
+        statement.setFetchSize(Connections.streamingFetchSize(config, options.fetchSize));
+        boolean hasResultSet = prepared != null ? prepared.execute() : plain.execute(sql);
+        stats.executed();
+        // a batch of SQL Server, for example, has a result per statement, and reports the failures of later statements
+        // only when reaching their results
+        while (true) {
+          if (hasResultSet) {
+            try (ResultSet resultSet = statement.getResultSet()) {
+              print(resultSet, out, stats);
+            }
+          } else {
+            int updateCount = statement.getUpdateCount();
+            if (updateCount == -1) {
+              break;
+            }
+            system2.printlnOut(updateCount + " row(s) affected");
+          }
+          hasResultSet = statement.getMoreResults();
+        }
+      }
+      session.executed(sql);
+      if (SqlText.isDdl(sql)) {
+        metadataCache.invalidate();
+      }
+      if (flush) {
+        system2.flushOut();
+      }
+      stats.formatted();
+      connection.commit();
+      stats.executed();
+      if (capture != null) {
+        capture.statement(sql, start, System.nanoTime() - start);
+      }
+      if (recorder != null) {
+        resultCache.put(sql, recorder);
+      }
+    } catch (SQLException e) {
+      session.failed(e);
+      throw e;
+    }
+    if (statsReport != null) {
+      statsReport.record(stats);
+    }
+  }
+
+  private void print(ResultSet resultSet, System2 out, StatementStats stats) throws SQLException {
+    if (options.format == ShellOptions.Format.TABLE) {
+      new TableFormatter(out, options.lookahead, options.maxColumnWidth, options.overflow).print(resultSet, stats);
+      return;
+    }
+    TsvFormatter formatter = new TsvFormatter(out::printlnOut);
+    formatter.printHeader(resultSet.getMetaData());
+    stats.formatted();
+    if (options.prefetchDepth > 0) {
+      try (PrefetchingReader reader = new PrefetchingReader(resultSet, options.fetchSize, options.prefetchDepth)) {
+        formatter.printRows(reader, stats);
+      }
+    } else {
+      formatter.printRows(resultSet, stats);
+    }
+  }
+
+  /**
+   * Close all connections, and print the statistics of statements, the statement cache and the connection pool.
+   * A shared pool is left open, with the connection of the session returned to it.
+   */
+  @Override
+  public void close() throws IOException {
+    if (capture != null) {
+      capture.close();
+    }
+    if (statsReport != null) {
+      statsReport.close();
+      statsReport.printSummary();
+    }
+
+    StatementCache.Stats statementCacheStats = session.statementCacheStats();
+    session.close();
+    if (statementCacheStats.misses > 0) {
+      system2.printlnErr(statementCacheStats.toString());
+    }
+
+    metadataCache.close();
+
+    if (resultCache != null) {
+      resultCache.close();
+      if (resultCache.isUsed()) {
+        system2.printlnErr(resultCache.stats());
+      }
+    }
+
+    if (!ownsPool) {
+      return;
+    }
+    ConnectionPool.Stats stats = pool.stats();
+    pool.close();
+    if (stats.borrows > 0) {
+      system2.printlnErr(stats.toString());
+    }
+  }
 }
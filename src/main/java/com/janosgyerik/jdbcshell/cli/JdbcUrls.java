@@ -0,0 +1,78 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+
+class JdbcUrls {
+  private static final Map<String, Integer> DEFAULT_PORTS = new HashMap<>();
+
+  static {
+    DEFAULT_PORTS.put("postgresql", 5432);
+    DEFAULT_PORTS.put("mysql", 3306);
+    DEFAULT_PORTS.put("mariadb", 3306);
+    DEFAULT_PORTS.put("sqlserver", 1433);
+    DEFAULT_PORTS.put("h2", 9092);
+  }
+
+  private JdbcUrls() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * Find the server address in urls of the form jdbc:subprotocol://host[:port]/...
+   * For multi-host urls, the first host is used.
+   *
+   * @return unresolved address, or null if the url does not name a server, for example jdbc:h2:mem:test
+   */
+  @CheckForNull
+  static InetSocketAddress serverAddress(ConnectionConfig config) {
+    String url = config.url;
+    int start = url.indexOf("//");
+    if (start < 0) {
+      return null;
+    }
+    start += 2;
+    int end = start;
+    while (end < url.length() && "/;?,".indexOf(url.charAt(end)) < 0) {
+      end++;
+    }
+    String authority = url.substring(start, end);
+    authority = authority.substring(authority.lastIndexOf('@') + 1);
+    if (authority.isEmpty()) {
+      return null;
+    }
+
+    String host;
+    String port = null;
+    if (authority.startsWith("[")) {
+      int close = authority.indexOf(']');
+      host = authority.substring(1, close < 0 ? authority.length() : close);
+      if (close >= 0 && authority.startsWith(":", close + 1)) {
+        port = authority.substring(close + 2);
+      }
+    } else {
+      int colon = authority.lastIndexOf(':');
+      host = colon < 0 ? authority : authority.substring(0, colon);
+      port = colon < 0 ? null : authority.substring(colon + 1);
+    }
+    // sqlserver named instances: host\instance
+    int backslash = host.indexOf('\\');
+    if (backslash >= 0) {
+      host = host.substring(0, backslash);
+    }
+
+    Integer portNumber;
+    try {
+      portNumber = port != null && !port.isEmpty() ? Integer.valueOf(port) : DEFAULT_PORTS.get(config.subprotocol().toLowerCase(Locale.ENGLISH));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    if (portNumber == null) {
+      return null;
+    }
+    return InetSocketAddress.createUnresolved(host, portNumber);
+  }
+}
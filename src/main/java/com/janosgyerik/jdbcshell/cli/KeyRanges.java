@@ -0,0 +1,181 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Split the values of a numeric or date key between its minimum and maximum into contiguous ranges of equal width.
+ * <p>
+ * Equal widths give parts of similar sizes only if the keys are evenly distributed, as sequential ids usually are.
+ */
+class KeyRanges {
+  private KeyRanges() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * A range of keys: lower bound inclusive, upper bound exclusive except for the last range.
+   * The first range also covers null keys.
+   * Both bounds are null for a range that covers all rows.
+   */
+  @Immutable
+  static class KeyRange {
+    @Nullable
+    final Object lower;
+    @Nullable
+    final Object upper;
+    final boolean first;
+    final boolean last;
+
+    KeyRange(@Nullable Object lower, @Nullable Object upper, boolean first, boolean last) {
+      this.lower = lower;
+      this.upper = upper;
+      this.first = first;
+      this.last = last;
+    }
+
+    boolean isUnbounded() {
+      return lower == null;
+    }
+
+    /**
+     * @return the condition selecting the keys of the range, with the lower and upper bounds as parameters 1 and 2,
+     * or null if the range covers all rows
+     */
+    @Nullable
+    String condition(String keyColumn) {
+      if (isUnbounded()) {
+        return null;
+      }
+      String condition = String.format("%s >= ? AND %s %s ?", keyColumn, keyColumn, last ? "<=" : "<");
+      if (first) {
+        condition = String.format("%s IS NULL OR (%s)", keyColumn, condition);
+      }
+      return condition;
+    }
+  }
+
+  /**
+   * @param min minimum key, or null if there are no keys
+   * @param max maximum key, or null if there are no keys
+   * @return at most the specified number of ranges; fewer if there are not enough distinct keys
+   * @throws IllegalArgumentException if the keys are neither numbers nor dates
+   */
+  static List<KeyRange> split(@Nullable Object min, @Nullable Object max, int parts) {
+    if (min == null || max == null) {
+      List<KeyRange> ranges = new ArrayList<>();
+      ranges.add(new KeyRange(null, null, true, true));
+      return ranges;
+    }
+    return split(min, max, parts, true, true);
+  }
+
+  /**
+   * Split a range further, for example to narrow down the keys of rows that differ.
+   * The first part covers null keys if the range does, and the last part includes the upper bound if the range does.
+   *
+   * @return at most the specified number of ranges; only the range itself if it cannot be split
+   */
+  static List<KeyRange> split(KeyRange range, int parts) {
+    if (range.isUnbounded()) {
+      return Collections.singletonList(range);
+    }
+    return split(range.lower, range.upper, parts, range.first, range.last);
+  }
+
+  private static List<KeyRange> split(Object min, Object max, int parts, boolean first, boolean last) {
+    Function<BigDecimal, Object> fromNumber;
+    boolean integral;
+    if (min instanceof Long || min instanceof Integer || min instanceof Short || min instanceof Byte) {
+      fromNumber = BigDecimal::longValue;
+      integral = true;
+    } else if (min instanceof BigInteger) {
+      // for example unsigned BIGINT of MySQL, beyond the range of long
+      fromNumber = BigDecimal::toBigInteger;
+      integral = true;
+    } else if (min instanceof Number) {
+      fromNumber = number -> number;
+      integral = false;
+    } else if (min instanceof Timestamp) {
+      fromNumber = number -> new Timestamp(number.longValue());
+      integral = true;
+    } else if (min instanceof java.sql.Date) {
+      fromNumber = number -> new java.sql.Date(number.longValue());
+      integral = true;
+    } else {
+      throw new IllegalArgumentException("Expected a numeric or date key, got values of type " + min.getClass().getName());
+    }
+
+    BigDecimal low = toNumber(min);
+    BigDecimal high = toNumber(max);
+    BigDecimal width = high.subtract(low);
+    if (integral) {
+      // the number of distinct keys caps the number of ranges
+      BigDecimal distinct = last ? width.add(BigDecimal.ONE) : width;
+      parts = distinct.compareTo(BigDecimal.valueOf(parts)) < 0 ? Math.max(distinct.intValue(), 1) : parts;
+      width = distinct;
+    }
+
+    List<KeyRange> ranges = new ArrayList<>();
+    Object lower = min;
+    BigDecimal previous = low;
+    for (int i = 1; i < parts; i++) {
+      BigDecimal bound = low.add(width.multiply(BigDecimal.valueOf(i)).divide(BigDecimal.valueOf(parts), MathContext.DECIMAL64));
+      if (integral) {
+        bound = bound.setScale(0, RoundingMode.FLOOR);
+      }
+      int toHigh = bound.compareTo(high);
+      if (bound.compareTo(previous) <= 0 || toHigh > 0 || toHigh == 0 && !last) {
+        // too narrow to split at the precision of the bounds
+        continue;
+      }
+      Object upper = fromNumber.apply(bound);
+      ranges.add(new KeyRange(lower, upper, first && ranges.isEmpty(), false));
+      lower = upper;
+      previous = bound;
+    }
+    ranges.add(new KeyRange(lower, max, first && ranges.isEmpty(), last));
+    return ranges;
+  }
+
+  /**
+   * @return the smaller of two keys of the same column, for example the minimums of two databases; null if both are null
+   */
+  @Nullable
+  static Object min(@Nullable Object a, @Nullable Object b) {
+    if (a == null || b == null) {
+      return a == null ? b : a;
+    }
+    return toNumber(a).compareTo(toNumber(b)) <= 0 ? a : b;
+  }
+
+  /**
+   * @return the larger of two keys of the same column; null if both are null
+   */
+  @Nullable
+  static Object max(@Nullable Object a, @Nullable Object b) {
+    if (a == null || b == null) {
+      return a == null ? b : a;
+    }
+    return toNumber(a).compareTo(toNumber(b)) >= 0 ? a : b;
+  }
+
+  private static BigDecimal toNumber(Object value) {
+    if (value instanceof java.util.Date) {
+      return BigDecimal.valueOf(((java.util.Date) value).getTime());
+    }
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    }
+    return new BigDecimal(value.toString());
+  }
+}
@@ -0,0 +1,526 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A cache of the tables of a database, and of the columns and indexes of the tables described so far,
+ * kept in a compressed file per url and user, so that listing and describing tables does not enumerate
+ * the metadata of the database every time the shell starts.
+ * <p>
+ * The file is read on first use. The table list is loaded entirely, but columns and indexes are loaded
+ * one table at a time, when the table is first described. Entries older than the time-to-live are used
+ * while they are refreshed in the background, each table list or table description on its own, so that
+ * the refreshes completed so far are saved when the cache is closed; closing does not wait for the others.
+ * Executing DDL deletes the cache of the database.
+ */
+@ThreadSafe
+class MetadataCache implements AutoCloseable {
+  static final int DEFAULT_TTL_SECONDS = 24 * 60 * 60;
+  static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".jdbcshell", "metadata");
+
+  private static final int FORMAT_VERSION = 1;
+  private static final String[] TABLE_TYPES = {"TABLE", "VIEW"};
+
+  private final ConnectionPool pool;
+  private final Path file;
+  private final long ttlMillis;
+  private final ExecutorService refresher;
+
+  private boolean loaded;
+  private boolean dirty;
+  /**
+   * Whether the table list was loaded from the database by this process, as opposed to read from the file.
+   */
+  private boolean tablesRefreshed;
+  private boolean tablesRefreshScheduled;
+  private long tablesLoadedAtMillis;
+  private List<Table> tables = Collections.emptyList();
+  private final Map<String, Description> descriptions = new HashMap<>();
+
+  MetadataCache(ConnectionPool pool, ConnectionConfig config, Path directory, long ttlMillis) {
+    this.pool = pool;
+    this.file = directory.resolve(fileName(config));
+    this.ttlMillis = ttlMillis;
+    this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "metadata-refresh");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static String fileName(ConnectionConfig config) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      byte[] hash = digest.digest((config.url + '\n' + config.username).getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : hash) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.append(".bin").toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+  }
+
+  @Immutable
+  static class Table {
+    final String catalog;
+    final String schema;
+    final String name;
+    final String type;
+
+    Table(@Nullable String catalog, @Nullable String schema, String name, String type) {
+      this.catalog = catalog != null ? catalog : "";
+      this.schema = schema != null ? schema : "";
+      this.name = name;
+      this.type = type;
+    }
+
+    String qualifiedName() {
+      return schema.isEmpty() ? name : (schema + "." + name);
+    }
+
+    private String key() {
+      return catalog + "." + schema + "." + name;
+    }
+  }
+
+  @Immutable
+  static class Column {
+    final String name;
+    final String typeName;
+    final int sqlType;
+    final int size;
+    final int decimalDigits;
+    final boolean nullable;
+
+    Column(String name, String typeName, int sqlType, int size, int decimalDigits, boolean nullable) {
+      this.name = name;
+      this.typeName = typeName;
+      this.sqlType = sqlType;
+      this.size = size;
+      this.decimalDigits = decimalDigits;
+      this.nullable = nullable;
+    }
+
+    /**
+     * @return the type name, with the size of character and decimal types, for example VARCHAR(20) or DECIMAL(10,2)
+     */
+    String displayType() {
+      switch (sqlType) {
+        case Types.CHAR:
+        case Types.VARCHAR:
+        case Types.NCHAR:
+        case Types.NVARCHAR:
+        case Types.BINARY:
+        case Types.VARBINARY:
+          return typeName + "(" + size + ")";
+        case Types.DECIMAL:
+        case Types.NUMERIC:
+          return typeName + "(" + size + "," + decimalDigits + ")";
+        default:
+          return typeName;
+      }
+    }
+  }
+
+  @Immutable
+  static class Index {
+    final String name;
+    final boolean unique;
+    final List<String> columns;
+
+    Index(String name, boolean unique, List<String> columns) {
+      this.name = name;
+      this.unique = unique;
+      this.columns = Collections.unmodifiableList(columns);
+    }
+  }
+
+  @Immutable
+  static class Description {
+    final Table table;
+    final long loadedAtMillis;
+    final List<Column> columns;
+    final List<Index> indexes;
+
+    Description(Table table, long loadedAtMillis, List<Column> columns, List<Index> indexes) {
+      this.table = table;
+      this.loadedAtMillis = loadedAtMillis;
+      this.columns = Collections.unmodifiableList(columns);
+      this.indexes = Collections.unmodifiableList(indexes);
+    }
+  }
+
+  /**
+   * @return the tables whose name starts with the prefix, ignoring case, in alphabetical order
+   */
+  List<Table> tables(String prefix) throws SQLException {
+    List<Table> snapshot = currentTables();
+    String lowerCasePrefix = prefix.toLowerCase(Locale.ROOT);
+    List<Table> matches = new ArrayList<>();
+    for (Table table : snapshot) {
+      if (table.name.toLowerCase(Locale.ROOT).startsWith(lowerCasePrefix)) {
+        matches.add(table);
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * @param name table name, optionally qualified with its schema, matched ignoring case
+   * @throws IllegalArgumentException if there is no such table
+   */
+  Description describe(String name) throws SQLException {
+    Table table = find(currentTables(), name);
+    if (table == null && !isTablesRefreshed()) {
+      // the table may be newer than the cache
+      refreshTables();
+      table = find(currentTables(), name);
+    }
+    if (table == null) {
+      throw new IllegalArgumentException("Table not found: " + name);
+    }
+
+    Description description;
+    synchronized (this) {
+      description = descriptions.get(table.key());
+    }
+    if (description == null) {
+      description = loadDescription(table);
+      store(description);
+    } else if (isStale(description.loadedAtMillis)) {
+      Table staleTable = table;
+      refresher.execute(() -> refreshQuietly(() -> store(loadDescription(staleTable))));
+    }
+    return description;
+  }
+
+  /**
+   * Forget the cached metadata, in memory and on disk, for example after the schema changed.
+   */
+  synchronized void invalidate() {
+    loaded = true;
+    dirty = false;
+    tablesLoadedAtMillis = 0;
+    tables = Collections.emptyList();
+    descriptions.clear();
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not delete metadata cache " + file, e);
+    }
+  }
+
+  /**
+   * Cancel the refreshes in progress, and save the cache if it changed.
+   * The entries whose refresh did not complete remain stale, to be refreshed next time.
+   */
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+    synchronized (this) {
+      if (dirty) {
+        save();
+      }
+    }
+  }
+
+  private List<Table> currentTables() throws SQLException {
+    boolean missing;
+    synchronized (this) {
+      loadIfNeeded();
+      missing = tablesLoadedAtMillis == 0;
+      if (!missing && isStale(tablesLoadedAtMillis) && !tablesRefreshScheduled) {
+        tablesRefreshScheduled = true;
+        refresher.execute(() -> refreshQuietly(this::refreshTables));
+      }
+    }
+    if (missing) {
+      refreshTables();
+    }
+    synchronized (this) {
+      return tables;
+    }
+  }
+
+  private synchronized boolean isTablesRefreshed() {
+    return tablesRefreshed;
+  }
+
+  private boolean isStale(long loadedAtMillis) {
+    return System.currentTimeMillis() - loadedAtMillis > ttlMillis;
+  }
+
+  @CheckForNull
+  private static Table find(List<Table> tables, String name) {
+    Table match = null;
+    for (Table table : tables) {
+      if (table.name.equals(name) || table.qualifiedName().equals(name)) {
+        return table;
+      }
+      if (match == null && (table.name.equalsIgnoreCase(name) || table.qualifiedName().equalsIgnoreCase(name))) {
+        match = table;
+      }
+    }
+    return match;
+  }
+
+  private void refreshTables() throws SQLException {
+    List<Table> loadedTables = new ArrayList<>();
+    try (Connection connection = pool.borrow();
+      ResultSet resultSet = connection.getMetaData().getTables(null, null, "%", TABLE_TYPES)) {
+      while (resultSet.next()) {
+        loadedTables.add(new Table(resultSet.getString("TABLE_CAT"), resultSet.getString("TABLE_SCHEM"),
+          resultSet.getString("TABLE_NAME"), resultSet.getString("TABLE_TYPE")));
+      }
+    }
+    loadedTables.sort((a, b) -> a.qualifiedName().compareToIgnoreCase(b.qualifiedName()));
+    synchronized (this) {
+      tables = Collections.unmodifiableList(loadedTables);
+      tablesLoadedAtMillis = System.currentTimeMillis();
+      tablesRefreshed = true;
+      dirty = true;
+    }
+  }
+
+  private static Description loadDescription(Table table, DatabaseMetaData metaData) throws SQLException {
+    String catalog = table.catalog.isEmpty() ? null : table.catalog;
+    String schema = table.schema.isEmpty() ? null : table.schema;
+    String escape = metaData.getSearchStringEscape();
+    List<Column> columns = new ArrayList<>();
+    try (ResultSet resultSet = metaData.getColumns(catalog, likePattern(schema, escape), likePattern(table.name, escape), "%")) {
+      while (resultSet.next()) {
+        if (!isOf(table, resultSet)) {
+          // the driver may not support escapes in patterns
+          continue;
+        }
+        columns.add(new Column(resultSet.getString("COLUMN_NAME"), resultSet.getString("TYPE_NAME"), resultSet.getInt("DATA_TYPE"),
+          resultSet.getInt("COLUMN_SIZE"), resultSet.getInt("DECIMAL_DIGITS"), resultSet.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls));
+      }
+    }
+
+    Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+    Map<String, Boolean> uniqueIndexes = new HashMap<>();
+    // a plain name, not a pattern, though some drivers match it as one
+    try (ResultSet resultSet = metaData.getIndexInfo(catalog, schema, table.name, false, true)) {
+      while (resultSet.next()) {
+        String indexName = resultSet.getString("INDEX_NAME");
+        if (indexName == null || resultSet.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic || !isOf(table, resultSet)) {
+          continue;
+        }
+        indexColumns.computeIfAbsent(indexName, k -> new ArrayList<>()).add(resultSet.getString("COLUMN_NAME"));
+        uniqueIndexes.put(indexName, !resultSet.getBoolean("NON_UNIQUE"));
+      }
+    }
+    List<Index> indexes = new ArrayList<>();
+    indexColumns.forEach((indexName, names) -> indexes.add(new Index(indexName, uniqueIndexes.get(indexName), names)));
+    return new Description(table, System.currentTimeMillis(), columns, indexes);
+  }
+
+  /**
+   * @return the pattern matching only the name itself, with the wildcards _ and % escaped
+   */
+  @CheckForNull
+  static String likePattern(@Nullable String name, @Nullable String escape) {
+    if (name == null || escape == null || escape.isEmpty()) {
+      return name;
+    }
+    StringBuilder sb = new StringBuilder(name.length() + 8);
+    for (int i = 0; i < name.length(); i++) {
+      if (name.startsWith(escape, i)) {
+        sb.append(escape).append(escape);
+        i += escape.length() - 1;
+        continue;
+      }
+      char c = name.charAt(i);
+      if (c == '_' || c == '%') {
+        sb.append(escape);
+      }
+      sb.append(c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return whether the metadata row is of the table, and not of another table matching its name as a pattern
+   */
+  private static boolean isOf(Table table, ResultSet resultSet) throws SQLException {
+    String schema = resultSet.getString("TABLE_SCHEM");
+    return table.name.equals(resultSet.getString("TABLE_NAME")) && table.schema.equals(schema != null ? schema : "");
+  }
+
+  private Description loadDescription(Table table) throws SQLException {
+    try (Connection connection = pool.borrow()) {
+      return loadDescription(table, connection.getMetaData());
+    }
+  }
+
+  private synchronized void store(Description description) {
+    descriptions.put(description.table.key(), description);
+    dirty = true;
+  }
+
+  private interface Refresh {
+    void run() throws SQLException;
+  }
+
+  /**
+   * Refresh in the background; on failure the stale entries remain, to be refreshed next time.
+   */
+  private static void refreshQuietly(Refresh refresh) {
+    try {
+      refresh.run();
+    } catch (SQLException | RuntimeException e) {
+      // keep the stale entries
+    }
+  }
+
+  private void loadIfNeeded() {
+    if (loaded) {
+      return;
+    }
+    loaded = true;
+    if (!Files.isRegularFile(file)) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+      if (in.readInt() != FORMAT_VERSION) {
+        return;
+      }
+      long loadedAt = in.readLong();
+      Map<String, Table> tablesByKey = new LinkedHashMap<>();
+      int tableCount = in.readInt();
+      for (int i = 0; i < tableCount; i++) {
+        Table table = new Table(in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF());
+        tablesByKey.put(table.key(), table);
+      }
+      int descriptionCount = in.readInt();
+      for (int i = 0; i < descriptionCount; i++) {
+        Description description = readDescription(in, tablesByKey);
+        descriptions.put(description.table.key(), description);
+      }
+      tables = Collections.unmodifiableList(new ArrayList<>(tablesByKey.values()));
+      tablesLoadedAtMillis = loadedAt;
+    } catch (IOException | RuntimeException e) {
+      // an unreadable cache is rebuilt from the database
+      tables = Collections.emptyList();
+      tablesLoadedAtMillis = 0;
+      descriptions.clear();
+    }
+  }
+
+  private static Description readDescription(DataInputStream in, Map<String, Table> tablesByKey) throws IOException {
+    Table table = tablesByKey.get(in.readUTF());
+    if (table == null) {
+      throw new IOException("Description of unknown table");
+    }
+    long loadedAt = in.readLong();
+    int columnCount = in.readInt();
+    List<Column> columns = new ArrayList<>(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      columns.add(new Column(in.readUTF(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readBoolean()));
+    }
+    int indexCount = in.readInt();
+    List<Index> indexes = new ArrayList<>(indexCount);
+    for (int i = 0; i < indexCount; i++) {
+      String name = in.readUTF();
+      boolean unique = in.readBoolean();
+      int count = in.readInt();
+      List<String> names = new ArrayList<>(count);
+      for (int j = 0; j < count; j++) {
+        names.add(in.readUTF());
+      }
+      indexes.add(new Index(name, unique, names));
+    }
+    return new Description(table, loadedAt, columns, indexes);
+  }
+
+  private void save() {
+    try {
+      Files.createDirectories(file.getParent());
+      Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(tablesLoadedAtMillis);
+        out.writeInt(tables.size());
+        for (Table table : tables) {
+          out.writeUTF(table.catalog);
+          out.writeUTF(table.schema);
+          out.writeUTF(table.name);
+          out.writeUTF(table.type);
+        }
+        List<Description> known = new ArrayList<>();
+        for (Table table : tables) {
+          Description description = descriptions.get(table.key());
+          if (description != null) {
+            known.add(description);
+          }
+        }
+        out.writeInt(known.size());
+        for (Description description : known) {
+          writeDescription(out, description);
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      dirty = false;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write metadata cache " + file, e);
+    }
+  }
+
+  private static void writeDescription(DataOutputStream out, Description description) throws IOException {
+    out.writeUTF(description.table.key());
+    out.writeLong(description.loadedAtMillis);
+    out.writeInt(description.columns.size());
+    for (Column column : description.columns) {
+      out.writeUTF(column.name);
+      out.writeUTF(column.typeName);
+      out.writeInt(column.sqlType);
+      out.writeInt(column.size);
+      out.writeInt(column.decimalDigits);
+      out.writeBoolean(column.nullable);
+    }
+    out.writeInt(description.indexes.size());
+    for (Index index : description.indexes) {
+      out.writeUTF(index.name);
+      out.writeBoolean(index.unique);
+      out.writeInt(index.columns.size());
+      for (String name : index.columns) {
+        out.writeUTF(name);
+      }
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+
+/**
+ * Fetch the rows of a result set into batches on a background thread,
+ * so that the driver fetches the next rows while the current batch is formatted and written.
+ * <p>
+ * A fixed number of batches is recycled between the two threads: with a depth of 1, one batch is filled
+ * while the other is consumed; a larger depth lets the fetching thread run further ahead.
+ * Once the reader is started, only its thread may use the result set, until the reader is closed.
+ */
+class PrefetchingReader implements AutoCloseable {
+  private static final RowBatch END = new RowBatch(new RowBatch.ColumnType[0], 0);
+  private static final long POLL_MILLIS = 100;
+
+  private final ResultSet resultSet;
+  private final BlockingQueue<RowBatch> free;
+  private final BlockingQueue<RowBatch> filled;
+  private final Thread thread;
+  private volatile Exception failure;
+  private volatile boolean closed;
+
+  /**
+   * @param batchSize number of rows per batch
+   * @param depth number of batches that may be filled ahead of the one being consumed
+   */
+  PrefetchingReader(ResultSet resultSet, int batchSize, int depth) throws SQLException {
+    this.resultSet = resultSet;
+    RowBatch.ColumnType[] types = RowBatch.columnTypes(resultSet.getMetaData());
+    this.free = new ArrayBlockingQueue<>(depth + 1);
+    // room for all batches and the end marker, so that the fetching thread never blocks on it
+    this.filled = new ArrayBlockingQueue<>(depth + 2);
+    for (int i = 0; i <= depth; i++) {
+      free.add(new RowBatch(types, batchSize));
+    }
+    this.thread = new Thread(this::fetch, "result-prefetch");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void fetch() {
+    try {
+      boolean more = true;
+      while (more) {
+        RowBatch batch = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (closed) {
+          return;
+        }
+        if (batch == null) {
+          continue;
+        }
+        batch.clear();
+        while (!batch.isFull() && (more = resultSet.next())) {
+          batch.add(resultSet);
+        }
+        if (batch.rowCount() > 0) {
+          filled.put(batch);
+        } else {
+          free.put(batch);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (SQLException | RuntimeException e) {
+      failure = e;
+    } finally {
+      filled.offer(END);
+    }
+  }
+
+  /**
+   * Wait for the next batch of rows. The batch must be released after use.
+   *
+   * @return the next batch, or null if there are no more rows
+   * @throws SQLException if fetching failed
+   */
+  @CheckForNull
+  RowBatch next() throws SQLException {
+    RowBatch batch;
+    try {
+      batch = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for rows", e);
+    }
+    if (batch == END) {
+      // let later calls see the end too
+      filled.offer(END);
+      Exception e = failure;
+      if (e instanceof SQLException) {
+        throw (SQLException) e;
+      } else if (e != null) {
+        throw (RuntimeException) e;
+      }
+      return null;
+    }
+    return batch;
+  }
+
+  /**
+   * Give a consumed batch back, to be filled again.
+   */
+  void release(RowBatch batch) {
+    free.offer(batch);
+  }
+
+  /**
+   * Stop fetching, and wait until the fetching thread no longer uses the result set.
+   * The fetching thread is not interrupted, because some drivers close the connection when interrupted during I/O.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    boolean interrupted = false;
+    while (thread.isAlive()) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,441 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.OutputSink;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A cache of the output of read-only queries, keyed by database, output format and trimmed SQL text,
+ * so that queries repeated within the time-to-live, for example by dashboards, do not reach the database.
+ * <p>
+ * Entries are kept in memory up to a total size, evicting the least recently used ones.
+ * With a directory, evicted entries, and all entries when the cache is closed, are written to compressed files,
+ * one per query, so that later runs reuse them too.
+ * <p>
+ * Statements that write invalidate the entries of the tables they reference, and DDL or statements whose tables
+ * cannot be told invalidate all entries of the database. Changes made by other clients, or through views,
+ * are only noticed when entries expire.
+ */
+@NotThreadSafe
+class ResultCache implements AutoCloseable {
+  static final int DEFAULT_MAX_MEGABYTES = 64;
+
+  private static final int FORMAT_VERSION = 1;
+  private static final String FILE_EXTENSION = ".bin";
+  private static final long LINE_OVERHEAD_BYTES = 40;
+  private static final long ENTRY_OVERHEAD_BYTES = 200;
+  private static final int MAX_STRING_LENGTH = 64 * 1024 * 1024;
+
+  private final String variant;
+  private final long ttlMillis;
+  private final long maxBytes;
+  @Nullable
+  private final Path directory;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long bytes;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long invalidations;
+
+  /**
+   * @param variant the options that change the output of a query, such as its format
+   * @param directory directory to spill entries to, or null to keep them in memory only
+   */
+  ResultCache(ConnectionConfig config, String variant, long ttlMillis, long maxBytes, @Nullable Path directory) {
+    this.variant = variant;
+    this.ttlMillis = ttlMillis;
+    this.maxBytes = maxBytes;
+    this.directory = directory != null ? directory.resolve(sha1(config.url + '\n' + config.username)) : null;
+  }
+
+  private static class Entry {
+    final String key;
+    final Set<String> tables;
+    final List<String> lines;
+    final long expiresAtMillis;
+    final long bytes;
+    /**
+     * Whether the entry is in its file, as opposed to only in memory.
+     */
+    boolean saved;
+
+    Entry(String key, Set<String> tables, List<String> lines, long expiresAtMillis, long bytes, boolean saved) {
+      this.key = key;
+      this.tables = tables;
+      this.lines = lines;
+      this.expiresAtMillis = expiresAtMillis;
+      this.bytes = bytes;
+      this.saved = saved;
+    }
+  }
+
+  /**
+   * @return the output of the query, or null if it is not cached or expired
+   */
+  @CheckForNull
+  List<String> get(String sql) {
+    String key = key(sql);
+    Entry entry = entries.get(key);
+    if (entry != null && isExpired(entry)) {
+      remove(entry);
+      entry = null;
+    }
+    if (entry == null && directory != null) {
+      entry = readFile(file(key));
+      if (entry != null) {
+        add(entry);
+      }
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.lines;
+  }
+
+  /**
+   * @return standard output that prints to the specified one and records the output of a query, to {@link #put} afterwards
+   */
+  Recorder recorder(System2 system2) {
+    // a single result may not evict most of the others
+    return new Recorder(system2, maxBytes / 2);
+  }
+
+  /**
+   * Cache the output of a query, unless it was too large.
+   */
+  void put(String sql, Recorder recorder) {
+    if (recorder.sink.overflow) {
+      return;
+    }
+    String key = key(sql);
+    Entry previous = entries.get(key);
+    if (previous != null) {
+      remove(previous);
+    }
+    add(new Entry(key, SqlText.tableNames(sql), Collections.unmodifiableList(recorder.sink.lines), System.currentTimeMillis() + ttlMillis,
+      ENTRY_OVERHEAD_BYTES + 2L * key.length() + recorder.sink.bytes, false));
+  }
+
+  /**
+   * Forget the results that the statement may change: those of the tables it references,
+   * or all results of the database for DDL and statements whose tables cannot be told.
+   */
+  void invalidate(String sql) {
+    Set<String> written = SqlText.isDdl(sql) ? Collections.emptySet() : SqlText.tableNames(sql);
+    for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+      Entry entry = iterator.next();
+      if (isAffected(entry.tables, written)) {
+        iterator.remove();
+        bytes -= entry.bytes;
+        invalidations++;
+      }
+    }
+    if (directory != null) {
+      invalidateFiles(written);
+    }
+  }
+
+  private static boolean isAffected(Set<String> tables, Set<String> written) {
+    return written.isEmpty() || !Collections.disjoint(tables, written);
+  }
+
+  private String key(String sql) {
+    // not normalized, as that would need to know the literal syntax of the dialect
+    return variant + '\n' + sql.trim();
+  }
+
+  private boolean isExpired(Entry entry) {
+    return System.currentTimeMillis() >= entry.expiresAtMillis;
+  }
+
+  private void add(Entry entry) {
+    entries.put(entry.key, entry);
+    bytes += entry.bytes;
+    for (Iterator<Entry> iterator = entries.values().iterator(); bytes > maxBytes && iterator.hasNext(); ) {
+      Entry eldest = iterator.next();
+      iterator.remove();
+      bytes -= eldest.bytes;
+      evictions++;
+      if (directory != null && !eldest.saved && !isExpired(eldest)) {
+        writeFile(eldest);
+      }
+    }
+  }
+
+  private void remove(Entry entry) {
+    entries.remove(entry.key);
+    bytes -= entry.bytes;
+  }
+
+  String stats() {
+    return String.format("Result cache: %d hit(s), %d miss(es), %d eviction(s), %d invalidation(s)", hits, misses, evictions, invalidations);
+  }
+
+  boolean isUsed() {
+    return hits + misses > 0;
+  }
+
+  /**
+   * Write the entries that are only in memory to the directory, if any.
+   */
+  @Override
+  public void close() {
+    if (directory == null) {
+      return;
+    }
+    for (Entry entry : entries.values()) {
+      if (!entry.saved && !isExpired(entry)) {
+        writeFile(entry);
+      }
+    }
+  }
+
+  private Path file(String key) {
+    return directory.resolve(sha1(key) + FILE_EXTENSION);
+  }
+
+  private void writeFile(Entry entry) {
+    Path file = file(entry.key);
+    try {
+      Files.createDirectories(directory);
+      Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+        out.writeInt(FORMAT_VERSION);
+        writeString(out, entry.key);
+        out.writeLong(entry.expiresAtMillis);
+        out.writeInt(entry.tables.size());
+        for (String table : entry.tables) {
+          writeString(out, table);
+        }
+        out.writeInt(entry.lines.size());
+        for (String line : entry.lines) {
+          writeString(out, line);
+        }
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      entry.saved = true;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not write result cache " + file, e);
+    }
+  }
+
+  /**
+   * @return the entry of the file, or null if there is none, or it is expired or unreadable, in which case the file is deleted
+   */
+  @CheckForNull
+  private Entry readFile(Path file) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+      Header header = readHeader(in);
+      if (header != null && System.currentTimeMillis() < header.expiresAtMillis) {
+        int lineCount = in.readInt();
+        List<String> lines = new ArrayList<>(lineCount);
+        long lineBytes = 0;
+        for (int i = 0; i < lineCount; i++) {
+          String line = readString(in);
+          lines.add(line);
+          lineBytes += LINE_OVERHEAD_BYTES + 2L * line.length();
+        }
+        return new Entry(header.key, header.tables, Collections.unmodifiableList(lines), header.expiresAtMillis,
+          ENTRY_OVERHEAD_BYTES + 2L * header.key.length() + lineBytes, true);
+      }
+    } catch (NoSuchFileException e) {
+      // deleted by another process
+      return null;
+    } catch (IOException | RuntimeException e) {
+      // an unreadable entry is fetched from the database again
+    }
+    deleteQuietly(file);
+    return null;
+  }
+
+  private void invalidateFiles(Set<String> written) {
+    if (!Files.isDirectory(directory)) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+      for (Path file : files) {
+        if (isStale(file, written)) {
+          deleteQuietly(file);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not invalidate result cache " + directory, e);
+    }
+  }
+
+  private boolean isStale(Path file, Set<String> written) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+      Header header = readHeader(in);
+      return header == null || System.currentTimeMillis() >= header.expiresAtMillis || isAffected(header.tables, written);
+    } catch (IOException | RuntimeException e) {
+      return true;
+    }
+  }
+
+  private static class Header {
+    final String key;
+    final long expiresAtMillis;
+    final Set<String> tables;
+
+    Header(String key, long expiresAtMillis, Set<String> tables) {
+      this.key = key;
+      this.expiresAtMillis = expiresAtMillis;
+      this.tables = tables;
+    }
+  }
+
+  /**
+   * @return the header, or null if the file is of another format version
+   */
+  @CheckForNull
+  private static Header readHeader(DataInputStream in) throws IOException {
+    if (in.readInt() != FORMAT_VERSION) {
+      return null;
+    }
+    String key = readString(in);
+    long expiresAtMillis = in.readLong();
+    int tableCount = in.readInt();
+    Set<String> tables = new HashSet<>();
+    for (int i = 0; i < tableCount; i++) {
+      tables.add(readString(in));
+    }
+    return new Header(key, expiresAtMillis, tables);
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // rewritten or deleted again later
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > MAX_STRING_LENGTH) {
+      throw new IOException("Invalid string length: " + length);
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static String sha1(String s) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : hash) {
+        sb.append(String.format("%02x", b));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+  }
+
+  /**
+   * Standard output of a query: prints to the shell output, and records the lines until they exceed a size.
+   */
+  static class Recorder extends System2 {
+    private final System2 system2;
+    private final RecordingSink sink;
+
+    private Recorder(System2 system2, long maxBytes) {
+      this(system2, new RecordingSink(system2, maxBytes));
+    }
+
+    private Recorder(System2 system2, RecordingSink sink) {
+      super(sink);
+      this.system2 = system2;
+      this.sink = sink;
+    }
+
+    @Override
+    void printlnErr(String s) {
+      system2.printlnErr(s);
+    }
+  }
+
+  private static class RecordingSink implements OutputSink {
+    private final System2 system2;
+    private final long maxBytes;
+    private final List<String> lines = new ArrayList<>();
+    private long bytes;
+    private boolean overflow;
+
+    RecordingSink(System2 system2, long maxBytes) {
+      this.system2 = system2;
+      this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public void println(CharSequence line) {
+      String s = line.toString();
+      system2.printlnOut(s);
+      if (overflow) {
+        return;
+      }
+      bytes += LINE_OVERHEAD_BYTES + 2L * s.length();
+      if (bytes > maxBytes) {
+        overflow = true;
+        lines.clear();
+      } else {
+        lines.add(s);
+      }
+    }
+
+    @Override
+    public void append(Path file) {
+      system2.appendOut(file);
+      overflow = true;
+      lines.clear();
+    }
+
+    @Override
+    public void flush() {
+      system2.flushOut();
+    }
+
+    @Override
+    public void close() {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A reusable buffer of rows fetched from a result set, stored by column.
+ * <p>
+ * Integer columns are read with the typed getters into primitive arrays,
+ * so they are never boxed. Other columns are read as strings and copied into a character arena
+ * shared by all text columns, so the batch does not hold on to the strings of the driver.
+ * Nulls are tracked in a bitmap per column.
+ * Once the arena has grown to the size of the largest batch, filling the batch again allocates nothing.
+ */
+@NotThreadSafe
+class RowBatch {
+  private static final int INITIAL_CHARS_PER_VALUE = 16;
+
+  enum ColumnType {
+    INT, LONG, TEXT
+  }
+
+  final int columnCount;
+  private final int capacity;
+  private final ColumnType[] types;
+  private final int[][] ints;
+  private final long[][] longs;
+  private final long[][] nulls;
+
+  /**
+   * Start and end offsets in the arena of the text values, per column, or null for non-text columns.
+   */
+  private final int[][] textStarts;
+  private final int[][] textEnds;
+  private char[] arena;
+  private int arenaLength;
+
+  private int rowCount;
+  private long bytes;
+
+  RowBatch(ColumnType[] types, int capacity) {
+    this.columnCount = types.length;
+    this.capacity = capacity;
+    this.types = types.clone();
+    this.ints = new int[columnCount][];
+    this.longs = new long[columnCount][];
+    this.nulls = new long[columnCount][];
+    this.textStarts = new int[columnCount][];
+    this.textEnds = new int[columnCount][];
+    int textColumns = 0;
+    for (int i = 0; i < columnCount; i++) {
+      nulls[i] = new long[(capacity + 63) / 64];
+      switch (types[i]) {
+        case INT:
+          ints[i] = new int[capacity];
+          break;
+        case LONG:
+          longs[i] = new long[capacity];
+          break;
+        default:
+          textStarts[i] = new int[capacity];
+          textEnds[i] = new int[capacity];
+          textColumns++;
+      }
+    }
+    this.arena = new char[textColumns * capacity * INITIAL_CHARS_PER_VALUE];
+  }
+
+  /**
+   * Pick the column types of a batch from the SQL types of the result set.
+   * <p>
+   * Only types whose string form is the same as that of the Java primitive are stored as primitives:
+   * unsigned integers and floating point numbers are stored as text, as drivers format them differently than Java,
+   * for example 100 instead of 100.0.
+   */
+  static ColumnType[] columnTypes(ResultSetMetaData metaData) throws SQLException {
+    ColumnType[] types = new ColumnType[metaData.getColumnCount()];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = columnType(metaData.getColumnType(i + 1), metaData.isSigned(i + 1));
+    }
+    return types;
+  }
+
+  static ColumnType columnType(int sqlType, boolean signed) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return signed ? ColumnType.INT : ColumnType.LONG;
+      case Types.BIGINT:
+        return signed ? ColumnType.LONG : ColumnType.TEXT;
+      default:
+        return ColumnType.TEXT;
+    }
+  }
+
+  void clear() {
+    rowCount = 0;
+    bytes = 0;
+    arenaLength = 0;
+  }
+
+  boolean isFull() {
+    return rowCount == capacity;
+  }
+
+  int rowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return approximate size of the values, counting the characters of text and integer values
+   */
+  long bytes() {
+    return bytes;
+  }
+
+  /**
+   * Append the current row of the result set.
+   */
+  void add(ResultSet resultSet) throws SQLException {
+    int row = rowCount;
+    for (int i = 0; i < columnCount; i++) {
+      boolean isNull;
+      switch (types[i]) {
+        case INT:
+          int intValue = resultSet.getInt(i + 1);
+          ints[i][row] = intValue;
+          isNull = resultSet.wasNull();
+          bytes += isNull ? 0 : decimalLength(intValue);
+          break;
+        case LONG:
+          long longValue = resultSet.getLong(i + 1);
+          longs[i][row] = longValue;
+          isNull = resultSet.wasNull();
+          bytes += isNull ? 0 : decimalLength(longValue);
+          break;
+        default:
+          String value = resultSet.getString(i + 1);
+          isNull = value == null;
+          textStarts[i][row] = arenaLength;
+          if (!isNull) {
+            appendToArena(value);
+            bytes += value.length();
+          }
+          textEnds[i][row] = arenaLength;
+      }
+      setNull(i, row, isNull);
+    }
+    rowCount++;
+  }
+
+  private void appendToArena(String value) {
+    int length = value.length();
+    if (arenaLength + length > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + length));
+    }
+    value.getChars(0, length, arena, arenaLength);
+    arenaLength += length;
+  }
+
+  private void setNull(int column, int row, boolean isNull) {
+    long mask = 1L << row;
+    if (isNull) {
+      nulls[column][row >>> 6] |= mask;
+    } else {
+      nulls[column][row >>> 6] &= ~mask;
+    }
+  }
+
+  /**
+   * @param row 0-based row index
+   * @param column 0-based column index
+   */
+  boolean isNull(int row, int column) {
+    return (nulls[column][row >>> 6] & (1L << row)) != 0;
+  }
+
+  /**
+   * Append the string form of a value that is not null, without creating a string.
+   *
+   * @param row 0-based row index
+   * @param column 0-based column index
+   */
+  void appendTo(StringBuilder sb, int row, int column) {
+    switch (types[column]) {
+      case INT:
+        sb.append(ints[column][row]);
+        break;
+      case LONG:
+        sb.append(longs[column][row]);
+        break;
+      default:
+        int start = textStarts[column][row];
+        sb.append(arena, start, textEnds[column][row] - start);
+    }
+  }
+
+  /**
+   * @param row 0-based row index
+   * @param column 0-based column index
+   * @return the string form of the value, or null
+   */
+  @CheckForNull
+  String value(int row, int column) {
+    if (isNull(row, column)) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    appendTo(sb, row, column);
+    return sb.toString();
+  }
+
+  private static int decimalLength(long value) {
+    if (value == Long.MIN_VALUE) {
+      return 20;
+    }
+    int length = value < 0 ? 2 : 1;
+    for (long rest = Math.abs(value); rest >= 10; rest /= 10) {
+      length++;
+    }
+    return length;
+  }
+}
@@ -0,0 +1,230 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.SqlScriptReader;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Execute runs of consecutive script statements of the same shape as JDBC batches of a prepared statement,
+ * binding the literals of each statement as parameters.
+ * <p>
+ * Statements are executed in script order: a statement that cannot be batched flushes the pending batch first.
+ * Each batch runs in its own transaction. If a batch fails, it is rolled back and its statements are executed
+ * again one at a time, so that the failure is reported for the statement that caused it.
+ */
+@NotThreadSafe
+class ScriptBatcher {
+
+  interface Executor {
+    void execute(SqlScriptReader.Statement statement) throws SQLException;
+  }
+
+  private final System2 system2;
+  private final Session session;
+  private final int batchSize;
+  private final boolean backslashEscapes;
+  private final Executor fallback;
+  @Nullable
+  private final WorkloadLog.Writer capture;
+
+  private final List<SqlScriptReader.Statement> pending = new ArrayList<>();
+  private final List<StatementShape> pendingShapes = new ArrayList<>();
+  private String shape;
+  private PreparedStatement statement;
+  @CheckForNull
+  private int[] parameterTypes;
+
+  long batches;
+  long batchedStatements;
+
+  /**
+   * @param fallback executes statements one at a time, when they cannot be batched or their batch failed
+   * @param capture log to record the executed batches to, or null
+   */
+  ScriptBatcher(System2 system2, Session session, int batchSize, SqlScriptReader.Dialect dialect, Executor fallback,
+    @Nullable WorkloadLog.Writer capture) {
+    this.system2 = system2;
+    this.session = session;
+    this.batchSize = batchSize;
+    this.backslashEscapes = dialect == SqlScriptReader.Dialect.MYSQL;
+    this.fallback = fallback;
+    this.capture = capture;
+  }
+
+  /**
+   * Add the statement to the pending batch, or execute it on its own if it cannot be batched.
+   */
+  void execute(SqlScriptReader.Statement scriptStatement) throws SQLException {
+    StatementShape statementShape = StatementShape.of(scriptStatement.sql(), backslashEscapes);
+    if (statementShape == null) {
+      executeAlone(scriptStatement);
+      return;
+    }
+
+    if (!statementShape.sql.equals(shape)) {
+      flush();
+      shape = statementShape.sql;
+      statement = null;
+    }
+    try {
+      if (statement == null) {
+        statement = session.prepare(shape);
+        parameterTypes = parameterTypes(statement, statementShape.values.size());
+      }
+      try {
+        for (int i = 0; i < statementShape.values.size(); i++) {
+          bind(statement, parameterTypes, i + 1, statementShape.values.get(i), statementShape.quoted[i]);
+        }
+      } catch (IllegalArgumentException e) {
+        // a literal that the parameter type cannot represent, for example a timestamp with a time zone
+        statement.clearParameters();
+        executeAlone(scriptStatement);
+        return;
+      }
+      statement.addBatch();
+    } catch (SQLException e) {
+      // the shape cannot be prepared or bound, so execute the pending statements and this one one at a time,
+      // to report the failure for the line of the statement that caused it
+      session.failed(e);
+      executeOneByOne(scriptStatement);
+      return;
+    }
+    pending.add(scriptStatement);
+    pendingShapes.add(statementShape);
+    if (pending.size() == batchSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Execute the pending batch, and then the statement on its own.
+   * The prepared statement of the batch is not reused afterwards, as executing the statement may close it,
+   * for example when DDL invalidates the statement cache, or a failure replaces the connection.
+   */
+  private void executeAlone(SqlScriptReader.Statement scriptStatement) throws SQLException {
+    flush();
+    discardBatch();
+    fallback.execute(scriptStatement);
+  }
+
+  private void executeOneByOne(SqlScriptReader.Statement scriptStatement) throws SQLException {
+    List<SqlScriptReader.Statement> statements = new ArrayList<>(pending);
+    statements.add(scriptStatement);
+    discardBatch();
+    for (SqlScriptReader.Statement each : statements) {
+      fallback.execute(each);
+    }
+  }
+
+  /**
+   * Execute the pending batch.
+   */
+  void flush() throws SQLException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    Connection connection = session.connection();
+    long start = System.nanoTime();
+    try {
+      connection.setAutoCommit(false);
+      int[] updateCounts = statement.executeBatch();
+      connection.commit();
+      if (capture != null) {
+        capture.batch(pendingShapes, start, System.nanoTime() - start);
+      }
+      batches++;
+      batchedStatements += pending.size();
+      system2.printlnOut(String.format("%d row(s) affected by %d statement(s)", affectedRows(updateCounts), pending.size()));
+    } catch (SQLException e) {
+      session.failed(e);
+      List<SqlScriptReader.Statement> failedBatch = new ArrayList<>(pending);
+      discardBatch();
+      for (SqlScriptReader.Statement scriptStatement : failedBatch) {
+        fallback.execute(scriptStatement);
+      }
+      return;
+    }
+    pending.clear();
+    pendingShapes.clear();
+  }
+
+  private void discardBatch() {
+    if (statement != null) {
+      try {
+        statement.clearBatch();
+      } catch (SQLException e) {
+        // the statement is not reused
+      }
+    }
+    pending.clear();
+    pendingShapes.clear();
+    shape = null;
+    statement = null;
+    parameterTypes = null;
+  }
+
+  /**
+   * @return the SQL types of the parameters, or null if the driver cannot tell them
+   */
+  @CheckForNull
+  static int[] parameterTypes(PreparedStatement statement, int count) {
+    try {
+      ParameterMetaData metaData = statement.getParameterMetaData();
+      int[] types = new int[count];
+      for (int i = 0; i < count; i++) {
+        types[i] = metaData.getParameterType(i + 1);
+      }
+      return types;
+    } catch (SQLException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Bind the value of a literal to a parameter of the type the driver expects,
+   * or of the type of the literal if the driver cannot tell.
+   *
+   * @param parameterTypes the types from {@link #parameterTypes}, or null
+   * @throws IllegalArgumentException if the parameter type cannot represent the value
+   */
+  static void bind(PreparedStatement statement, @Nullable int[] parameterTypes, int index, @Nullable String value, boolean quoted)
+    throws SQLException {
+    int type = parameterTypes != null ? parameterTypes[index - 1] : Types.NULL;
+    if (value == null) {
+      statement.setNull(index, type);
+      return;
+    }
+    if (type == Types.OTHER) {
+      // let the database infer the type, as it does for literals
+      statement.setObject(index, value, Types.OTHER);
+    } else if (type != Types.NULL) {
+      TextParameters.bind(statement, index, value, type);
+    } else if (quoted) {
+      statement.setString(index, value);
+    } else {
+      statement.setBigDecimal(index, new BigDecimal(value));
+    }
+  }
+
+  private static long affectedRows(int[] updateCounts) {
+    long rows = 0;
+    for (int count : updateCounts) {
+      if (count > 0) {
+        rows += count;
+      } else if (count == Statement.SUCCESS_NO_INFO) {
+        rows++;
+      }
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,102 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A connection kept for a sequence of statements, with a cache of its prepared statements.
+ * <p>
+ * The connection is borrowed from the pool on first use.
+ * When the connection is recycled, or a statement changes the schema, the cached statements are discarded.
+ */
+@NotThreadSafe
+class Session implements AutoCloseable {
+  private static final String CONNECTION_EXCEPTION_SQL_STATE_CLASS = "08";
+
+  private final ConnectionPool pool;
+  private final int statementCacheCapacity;
+
+  private Connection connection;
+  private StatementCache statementCache;
+  private StatementCache.Stats recycledStats = StatementCache.Stats.empty();
+
+  Session(ConnectionPool pool, int statementCacheCapacity) {
+    this.pool = pool;
+    this.statementCacheCapacity = statementCacheCapacity;
+  }
+
+  Connection connection() throws SQLException {
+    if (connection == null || connection.isClosed()) {
+      recycle();
+      connection = pool.borrow();
+      statementCache = new StatementCache(connection, statementCacheCapacity);
+    }
+    return connection;
+  }
+
+  /**
+   * @return a cached prepared statement; callers must not close it
+   */
+  PreparedStatement prepare(String sql) throws SQLException {
+    connection();
+    return statementCache.prepare(sql);
+  }
+
+  /**
+   * Update the state of the session after a statement was executed.
+   */
+  void executed(String sql) {
+    if (statementCache != null && SqlText.isDdl(sql)) {
+      statementCache.invalidate();
+    }
+  }
+
+  /**
+   * Update the state of the session after a statement failed:
+   * roll back the current transaction, and after connection errors use a fresh connection for the next statement.
+   */
+  void failed(SQLException e) {
+    if (connection != null) {
+      try {
+        if (!connection.getAutoCommit()) {
+          connection.rollback();
+        }
+      } catch (SQLException rollbackFailure) {
+        e.addSuppressed(rollbackFailure);
+      }
+    }
+    if (e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_EXCEPTION_SQL_STATE_CLASS)) {
+      recycle();
+    }
+  }
+
+  /**
+   * Discard the cached statements and return the connection to the pool.
+   */
+  void recycle() {
+    if (statementCache != null) {
+      statementCache.close();
+      recycledStats = recycledStats.plus(statementCache.stats());
+      statementCache = null;
+    }
+    if (connection != null) {
+      try {
+        connection.close();
+      } catch (SQLException e) {
+        // the pool discards broken connections
+      }
+      connection = null;
+    }
+  }
+
+  StatementCache.Stats statementCacheStats() {
+    return statementCache == null ? recycledStats : recycledStats.plus(statementCache.stats());
+  }
+
+  @Override
+  public void close() {
+    recycle();
+  }
+}
@@ -0,0 +1,597 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.BlockCompressingChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Options controlling what the shell does once connected,
+ * as opposed to {@link ConnectionConfig} which controls how to connect.
+ */
+@Immutable
+class ShellOptions {
+  static final int DEFAULT_FETCH_SIZE = 1000;
+  static final int DEFAULT_BATCH_SIZE = 1000;
+  static final int DEFAULT_COMMIT_INTERVAL = 10000;
+  static final int DEFAULT_THREADS = 1;
+  static final int DEFAULT_ITERATIONS = 1000;
+  static final int DEFAULT_WARMUP_ITERATIONS = 100;
+  static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 5;
+  static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 5;
+  static final int DEFAULT_DEADLINE_SECONDS = 30;
+  static final int DEFAULT_CHUNK_SIZE = 1000;
+  static final int DEFAULT_SPEED = 1;
+
+  enum Format {
+    TSV, TABLE
+  }
+
+  @Nullable
+  final String query;
+
+  final int fetchSize;
+
+  @Nullable
+  final Path importPath;
+
+  @Nullable
+  final String table;
+
+  final int batchSize;
+  final int commitInterval;
+  final int threads;
+
+  @Nullable
+  final String benchQuery;
+
+  final int iterations;
+  final int warmupIterations;
+
+  @Nullable
+  final Path histogramPath;
+
+  /**
+   * Number of connections to profile in connection test mode, or 0 to just test one connection.
+   */
+  final int connections;
+
+  final int poolMinSize;
+  final int poolMaxSize;
+
+  @Nullable
+  final String validationQuery;
+
+  final int idleTimeoutSeconds;
+  final int borrowTimeoutSeconds;
+  final int statementCacheSize;
+
+  final Format format;
+
+  /**
+   * Number of rows to compute table column widths from, or 0 to use the display sizes of the columns.
+   */
+  final int lookahead;
+
+  final int maxColumnWidth;
+  final TableFormatter.Overflow overflow;
+
+  /**
+   * Whether to record the time spent in each phase of each statement.
+   */
+  final boolean stats;
+
+  @Nullable
+  final Path statsLogPath;
+
+  /**
+   * Table name or query to copy to the target database.
+   */
+  @Nullable
+  final String copySource;
+
+  @Nullable
+  final ConnectionConfig targetConfig;
+
+  /**
+   * Path of the local H2 database file to copy into, without the .mv.db extension;
+   * the copied table is replaced instead of appended to.
+   */
+  @Nullable
+  final Path snapshotPath;
+
+  /**
+   * Indexes to create on the copied table after loading it, each a list of column names.
+   */
+  final List<List<String>> indexes;
+
+  @Nullable
+  final String exportTable;
+
+  /**
+   * Table name or query to compare with the target database.
+   */
+  @Nullable
+  final String diffSource;
+
+  /**
+   * Number of rows of a key range below which differing ranges are compared row by row instead of split further.
+   */
+  final int chunkSize;
+
+  /**
+   * Whether to compute the checksums of key ranges from the fetched rows, instead of with SQL on each database.
+   */
+  final boolean clientChecksums;
+
+  @Nullable
+  final String partitionColumn;
+
+  /**
+   * Whether to export each key range to its own file next to the output path, instead of a single output.
+   */
+  final boolean partFiles;
+
+  @Nullable
+  final Path outputPath;
+
+  /**
+   * Format to compress the output file and part files in, or null to write them uncompressed.
+   */
+  @Nullable
+  final BlockCompressingChannel.Format compression;
+
+  /**
+   * Number of batches of rows to fetch ahead on a background thread, or 0 to fetch on the formatting thread.
+   */
+  final int prefetchDepth;
+
+  @Nullable
+  final Path scriptPath;
+
+  /**
+   * Whether to execute consecutive DML statements of a script that differ only in their literals as batches.
+   */
+  final boolean autoBatch;
+
+  /**
+   * Path of the log to record executed statements to, for replaying them later.
+   */
+  @Nullable
+  final Path capturePath;
+
+  @Nullable
+  final Path replayPath;
+
+  /**
+   * Factor to shorten the intervals between the statements of a replayed log by.
+   */
+  final int speed;
+
+  @Nullable
+  final String describeTable;
+
+  /**
+   * Prefix of the names of the tables to list, empty to list all tables.
+   */
+  @Nullable
+  final String tablePrefix;
+
+  final int metadataTtlSeconds;
+  final Path metadataCacheDirectory;
+
+  /**
+   * Seconds to reuse the output of read-only queries, or 0 not to cache them.
+   */
+  final int resultCacheTtlSeconds;
+  final long resultCacheMaxBytes;
+  @Nullable
+  final Path resultCacheDirectory;
+
+  /**
+   * Connection profiles to check by name, empty unless in health check mode.
+   */
+  final Map<String, ConnectionConfig> healthCheckTargets;
+
+  final int connectTimeoutSeconds;
+  final int queryTimeoutSeconds;
+  final int deadlineSeconds;
+  final boolean json;
+
+  private ShellOptions(Builder builder) {
+    query = builder.query;
+    fetchSize = builder.fetchSize;
+    importPath = builder.importPath;
+    table = builder.table;
+    batchSize = builder.batchSize;
+    commitInterval = builder.commitInterval;
+    threads = builder.threads;
+    benchQuery = builder.benchQuery;
+    iterations = builder.iterations;
+    warmupIterations = builder.warmupIterations;
+    histogramPath = builder.histogramPath;
+    connections = builder.connections;
+    poolMinSize = builder.poolMinSize;
+    poolMaxSize = builder.poolMaxSize;
+    validationQuery = builder.validationQuery;
+    idleTimeoutSeconds = builder.idleTimeoutSeconds;
+    borrowTimeoutSeconds = builder.borrowTimeoutSeconds;
+    statementCacheSize = builder.statementCacheSize;
+    format = builder.format;
+    lookahead = builder.lookahead;
+    maxColumnWidth = builder.maxColumnWidth;
+    overflow = builder.overflow;
+    stats = builder.stats;
+    statsLogPath = builder.statsLogPath;
+    copySource = builder.copySource;
+    targetConfig = builder.targetConfig;
+    snapshotPath = builder.snapshotPath;
+    indexes = Collections.unmodifiableList(new ArrayList<>(builder.indexes));
+    exportTable = builder.exportTable;
+    diffSource = builder.diffSource;
+    chunkSize = builder.chunkSize;
+    clientChecksums = builder.clientChecksums;
+    partitionColumn = builder.partitionColumn;
+    partFiles = builder.partFiles;
+    outputPath = builder.outputPath;
+    compression = builder.compression;
+    prefetchDepth = builder.prefetchDepth;
+    scriptPath = builder.scriptPath;
+    autoBatch = builder.autoBatch;
+    capturePath = builder.capturePath;
+    replayPath = builder.replayPath;
+    speed = builder.speed;
+    describeTable = builder.describeTable;
+    tablePrefix = builder.tablePrefix;
+    metadataTtlSeconds = builder.metadataTtlSeconds;
+    metadataCacheDirectory = builder.metadataCacheDirectory;
+    resultCacheTtlSeconds = builder.resultCacheTtlSeconds;
+    resultCacheMaxBytes = builder.resultCacheMaxBytes;
+    resultCacheDirectory = builder.resultCacheDirectory;
+    healthCheckTargets = Collections.unmodifiableMap(new LinkedHashMap<>(builder.healthCheckTargets));
+    connectTimeoutSeconds = builder.connectTimeoutSeconds;
+    queryTimeoutSeconds = builder.queryTimeoutSeconds;
+    deadlineSeconds = builder.deadlineSeconds;
+    json = builder.json;
+  }
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  static class Builder {
+    private String query;
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private Path importPath;
+    private String table;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int commitInterval = DEFAULT_COMMIT_INTERVAL;
+    private int threads = DEFAULT_THREADS;
+    private String benchQuery;
+    private int iterations = DEFAULT_ITERATIONS;
+    private int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+    private Path histogramPath;
+    private int connections;
+    private int poolMinSize = ConnectionPool.DEFAULT_MIN_SIZE;
+    private int poolMaxSize = ConnectionPool.DEFAULT_MAX_SIZE;
+    private String validationQuery;
+    private int idleTimeoutSeconds = ConnectionPool.DEFAULT_IDLE_TIMEOUT_SECONDS;
+    private int borrowTimeoutSeconds = ConnectionPool.DEFAULT_BORROW_TIMEOUT_SECONDS;
+    private int statementCacheSize = StatementCache.DEFAULT_CAPACITY;
+    private Format format = Format.TSV;
+    private int lookahead = TableFormatter.DEFAULT_LOOKAHEAD;
+    private int maxColumnWidth = TableFormatter.DEFAULT_MAX_COLUMN_WIDTH;
+    private TableFormatter.Overflow overflow = TableFormatter.Overflow.TRUNCATE;
+    private boolean stats;
+    private Path statsLogPath;
+    private String copySource;
+    private ConnectionConfig targetConfig;
+    private Path snapshotPath;
+    private List<List<String>> indexes = Collections.emptyList();
+    private String exportTable;
+    private String diffSource;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean clientChecksums;
+    private String partitionColumn;
+    private boolean partFiles;
+    private Path outputPath;
+    private BlockCompressingChannel.Format compression;
+    private int prefetchDepth;
+    private Path scriptPath;
+    private boolean autoBatch;
+    private Path capturePath;
+    private Path replayPath;
+    private int speed = DEFAULT_SPEED;
+    private String describeTable;
+    private String tablePrefix;
+    private int metadataTtlSeconds = MetadataCache.DEFAULT_TTL_SECONDS;
+    private Path metadataCacheDirectory = MetadataCache.DEFAULT_DIRECTORY;
+    private int resultCacheTtlSeconds;
+    private long resultCacheMaxBytes = ResultCache.DEFAULT_MAX_MEGABYTES * 1024L * 1024L;
+    private Path resultCacheDirectory;
+    private Map<String, ConnectionConfig> healthCheckTargets = Collections.emptyMap();
+    private int connectTimeoutSeconds = DEFAULT_CONNECT_TIMEOUT_SECONDS;
+    private int queryTimeoutSeconds = DEFAULT_QUERY_TIMEOUT_SECONDS;
+    private int deadlineSeconds = DEFAULT_DEADLINE_SECONDS;
+    private boolean json;
+
+    Builder setQuery(@Nullable String query) {
+      this.query = query;
+      return this;
+    }
+
+    Builder setFetchSize(int fetchSize) {
+      this.fetchSize = fetchSize;
+      return this;
+    }
+
+    Builder setImportPath(@Nullable Path importPath) {
+      this.importPath = importPath;
+      return this;
+    }
+
+    Builder setTable(@Nullable String table) {
+      this.table = table;
+      return this;
+    }
+
+    Builder setBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    Builder setCommitInterval(int commitInterval) {
+      this.commitInterval = commitInterval;
+      return this;
+    }
+
+    Builder setThreads(int threads) {
+      this.threads = threads;
+      return this;
+    }
+
+    Builder setBenchQuery(@Nullable String benchQuery) {
+      this.benchQuery = benchQuery;
+      return this;
+    }
+
+    Builder setIterations(int iterations) {
+      this.iterations = iterations;
+      return this;
+    }
+
+    Builder setWarmupIterations(int warmupIterations) {
+      this.warmupIterations = warmupIterations;
+      return this;
+    }
+
+    Builder setHistogramPath(@Nullable Path histogramPath) {
+      this.histogramPath = histogramPath;
+      return this;
+    }
+
+    Builder setConnections(int connections) {
+      this.connections = connections;
+      return this;
+    }
+
+    Builder setPoolMinSize(int poolMinSize) {
+      this.poolMinSize = poolMinSize;
+      return this;
+    }
+
+    Builder setPoolMaxSize(int poolMaxSize) {
+      this.poolMaxSize = poolMaxSize;
+      return this;
+    }
+
+    Builder setValidationQuery(@Nullable String validationQuery) {
+      this.validationQuery = validationQuery;
+      return this;
+    }
+
+    Builder setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+      this.idleTimeoutSeconds = idleTimeoutSeconds;
+      return this;
+    }
+
+    Builder setBorrowTimeoutSeconds(int borrowTimeoutSeconds) {
+      this.borrowTimeoutSeconds = borrowTimeoutSeconds;
+      return this;
+    }
+
+    Builder setStatementCacheSize(int statementCacheSize) {
+      this.statementCacheSize = statementCacheSize;
+      return this;
+    }
+
+    Builder setFormat(Format format) {
+      this.format = format;
+      return this;
+    }
+
+    Builder setLookahead(int lookahead) {
+      this.lookahead = lookahead;
+      return this;
+    }
+
+    Builder setMaxColumnWidth(int maxColumnWidth) {
+      this.maxColumnWidth = maxColumnWidth;
+      return this;
+    }
+
+    Builder setOverflow(TableFormatter.Overflow overflow) {
+      this.overflow = overflow;
+      return this;
+    }
+
+    Builder setStats(boolean stats) {
+      this.stats = stats;
+      return this;
+    }
+
+    Builder setStatsLogPath(@Nullable Path statsLogPath) {
+      this.statsLogPath = statsLogPath;
+      return this;
+    }
+
+    Builder setCopySource(@Nullable String copySource) {
+      this.copySource = copySource;
+      return this;
+    }
+
+    Builder setTargetConfig(@Nullable ConnectionConfig targetConfig) {
+      this.targetConfig = targetConfig;
+      return this;
+    }
+
+    Builder setSnapshotPath(@Nullable Path snapshotPath) {
+      this.snapshotPath = snapshotPath;
+      return this;
+    }
+
+    Builder setIndexes(List<List<String>> indexes) {
+      this.indexes = indexes;
+      return this;
+    }
+
+    Builder setExportTable(@Nullable String exportTable) {
+      this.exportTable = exportTable;
+      return this;
+    }
+
+    Builder setDiffSource(@Nullable String diffSource) {
+      this.diffSource = diffSource;
+      return this;
+    }
+
+    Builder setChunkSize(int chunkSize) {
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    Builder setClientChecksums(boolean clientChecksums) {
+      this.clientChecksums = clientChecksums;
+      return this;
+    }
+
+    Builder setPartitionColumn(@Nullable String partitionColumn) {
+      this.partitionColumn = partitionColumn;
+      return this;
+    }
+
+    Builder setPartFiles(boolean partFiles) {
+      this.partFiles = partFiles;
+      return this;
+    }
+
+    Builder setOutputPath(@Nullable Path outputPath) {
+      this.outputPath = outputPath;
+      return this;
+    }
+
+    Builder setCompression(@Nullable BlockCompressingChannel.Format compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    Builder setPrefetchDepth(int prefetchDepth) {
+      this.prefetchDepth = prefetchDepth;
+      return this;
+    }
+
+    Builder setScriptPath(@Nullable Path scriptPath) {
+      this.scriptPath = scriptPath;
+      return this;
+    }
+
+    Builder setAutoBatch(boolean autoBatch) {
+      this.autoBatch = autoBatch;
+      return this;
+    }
+
+    Builder setCapturePath(@Nullable Path capturePath) {
+      this.capturePath = capturePath;
+      return this;
+    }
+
+    Builder setReplayPath(@Nullable Path replayPath) {
+      this.replayPath = replayPath;
+      return this;
+    }
+
+    Builder setSpeed(int speed) {
+      this.speed = speed;
+      return this;
+    }
+
+    Builder setDescribeTable(@Nullable String describeTable) {
+      this.describeTable = describeTable;
+      return this;
+    }
+
+    Builder setTablePrefix(@Nullable String tablePrefix) {
+      this.tablePrefix = tablePrefix;
+      return this;
+    }
+
+    Builder setMetadataTtlSeconds(int metadataTtlSeconds) {
+      this.metadataTtlSeconds = metadataTtlSeconds;
+      return this;
+    }
+
+    Builder setMetadataCacheDirectory(Path metadataCacheDirectory) {
+      this.metadataCacheDirectory = metadataCacheDirectory;
+      return this;
+    }
+
+    Builder setResultCacheTtlSeconds(int resultCacheTtlSeconds) {
+      this.resultCacheTtlSeconds = resultCacheTtlSeconds;
+      return this;
+    }
+
+    Builder setResultCacheMaxBytes(long resultCacheMaxBytes) {
+      this.resultCacheMaxBytes = resultCacheMaxBytes;
+      return this;
+    }
+
+    Builder setResultCacheDirectory(@Nullable Path resultCacheDirectory) {
+      this.resultCacheDirectory = resultCacheDirectory;
+      return this;
+    }
+
+    Builder setHealthCheckTargets(Map<String, ConnectionConfig> healthCheckTargets) {
+      this.healthCheckTargets = healthCheckTargets;
+      return this;
+    }
+
+    Builder setConnectTimeoutSeconds(int connectTimeoutSeconds) {
+      this.connectTimeoutSeconds = connectTimeoutSeconds;
+      return this;
+    }
+
+    Builder setQueryTimeoutSeconds(int queryTimeoutSeconds) {
+      this.queryTimeoutSeconds = queryTimeoutSeconds;
+      return this;
+    }
+
+    Builder setDeadlineSeconds(int deadlineSeconds) {
+      this.deadlineSeconds = deadlineSeconds;
+      return this;
+    }
+
+    Builder setJson(boolean json) {
+      this.json = json;
+      return this;
+    }
+
+    ShellOptions build() {
+      return new ShellOptions(this);
+    }
+  }
+}
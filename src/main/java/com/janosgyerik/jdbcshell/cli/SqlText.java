@@ -0,0 +1,359 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Lexical helpers for SQL statements, aware of quoted strings and identifiers and of comments.
+ */
+class SqlText {
+  private static final Set<String> DDL_KEYWORDS = new HashSet<>(Arrays.asList("CREATE", "ALTER", "DROP", "TRUNCATE", "RENAME"));
+  private static final Set<String> QUERY_KEYWORDS = new HashSet<>(Arrays.asList("SELECT", "WITH", "VALUES", "TABLE"));
+  /**
+   * Words that make a query write, lock rows or have side effects, for example SELECT INTO, FOR UPDATE or data-modifying WITH.
+   */
+  private static final Set<String> SIDE_EFFECT_WORDS = new HashSet<>(Arrays.asList("INSERT", "UPDATE", "DELETE", "MERGE", "INTO",
+    "NEXTVAL", "SETVAL", "CALL", "EXEC", "EXECUTE", "LOCK", "SHARE"));
+  private static final Set<String> TABLE_KEYWORDS = new HashSet<>(Arrays.asList("FROM", "JOIN", "INTO", "UPDATE", "TABLE"));
+  /**
+   * Keywords that may follow a table name in a FROM clause, and so are not aliases.
+   */
+  private static final Set<String> CLAUSE_KEYWORDS = new HashSet<>(Arrays.asList("WHERE", "JOIN", "LEFT", "RIGHT", "INNER", "OUTER", "FULL",
+    "CROSS", "NATURAL", "ON", "USING", "GROUP", "ORDER", "HAVING", "LIMIT", "OFFSET", "FETCH", "UNION", "INTERSECT", "EXCEPT", "MINUS",
+    "WINDOW", "FOR", "SET", "VALUES", "SELECT"));
+  private static final String STRING_LITERAL = "'";
+
+  private SqlText() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * Collapse whitespace and comments outside of quotes into single spaces, and remove trailing semicolons,
+   * so that the same statement formatted differently has the same text.
+   * Comments starting with /*+ or /*!, optimizer hints and MySQL conditional comments, are kept, as they change the statement.
+   */
+  static String normalize(String sql) {
+    StringBuilder sb = new StringBuilder(sql.length());
+    boolean pendingSpace = false;
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        pendingSpace = true;
+        i++;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        pendingSpace = true;
+        while (i < length && sql.charAt(i) != '\n') {
+          i++;
+        }
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*' && !isHint(sql, i)) {
+        pendingSpace = true;
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else {
+        if (pendingSpace && sb.length() > 0) {
+          sb.append(' ');
+        }
+        pendingSpace = false;
+        if (c == '\'' || c == '"' || c == '`') {
+          int end = skipQuoted(sql, i);
+          sb.append(sql, i, end);
+          i = end;
+        } else if (c == '/' && isHint(sql, i)) {
+          int end = sql.indexOf("*/", i + 2);
+          end = end < 0 ? length : end + 2;
+          sb.append(sql, i, end);
+          i = end;
+        } else {
+          sb.append(c);
+          i++;
+        }
+      }
+    }
+    int end = sb.length();
+    while (end > 0 && (sb.charAt(end - 1) == ';' || sb.charAt(end - 1) == ' ')) {
+      end--;
+    }
+    sb.setLength(end);
+    return sb.toString();
+  }
+
+  private static boolean isHint(String sql, int commentStart) {
+    int i = commentStart + 2;
+    return i < sql.length() && (sql.charAt(i) == '+' || sql.charAt(i) == '!');
+  }
+
+  /**
+   * @return true if the statement has a ? outside of quotes and comments, which a prepared statement takes for a parameter,
+   * but some databases for an operator, for example the jsonb operators ? and ?| of PostgreSQL
+   */
+  static boolean hasQuestionMark(String sql) {
+    String normalized = normalize(sql);
+    int i = 0;
+    while (i < normalized.length()) {
+      char c = normalized.charAt(i);
+      if (c == '\'' || c == '"' || c == '`') {
+        i = skipQuoted(normalized, i);
+      } else if (c == '?') {
+        return true;
+      } else {
+        i++;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param quote the identifier quote string of the database, a space if it does not support quoting
+   * @return the identifier in quotes, with the quotes it contains doubled
+   */
+  static String quoteIdentifier(String identifier, String quote) {
+    if (quote == null || quote.trim().isEmpty()) {
+      return identifier;
+    }
+    return quote + identifier.replace(quote, quote + quote) + quote;
+  }
+
+  /**
+   * @return the identifier in the case the database stores unquoted identifiers in, unless it is mixed case,
+   * so that it can be quoted and still name what it names unquoted, or be used without quotes once created
+   */
+  static String storedCase(DatabaseMetaData metaData, String identifier) throws SQLException {
+    boolean mixedCase = !identifier.equals(identifier.toUpperCase(Locale.ENGLISH)) && !identifier.equals(identifier.toLowerCase(Locale.ENGLISH));
+    if (mixedCase) {
+      return identifier;
+    }
+    if (metaData.storesUpperCaseIdentifiers()) {
+      return identifier.toUpperCase(Locale.ENGLISH);
+    }
+    if (metaData.storesLowerCaseIdentifiers()) {
+      return identifier.toLowerCase(Locale.ENGLISH);
+    }
+    return identifier;
+  }
+
+  /**
+   * Quote each part of a name optionally qualified with its schema, in the case the database stores it in.
+   * A name that is already quoted is returned as is.
+   */
+  static String quoteQualifiedName(DatabaseMetaData metaData, String name) throws SQLException {
+    String quote = metaData.getIdentifierQuoteString();
+    if (quote == null || quote.trim().isEmpty() || name.contains(quote)) {
+      return name;
+    }
+    List<String> parts = new ArrayList<>();
+    for (String part : name.split("\\.", -1)) {
+      parts.add(quoteIdentifier(storedCase(metaData, part), quote));
+    }
+    return String.join(".", parts);
+  }
+
+  /**
+   * Normalize a statement and replace its string and numeric literals with ?,
+   * so that statements that differ only in their literals have the same shape, for example to aggregate their latencies.
+   */
+  static String shape(String sql) {
+    String normalized = normalize(sql);
+    StringBuilder sb = new StringBuilder(normalized.length());
+    int length = normalized.length();
+    int i = 0;
+    while (i < length) {
+      char c = normalized.charAt(i);
+      if (c == '\'') {
+        i = skipQuoted(normalized, i);
+        sb.append('?');
+      } else if (c == '"' || c == '`') {
+        int end = skipQuoted(normalized, i);
+        sb.append(normalized, i, end);
+        i = end;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        int end = i + 1;
+        while (end < length && Character.isJavaIdentifierPart(normalized.charAt(end))) {
+          end++;
+        }
+        sb.append(normalized, i, end);
+        i = end;
+      } else if (Character.isDigit(c)) {
+        // including decimals, exponents and hexadecimal numbers
+        int end = i + 1;
+        while (end < length && (Character.isLetterOrDigit(normalized.charAt(end)) || normalized.charAt(end) == '.')) {
+          end++;
+        }
+        sb.append('?');
+        i = end;
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the first keyword of the statement in upper case, or an empty string if there is none
+   */
+  static String firstKeyword(String sql) {
+    String normalized = normalize(sql);
+    int start = 0;
+    while (start < normalized.length() && normalized.charAt(start) == '(') {
+      start++;
+    }
+    int end = start;
+    while (end < normalized.length() && Character.isLetter(normalized.charAt(end))) {
+      end++;
+    }
+    return normalized.substring(start, end).toUpperCase(Locale.ENGLISH);
+  }
+
+  /**
+   * @return true if the statement changes the schema, and so may invalidate prepared statements and cached metadata
+   */
+  static boolean isDdl(String sql) {
+    return DDL_KEYWORDS.contains(firstKeyword(sql));
+  }
+
+  /**
+   * @return true if the statement is a query without side effects, so that its result may be reused while its tables do not change
+   */
+  static boolean isReadOnlyQuery(String sql) {
+    List<String> words = words(sql);
+    if (words.isEmpty() || !QUERY_KEYWORDS.contains(words.get(0))) {
+      return false;
+    }
+    for (String word : words) {
+      if (SIDE_EFFECT_WORDS.contains(word)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Find the tables of the FROM, JOIN, INTO, UPDATE and TABLE clauses of a statement.
+   * The result may include words that are not tables, and misses the tables behind views and functions.
+   *
+   * @return the table names in upper case, without schema and quotes
+   */
+  static Set<String> tableNames(String sql) {
+    List<String> words = words(sql);
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < words.size(); i++) {
+      String keyword = words.get(i);
+      if (!TABLE_KEYWORDS.contains(keyword)) {
+        continue;
+      }
+      int j = i + 1;
+      while (j < words.size() && isName(words.get(j))) {
+        names.add(unqualified(words.get(j)));
+        j++;
+        if (!"FROM".equals(keyword)) {
+          break;
+        }
+        // the next table of a list such as: FROM a x, b AS y
+        if (j < words.size() && "AS".equals(words.get(j))) {
+          j++;
+        }
+        if (j < words.size() && isName(words.get(j)) && !CLAUSE_KEYWORDS.contains(words.get(j))) {
+          j++;
+        }
+        if (j < words.size() && ",".equals(words.get(j))) {
+          j++;
+        } else {
+          break;
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Split a statement into words in upper case and punctuation characters, without comments.
+   * Qualified and quoted names are single words, and string literals are replaced with a single quote.
+   */
+  static List<String> words(String sql) {
+    String normalized = normalize(sql);
+    List<String> words = new ArrayList<>();
+    int i = 0;
+    while (i < normalized.length()) {
+      char c = normalized.charAt(i);
+      if (c == ' ') {
+        i++;
+      } else if (c == '\'') {
+        i = skipQuoted(normalized, i);
+        words.add(STRING_LITERAL);
+      } else if (isNameStart(c)) {
+        int start = i;
+        i = skipName(normalized, i);
+        words.add(normalized.substring(start, i).toUpperCase(Locale.ENGLISH));
+      } else {
+        words.add(String.valueOf(c));
+        i++;
+      }
+    }
+    return words;
+  }
+
+  private static boolean isNameStart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '"' || c == '`' || c == '[';
+  }
+
+  private static boolean isName(String word) {
+    return !word.isEmpty() && !Character.isDigit(word.charAt(0)) && isNameStart(word.charAt(0));
+  }
+
+  private static int skipName(String sql, int start) {
+    int i = start;
+    while (i < sql.length()) {
+      char c = sql.charAt(i);
+      if (c == '"' || c == '`') {
+        i = skipQuoted(sql, i);
+      } else if (c == '[') {
+        int end = sql.indexOf(']', i);
+        i = end < 0 ? sql.length() : end + 1;
+      } else if (Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.') {
+        i++;
+      } else {
+        break;
+      }
+    }
+    return i;
+  }
+
+  private static String unqualified(String name) {
+    String last = name.substring(name.lastIndexOf('.') + 1);
+    StringBuilder sb = new StringBuilder(last.length());
+    for (char c : last.toCharArray()) {
+      if (c != '"' && c != '`' && c != '[' && c != ']') {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the index after the closing quote of the quoted text starting at the specified index,
+   * taking doubled quotes as escaped quotes
+   */
+  static int skipQuoted(CharSequence sql, int start) {
+    char quote = sql.charAt(start);
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == quote) {
+        if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return sql.length();
+  }
+}
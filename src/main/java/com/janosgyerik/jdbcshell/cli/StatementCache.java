@@ -0,0 +1,123 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Cache the prepared statements of a connection by SQL text, evicting the least recently used.
+ * The text is only trimmed: it is not normalized, since how literals and comments are delimited depends on the dialect,
+ * for example with backslash escapes or dollar quotes, and statements differing in a literal must not share an entry.
+ * Optimizer hints are part of the text, so statements differing in their hints are prepared separately.
+ * <p>
+ * Statements returned by {@link #prepare} belong to the cache: callers must close their result sets,
+ * but not the statements themselves.
+ */
+@NotThreadSafe
+class StatementCache implements AutoCloseable {
+  static final int DEFAULT_CAPACITY = 100;
+
+  private final Connection connection;
+  private final int capacity;
+  private final LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long invalidations;
+
+  StatementCache(Connection connection, int capacity) {
+    this.connection = connection;
+    this.capacity = capacity;
+  }
+
+  PreparedStatement prepare(String sql) throws SQLException {
+    String key = sql.trim();
+    PreparedStatement statement = statements.get(key);
+    if (statement != null && !statement.isClosed()) {
+      hits++;
+      statement.clearParameters();
+      return statement;
+    }
+
+    misses++;
+    statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    statements.put(key, statement);
+    if (statements.size() > capacity) {
+      Iterator<Map.Entry<String, PreparedStatement>> eldest = statements.entrySet().iterator();
+      closeQuietly(eldest.next().getValue());
+      eldest.remove();
+      evictions++;
+    }
+    return statement;
+  }
+
+  /**
+   * Close all cached statements, for example after the schema changed, since their plans may be stale.
+   */
+  void invalidate() {
+    if (!statements.isEmpty()) {
+      statements.values().forEach(StatementCache::closeQuietly);
+      statements.clear();
+      invalidations++;
+    }
+  }
+
+  Stats stats() {
+    return new Stats(this);
+  }
+
+  @Override
+  public void close() {
+    invalidate();
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException e) {
+      // nothing to do, the statement is discarded anyway
+    }
+  }
+
+  @Immutable
+  static class Stats {
+    final long hits;
+    final long misses;
+    final long evictions;
+    final long invalidations;
+
+    private Stats(StatementCache cache) {
+      hits = cache.hits;
+      misses = cache.misses;
+      evictions = cache.evictions;
+      invalidations = cache.invalidations;
+    }
+
+    Stats plus(Stats other) {
+      return new Stats(hits + other.hits, misses + other.misses, evictions + other.evictions, invalidations + other.invalidations);
+    }
+
+    private Stats(long hits, long misses, long evictions, long invalidations) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.invalidations = invalidations;
+    }
+
+    static Stats empty() {
+      return new Stats(0, 0, 0, 0);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Statement cache: %d hit(s), %d miss(es), %d eviction(s), %d invalidation(s)", hits, misses, evictions, invalidations);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A DML statement split into its shape, the text with its literals replaced by parameters,
+ * and the values of those literals, so that statements differing only in their literals can be batched.
+ * <p>
+ * Only literals that are operands are replaced: literals following a word, such as DATE '2019-01-01' or LIKE 'a%',
+ * are kept in the shape, because the syntax does not allow a parameter there.
+ * Numbers after GROUP BY, ORDER BY, LIMIT, OFFSET or FETCH are kept too, as they are column positions or row counts,
+ * for example in INSERT ... SELECT ... GROUP BY 1, 2.
+ */
+@Immutable
+class StatementShape {
+  private static final Set<String> DML_KEYWORDS = new HashSet<>(Arrays.asList("INSERT", "UPDATE", "DELETE"));
+  private static final String OPERAND_PREFIXES = "(,=<>!+-*/%|";
+  private static final Set<String> POSITIONAL_KEYWORDS = new HashSet<>(Arrays.asList("GROUP", "ORDER", "LIMIT", "OFFSET", "FETCH"));
+
+  final String sql;
+  final List<String> values;
+
+  /**
+   * Whether each value was a quoted string, as opposed to a number.
+   */
+  final boolean[] quoted;
+
+  StatementShape(String sql, List<String> values, boolean[] quoted) {
+    this.sql = sql;
+    this.values = values;
+    this.quoted = quoted;
+  }
+
+  /**
+   * @param backslashEscapes whether backslashes escape characters in quoted strings, as in MySQL
+   * @return the shape of the statement, or null if it is not an INSERT, UPDATE or DELETE with literals,
+   * or its literals cannot be replaced reliably
+   */
+  @CheckForNull
+  static StatementShape of(String sql, boolean backslashEscapes) {
+    if (!DML_KEYWORDS.contains(SqlText.firstKeyword(sql))) {
+      return null;
+    }
+
+    StringBuilder shape = new StringBuilder(sql.length());
+    List<String> values = new ArrayList<>();
+    List<Boolean> quoted = new ArrayList<>();
+    boolean positional = false;
+    int length = sql.length();
+    int i = 0;
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (c == '?' || c == '$') {
+        // existing parameters or dollar-quoted strings
+        return null;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        end = end < 0 ? length : end;
+        shape.append(sql, i, end);
+        i = end;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        end = end < 0 ? length : end + 2;
+        shape.append(sql, i, end);
+        i = end;
+      } else if (c == '"' || c == '`') {
+        int end = SqlText.skipQuoted(sql, i);
+        shape.append(sql, i, end);
+        i = end;
+      } else if (c == '\'') {
+        int end = SqlText.skipQuoted(sql, i);
+        String literal = sql.substring(i, end);
+        if (backslashEscapes && literal.indexOf('\\') >= 0 || literal.length() < 2 || !literal.endsWith("'")) {
+          return null;
+        }
+        if (isOperand(sql, i)) {
+          shape.append('?');
+          values.add(literal.substring(1, literal.length() - 1).replace("''", "'"));
+          quoted.add(true);
+        } else {
+          shape.append(literal);
+        }
+        i = end;
+      } else if (isNumberStart(sql, i)) {
+        int end = skipNumber(sql, i);
+        if (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+          // not a plain number, for example 0x1F
+          while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+            end++;
+          }
+          shape.append(sql, i, end);
+        } else if (!positional && isOperand(sql, i)) {
+          shape.append('?');
+          values.add(sql.substring(i, end));
+          quoted.add(false);
+        } else {
+          shape.append(sql, i, end);
+        }
+        i = end;
+      } else if (Character.isJavaIdentifierStart(c)) {
+        int end = i + 1;
+        while (end < length && Character.isJavaIdentifierPart(sql.charAt(end))) {
+          end++;
+        }
+        String word = sql.substring(i, end);
+        positional |= POSITIONAL_KEYWORDS.contains(word.toUpperCase(Locale.ENGLISH));
+        shape.append(word);
+        i = end;
+      } else {
+        shape.append(c);
+        i++;
+      }
+    }
+
+    if (values.isEmpty()) {
+      return null;
+    }
+    boolean[] quotedArray = new boolean[quoted.size()];
+    for (int j = 0; j < quotedArray.length; j++) {
+      quotedArray[j] = quoted.get(j);
+    }
+    return new StatementShape(shape.toString(), values, quotedArray);
+  }
+
+  /**
+   * @return true if the previous non-blank character can precede an operand
+   */
+  private static boolean isOperand(String sql, int index) {
+    int i = index - 1;
+    while (i >= 0 && Character.isWhitespace(sql.charAt(i))) {
+      i--;
+    }
+    return i >= 0 && OPERAND_PREFIXES.indexOf(sql.charAt(i)) >= 0;
+  }
+
+  private static boolean isNumberStart(String sql, int index) {
+    char c = sql.charAt(index);
+    return c >= '0' && c <= '9' || c == '.' && index + 1 < sql.length() && Character.isDigit(sql.charAt(index + 1));
+  }
+
+  private static int skipNumber(String sql, int start) {
+    int i = start;
+    int length = sql.length();
+    while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+      i++;
+    }
+    if (i < length && (sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) {
+      int exponent = i + 1;
+      if (exponent < length && (sql.charAt(exponent) == '+' || sql.charAt(exponent) == '-')) {
+        exponent++;
+      }
+      if (exponent < length && Character.isDigit(sql.charAt(exponent))) {
+        i = exponent;
+        while (i < length && Character.isDigit(sql.charAt(i))) {
+          i++;
+        }
+      }
+    }
+    return i;
+  }
+}
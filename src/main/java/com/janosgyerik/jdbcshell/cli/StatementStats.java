@@ -0,0 +1,94 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Where the time of one statement goes: getting a connection, executing, fetching rows, and formatting them.
+ * <p>
+ * The phases are measured as consecutive laps of a single clock, so recording a row costs
+ * two calls to System.nanoTime and no allocation.
+ */
+@NotThreadSafe
+class StatementStats {
+  final String sql;
+
+  long connectNanos;
+  long executeNanos;
+  /**
+   * Time from the end of execute until the first row was fetched, or -1 if there was no row.
+   */
+  long firstRowNanos = -1;
+  long fetchNanos;
+  long formatNanos;
+  long rows;
+  /**
+   * Approximate size of the fetched values, counting the characters of their string form.
+   */
+  long bytes;
+
+  private long lapStart;
+  private boolean fetching;
+
+  StatementStats(String sql) {
+    this.sql = sql;
+    lapStart = System.nanoTime();
+  }
+
+  void connected() {
+    connectNanos += lap();
+  }
+
+  void executed() {
+    executeNanos += lap();
+  }
+
+  /**
+   * Record a fetched row, of the specified approximate size.
+   */
+  void fetched(int rowBytes) {
+    long nanos = lap();
+    if (!fetching) {
+      fetching = true;
+      firstRowNanos = nanos;
+    }
+    fetchNanos += nanos;
+    rows++;
+    bytes += rowBytes;
+  }
+
+  /**
+   * Record a batch of rows fetched in the background: only the time waiting for the batch counts as fetch time.
+   */
+  void fetchedBatch(int batchRows, long batchBytes) {
+    long nanos = lap();
+    if (!fetching) {
+      fetching = true;
+      firstRowNanos = nanos;
+    }
+    fetchNanos += nanos;
+    rows += batchRows;
+    bytes += batchBytes;
+  }
+
+  /**
+   * Record time spent waiting for the end of the result, after the last row.
+   */
+  void fetchedAll() {
+    fetchNanos += lap();
+  }
+
+  void formatted() {
+    formatNanos += lap();
+  }
+
+  long totalNanos() {
+    return connectNanos + executeNanos + fetchNanos + formatNanos;
+  }
+
+  private long lap() {
+    long now = System.nanoTime();
+    long nanos = now - lapStart;
+    lapStart = now;
+    return nanos;
+  }
+}
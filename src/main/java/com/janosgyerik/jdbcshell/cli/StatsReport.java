@@ -0,0 +1,97 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.JsonObjectWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Collect the statistics of statements, write each to an optional JSON-lines log,
+ * and print a summary of where the time went.
+ */
+class StatsReport implements AutoCloseable {
+  private final System2 system2;
+  private final JsonObjectWriter json = new JsonObjectWriter();
+  @Nullable
+  private final Writer log;
+
+  private long statements;
+  private long connectNanos;
+  private long executeNanos;
+  private long firstRowNanos;
+  private long fetchNanos;
+  private long formatNanos;
+  private long rows;
+  private long bytes;
+
+  StatsReport(System2 system2, @Nullable Path logPath) {
+    this.system2 = system2;
+    try {
+      this.log = logPath != null ? Files.newBufferedWriter(logPath, StandardCharsets.UTF_8) : null;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not open stats log " + logPath, e);
+    }
+  }
+
+  void record(StatementStats stats) {
+    statements++;
+    connectNanos += stats.connectNanos;
+    executeNanos += stats.executeNanos;
+    firstRowNanos += Math.max(0, stats.firstRowNanos);
+    fetchNanos += stats.fetchNanos;
+    formatNanos += stats.formatNanos;
+    rows += stats.rows;
+    bytes += stats.bytes;
+
+    if (log != null) {
+      json.begin()
+        .add("timestamp", Instant.now().toString())
+        .add("sql", stats.sql)
+        .add("connectMs", stats.connectNanos / 1e6)
+        .add("executeMs", stats.executeNanos / 1e6)
+        .add("firstRowMs", stats.firstRowNanos >= 0 ? stats.firstRowNanos / 1e6 : -1)
+        .add("fetchMs", stats.fetchNanos / 1e6)
+        .add("formatMs", stats.formatNanos / 1e6)
+        .add("totalMs", stats.totalNanos() / 1e6)
+        .add("rows", stats.rows)
+        .add("bytes", stats.bytes);
+      try {
+        log.write(json.end());
+        log.write('\n');
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Print the summary to standard error, so that it does not mix with results.
+   */
+  void printSummary() {
+    long total = connectNanos + executeNanos + fetchNanos + formatNanos;
+    system2.printlnErr(String.format(Locale.ENGLISH, "Statement stats: %d statement(s), %d row(s), ~%d bytes, total %.3f ms",
+      statements, rows, bytes, total / 1e6));
+    printPhase("connect", connectNanos, total);
+    printPhase("execute", executeNanos, total);
+    printPhase("fetch", fetchNanos, total);
+    printPhase("format", formatNanos, total);
+    system2.printlnErr(String.format(Locale.ENGLISH, "  %-10s %12.3f ms", "first row", firstRowNanos / 1e6));
+  }
+
+  private void printPhase(String name, long nanos, long total) {
+    system2.printlnErr(String.format(Locale.ENGLISH, "  %-10s %12.3f ms %5.1f%%", name, nanos / 1e6, total > 0 ? nanos * 100.0 / total : 0));
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (log != null) {
+      log.close();
+    }
+  }
+}
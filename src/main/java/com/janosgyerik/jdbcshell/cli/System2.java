@@ -1,8 +1,66 @@
 package com.janosgyerik.jdbcshell.cli;
 
+import com.janosgyerik.jdbcshell.io.BlockCompressingChannel;
+import com.janosgyerik.jdbcshell.io.OutputSink;
+import com.janosgyerik.jdbcshell.io.OutputSinks;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+
 class System2 {
+  private OutputSink out;
+
+  System2() {
+    this(OutputSinks.stdout());
+  }
+
+  /**
+   * @param out destination of standard output, for example the connection of a daemon client
+   */
+  System2(OutputSink out) {
+    this.out = out;
+  }
+
+  /**
+   * Send standard output to the specified file instead of the standard output of the process.
+   */
+  void redirectOut(Path path) throws IOException {
+    redirectOut(path, null);
+  }
+
+  /**
+   * Send standard output to the specified file, compressed unless the compression format is null.
+   */
+  void redirectOut(Path path, @Nullable BlockCompressingChannel.Format compression) throws IOException {
+    out.flush();
+    out = OutputSinks.file(path, compression);
+  }
+
   void printlnOut(String s) {
-    System.out.println(s);
+    out.println(s);
+  }
+
+  /**
+   * Print a line that the caller reuses once this returns, for example a row built in a buffer,
+   * without copying it into a String.
+   */
+  void printlnOut(CharSequence line) {
+    out.println(line);
+  }
+
+  /**
+   * Write the content of a file to standard output as is, for example a part of an export spooled to disk.
+   */
+  void appendOut(Path file) {
+    out.append(file);
+  }
+
+  /**
+   * Write buffered standard output, for example at the end of a result set.
+   */
+  void flushOut() {
+    out.flush();
   }
 
   void printlnErr() {
@@ -10,10 +68,26 @@ class System2 {
   }
 
   void printlnErr(String s) {
+    out.flush();
     System.err.println(s);
   }
 
   void exit(int status) {
-    System.exit(status);
+    System.exit(closeOut(status));
+  }
+
+  /**
+   * Close standard output before exiting.
+   *
+   * @return the exit status, 1 if the output could not be written
+   */
+  int closeOut(int status) {
+    try {
+      out.close();
+    } catch (UncheckedIOException e) {
+      printlnErr("Could not write output: " + e.getMessage());
+      return 1;
+    }
+    return status;
   }
 }
@@ -0,0 +1,527 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Compare a table or query result between two databases without transferring all rows, and print the rows that differ.
+ * <p>
+ * The keys are split into ranges, and each range is compared by the count and the checksum of its rows on both sides.
+ * Ranges whose checksums differ are bisected until they hold at most -chunkSize rows, and only those are fetched
+ * and compared row by row. Ranges are compared concurrently, each on its own source and target connection.
+ * <p>
+ * When both databases are of the same kind, and that kind is known, the checksums are computed by the databases
+ * as the sum of a hash of the text of each row, and only one row per range is transferred. Otherwise, or with
+ * -clientChecksums, the rows are fetched and hashed by the client, so everything is transferred once, plus the
+ * ranges that differ; the ranges then start at -chunkSize rows, as bisecting would fetch the same rows again.
+ * <p>
+ * Rows fetched by the client are hashed and compared as the text of their values formatted by JDBC type, the same for equal
+ * values of different kinds of databases, and printed as such.
+ * <p>
+ * Rows are printed as tab-separated lines prefixed with &lt; for rows of the source and &gt; for rows of the target
+ * that have no identical row with the same key on the other side, so a changed row is printed on both sides.
+ */
+class TableDiff {
+  private static final Pattern TABLE_NAME = Pattern.compile("[\\w.$\"\\[\\]`]+");
+  /**
+   * Ranges each thread starts with when checksums are computed by the databases, so that threads finishing early
+   * can pick up more, without multiplying the checksum queries of ranges that are equal anyway.
+   */
+  private static final int RANGES_PER_THREAD = 4;
+  /**
+   * Ranges to start with at most when checksums are computed by the client, to bound the memory of the ranges.
+   */
+  private static final int MAX_CLIENT_RANGES = 1 << 20;
+  /**
+   * Depth of bisection after which a range is compared row by row, as its keys must be mostly duplicates.
+   */
+  private static final int MAX_DEPTH = 64;
+  private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+  private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSSSSS");
+  private static final String SOURCE_PREFIX = "<\t";
+  private static final String TARGET_PREFIX = ">\t";
+
+  private final System2 system2;
+  private final ConnectionPool sourcePool;
+  private final ConnectionConfig sourceConfig;
+  private final ConnectionConfig targetConfig;
+  private final ShellOptions options;
+  private final String source;
+  private final String keyColumn;
+
+  private final AtomicLong checksumQueries = new AtomicLong();
+  private final AtomicLong fetchedRows = new AtomicLong();
+  private final AtomicLong sourceRows = new AtomicLong();
+  private final AtomicLong targetRows = new AtomicLong();
+
+  TableDiff(System2 system2, ConnectionPool sourcePool, ConnectionConfig sourceConfig, ConnectionConfig targetConfig, ShellOptions options) {
+    this.system2 = system2;
+    this.sourcePool = sourcePool;
+    this.sourceConfig = sourceConfig;
+    this.targetConfig = targetConfig;
+    this.options = options;
+
+    String diffSource = options.diffSource.trim();
+    this.source = TABLE_NAME.matcher(diffSource).matches() ? diffSource : "(" + diffSource + ") q";
+    this.keyColumn = options.partitionColumn;
+  }
+
+  void run() throws Exception {
+    long start = System.nanoTime();
+    int rangeCount;
+    long rows;
+    try (ConnectionPool targetPool = ConnectionPool.builder(targetConfig).setMaxSize(options.threads).build()) {
+      List<String> columns = columns();
+      int keyIndex = keyIndex(columns);
+      String subprotocol = sourceConfig.subprotocol();
+      String rowHash = options.clientChecksums || !subprotocol.equals(targetConfig.subprotocol()) ? null
+        : rowHash(subprotocol, quoted(columns, identifierQuote(sourcePool)));
+      boolean clientChecksums = rowHash == null;
+
+      Bounds sourceBounds = bounds(sourcePool);
+      Bounds targetBounds = bounds(targetPool);
+      rows = Math.max(sourceBounds.count, targetBounds.count);
+      long chunks = (rows + options.chunkSize - 1) / options.chunkSize;
+      int parts = (int) Math.max(1, clientChecksums ? Math.min(chunks, MAX_CLIENT_RANGES) : Math.min(chunks, options.threads * RANGES_PER_THREAD));
+      List<KeyRanges.KeyRange> ranges = KeyRanges.split(KeyRanges.min(sourceBounds.min, targetBounds.min),
+        KeyRanges.max(sourceBounds.max, targetBounds.max), parts);
+      rangeCount = ranges.size();
+
+      system2.printlnOut("DIFF\t" + String.join("\t", columns));
+      Query query = new Query(columns, keyIndex, rowHash);
+      compareAll(targetPool, ranges, query);
+      system2.flushOut();
+    }
+
+    long millis = (System.nanoTime() - start) / 1_000_000;
+    // not on standard output, which may be the differing rows
+    system2.printlnErr(String.format(Locale.ENGLISH,
+      "Compared %d row(s) of %s in %d range(s) in %d ms: %d row(s) differ in source, %d in target; %d checksum queries, fetched %d row(s)",
+      rows, options.diffSource.trim(), rangeCount, millis, sourceRows.get(), targetRows.get(), checksumQueries.get(), fetchedRows.get()));
+  }
+
+  /**
+   * The columns of the source, compared on both sides in this order.
+   */
+  private List<String> columns() throws SQLException {
+    try (Connection connection = sourcePool.borrow();
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery(String.format("SELECT * FROM %s WHERE 1 = 0", source))) {
+      ResultSetMetaData metaData = resultSet.getMetaData();
+      List<String> columns = new ArrayList<>();
+      for (int i = 1; i <= metaData.getColumnCount(); i++) {
+        columns.add(metaData.getColumnLabel(i));
+      }
+      return columns;
+    }
+  }
+
+  private static String identifierQuote(ConnectionPool pool) throws SQLException {
+    try (Connection connection = pool.borrow()) {
+      return connection.getMetaData().getIdentifierQuoteString();
+    }
+  }
+
+  /**
+   * @return the column labels quoted, as they may be reserved words or mixed case
+   */
+  private static List<String> quoted(List<String> columns, String quote) {
+    List<String> quoted = new ArrayList<>(columns.size());
+    for (String column : columns) {
+      quoted.add(SqlText.quoteIdentifier(column, quote));
+    }
+    return quoted;
+  }
+
+  private int keyIndex(List<String> columns) {
+    String key = keyColumn.replaceAll("[\"\\[\\]`]", "");
+    for (int i = 0; i < columns.size(); i++) {
+      if (columns.get(i).equalsIgnoreCase(key)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(String.format("Partition column %s is not a column of %s", keyColumn, options.diffSource.trim()));
+  }
+
+  private Bounds bounds(ConnectionPool pool) throws SQLException {
+    String sql = String.format("SELECT MIN(%s), MAX(%s), COUNT(*) FROM %s", keyColumn, keyColumn, source);
+    try (Connection connection = pool.borrow();
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      return new Bounds(resultSet.getObject(1), resultSet.getObject(2), resultSet.getLong(3));
+    }
+  }
+
+  private void compareAll(ConnectionPool targetPool, List<KeyRanges.KeyRange> ranges, Query query) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(options.threads, ranges.size()));
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (KeyRanges.KeyRange range : ranges) {
+        futures.add(executor.submit(() -> {
+          try (Connection sourceConnection = sourcePool.borrow(); Connection targetConnection = targetPool.borrow()) {
+            // PostgreSQL ignores the fetch size and buffers everything when autocommit is on
+            sourceConnection.setAutoCommit(false);
+            targetConnection.setAutoCommit(false);
+            compare(new Side(sourceConnection, sourceConfig), new Side(targetConnection, targetConfig), range, query, 0);
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void compare(Side sourceSide, Side targetSide, KeyRanges.KeyRange range, Query query, int depth) throws SQLException {
+    Checksum sourceChecksum = checksum(sourceSide, range, query);
+    Checksum targetChecksum = checksum(targetSide, range, query);
+    if (sourceChecksum.equals(targetChecksum)) {
+      return;
+    }
+
+    List<KeyRanges.KeyRange> parts = KeyRanges.split(range, 2);
+    if (Math.max(sourceChecksum.count, targetChecksum.count) <= options.chunkSize || query.rowHash == null || parts.size() == 1
+      || depth == MAX_DEPTH) {
+      compareRows(sourceSide, targetSide, range, query);
+      return;
+    }
+    for (KeyRanges.KeyRange part : parts) {
+      compare(sourceSide, targetSide, part, query, depth + 1);
+    }
+  }
+
+  private Checksum checksum(Side side, KeyRanges.KeyRange range, Query query) throws SQLException {
+    checksumQueries.incrementAndGet();
+    if (query.rowHash == null) {
+      return clientChecksum(side, range, query);
+    }
+    String sql = String.format("SELECT COUNT(*), SUM(%s) FROM %s", query.rowHash, source) + where(range);
+    try (PreparedStatement statement = prepare(side, sql, range); ResultSet resultSet = statement.executeQuery()) {
+      resultSet.next();
+      BigDecimal sum = resultSet.getBigDecimal(2);
+      return new Checksum(resultSet.getLong(1), sum == null ? BigDecimal.ZERO : sum);
+    } finally {
+      side.connection.commit();
+    }
+  }
+
+  /**
+   * Sum the hashes of the rows, as the databases do, so that the order of the rows does not matter.
+   */
+  private Checksum clientChecksum(Side side, KeyRanges.KeyRange range, Query query) throws SQLException {
+    MessageDigest digest = md5();
+    StringBuilder line = new StringBuilder();
+    long count = 0;
+    long sum = 0;
+    String sql = String.format("SELECT %s FROM %s", side.selectList(query), source) + where(range);
+    try (PreparedStatement statement = prepare(side, sql, range); ResultSet resultSet = statement.executeQuery()) {
+      int[] sqlTypes = sqlTypes(resultSet.getMetaData());
+      String[] values = new String[sqlTypes.length];
+      while (resultSet.next()) {
+        readComparableRow(resultSet, sqlTypes, values, line);
+        byte[] hash = digest.digest(line.toString().getBytes(StandardCharsets.UTF_8));
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+          value = value << 8 | (hash[i] & 0xFF);
+        }
+        sum += value;
+        count++;
+      }
+    } finally {
+      side.connection.commit();
+    }
+    fetchedRows.addAndGet(count);
+    return new Checksum(count, BigDecimal.valueOf(sum));
+  }
+
+  private static MessageDigest md5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  private void compareRows(Side sourceSide, Side targetSide, KeyRanges.KeyRange range, Query query) throws SQLException {
+    Map<String, List<String>> sourceLines = fetchRows(sourceSide, range, query);
+    Map<String, List<String>> targetLines = fetchRows(targetSide, range, query);
+
+    List<String> lines = new ArrayList<>();
+    int sourceOnly = 0;
+    for (Map.Entry<String, List<String>> entry : sourceLines.entrySet()) {
+      List<String> others = targetLines.getOrDefault(entry.getKey(), Collections.emptyList());
+      for (String line : entry.getValue()) {
+        if (!others.remove(line)) {
+          lines.add(SOURCE_PREFIX + line);
+          sourceOnly++;
+        }
+      }
+    }
+    int targetOnly = 0;
+    for (List<String> others : targetLines.values()) {
+      for (String line : others) {
+        lines.add(TARGET_PREFIX + line);
+        targetOnly++;
+      }
+    }
+    sourceRows.addAndGet(sourceOnly);
+    targetRows.addAndGet(targetOnly);
+    print(lines);
+  }
+
+  /**
+   * @return the rows of the range as tab-separated lines, by the text of their key, in key order
+   */
+  private Map<String, List<String>> fetchRows(Side side, KeyRanges.KeyRange range, Query query) throws SQLException {
+    Map<String, List<String>> lines = new LinkedHashMap<>();
+    String sql = String.format("SELECT %s FROM %s%s ORDER BY %s", side.selectList(query), source, where(range),
+      SqlText.quoteIdentifier(query.columns.get(query.keyIndex), side.quote));
+    long count = 0;
+    try (PreparedStatement statement = prepare(side, sql, range); ResultSet resultSet = statement.executeQuery()) {
+      int[] sqlTypes = sqlTypes(resultSet.getMetaData());
+      String[] values = new String[sqlTypes.length];
+      StringBuilder line = new StringBuilder();
+      while (resultSet.next()) {
+        readComparableRow(resultSet, sqlTypes, values, line);
+        lines.computeIfAbsent(values[query.keyIndex], k -> new ArrayList<>()).add(line.toString());
+        count++;
+      }
+    } finally {
+      side.connection.commit();
+    }
+    fetchedRows.addAndGet(count);
+    return lines;
+  }
+
+  private static int[] sqlTypes(ResultSetMetaData metaData) throws SQLException {
+    int[] sqlTypes = new int[metaData.getColumnCount()];
+    for (int i = 0; i < sqlTypes.length; i++) {
+      sqlTypes[i] = metaData.getColumnType(i + 1);
+    }
+    return sqlTypes;
+  }
+
+  /**
+   * Read the current row as a tab-separated line of values formatted by their JDBC type rather than by the driver,
+   * so that equal values of databases of different kinds have the same text: for example booleans that a driver
+   * prints as t and another as 1, decimals of different scales, or timestamps of different precisions.
+   *
+   * @param values filled with the text of each value, or NULL
+   * @param line replaced with the line of the values
+   */
+  static void readComparableRow(ResultSet resultSet, int[] sqlTypes, String[] values, StringBuilder line) throws SQLException {
+    line.setLength(0);
+    for (int i = 0; i < sqlTypes.length; i++) {
+      String value = comparableValue(resultSet, i + 1, sqlTypes[i]);
+      values[i] = value == null ? JdbcShell.NULL_VALUE : value;
+      if (i > 0) {
+        line.append('\t');
+      }
+      line.append(values[i]);
+    }
+  }
+
+  @CheckForNull
+  private static String comparableValue(ResultSet resultSet, int column, int sqlType) throws SQLException {
+    switch (sqlType) {
+      case Types.BIT:
+      case Types.BOOLEAN:
+        boolean bool = resultSet.getBoolean(column);
+        return resultSet.wasNull() ? null : Boolean.toString(bool);
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        BigDecimal decimal = resultSet.getBigDecimal(column);
+        return decimal == null ? null : plain(decimal);
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        double number = resultSet.getDouble(column);
+        return resultSet.wasNull() ? null : plain(BigDecimal.valueOf(number));
+      case Types.DATE:
+        java.sql.Date date = resultSet.getDate(column);
+        return date == null ? null : date.toLocalDate().toString();
+      case Types.TIME:
+        Time time = resultSet.getTime(column);
+        return time == null ? null : time.toLocalTime().format(TIME_FORMAT);
+      case Types.TIMESTAMP:
+      case Types.TIMESTAMP_WITH_TIMEZONE:
+        Timestamp timestamp = resultSet.getTimestamp(column);
+        return timestamp == null ? null : timestamp.toLocalDateTime().format(TIMESTAMP_FORMAT);
+      default:
+        return resultSet.getString(column);
+    }
+  }
+
+  private static String plain(BigDecimal number) {
+    return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   * Print the rows of a range together, as ranges are compared concurrently.
+   */
+  private synchronized void print(List<String> lines) {
+    for (String line : lines) {
+      system2.printlnOut(line);
+    }
+  }
+
+  private String where(KeyRanges.KeyRange range) {
+    String condition = range.condition(keyColumn);
+    return condition == null ? "" : " WHERE " + condition;
+  }
+
+  private PreparedStatement prepare(Side side, String sql, KeyRanges.KeyRange range) throws SQLException {
+    PreparedStatement statement = side.connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    statement.setFetchSize(Connections.streamingFetchSize(side.config, options.fetchSize));
+    if (!range.isUnbounded()) {
+      statement.setObject(1, range.lower);
+      statement.setObject(2, range.upper);
+    }
+    return statement;
+  }
+
+  /**
+   * Hash the text of a row into a non-negative number, that the database can sum without overflow.
+   * Each value of the text is prefixed, so that nulls differ from any value.
+   *
+   * @return the expression, or null if checksums cannot be computed by this kind of database
+   */
+  @CheckForNull
+  static String rowHash(String subprotocol, List<String> columns) {
+    String valueTemplate;
+    String hashTemplate;
+    switch (subprotocol) {
+      case "h2":
+        valueTemplate = "COALESCE('v' || CAST(%s AS VARCHAR), 'n')";
+        hashTemplate = "ORA_HASH(%s)";
+        break;
+      case "postgresql":
+        valueTemplate = "COALESCE('v' || CAST(%s AS TEXT), 'n')";
+        // the first 60 bits of the MD5; SUM of BIGINT returns NUMERIC
+        hashTemplate = "('x' || SUBSTR(MD5(%s), 1, 15))::BIT(60)::BIGINT";
+        break;
+      case "mysql":
+        valueTemplate = "COALESCE(CONCAT('v', CAST(%s AS CHAR)), 'n')";
+        hashTemplate = "CAST(CONV(SUBSTRING(MD5(%s), 1, 15), 16, 10) AS UNSIGNED)";
+        break;
+      default:
+        return null;
+    }
+    List<String> values = new ArrayList<>();
+    for (String column : columns) {
+      values.add(String.format(valueTemplate, column));
+    }
+    return String.format(hashTemplate, String.format("CONCAT_WS('|', %s)", String.join(", ", values)));
+  }
+
+  @Immutable
+  private static class Bounds {
+    @Nullable
+    final Object min;
+    @Nullable
+    final Object max;
+    final long count;
+
+    Bounds(@Nullable Object min, @Nullable Object max, long count) {
+      this.min = min;
+      this.max = max;
+      this.count = count;
+    }
+  }
+
+  @Immutable
+  private static class Query {
+    final List<String> columns;
+    final int keyIndex;
+    @Nullable
+    final String rowHash;
+
+    Query(List<String> columns, int keyIndex, @Nullable String rowHash) {
+      this.columns = columns;
+      this.keyIndex = keyIndex;
+      this.rowHash = rowHash;
+    }
+  }
+
+  private static class Side {
+    final Connection connection;
+    final ConnectionConfig config;
+    final String quote;
+
+    Side(Connection connection, ConnectionConfig config) throws SQLException {
+      this.connection = connection;
+      this.config = config;
+      this.quote = connection.getMetaData().getIdentifierQuoteString();
+    }
+
+    String selectList(Query query) {
+      return String.join(", ", quoted(query.columns, quote));
+    }
+  }
+
+  @Immutable
+  private static class Checksum {
+    final long count;
+    final BigDecimal sum;
+
+    Checksum(long count, BigDecimal sum) {
+      this.count = count;
+      this.sum = sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Checksum that = (Checksum) o;
+      return count == that.count && sum.compareTo(that.sum) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(count, sum.stripTrailingZeros());
+    }
+  }
+}
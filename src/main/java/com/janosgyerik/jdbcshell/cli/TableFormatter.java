@@ -0,0 +1,214 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Print a result set as an aligned table, without buffering the entire result.
+ * <p>
+ * Column widths are computed from the first rows of the result (the lookahead),
+ * or from the display sizes of the columns if the lookahead is 0, and capped by the maximum column width.
+ * The rows of the lookahead are printed first, then the remaining rows are printed as they are fetched.
+ * Values wider than their column are truncated or wrapped on multiple lines.
+ */
+class TableFormatter {
+  static final int DEFAULT_LOOKAHEAD = 100;
+  static final int DEFAULT_MAX_COLUMN_WIDTH = 40;
+
+  private static final char TRUNCATION_MARK = '~';
+
+  enum Overflow {
+    TRUNCATE, WRAP
+  }
+
+  private final System2 system2;
+  private final int lookahead;
+  private final int maxColumnWidth;
+  private final Overflow overflow;
+
+  private final StringBuilder line = new StringBuilder();
+
+  TableFormatter(System2 system2, int lookahead, int maxColumnWidth, Overflow overflow) {
+    this.system2 = system2;
+    this.lookahead = lookahead;
+    this.maxColumnWidth = maxColumnWidth;
+    this.overflow = overflow;
+  }
+
+  /**
+   * @return the number of rows printed
+   */
+  long print(ResultSet resultSet, StatementStats stats) throws SQLException {
+    ResultSetMetaData metaData = resultSet.getMetaData();
+    int columnCount = metaData.getColumnCount();
+    String[] labels = new String[columnCount];
+    int[] widths = new int[columnCount];
+    boolean[] rightAligned = new boolean[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      labels[i] = sanitize(metaData.getColumnLabel(i + 1));
+      widths[i] = labels[i].length();
+      rightAligned[i] = isNumeric(metaData.getColumnType(i + 1));
+      if (lookahead == 0) {
+        widths[i] = Math.max(widths[i], Math.min(metaData.getColumnDisplaySize(i + 1), maxColumnWidth));
+      }
+    }
+
+    List<String[]> firstRows = new ArrayList<>(Math.min(lookahead, DEFAULT_LOOKAHEAD));
+    boolean more = true;
+    while (firstRows.size() < lookahead && (more = resultSet.next())) {
+      String[] values = readRow(resultSet, columnCount);
+      int rowBytes = 0;
+      for (int i = 0; i < columnCount; i++) {
+        widths[i] = Math.max(widths[i], values[i].length());
+        rowBytes += values[i].length();
+      }
+      firstRows.add(values);
+      stats.fetched(rowBytes);
+    }
+    if (!more) {
+      stats.fetchedAll();
+    }
+    for (int i = 0; i < columnCount; i++) {
+      widths[i] = Math.max(1, Math.min(widths[i], maxColumnWidth));
+    }
+
+    String separator = separator(widths);
+    system2.printlnOut(separator);
+    printRow(labels, widths, new boolean[columnCount]);
+    system2.printlnOut(separator);
+
+    long rows = firstRows.size();
+    for (String[] values : firstRows) {
+      printRow(values, widths, rightAligned);
+    }
+    firstRows.clear();
+    stats.formatted();
+
+    String[] values = new String[columnCount];
+    while (more && resultSet.next()) {
+      int rowBytes = 0;
+      for (int i = 0; i < columnCount; i++) {
+        values[i] = value(resultSet, i + 1);
+        rowBytes += values[i].length();
+      }
+      stats.fetched(rowBytes);
+      printRow(values, widths, rightAligned);
+      stats.formatted();
+      rows++;
+    }
+    if (more) {
+      stats.fetchedAll();
+    }
+    system2.printlnOut(separator);
+    system2.printlnOut(String.format("(%d row(s))", rows));
+    return rows;
+  }
+
+  private static String[] readRow(ResultSet resultSet, int columnCount) throws SQLException {
+    String[] values = new String[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      values[i] = value(resultSet, i + 1);
+    }
+    return values;
+  }
+
+  private static String value(ResultSet resultSet, int columnIndex) throws SQLException {
+    String value = resultSet.getString(columnIndex);
+    return value != null ? sanitize(value) : JdbcShell.NULL_VALUE;
+  }
+
+  /**
+   * Replace line breaks, tabs and other control characters, that would break the alignment.
+   */
+  private static String sanitize(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (Character.isISOControl(value.charAt(i))) {
+        char[] chars = value.toCharArray();
+        for (int j = i; j < chars.length; j++) {
+          if (Character.isISOControl(chars[j])) {
+            chars[j] = ' ';
+          }
+        }
+        return new String(chars);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Print a row, on multiple lines if values wrap:
+   * the n-th line of a row shows the n-th slice of the width of its column of each value.
+   */
+  private void printRow(String[] values, int[] widths, boolean[] rightAligned) {
+    boolean remaining = true;
+    for (int lineNumber = 0; remaining; lineNumber++) {
+      remaining = false;
+      line.setLength(0);
+      line.append('|');
+      for (int i = 0; i < values.length; i++) {
+        String value = values[i];
+        int width = widths[i];
+        line.append(' ');
+        if (overflow == Overflow.TRUNCATE && value.length() > width) {
+          line.append(value, 0, width - 1).append(TRUNCATION_MARK);
+        } else {
+          int start = Math.min(lineNumber * width, value.length());
+          int end = Math.min(start + width, value.length());
+          appendPadded(value, start, end, width, rightAligned[i] && lineNumber == 0);
+          remaining |= value.length() > end;
+        }
+        line.append(" |");
+      }
+      system2.printlnOut(line.toString());
+    }
+  }
+
+  private void appendPadded(String value, int start, int end, int width, boolean rightAligned) {
+    int padding = width - (end - start);
+    if (rightAligned) {
+      pad(padding);
+    }
+    line.append(value, start, end);
+    if (!rightAligned) {
+      pad(padding);
+    }
+  }
+
+  private void pad(int count) {
+    for (int i = 0; i < count; i++) {
+      line.append(' ');
+    }
+  }
+
+  private static String separator(int[] widths) {
+    StringBuilder sb = new StringBuilder("+");
+    for (int width : widths) {
+      for (int i = 0; i < width + 2; i++) {
+        sb.append('-');
+      }
+      sb.append('+');
+    }
+    return sb.toString();
+  }
+
+  private static boolean isNumeric(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+      case Types.NUMERIC:
+      case Types.DECIMAL:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
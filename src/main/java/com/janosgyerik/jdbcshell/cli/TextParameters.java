@@ -0,0 +1,91 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Bind values parsed from text files to statement parameters,
+ * converted to the SQL type of the target column.
+ */
+class TextParameters {
+  private TextParameters() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * @throws IllegalArgumentException if the value cannot be converted to the SQL type
+   */
+  static void bind(PreparedStatement statement, int index, @Nullable String value, int sqlType) throws SQLException {
+    if (value == null) {
+      statement.setNull(index, sqlType);
+      return;
+    }
+
+    String trimmed = value.trim();
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        statement.setInt(index, Integer.parseInt(trimmed));
+        break;
+      case Types.BIGINT:
+        statement.setLong(index, Long.parseLong(trimmed));
+        break;
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        statement.setBigDecimal(index, new BigDecimal(trimmed));
+        break;
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        statement.setDouble(index, Double.parseDouble(trimmed));
+        break;
+      case Types.BIT:
+      case Types.BOOLEAN:
+        statement.setBoolean(index, parseBoolean(trimmed));
+        break;
+      case Types.DATE:
+        statement.setDate(index, Date.valueOf(trimmed));
+        break;
+      case Types.TIME:
+        statement.setTime(index, Time.valueOf(trimmed));
+        break;
+      case Types.TIMESTAMP:
+        statement.setTimestamp(index, Timestamp.valueOf(trimmed.replace('T', ' ')));
+        break;
+      default:
+        statement.setString(index, value);
+    }
+  }
+
+  /**
+   * @throws IllegalArgumentException if the value is not one of the usual spellings of true or false
+   */
+  static boolean parseBoolean(String value) {
+    switch (value.toLowerCase(Locale.ENGLISH)) {
+      case "1":
+      case "true":
+      case "t":
+      case "yes":
+      case "y":
+      case "on":
+        return true;
+      case "0":
+      case "false":
+      case "f":
+      case "no":
+      case "n":
+      case "off":
+        return false;
+      default:
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+  }
+}
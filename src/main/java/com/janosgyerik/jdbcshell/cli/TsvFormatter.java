@@ -0,0 +1,104 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+/**
+ * Print a result set as tab-separated lines, a header line with the column labels followed by one line per row.
+ */
+class TsvFormatter {
+  private static final char COLUMN_SEPARATOR = '\t';
+
+  private final Consumer<CharSequence> out;
+  private final StringBuilder line = new StringBuilder();
+
+  /**
+   * @param out destination of the lines, for example System2::printlnOut. The line passed is reused for the next one,
+   * so that no String is created per row: a destination that keeps it must copy it.
+   */
+  TsvFormatter(Consumer<CharSequence> out) {
+    this.out = out;
+  }
+
+  void printHeader(ResultSetMetaData metaData) throws SQLException {
+    line.setLength(0);
+    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+      appendColumn(i, metaData.getColumnLabel(i));
+    }
+    out.accept(line);
+  }
+
+  /**
+   * Print the remaining rows of the result set.
+   * <p>
+   * Each row is read into a single-row batch, so numeric values are formatted without being boxed.
+   *
+   * @return the number of rows printed
+   */
+  long printRows(ResultSet resultSet, StatementStats stats) throws SQLException {
+    RowBatch batch = new RowBatch(RowBatch.columnTypes(resultSet.getMetaData()), 1);
+    long rows = 0;
+    while (resultSet.next()) {
+      batch.clear();
+      batch.add(resultSet);
+      stats.fetched((int) batch.bytes());
+      printRow(batch, 0);
+      stats.formatted();
+      rows++;
+    }
+    stats.fetchedAll();
+    return rows;
+  }
+
+  /**
+   * Print the remaining rows of the result set, fetched in batches by the reader.
+   *
+   * @return the number of rows printed
+   */
+  long printRows(PrefetchingReader reader, StatementStats stats) throws SQLException {
+    long rows = 0;
+    RowBatch batch;
+    while ((batch = reader.next()) != null) {
+      stats.fetchedBatch(batch.rowCount(), batch.bytes());
+      for (int row = 0; row < batch.rowCount(); row++) {
+        printRow(batch, row);
+      }
+      rows += batch.rowCount();
+      reader.release(batch);
+      stats.formatted();
+    }
+    stats.fetchedAll();
+    return rows;
+  }
+
+  private void printRow(RowBatch batch, int row) {
+    line.setLength(0);
+    appendRow(line, batch, row);
+    out.accept(line);
+  }
+
+  /**
+   * Append a row of the batch as a tab-separated line, without line separator.
+   */
+  static void appendRow(StringBuilder sb, RowBatch batch, int row) {
+    for (int i = 0; i < batch.columnCount; i++) {
+      if (i > 0) {
+        sb.append(COLUMN_SEPARATOR);
+      }
+      if (batch.isNull(row, i)) {
+        sb.append(JdbcShell.NULL_VALUE);
+      } else {
+        batch.appendTo(sb, row, i);
+      }
+    }
+  }
+
+  private void appendColumn(int columnIndex, String value) {
+    if (columnIndex > 1) {
+      line.append(COLUMN_SEPARATOR);
+    }
+    line.append(value);
+  }
+}
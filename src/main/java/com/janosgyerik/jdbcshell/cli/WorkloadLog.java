@@ -0,0 +1,314 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A compact append-only binary log of executed statements, to replay a captured workload with its original timing.
+ * <p>
+ * The log starts with a magic number and a version, followed by records of two kinds:
+ * the text of a statement, defined once per session and then referenced by number,
+ * and an executed statement, with its session, start time, duration, and the bind values of each row of a batch.
+ * Numbers are variable-length, so that an executed statement without bind values takes about 25 bytes.
+ * <p>
+ * Each record is appended with a single write to a file opened in append mode, so that concurrent sessions,
+ * such as the requests of a daemon, can capture to the same log. Records are written when statements complete,
+ * so they are only roughly in order of start time.
+ */
+class WorkloadLog {
+  private static final byte[] MAGIC = {'J', 'S', 'W', 'L'};
+  private static final int VERSION = 1;
+
+  private static final int SQL_RECORD = 1;
+  private static final int STATEMENT_RECORD = 2;
+
+  private static final int NULL_VALUE = 0;
+  private static final int QUOTED_VALUE = 1;
+  private static final int UNQUOTED_VALUE = 2;
+
+  private WorkloadLog() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * A statement as it was executed: either a statement without parameters,
+   * or a batch of the shape of statements, with the bind values of each.
+   */
+  @Immutable
+  static class Entry {
+    final long sessionId;
+    final String sql;
+    final long startMicros;
+    final long durationNanos;
+    final List<StatementShape> batch;
+
+    Entry(long sessionId, String sql, long startMicros, long durationNanos, List<StatementShape> batch) {
+      this.sessionId = sessionId;
+      this.sql = sql;
+      this.startMicros = startMicros;
+      this.durationNanos = durationNanos;
+      this.batch = batch;
+    }
+  }
+
+  /**
+   * Append the statements of a session to a log, creating it if it does not exist.
+   */
+  @NotThreadSafe
+  static class Writer implements Closeable {
+    /**
+     * The wall clock time of a point on the monotonic clock, shared by the sessions of the same process,
+     * so that their statements are timed consistently with each other.
+     */
+    private static final long EPOCH_MICROS = System.currentTimeMillis() * 1000;
+    private static final long EPOCH_NANOS = System.nanoTime();
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long sessionId;
+    private final Map<String, Integer> sqlIds = new HashMap<>();
+    private final Encoder record = new Encoder();
+
+    /**
+     * @param sessionId non-negative, so that it takes at most 9 bytes per record
+     */
+    Writer(Path path, long sessionId) {
+      if (sessionId < 0) {
+        throw new IllegalArgumentException("Session id must not be negative: " + sessionId);
+      }
+      this.path = path;
+      this.sessionId = sessionId;
+      this.channel = open(path);
+    }
+
+    private static FileChannel open(Path path) {
+      try {
+        try {
+          FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+          Encoder header = new Encoder();
+          header.writeRaw(MAGIC);
+          header.writeVarLong(VERSION);
+          header.writeTo(channel);
+          return channel;
+        } catch (FileAlreadyExistsException e) {
+          return FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not open capture log " + path, e);
+      }
+    }
+
+    /**
+     * @param startNanos System.nanoTime() when the statement started
+     */
+    void statement(String sql, long startNanos, long durationNanos) {
+      write(sql, startNanos, durationNanos, Collections.emptyList());
+    }
+
+    /**
+     * @param batch the statements executed as a batch of their common shape
+     */
+    void batch(List<StatementShape> batch, long startNanos, long durationNanos) {
+      write(batch.get(0).sql, startNanos, durationNanos, batch);
+    }
+
+    private void write(String sql, long startNanos, long durationNanos, List<StatementShape> batch) {
+      record.reset();
+      Integer sqlId = sqlIds.get(sql);
+      if (sqlId == null) {
+        sqlId = sqlIds.size();
+        sqlIds.put(sql, sqlId);
+        record.writeVarLong(SQL_RECORD);
+        record.writeVarLong(sessionId);
+        record.writeVarLong(sqlId);
+        record.writeString(sql);
+      }
+      record.writeVarLong(STATEMENT_RECORD);
+      record.writeVarLong(sessionId);
+      record.writeVarLong(sqlId);
+      record.writeVarLong(EPOCH_MICROS + (startNanos - EPOCH_NANOS) / 1000);
+      record.writeVarLong(durationNanos);
+      record.writeVarLong(batch.size());
+      for (StatementShape row : batch) {
+        record.writeVarLong(row.values.size());
+        for (int i = 0; i < row.values.size(); i++) {
+          String value = row.values.get(i);
+          record.writeVarLong(value == null ? NULL_VALUE : row.quoted[i] ? QUOTED_VALUE : UNQUOTED_VALUE);
+          if (value != null) {
+            record.writeString(value);
+          }
+        }
+      }
+      try {
+        record.writeTo(channel);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Could not write to capture log " + path, e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  /**
+   * Read the statements of a log, in the order they were written.
+   * A truncated last record, for example of a process that was killed while writing it, is ignored.
+   */
+  @NotThreadSafe
+  static class Reader implements Closeable {
+    private final DataInputStream in;
+    private final Map<Long, Map<Long, String>> sqlBySession = new HashMap<>();
+
+    /**
+     * @throws IllegalArgumentException if the file is not a capture log
+     */
+    Reader(Path path) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+      byte[] magic = new byte[MAGIC.length];
+      try {
+        in.readFully(magic);
+        long version = readVarLong(in);
+        if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+          throw new IllegalArgumentException("Not a capture log of this version of jdbcshell: " + path);
+        }
+      } catch (EOFException e) {
+        in.close();
+        throw new IllegalArgumentException("Not a capture log of this version of jdbcshell: " + path, e);
+      } catch (RuntimeException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    /**
+     * @return the next statement, or null at the end of the log
+     */
+    @CheckForNull
+    Entry next() throws IOException {
+      try {
+        while (true) {
+          int type = in.read();
+          if (type < 0) {
+            return null;
+          } else if (type == SQL_RECORD) {
+            long sessionId = readVarLong(in);
+            long sqlId = readVarLong(in);
+            sqlBySession.computeIfAbsent(sessionId, id -> new HashMap<>()).put(sqlId, readString(in));
+          } else if (type == STATEMENT_RECORD) {
+            return readStatement();
+          } else {
+            throw new IOException("Unexpected record type in capture log: " + type);
+          }
+        }
+      } catch (EOFException e) {
+        return null;
+      }
+    }
+
+    private Entry readStatement() throws IOException {
+      long sessionId = readVarLong(in);
+      long sqlId = readVarLong(in);
+      String sql = sqlBySession.getOrDefault(sessionId, Collections.emptyMap()).get(sqlId);
+      if (sql == null) {
+        throw new IOException(String.format("Undefined statement %d of session %d in capture log", sqlId, sessionId));
+      }
+      long startMicros = readVarLong(in);
+      long durationNanos = readVarLong(in);
+      int rows = (int) readVarLong(in);
+      List<StatementShape> batch = new ArrayList<>(rows);
+      for (int row = 0; row < rows; row++) {
+        int count = (int) readVarLong(in);
+        List<String> values = new ArrayList<>(count);
+        boolean[] quoted = new boolean[count];
+        for (int i = 0; i < count; i++) {
+          long kind = readVarLong(in);
+          values.add(kind == NULL_VALUE ? null : readString(in));
+          quoted[i] = kind == QUOTED_VALUE;
+        }
+        batch.add(new StatementShape(sql, values, quoted));
+      }
+      return new Entry(sessionId, sql, startMicros, durationNanos, batch);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Unsigned LEB128, 7 bits per byte.
+   */
+  private static long readVarLong(InputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed number in capture log");
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[(int) readVarLong(in)];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static class Encoder extends ByteArrayOutputStream {
+    void writeVarLong(long value) {
+      long remaining = value;
+      while ((remaining & ~0x7FL) != 0) {
+        write((int) (remaining & 0x7F) | 0x80);
+        remaining >>>= 7;
+      }
+      write((int) remaining);
+    }
+
+    void writeString(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarLong(bytes.length);
+      writeRaw(bytes);
+    }
+
+    void writeRaw(byte[] bytes) {
+      write(bytes, 0, bytes.length);
+    }
+
+    void writeTo(FileChannel channel) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(buf, 0, count);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.stats.LatencyHistogram;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Replay the statements of a capture log with their original timing, and report latency percentiles per statement shape.
+ * <p>
+ * Each statement is started at its captured offset from the first one, divided by -speed. The statements of a session
+ * are executed one after the other in their captured order, and the sessions concurrently on up to -threads connections,
+ * so a session whose statements take longer than captured falls behind instead of overlapping with itself.
+ * How late statements start is reported as the start lag: a high lag means the target database or the number
+ * of connections could not keep up with the captured rate.
+ * <p>
+ * Each statement runs in its own transaction, like the statements of -query and -script modes that were captured.
+ * Read-only queries are fetched to the last row and discarded.
+ */
+class WorkloadReplay {
+  /**
+   * Captured time within which records may be out of order, as they are written when statements complete.
+   */
+  private static final long REORDER_WINDOW_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+  private final System2 system2;
+  private final ConnectionPool pool;
+  private final Path logPath;
+  private final int speed;
+  private final ExecutorService executor;
+
+  // used by the dispatching thread only
+  private final Map<Long, SessionQueue> sessions = new HashMap<>();
+  private long startNanos;
+  private long firstMicros = -1;
+
+  private final Map<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+  private final LatencyHistogram lag = new LatencyHistogram();
+  private final AtomicLong statements = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicBoolean failurePrinted = new AtomicBoolean();
+
+  WorkloadReplay(System2 system2, ConnectionPool pool, Path logPath, ShellOptions options) {
+    this.system2 = system2;
+    this.pool = pool;
+    this.logPath = logPath;
+    this.speed = options.speed;
+    this.executor = Executors.newFixedThreadPool(options.threads);
+  }
+
+  void run() throws IOException, InterruptedException {
+    startNanos = System.nanoTime();
+    try (WorkloadLog.Reader reader = new WorkloadLog.Reader(logPath)) {
+      PriorityQueue<WorkloadLog.Entry> window = new PriorityQueue<>(Comparator.comparingLong((WorkloadLog.Entry entry) -> entry.startMicros));
+      WorkloadLog.Entry entry;
+      while ((entry = reader.next()) != null) {
+        window.add(entry);
+        dispatch(window, entry.startMicros - REORDER_WINDOW_MICROS);
+      }
+      dispatch(window, Long.MAX_VALUE);
+    } finally {
+      executor.shutdown();
+      while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+        // statements of a slow target may still be running long after the last one started
+      }
+    }
+    long millis = (System.nanoTime() - startNanos) / 1_000_000;
+
+    printReport();
+    system2.printlnErr(String.format(Locale.ENGLISH, "Replayed %d statement(s) of %d session(s) from %s in %d ms at %dx speed; %d failed",
+      statements.get(), sessions.size(), logPath, millis, speed, failures.get()));
+    synchronized (lag) {
+      system2.printlnErr("Start lag: " + lag.formatPercentiles());
+    }
+  }
+
+  /**
+   * Hand the statements that started before the given time over to their sessions, each when it is due.
+   */
+  private void dispatch(PriorityQueue<WorkloadLog.Entry> window, long untilMicros) throws InterruptedException {
+    while (!window.isEmpty() && window.peek().startMicros < untilMicros) {
+      WorkloadLog.Entry entry = window.poll();
+      if (firstMicros < 0) {
+        firstMicros = entry.startMicros;
+      }
+      // a statement older than the window is late already, and starts right away
+      long dueNanos = startNanos + Math.max(0, entry.startMicros - firstMicros) * 1000 / speed;
+      long waitNanos = dueNanos - System.nanoTime();
+      if (waitNanos > 0) {
+        TimeUnit.NANOSECONDS.sleep(waitNanos);
+      }
+      sessions.computeIfAbsent(entry.sessionId, id -> new SessionQueue()).add(entry, dueNanos);
+    }
+  }
+
+  /**
+   * Print a line per statement shape, the shapes taking the longest in total first.
+   */
+  private void printReport() {
+    List<ShapeStats> sorted = new ArrayList<>(shapes.values());
+    sorted.sort(Comparator.comparingLong(ShapeStats::totalNanos).reversed());
+    system2.printlnOut("SHAPE\tCOUNT\tFAILED\tP50_MS\tP99_MS\tMAX_MS\tCAPTURED_P50_MS\tCAPTURED_P99_MS");
+    for (ShapeStats stats : sorted) {
+      system2.printlnOut(stats.format());
+    }
+    system2.flushOut();
+  }
+
+  private void execute(WorkloadLog.Entry entry, long dueNanos) {
+    ShapeStats stats = shapes.computeIfAbsent(SqlText.shape(entry.sql), ShapeStats::new);
+    statements.incrementAndGet();
+    try (Connection connection = pool.borrow()) {
+      long start = System.nanoTime();
+      synchronized (lag) {
+        lag.record(start - dueNanos);
+      }
+      connection.setAutoCommit(false);
+      try {
+        if (entry.batch.isEmpty() && SqlText.hasQuestionMark(entry.sql)) {
+          // captured as a plain statement, as the ? is an operator, which a prepared statement would take for a parameter
+          try (Statement statement = connection.createStatement()) {
+            Benchmark.executeOnce(statement, entry.sql);
+          }
+        } else {
+          try (PreparedStatement statement = connection.prepareStatement(entry.sql)) {
+            if (entry.batch.isEmpty()) {
+              Benchmark.executeOnce(statement);
+            } else {
+              executeBatch(statement, entry.batch);
+            }
+          }
+        }
+        connection.commit();
+      } catch (SQLException | RuntimeException e) {
+        rollback(connection, e);
+        throw e;
+      }
+      stats.executed(System.nanoTime() - start, entry.durationNanos);
+    } catch (SQLException | RuntimeException e) {
+      stats.failed(entry.durationNanos);
+      failures.incrementAndGet();
+      if (failurePrinted.compareAndSet(false, true)) {
+        // only the first, as a statement that fails usually fails every time
+        system2.printlnErr("Replayed statement failed: " + e.getMessage() + ": " + entry.sql);
+      }
+    }
+  }
+
+  private static void rollback(Connection connection, Exception failure) {
+    try {
+      connection.rollback();
+    } catch (SQLException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  private static void executeBatch(PreparedStatement statement, List<StatementShape> batch) throws SQLException {
+    int[] parameterTypes = ScriptBatcher.parameterTypes(statement, batch.get(0).values.size());
+    for (StatementShape row : batch) {
+      for (int i = 0; i < row.values.size(); i++) {
+        ScriptBatcher.bind(statement, parameterTypes, i + 1, row.values.get(i), row.quoted[i]);
+      }
+      statement.addBatch();
+    }
+    statement.executeBatch();
+  }
+
+  /**
+   * The statements of a session waiting to be executed, executed by at most one thread at a time, in order.
+   */
+  @ThreadSafe
+  private class SessionQueue implements Runnable {
+    @GuardedBy("this")
+    private final Deque<WorkloadLog.Entry> entries = new ArrayDeque<>();
+    @GuardedBy("this")
+    private final Deque<Long> dueNanos = new ArrayDeque<>();
+    @GuardedBy("this")
+    private boolean running;
+
+    synchronized void add(WorkloadLog.Entry entry, long due) {
+      entries.add(entry);
+      dueNanos.add(due);
+      if (!running) {
+        running = true;
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        WorkloadLog.Entry entry;
+        long due;
+        synchronized (this) {
+          entry = entries.poll();
+          if (entry == null) {
+            running = false;
+            return;
+          }
+          due = dueNanos.poll();
+        }
+        execute(entry, due);
+      }
+    }
+  }
+
+  @ThreadSafe
+  private static class ShapeStats {
+    private final String shape;
+    @GuardedBy("this")
+    private final LatencyHistogram replayed = new LatencyHistogram();
+    @GuardedBy("this")
+    private final LatencyHistogram captured = new LatencyHistogram();
+    @GuardedBy("this")
+    private long failed;
+    @GuardedBy("this")
+    private long totalNanos;
+
+    ShapeStats(String shape) {
+      this.shape = shape;
+    }
+
+    synchronized void executed(long nanos, long capturedNanos) {
+      replayed.record(nanos);
+      captured.record(capturedNanos);
+      totalNanos += nanos;
+    }
+
+    synchronized void failed(long capturedNanos) {
+      captured.record(capturedNanos);
+      failed++;
+    }
+
+    synchronized long totalNanos() {
+      return totalNanos;
+    }
+
+    synchronized String format() {
+      return String.format(Locale.ENGLISH, "%s\t%d\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f", shape, replayed.totalCount() + failed, failed,
+        millis(replayed.valueAtPercentile(50)), millis(replayed.valueAtPercentile(99)), millis(replayed.max()),
+        millis(captured.valueAtPercentile(50)), millis(captured.valueAtPercentile(99)));
+    }
+
+    private static double millis(long nanos) {
+      return nanos / 1e6;
+    }
+  }
+}
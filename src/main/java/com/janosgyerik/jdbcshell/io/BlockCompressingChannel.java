@@ -0,0 +1,160 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compress the bytes written into a channel in parallel, like pigz: the stream is cut into blocks,
+ * each block is compressed independently on a fork-join pool, and the compressed blocks are written in order.
+ * <p>
+ * In gzip format each block is a gzip member, and concatenated members decompress as a single stream with gzip and zcat.
+ * In lz4 format the blocks are the independent blocks of a single LZ4 frame, faster to compress and decompress
+ * at a lower ratio. Blocks do not share dictionaries, which costs a little ratio compared to a single stream.
+ * <p>
+ * At most two blocks per thread of the pool are in flight, so that a slow destination slows down the writer
+ * instead of filling the memory. A partial block is only compressed when the channel is closed.
+ */
+public class BlockCompressingChannel implements WritableByteChannel {
+  public static final int DEFAULT_BLOCK_SIZE = Lz4.MAX_BLOCK_SIZE;
+
+  public enum Format {
+    GZIP, LZ4
+  }
+
+  private final WritableByteChannel channel;
+  private final Format format;
+  private final ForkJoinPool pool;
+  private final int blockSize;
+  private final int maxPendingBlocks;
+  private final Deque<ForkJoinTask<byte[]>> pending = new ArrayDeque<>();
+
+  private byte[] block;
+  private int blockLength;
+  private long blocks;
+  private boolean headerWritten;
+  private boolean open = true;
+
+  public BlockCompressingChannel(WritableByteChannel channel, Format format) {
+    this(channel, format, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * @param blockSize size of the uncompressed blocks, at most 1 MB in lz4 format
+   */
+  public BlockCompressingChannel(WritableByteChannel channel, Format format, ForkJoinPool pool, int blockSize) {
+    if (blockSize <= 0 || format == Format.LZ4 && blockSize > Lz4.MAX_BLOCK_SIZE) {
+      throw new IllegalArgumentException("Invalid block size for " + format + ": " + blockSize);
+    }
+    this.channel = channel;
+    this.format = format;
+    this.pool = pool;
+    this.blockSize = blockSize;
+    this.maxPendingBlocks = 2 * pool.getParallelism();
+    this.block = new byte[blockSize];
+  }
+
+  @Override
+  public int write(ByteBuffer src) throws IOException {
+    int written = src.remaining();
+    while (src.hasRemaining()) {
+      int length = Math.min(src.remaining(), blockSize - blockLength);
+      src.get(block, blockLength, length);
+      blockLength += length;
+      if (blockLength == blockSize) {
+        submitBlock();
+      }
+    }
+    return written;
+  }
+
+  private void submitBlock() throws IOException {
+    byte[] data = block;
+    int length = blockLength;
+    pending.add(pool.submit(() -> compress(data, length)));
+    blocks++;
+    block = new byte[blockSize];
+    blockLength = 0;
+
+    while (pending.size() > maxPendingBlocks) {
+      writeNextBlock();
+    }
+    // write the blocks that are done without waiting, to overlap writing with compressing
+    while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+      writeNextBlock();
+    }
+  }
+
+  private byte[] compress(byte[] data, int length) {
+    if (format == Format.LZ4) {
+      return Lz4.frameBlock(data, length);
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(length / 2);
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes, 64 * 1024)) {
+      out.write(data, 0, length);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private void writeNextBlock() throws IOException {
+    writeHeaderIfNeeded();
+    writeFully(pending.removeFirst().join());
+  }
+
+  private void writeHeaderIfNeeded() throws IOException {
+    if (!headerWritten && format == Format.LZ4) {
+      writeFully(Lz4.frameHeader());
+    }
+    headerWritten = true;
+  }
+
+  private void writeFully(byte[] bytes) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Compress the partial block, write the pending blocks, end the stream and close the underlying channel.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!open) {
+      return;
+    }
+    open = false;
+    try {
+      // an empty gzip file is not valid, unlike a gzip member of no data
+      if (blockLength > 0 || blocks == 0 && format == Format.GZIP) {
+        submitBlock();
+      }
+      while (!pending.isEmpty()) {
+        writeNextBlock();
+      }
+      writeHeaderIfNeeded();
+      if (format == Format.LZ4) {
+        writeFully(Lz4.endMark());
+      }
+    } finally {
+      for (ForkJoinTask<byte[]> task : pending) {
+        task.cancel(false);
+      }
+      channel.close();
+    }
+  }
+}
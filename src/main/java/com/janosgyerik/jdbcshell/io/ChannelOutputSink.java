@@ -0,0 +1,136 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Encode lines into a large direct buffer, and write the buffer to a channel
+ * only when it is full or explicitly flushed.
+ */
+public class ChannelOutputSink implements OutputSink {
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final WritableByteChannel channel;
+  private final ByteBuffer buffer;
+  private final CharsetEncoder encoder;
+  private final boolean asciiCompatible;
+
+  public ChannelOutputSink(WritableByteChannel channel, Charset charset, int bufferSize) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.encoder = charset.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    this.asciiCompatible = charset.equals(StandardCharsets.UTF_8)
+      || charset.equals(StandardCharsets.US_ASCII)
+      || charset.equals(StandardCharsets.ISO_8859_1);
+  }
+
+  @Override
+  public void println(CharSequence line) {
+    write(line);
+    write(LINE_SEPARATOR);
+  }
+
+  private void write(CharSequence s) {
+    if (!asciiCompatible) {
+      encode(CharBuffer.wrap(s));
+      return;
+    }
+
+    // fast path: ASCII characters are copied as is, the rest goes through the encoder
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        encode(CharBuffer.wrap(s, i, length));
+        return;
+      }
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.put((byte) c);
+    }
+  }
+
+  private void encode(CharBuffer chars) {
+    encoder.reset();
+    CoderResult result;
+    do {
+      result = encoder.encode(chars, buffer, true);
+      if (result.isOverflow()) {
+        drain();
+      }
+    } while (result.isOverflow());
+
+    do {
+      result = encoder.flush(buffer);
+      if (result.isOverflow()) {
+        drain();
+      }
+    } while (result.isOverflow());
+  }
+
+  private void drain() {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      // on failure the pending output is dropped, so that later flushes don't fail again
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Copy the file to the channel directly, without going through the buffer.
+   */
+  @Override
+  public void append(Path file) {
+    flush();
+    try (FileChannel in = FileChannel.open(file)) {
+      long size = in.size();
+      long position = 0;
+      while (position < size) {
+        position += in.transferTo(position, size - position, channel);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void flush() {
+    if (buffer.position() > 0) {
+      drain();
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
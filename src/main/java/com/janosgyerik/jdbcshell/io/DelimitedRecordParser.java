@@ -0,0 +1,69 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.util.List;
+
+/**
+ * Parse records of delimiter-separated values, such as CSV and TSV.
+ * <p>
+ * Fields may be enclosed in double quotes, in which case they may contain delimiters,
+ * line breaks, and escaped double quotes ("").
+ * Empty unquoted fields are parsed as null, empty quoted fields as empty strings.
+ * <p>
+ * Not thread-safe: create one parser per thread.
+ */
+public class DelimitedRecordParser {
+  private static final char QUOTE = '"';
+
+  private final char delimiter;
+  private final StringBuilder field = new StringBuilder();
+
+  public DelimitedRecordParser(char delimiter) {
+    this.delimiter = delimiter;
+  }
+
+  /**
+   * Parse a record into the specified list, replacing its content.
+   *
+   * @return false if the record ends inside a quoted field, and so continues on the next line
+   */
+  public boolean parse(CharSequence record, List<String> fields) {
+    fields.clear();
+    field.setLength(0);
+    boolean inQuotes = false;
+    boolean quoted = false;
+
+    int length = record.length();
+    for (int i = 0; i < length; i++) {
+      char c = record.charAt(i);
+      if (inQuotes) {
+        if (c != QUOTE) {
+          field.append(c);
+        } else if (i + 1 < length && record.charAt(i + 1) == QUOTE) {
+          field.append(QUOTE);
+          i++;
+        } else {
+          inQuotes = false;
+        }
+      } else if (c == delimiter) {
+        addField(fields, quoted);
+        quoted = false;
+      } else if (c == QUOTE && field.length() == 0 && !quoted) {
+        inQuotes = true;
+        quoted = true;
+      } else {
+        field.append(c);
+      }
+    }
+
+    if (inQuotes) {
+      return false;
+    }
+    addField(fields, quoted);
+    return true;
+  }
+
+  private void addField(List<String> fields, boolean quoted) {
+    fields.add(field.length() == 0 && !quoted ? null : field.toString());
+    field.setLength(0);
+  }
+}
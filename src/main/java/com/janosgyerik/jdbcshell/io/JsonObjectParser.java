@@ -0,0 +1,199 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.util.Map;
+
+/**
+ * Parse a JSON object into a flat map of its top-level members, as found in NDJSON files.
+ * <p>
+ * Strings are unescaped, numbers and booleans are kept as written,
+ * JSON null becomes null, and nested objects and arrays are kept as raw JSON text.
+ */
+public class JsonObjectParser {
+
+  private final StringBuilder sb = new StringBuilder();
+
+  private CharSequence text;
+  private int pos;
+
+  /**
+   * Parse a JSON object into the specified map, replacing its content.
+   *
+   * @throws IllegalArgumentException if the text is not a valid JSON object
+   */
+  public void parse(CharSequence json, Map<String, String> members) {
+    text = json;
+    pos = 0;
+    members.clear();
+
+    skipWhitespace();
+    expect('{');
+    skipWhitespace();
+    if (peek() == '}') {
+      pos++;
+    } else {
+      while (true) {
+        skipWhitespace();
+        String name = parseString();
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        members.put(name, parseValue());
+        skipWhitespace();
+        if (peek() == ',') {
+          pos++;
+        } else {
+          expect('}');
+          break;
+        }
+      }
+    }
+    skipWhitespace();
+    if (pos < text.length()) {
+      throw error("Unexpected content after JSON object");
+    }
+  }
+
+  private String parseValue() {
+    char c = peek();
+    switch (c) {
+      case '"':
+        return parseString();
+      case '{':
+      case '[':
+        return parseNested();
+      case 'n':
+        expectLiteral("null");
+        return null;
+      case 't':
+        expectLiteral("true");
+        return "true";
+      case 'f':
+        expectLiteral("false");
+        return "false";
+      default:
+        return parseNumber();
+    }
+  }
+
+  private String parseString() {
+    expect('"');
+    sb.setLength(0);
+    while (true) {
+      char c = next();
+      if (c == '"') {
+        return sb.toString();
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      char escaped = next();
+      switch (escaped) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (pos + 4 > text.length()) {
+            throw error("Truncated unicode escape");
+          }
+          try {
+            sb.append((char) Integer.parseInt(text.subSequence(pos, pos + 4).toString(), 16));
+          } catch (NumberFormatException e) {
+            throw error("Invalid unicode escape");
+          }
+          pos += 4;
+          break;
+        case '"':
+        case '\\':
+        case '/':
+          sb.append(escaped);
+          break;
+        default:
+          throw error("Invalid escape character: " + escaped);
+      }
+    }
+  }
+
+  private String parseNumber() {
+    int start = pos;
+    while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+      pos++;
+    }
+    if (start == pos) {
+      throw error("Unexpected character: " + peek());
+    }
+    return text.subSequence(start, pos).toString();
+  }
+
+  private String parseNested() {
+    int start = pos;
+    int depth = 0;
+    boolean inString = false;
+    do {
+      char c = next();
+      if (inString) {
+        if (c == '\\') {
+          next();
+        } else if (c == '"') {
+          inString = false;
+        }
+      } else if (c == '"') {
+        inString = true;
+      } else if (c == '{' || c == '[') {
+        depth++;
+      } else if (c == '}' || c == ']') {
+        depth--;
+      }
+    } while (depth > 0);
+    return text.subSequence(start, pos).toString();
+  }
+
+  private void expectLiteral(String literal) {
+    for (int i = 0; i < literal.length(); i++) {
+      expect(literal.charAt(i));
+    }
+  }
+
+  private void expect(char expected) {
+    char c = next();
+    if (c != expected) {
+      pos--;
+      throw error("Expected '" + expected + "', got '" + c + "'");
+    }
+  }
+
+  private char peek() {
+    if (pos >= text.length()) {
+      throw error("Unexpected end of input");
+    }
+    return text.charAt(pos);
+  }
+
+  private char next() {
+    char c = peek();
+    pos++;
+    return c;
+  }
+
+  private void skipWhitespace() {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private IllegalArgumentException error(String message) {
+    return new IllegalArgumentException(message + " at position " + pos);
+  }
+}
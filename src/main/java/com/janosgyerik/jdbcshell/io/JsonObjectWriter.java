@@ -0,0 +1,98 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Format flat JSON objects one member at a time, for example the lines of an NDJSON log.
+ * <p>
+ * The writer reuses its buffer: call {@link #begin()}, add the members, then {@link #end()} to get the text.
+ */
+public class JsonObjectWriter {
+
+  private final StringBuilder sb = new StringBuilder();
+  private boolean first;
+
+  public JsonObjectWriter begin() {
+    sb.setLength(0);
+    sb.append('{');
+    first = true;
+    return this;
+  }
+
+  public JsonObjectWriter add(String name, @Nullable CharSequence value) {
+    appendName(name);
+    if (value == null) {
+      sb.append("null");
+    } else {
+      appendString(value);
+    }
+    return this;
+  }
+
+  public JsonObjectWriter add(String name, long value) {
+    appendName(name);
+    sb.append(value);
+    return this;
+  }
+
+  /**
+   * Add a number with 3 decimals, enough for durations in milliseconds.
+   */
+  public JsonObjectWriter add(String name, double value) {
+    appendName(name);
+    sb.append(String.format(Locale.ENGLISH, "%.3f", value));
+    return this;
+  }
+
+  public JsonObjectWriter add(String name, boolean value) {
+    appendName(name);
+    sb.append(value);
+    return this;
+  }
+
+  public String end() {
+    sb.append('}');
+    return sb.toString();
+  }
+
+  private void appendName(String name) {
+    if (!first) {
+      sb.append(',');
+    }
+    first = false;
+    appendString(name);
+    sb.append(':');
+  }
+
+  private void appendString(CharSequence value) {
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+}
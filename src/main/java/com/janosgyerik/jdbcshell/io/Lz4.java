@@ -0,0 +1,190 @@
+package com.janosgyerik.jdbcshell.io;
+
+/**
+ * Compress blocks in the LZ4 block format, and frame them in the LZ4 frame format, readable by the lz4 command.
+ * <p>
+ * The compressor is the greedy single-probe hash table of the reference fast mode:
+ * it trades ratio for speed, and skips ahead faster over data that does not compress.
+ */
+final class Lz4 {
+  static final int MAGIC = 0x184D2204;
+  static final int MAX_BLOCK_SIZE = 1024 * 1024;
+  /**
+   * The high bit of a block size, set for blocks stored uncompressed.
+   */
+  static final int UNCOMPRESSED_FLAG = 0x80000000;
+
+  private static final int MIN_MATCH = 4;
+  private static final int MAX_OFFSET = 65535;
+  /**
+   * The last match must start at least 12 bytes before the end of the block.
+   */
+  private static final int MATCH_FIND_LIMIT = 12;
+  /**
+   * The last 5 bytes of a block are always literals.
+   */
+  private static final int LAST_LITERALS = 5;
+  private static final int HASH_LOG = 16;
+  private static final int SKIP_TRIGGER = 6;
+
+  private static final int PRIME1 = 0x9E3779B1;
+  private static final int PRIME2 = 0x85EBCA77;
+  private static final int PRIME3 = 0xC2B2AE3D;
+  private static final int PRIME4 = 0x27D4EB2F;
+  private static final int PRIME5 = 0x165667B1;
+
+  private Lz4() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * @return the frame header for independent blocks of the maximum block size, without checksums
+   */
+  static byte[] frameHeader() {
+    byte flags = 0x60; // version 01, independent blocks
+    byte blockDescriptor = 0x60; // blocks of at most 1 MB
+    byte headerChecksum = (byte) (xxHash32(new byte[]{flags, blockDescriptor}) >>> 8);
+    return new byte[]{0x04, 0x22, 0x4D, 0x18, flags, blockDescriptor, headerChecksum};
+  }
+
+  /**
+   * @return the mark at the end of a frame, an empty block
+   */
+  static byte[] endMark() {
+    return new byte[4];
+  }
+
+  /**
+   * Compress data into a block of a frame: its size, with the high bit set if stored uncompressed, and its content.
+   */
+  static byte[] frameBlock(byte[] src, int length) {
+    byte[] dst = new byte[4 + maxCompressedLength(length)];
+    int compressedLength = compress(src, length, dst, 4);
+    if (compressedLength >= length) {
+      byte[] stored = new byte[4 + length];
+      writeIntLE(stored, 0, length | UNCOMPRESSED_FLAG);
+      System.arraycopy(src, 0, stored, 4, length);
+      return stored;
+    }
+    writeIntLE(dst, 0, compressedLength);
+    byte[] block = new byte[4 + compressedLength];
+    System.arraycopy(dst, 0, block, 0, block.length);
+    return block;
+  }
+
+  static int maxCompressedLength(int length) {
+    return length + length / 255 + 16;
+  }
+
+  /**
+   * @return the length of the compressed block written to dst at the offset
+   */
+  static int compress(byte[] src, int length, byte[] dst, int offset) {
+    int op = offset;
+    int anchor = 0;
+    if (length >= MATCH_FIND_LIMIT + 1) {
+      int[] table = new int[1 << HASH_LOG];
+      int matchFindLimit = length - MATCH_FIND_LIMIT;
+      int matchEndLimit = length - LAST_LITERALS;
+      int ip = 0;
+      int misses = 1 << SKIP_TRIGGER;
+      while (ip <= matchFindLimit) {
+        int sequence = readInt(src, ip);
+        int hash = (sequence * PRIME1) >>> (32 - HASH_LOG);
+        // positions are stored plus one, so that 0 means none
+        int ref = table[hash] - 1;
+        table[hash] = ip + 1;
+        if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+          ip += misses++ >>> SKIP_TRIGGER;
+          continue;
+        }
+        misses = 1 << SKIP_TRIGGER;
+
+        int matchLength = MIN_MATCH;
+        while (ip + matchLength < matchEndLimit && src[ref + matchLength] == src[ip + matchLength]) {
+          matchLength++;
+        }
+        op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+        ip += matchLength;
+        anchor = ip;
+      }
+    }
+    op = writeLastLiterals(src, anchor, length - anchor, dst, op);
+    return op - offset;
+  }
+
+  private static int writeSequence(byte[] src, int literalStart, int literalLength, byte[] dst, int op, int matchOffset, int matchLength) {
+    int tokenPosition = op++;
+    int literalNibble = Math.min(literalLength, 15);
+    op = writeLength(dst, op, literalLength, literalNibble);
+    System.arraycopy(src, literalStart, dst, op, literalLength);
+    op += literalLength;
+    dst[op++] = (byte) matchOffset;
+    dst[op++] = (byte) (matchOffset >>> 8);
+    int extraMatchLength = matchLength - MIN_MATCH;
+    int matchNibble = Math.min(extraMatchLength, 15);
+    op = writeLength(dst, op, extraMatchLength, matchNibble);
+    dst[tokenPosition] = (byte) ((literalNibble << 4) | matchNibble);
+    return op;
+  }
+
+  private static int writeLastLiterals(byte[] src, int literalStart, int literalLength, byte[] dst, int op) {
+    int literalNibble = Math.min(literalLength, 15);
+    dst[op++] = (byte) (literalNibble << 4);
+    op = writeLength(dst, op, literalLength, literalNibble);
+    System.arraycopy(src, literalStart, dst, op, literalLength);
+    return op + literalLength;
+  }
+
+  /**
+   * Write the part of a length that does not fit its nibble of the token, as bytes of 255 and a remainder.
+   */
+  private static int writeLength(byte[] dst, int op, int length, int nibble) {
+    if (nibble < 15) {
+      return op;
+    }
+    int remaining = length - 15;
+    while (remaining >= 255) {
+      dst[op++] = (byte) 255;
+      remaining -= 255;
+    }
+    dst[op++] = (byte) remaining;
+    return op;
+  }
+
+  private static int readInt(byte[] b, int i) {
+    return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+  }
+
+  private static void writeIntLE(byte[] b, int i, int value) {
+    b[i] = (byte) value;
+    b[i + 1] = (byte) (value >>> 8);
+    b[i + 2] = (byte) (value >>> 16);
+    b[i + 3] = (byte) (value >>> 24);
+  }
+
+  /**
+   * XXH32 with seed 0 of fewer than 16 bytes, as used by the checksum of frame headers.
+   */
+  static int xxHash32(byte[] input) {
+    if (input.length >= 16) {
+      throw new IllegalArgumentException("Expected fewer than 16 bytes, got: " + input.length);
+    }
+    int hash = PRIME5 + input.length;
+    int i = 0;
+    for (; i + 4 <= input.length; i += 4) {
+      hash += readInt(input, i) * PRIME3;
+      hash = Integer.rotateLeft(hash, 17) * PRIME4;
+    }
+    for (; i < input.length; i++) {
+      hash += (input[i] & 0xFF) * PRIME5;
+      hash = Integer.rotateLeft(hash, 11) * PRIME1;
+    }
+    hash ^= hash >>> 15;
+    hash *= PRIME2;
+    hash ^= hash >>> 13;
+    hash *= PRIME3;
+    hash ^= hash >>> 16;
+    return hash;
+  }
+}
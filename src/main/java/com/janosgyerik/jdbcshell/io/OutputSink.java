@@ -0,0 +1,38 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+
+/**
+ * Destination of lines of output, buffered until explicitly flushed or closed.
+ *
+ * @see OutputSinks utility class for existing sinks
+ */
+public interface OutputSink extends Closeable {
+  /**
+   * @throws java.io.UncheckedIOException if the underlying destination could not be written
+   */
+  void println(CharSequence line);
+
+  /**
+   * Write the content of a file as is, after the output written so far.
+   *
+   * @throws java.io.UncheckedIOException if the file could not be read or the underlying destination could not be written
+   */
+  void append(Path file);
+
+  /**
+   * Write buffered output to the underlying destination.
+   *
+   * @throws java.io.UncheckedIOException if the underlying destination could not be written
+   */
+  void flush();
+
+  /**
+   * Flush buffered output and release the underlying destination.
+   *
+   * @throws java.io.UncheckedIOException if the underlying destination could not be written
+   */
+  @Override
+  void close();
+}
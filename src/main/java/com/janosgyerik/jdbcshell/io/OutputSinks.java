@@ -0,0 +1,43 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.annotation.Nullable;
+
+public class OutputSinks {
+  private OutputSinks() {
+    // utility class, forbidden constructor
+  }
+
+  /**
+   * Create a sink writing to the standard output of the process,
+   * bypassing the synchronized, line-flushing System.out.
+   */
+  public static OutputSink stdout() {
+    FileChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+    return new ChannelOutputSink(channel, Charset.defaultCharset(), ChannelOutputSink.DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Create a sink writing to the specified file, replacing its content if it already exists.
+   */
+  public static OutputSink file(Path path) throws IOException {
+    return file(path, null);
+  }
+
+  /**
+   * Create a sink writing to the specified file, replacing its content if it already exists,
+   * and compressing it in parallel blocks unless the compression format is null.
+   */
+  public static OutputSink file(Path path, @Nullable BlockCompressingChannel.Format compression) throws IOException {
+    FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    WritableByteChannel channel = compression != null ? new BlockCompressingChannel(fileChannel, compression) : fileChannel;
+    return new ChannelOutputSink(channel, Charset.defaultCharset(), ChannelOutputSink.DEFAULT_BUFFER_SIZE);
+  }
+}
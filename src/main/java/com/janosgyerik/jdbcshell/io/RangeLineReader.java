@@ -0,0 +1,191 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
+
+/**
+ * Read the UTF-8 lines of a byte range of a file, so that multiple readers
+ * can process different parts of the same file in parallel.
+ * <p>
+ * A reader owns the lines that start within its range: if the range starts in the middle of a line,
+ * that line is skipped, and the last line that starts before the end of the range is read entirely.
+ * As a result, readers of adjacent ranges together read every line exactly once.
+ */
+public class RangeLineReader {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+  private final long end;
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  private long readPosition;
+  private long position;
+  private byte[] line = new byte[256];
+  private int lineLength;
+
+  public RangeLineReader(FileChannel channel, long start, long end) throws IOException {
+    this.channel = channel;
+    this.end = end;
+    buffer.limit(0);
+    if (start > 0) {
+      readPosition = start - 1;
+      position = start - 1;
+      readLine(true);
+    } else {
+      readPosition = start;
+      position = start;
+    }
+  }
+
+  /**
+   * Split the range [start, end) into the specified number of ranges of roughly equal size.
+   *
+   * @return the boundaries of the ranges, parts + 1 values
+   */
+  public static long[] split(long start, long end, int parts) {
+    long[] boundaries = new long[parts + 1];
+    long size = end - start;
+    for (int i = 0; i < parts; i++) {
+      boundaries[i] = start + size * i / parts;
+    }
+    boundaries[parts] = end;
+    return boundaries;
+  }
+
+  /**
+   * Split the range [start, end) of a file of delimiter-separated values into the specified number of ranges of roughly equal size,
+   * each starting at the start of a record, so that a quoted value with line breaks is never split between ranges.
+   * The range is read once to find the line breaks outside of quoted values, quoted as {@link DelimitedRecordParser} expects.
+   *
+   * @return the boundaries of the ranges, parts + 1 values
+   */
+  public static long[] splitRecords(FileChannel channel, long start, long end, int parts, char delimiter) throws IOException {
+    long[] targets = split(start, end, parts);
+    long[] boundaries = targets.clone();
+    int next = 1;
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    boolean inQuotes = false;
+    boolean closedQuotes = false;
+    boolean fieldStart = true;
+    long offset = start;
+    while (next < parts && offset < end) {
+      buffer.clear();
+      if (buffer.remaining() > end - offset) {
+        buffer.limit((int) (end - offset));
+      }
+      int count = channel.read(buffer, offset);
+      if (count <= 0) {
+        break;
+      }
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        byte b = buffer.get();
+        offset++;
+        if (inQuotes) {
+          if (b == '"') {
+            inQuotes = false;
+            closedQuotes = true;
+          }
+        } else if (closedQuotes && b == '"') {
+          // an escaped quote within the quoted value
+          inQuotes = true;
+          closedQuotes = false;
+        } else {
+          closedQuotes = false;
+          if (b == '\n') {
+            fieldStart = true;
+            while (next < parts && offset >= targets[next]) {
+              boundaries[next++] = offset;
+            }
+          } else if (b == delimiter) {
+            fieldStart = true;
+          } else {
+            inQuotes = b == '"' && fieldStart;
+            fieldStart = false;
+          }
+        }
+      }
+    }
+    // the rest is a single record, maybe with an unterminated quoted value, read by the last range that starts before it
+    while (next < parts) {
+      boundaries[next++] = end;
+    }
+    return boundaries;
+  }
+
+  /**
+   * @return the offset in the file of the next line
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * @return the next line that starts within the range, without line terminator, or null if there are no more
+   */
+  @CheckForNull
+  public String readLine() throws IOException {
+    return readLine(false);
+  }
+
+  /**
+   * Read the next line even if it starts after the end of the range,
+   * to complete a record that spans multiple lines.
+   *
+   * @return the next line, without line terminator, or null at the end of the file
+   */
+  @CheckForNull
+  public String readContinuationLine() throws IOException {
+    return readLine(true);
+  }
+
+  @CheckForNull
+  private String readLine(boolean ignoreEnd) throws IOException {
+    if (!ignoreEnd && position >= end) {
+      return null;
+    }
+
+    lineLength = 0;
+    boolean found = false;
+    while (buffer.hasRemaining() || fill()) {
+      found = true;
+      byte b = buffer.get();
+      position++;
+      if (b == '\n') {
+        return decodeLine();
+      }
+      append(b);
+    }
+    return found ? decodeLine() : null;
+  }
+
+  private boolean fill() throws IOException {
+    buffer.clear();
+    int count = channel.read(buffer, readPosition);
+    buffer.flip();
+    if (count <= 0) {
+      return false;
+    }
+    readPosition += count;
+    return true;
+  }
+
+  private void append(byte b) {
+    if (lineLength == line.length) {
+      line = Arrays.copyOf(line, line.length * 2);
+    }
+    line[lineLength++] = b;
+  }
+
+  private String decodeLine() {
+    int length = lineLength;
+    if (length > 0 && line[length - 1] == '\r') {
+      length--;
+    }
+    return new String(line, 0, length, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,427 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Split a UTF-8 SQL script into statements incrementally, reading the file through memory-mapped windows,
+ * so that scripts of any size are processed in constant memory, apart from the largest statement.
+ * <p>
+ * Statements end with the delimiter, ";" by default, outside of quoted strings, quoted identifiers and comments.
+ * Depending on the dialect, the splitter also handles backslash escapes and # comments (MySQL),
+ * dollar-quoted strings (PostgreSQL), DELIMITER commands (MySQL) and GO lines (SQL Server).
+ * The bytes of the file are scanned without decoding: every delimiter and quote is ASCII,
+ * and the bytes of multi-byte UTF-8 characters are never ASCII.
+ * Comments before a statement are dropped; comments within a statement are kept.
+ */
+public class SqlScriptReader {
+  static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * Maximum length of a line checked for DELIMITER and GO commands.
+   */
+  private static final int MAX_COMMAND_LENGTH = 256;
+
+  private static final int EOF = -1;
+
+  public enum Dialect {
+    STANDARD(false, false, false),
+    MYSQL(true, false, false),
+    POSTGRESQL(false, true, false),
+    SQLSERVER(false, false, true);
+
+    private final boolean mysql;
+    private final boolean dollarQuotes;
+    private final boolean goSeparator;
+
+    Dialect(boolean mysql, boolean dollarQuotes, boolean goSeparator) {
+      this.mysql = mysql;
+      this.dollarQuotes = dollarQuotes;
+      this.goSeparator = goSeparator;
+    }
+  }
+
+  private final FileChannel channel;
+  private final Dialect dialect;
+  private final int windowSize;
+  private final long size;
+
+  private ByteBuffer window;
+  private long windowStart;
+
+  private byte[] delimiter = {';'};
+  private byte[] statement = new byte[1024];
+  private int statementLength;
+  private int line = 1;
+  private boolean atLineStart = true;
+
+  public SqlScriptReader(FileChannel channel, Dialect dialect) throws IOException {
+    this(channel, dialect, DEFAULT_WINDOW_SIZE);
+  }
+
+  SqlScriptReader(FileChannel channel, Dialect dialect, int windowSize) throws IOException {
+    if (windowSize < MAX_COMMAND_LENGTH) {
+      throw new IllegalArgumentException("Window size must be at least " + MAX_COMMAND_LENGTH + ", got: " + windowSize);
+    }
+    this.channel = channel;
+    this.dialect = dialect;
+    this.windowSize = windowSize;
+    this.size = channel.size();
+    map(0);
+  }
+
+  /**
+   * A statement of the script, without its delimiter.
+   */
+  @Immutable
+  public static class Statement {
+    private final String sql;
+    private final int line;
+
+    Statement(String sql, int line) {
+      this.sql = sql;
+      this.line = line;
+    }
+
+    public String sql() {
+      return sql;
+    }
+
+    /**
+     * @return the 1-based line number where the statement starts
+     */
+    public int line() {
+      return line;
+    }
+
+    @Override
+    public String toString() {
+      return line + ": " + sql;
+    }
+  }
+
+  /**
+   * @return the next statement, or null if there are no more
+   */
+  @CheckForNull
+  public Statement next() throws IOException {
+    statementLength = 0;
+    int startLine = line;
+    int b;
+    while (true) {
+      if (statementLength == 0) {
+        skipBlanks();
+        startLine = line;
+      }
+      if (atLineStart && readCommand()) {
+        if (statementLength > 0) {
+          return statement(startLine);
+        }
+        continue;
+      }
+
+      b = read();
+      if (b == EOF) {
+        return statementLength > 0 ? statement(startLine) : null;
+      }
+      atLineStart = b == '\n';
+      if (b == '\n') {
+        line++;
+      }
+
+      if (b == '\'' || b == '"' || b == '`') {
+        append(b);
+        readQuoted(b);
+      } else if (b == '-' && peek(0) == '-' || b == '#' && dialect.mysql) {
+        readLineComment(b);
+      } else if (b == '/' && peek(0) == '*') {
+        readBlockComment();
+      } else if (b == '$' && dialect.dollarQuotes && isDollarQuoteStart()) {
+        readDollarQuoted();
+      } else if (!dialect.goSeparator && b == delimiter[0] && matchesDelimiter()) {
+        skip(delimiter.length - 1);
+        if (statementLength > 0) {
+          return statement(startLine);
+        }
+      } else {
+        append(b);
+      }
+    }
+  }
+
+  /**
+   * Skip whitespace and comments before a statement.
+   */
+  private void skipBlanks() throws IOException {
+    while (true) {
+      int b = peek(0);
+      if (b == '\n') {
+        skip(1);
+        line++;
+        atLineStart = true;
+      } else if (b == ' ' || b == '\t' || b == '\r') {
+        skip(1);
+      } else if (b == '-' && peek(1) == '-' || b == '#' && dialect.mysql) {
+        skipLine();
+      } else if (b == '/' && peek(1) == '*' && !(dialect.mysql && peek(2) == '!')) {
+        // MySQL executes the content of /*! ... */ comments
+        int lengthBefore = statementLength;
+        skip(1);
+        readBlockComment();
+        statementLength = lengthBefore;
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Process a DELIMITER command (MySQL) or GO line (SQL Server) at the start of a line.
+   *
+   * @return true if the line was a command
+   */
+  private boolean readCommand() throws IOException {
+    if (dialect.goSeparator && startsWithIgnoringBlanks('G')) {
+      String text = decode(commandLineLength()).trim();
+      if (text.equalsIgnoreCase("GO")) {
+        skipLine();
+        return true;
+      }
+    } else if (dialect.mysql && statementLength == 0 && startsWithIgnoringBlanks('D')) {
+      String text = decode(commandLineLength()).trim();
+      if (text.regionMatches(true, 0, "DELIMITER", 0, 9) && text.length() > 9 && Character.isWhitespace(text.charAt(9))) {
+        String newDelimiter = text.substring(10).trim();
+        if (newDelimiter.isEmpty()) {
+          throw new IllegalArgumentException("Missing delimiter at line " + line);
+        }
+        delimiter = newDelimiter.getBytes(StandardCharsets.UTF_8);
+        skipLine();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean startsWithIgnoringBlanks(char upperCase) throws IOException {
+    int i = 0;
+    int b = peek(0);
+    while (i < MAX_COMMAND_LENGTH && ((b = peek(i)) == ' ' || b == '\t')) {
+      i++;
+    }
+    return b == upperCase || b == Character.toLowerCase(upperCase);
+  }
+
+  /**
+   * @return the length of the current line without line terminator, or 0 if it is longer than any command
+   */
+  private int commandLineLength() throws IOException {
+    for (int i = 0; i < MAX_COMMAND_LENGTH; i++) {
+      int b = peek(i);
+      if (b == '\n' || b == EOF) {
+        return i;
+      }
+    }
+    return 0;
+  }
+
+  private String decode(int length) throws IOException {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) peek(i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private void readQuoted(int quote) throws IOException {
+    boolean backslashEscapes = dialect.mysql && quote != '`';
+    int b;
+    while ((b = read()) != EOF) {
+      append(b);
+      if (b == '\n') {
+        line++;
+      } else if (b == '\\' && backslashEscapes) {
+        int escaped = read();
+        if (escaped != EOF) {
+          append(escaped);
+          if (escaped == '\n') {
+            line++;
+          }
+        }
+      } else if (b == quote) {
+        return;
+      }
+    }
+  }
+
+  private void readLineComment(int first) throws IOException {
+    append(first);
+    int b;
+    while ((b = read()) != EOF) {
+      append(b);
+      if (b == '\n') {
+        line++;
+        atLineStart = true;
+        return;
+      }
+    }
+  }
+
+  private void skipLine() throws IOException {
+    int b;
+    while ((b = read()) != EOF) {
+      if (b == '\n') {
+        line++;
+        atLineStart = true;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Read a block comment, after its opening slash.
+   */
+  private void readBlockComment() throws IOException {
+    append('/');
+    append(read());
+    int previous = 0;
+    int b;
+    while ((b = read()) != EOF) {
+      append(b);
+      if (b == '\n') {
+        line++;
+      } else if (b == '/' && previous == '*') {
+        return;
+      }
+      previous = b;
+    }
+  }
+
+  private boolean isDollarQuoteStart() throws IOException {
+    if (statementLength > 0 && isIdentifierPart(statement[statementLength - 1])) {
+      return false;
+    }
+    int b = peek(0);
+    if (b == '$') {
+      return true;
+    }
+    if (!isIdentifierStart(b)) {
+      return false;
+    }
+    for (int i = 1; i < MAX_COMMAND_LENGTH; i++) {
+      b = peek(i);
+      if (b == '$') {
+        return true;
+      }
+      if (!isIdentifierPart(b)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Read a dollar-quoted string such as $body$...$body$, after its first dollar sign.
+   */
+  private void readDollarQuoted() throws IOException {
+    int tagStart = statementLength;
+    append('$');
+    int b;
+    do {
+      b = read();
+      append(b);
+    } while (b != '$');
+    byte[] tag = Arrays.copyOfRange(statement, tagStart, statementLength);
+
+    int matched = 0;
+    while ((b = read()) != EOF) {
+      append(b);
+      if (b == '\n') {
+        line++;
+      }
+      if (b == tag[matched]) {
+        matched++;
+        if (matched == tag.length) {
+          return;
+        }
+      } else {
+        matched = b == '$' ? 1 : 0;
+      }
+    }
+  }
+
+  private boolean matchesDelimiter() throws IOException {
+    for (int i = 1; i < delimiter.length; i++) {
+      if (peek(i - 1) != (delimiter[i] & 0xff)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isIdentifierStart(int b) {
+    return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b == '_' || b >= 0x80;
+  }
+
+  private static boolean isIdentifierPart(int b) {
+    return isIdentifierStart(b) || b >= '0' && b <= '9' || b == '$';
+  }
+
+  private Statement statement(int startLine) {
+    int length = statementLength;
+    while (length > 0 && isWhitespace(statement[length - 1])) {
+      length--;
+    }
+    return new Statement(new String(statement, 0, length, StandardCharsets.UTF_8), startLine);
+  }
+
+  private static boolean isWhitespace(byte b) {
+    return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+  private void append(int b) {
+    if (statementLength == statement.length) {
+      statement = Arrays.copyOf(statement, statement.length * 2);
+    }
+    statement[statementLength++] = (byte) b;
+  }
+
+  private int read() throws IOException {
+    if (!window.hasRemaining()) {
+      if (windowStart + window.limit() >= size) {
+        return EOF;
+      }
+      map(windowStart + window.limit());
+    }
+    return window.get() & 0xff;
+  }
+
+  /**
+   * @return the byte at the specified offset after the next one to read, or EOF
+   */
+  private int peek(int offset) throws IOException {
+    if (window.remaining() <= offset) {
+      long position = windowStart + window.position();
+      if (position + offset >= size) {
+        return EOF;
+      }
+      map(position);
+    }
+    return window.get(window.position() + offset) & 0xff;
+  }
+
+  private void skip(int count) throws IOException {
+    for (int i = 0; i < count; i++) {
+      read();
+    }
+  }
+
+  private void map(long position) throws IOException {
+    windowStart = position;
+    window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+  }
+}
@@ -0,0 +1,4 @@
+@ParametersAreNonnullByDefault
+package com.janosgyerik.jdbcshell.io;
+
+import javax.annotation.ParametersAreNonnullByDefault;
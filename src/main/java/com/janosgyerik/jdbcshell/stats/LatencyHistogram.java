@@ -0,0 +1,155 @@
+package com.janosgyerik.jdbcshell.stats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Record latencies in nanoseconds into a fixed number of log-linear buckets,
+ * in the style of HdrHistogram.
+ * <p>
+ * Values are exact below 128 ns; above that each power of two is split into 64 buckets,
+ * so that reported percentiles are within 1/64 (about 1.6%) of the recorded values,
+ * using constant memory regardless of the number of recorded values.
+ * Values above {@link #HIGHEST_TRACKABLE_VALUE} are counted in the last bucket, but the maximum is exact.
+ * <p>
+ * Not thread-safe: record into one histogram per thread, and {@link #add} them together.
+ */
+@NotThreadSafe
+public class LatencyHistogram {
+  /**
+   * About 2.4 hours in nanoseconds.
+   */
+  public static final long HIGHEST_TRACKABLE_VALUE = 1L << 43;
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+  private static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+  private static final int LEADING_ZERO_COUNT_BASE = 64 - SUB_BUCKET_BITS;
+  private static final int COUNTS_LENGTH = countsIndex(HIGHEST_TRACKABLE_VALUE) + 1;
+
+  private final long[] counts = new long[COUNTS_LENGTH];
+  private long totalCount;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max;
+
+  /**
+   * @param value latency in nanoseconds; negative values are recorded as 0
+   */
+  public void record(long value) {
+    long nonNegative = Math.max(0, value);
+    counts[countsIndex(Math.min(nonNegative, HIGHEST_TRACKABLE_VALUE))]++;
+    totalCount++;
+    sum += nonNegative;
+    min = Math.min(min, nonNegative);
+    max = Math.max(max, nonNegative);
+  }
+
+  /**
+   * Add all values recorded in another histogram to this one.
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < COUNTS_LENGTH; i++) {
+      counts[i] += other.counts[i];
+    }
+    totalCount += other.totalCount;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public void reset() {
+    Arrays.fill(counts, 0);
+    totalCount = 0;
+    sum = 0;
+    min = Long.MAX_VALUE;
+    max = 0;
+  }
+
+  public long totalCount() {
+    return totalCount;
+  }
+
+  public long min() {
+    return totalCount == 0 ? 0 : min;
+  }
+
+  public long max() {
+    return max;
+  }
+
+  public double mean() {
+    return totalCount == 0 ? 0 : (double) sum / totalCount;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   * @return the highest value that is equivalent to the value at the percentile, or 0 if empty
+   */
+  public long valueAtPercentile(double percentile) {
+    if (totalCount == 0) {
+      return 0;
+    }
+    long countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * totalCount));
+    long cumulative = 0;
+    for (int i = 0; i < COUNTS_LENGTH; i++) {
+      cumulative += counts[i];
+      if (cumulative >= countAtPercentile) {
+        return Math.min(highestEquivalentValue(i), max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Format the usual summary percentiles, in milliseconds.
+   */
+  public String formatPercentiles() {
+    return String.format(Locale.ENGLISH, "min %.3f, p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f, mean %.3f (ms)",
+      millis(min()), millis(valueAtPercentile(50)), millis(valueAtPercentile(90)), millis(valueAtPercentile(99)),
+      millis(valueAtPercentile(99.9)), millis(max), mean() / 1e6);
+  }
+
+  /**
+   * Write the counts of non-empty buckets as tab-separated lines,
+   * so that histograms of different runs can be compared and merged by other tools.
+   */
+  public void writeTo(Writer writer) throws IOException {
+    writer.write(String.format(Locale.ENGLISH, "# totalCount=%d min=%d max=%d mean=%.1f (nanoseconds)%n", totalCount, min(), max, mean()));
+    writer.write("# lowestValue\thighestValue\tcount\n");
+    for (int i = 0; i < COUNTS_LENGTH; i++) {
+      if (counts[i] > 0) {
+        writer.write(lowestEquivalentValue(i) + "\t" + highestEquivalentValue(i) + "\t" + counts[i] + "\n");
+      }
+    }
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  private static int countsIndex(long value) {
+    int bucketIndex = LEADING_ZERO_COUNT_BASE - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK);
+    int subBucketIndex = (int) (value >>> bucketIndex);
+    return ((bucketIndex + 1) << (SUB_BUCKET_BITS - 1)) + (subBucketIndex - SUB_BUCKET_HALF_COUNT);
+  }
+
+  private static long lowestEquivalentValue(int index) {
+    int bucketIndex = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+    int subBucketIndex = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+    if (bucketIndex < 0) {
+      subBucketIndex -= SUB_BUCKET_HALF_COUNT;
+      bucketIndex = 0;
+    }
+    return (long) subBucketIndex << bucketIndex;
+  }
+
+  private static long highestEquivalentValue(int index) {
+    int bucketIndex = Math.max(0, (index >> (SUB_BUCKET_BITS - 1)) - 1);
+    return lowestEquivalentValue(index) + (1L << bucketIndex) - 1;
+  }
+}
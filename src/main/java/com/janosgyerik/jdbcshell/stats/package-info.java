@@ -0,0 +1,4 @@
+@ParametersAreNonnullByDefault
+package com.janosgyerik.jdbcshell.stats;
+
+import javax.annotation.ParametersAreNonnullByDefault;
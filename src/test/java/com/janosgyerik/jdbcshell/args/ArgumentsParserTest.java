@@ -199,4 +199,28 @@ public class ArgumentsParserTest {
     assertThat(result.isHelpRequested()).isTrue();
     result.isValid();
   }
+
+  @Test
+  public void parse_flag_without_parameter() {
+    Validator<Boolean> flag = Validators.flag();
+    Validator<String> validator = Validators.create(Function.identity());
+
+    ArgumentsParser.Result result = ArgumentsParser.newBuilder()
+      .addFlag("-verbose", "dummy description", flag)
+      .addOption("-foo", "dummy description", validator)
+      .build()
+      .parseArgs(new String[]{"-verbose", "-foo", "bar"});
+
+    assertThat(result.isValid()).isTrue();
+    assertThat(flag.value()).isTrue();
+    assertThat(validator.value()).isEqualTo("bar");
+  }
+
+  @Test
+  public void print_flags_without_parameter_in_usage() {
+    ArgumentsParser parser = ArgumentsParser.newBuilder()
+      .addFlag("-verbose", "Print more", Validators.flag())
+      .build();
+    assertThat(parser.usageString()).contains("-verbose\n  Print more\n");
+  }
 }
@@ -43,4 +43,61 @@ public class GlobalValidatorsTest {
       {bothPresent},
     };
   }
+
+  @Test
+  public void requires_passes_when_option_absent_or_required_option_present() {
+    // expected to run without exceptions
+    GlobalValidators.requires("name1", "name2").validate(Collections.emptyMap());
+    GlobalValidators.requires("name1", "name2").validate(Collections.singletonMap("name2", "bar"));
+
+    Map<String, String> bothPresent = new HashMap<>();
+    bothPresent.put("name1", "foo");
+    bothPresent.put("name2", "bar");
+    GlobalValidators.requires("name1", "name2").validate(bothPresent);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void requires_fails_when_required_option_absent() {
+    GlobalValidators.requires("name1", "name2").validate(Collections.singletonMap("name1", "foo"));
+  }
+
+  @Test
+  public void atMostOneIsPresent_passes_when_none_or_one_present() {
+    // expected to run without exceptions
+    GlobalValidators.atMostOneIsPresent("name1", "name2", "name3").validate(Collections.emptyMap());
+    GlobalValidators.atMostOneIsPresent("name1", "name2", "name3").validate(Collections.singletonMap("name3", "foo"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void atMostOneIsPresent_fails_when_multiple_present() {
+    Map<String, String> twoPresent = new HashMap<>();
+    twoPresent.put("name1", "foo");
+    twoPresent.put("name3", "bar");
+    GlobalValidators.atMostOneIsPresent("name1", "name2", "name3").validate(twoPresent);
+  }
+
+  @Test
+  public void requires_passes_when_any_of_required_options_present() {
+    // expected to run without exceptions
+    Map<String, String> rawOptions = new HashMap<>();
+    rawOptions.put("name1", "foo");
+    rawOptions.put("name3", "bar");
+    GlobalValidators.requires("name1", "name2", "name3").validate(rawOptions);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void requires_fails_when_none_of_required_options_present() {
+    GlobalValidators.requires("name1", "name2", "name3").validate(Collections.singletonMap("name1", "foo"));
+  }
+
+  @Test
+  public void unlessPresent_skips_validator_when_option_present() {
+    // expected to run without exceptions
+    GlobalValidators.unlessPresent("name3", GlobalValidators.eitherIsPresent("name1", "name2")).validate(Collections.singletonMap("name3", "true"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void unlessPresent_applies_validator_when_option_absent() {
+    GlobalValidators.unlessPresent("name3", GlobalValidators.eitherIsPresent("name1", "name2")).validate(Collections.emptyMap());
+  }
 }
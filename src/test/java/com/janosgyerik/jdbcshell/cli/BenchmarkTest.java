@@ -0,0 +1,49 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class BenchmarkTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final System2 system2 = mock(System2.class);
+  private final ConnectionPool pool = ConnectionPool.builder(new ConnectionConfig("jdbc:h2:mem:BenchmarkTest", null, null)).build();
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  public void report_throughput_and_latency_percentiles() throws Exception {
+    Path histogramPath = temporaryFolder.getRoot().toPath().resolve("histogram.txt");
+    ShellOptions options = ShellOptions.builder().setIterations(50).setWarmupIterations(5).setThreads(3).setHistogramPath(histogramPath).build();
+    new Benchmark(system2, pool, "select x from system_range(1, 10)", options).run();
+
+    verify(system2).printlnOut("Benchmark: 50 iteration(s) on 3 connection(s) after 5 warmup iteration(s)");
+    verify(system2).printlnOut(startsWith("Throughput: "));
+    verify(system2).printlnOut(startsWith("Latency: min "));
+    assertThat(new String(Files.readAllBytes(histogramPath))).startsWith("# totalCount=50 ");
+  }
+
+  @Test
+  public void propagate_statement_failure() {
+    ShellOptions options = ShellOptions.builder().setIterations(5).setThreads(2).build();
+    assertThatThrownBy(() -> new Benchmark(system2, pool, "select * from nonexistent", options).run())
+      .isInstanceOf(SQLException.class)
+      .hasMessageContaining("NONEXISTENT");
+  }
+}
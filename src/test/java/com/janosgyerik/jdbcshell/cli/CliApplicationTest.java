@@ -1,23 +1,30 @@
 package com.janosgyerik.jdbcshell.cli;
 
+import com.janosgyerik.jdbcshell.io.BlockCompressingChannel;
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 @RunWith(DataProviderRunner.class)
@@ -31,6 +38,120 @@ public class CliApplicationTest {
     "  Jdbc Url; for example jdbc:mysql://localhost:3306/sonar\n" +
     "-config CONFIG\n" +
     "  Path to config.properties file\n" +
+    "-profile PROFILE\n" +
+    "  Name of the profile to use in the -config file, defined by its PROFILE.jdbc.url property\n" +
+    "-query QUERY\n" +
+    "  SQL statement to execute; rows are printed as they are fetched\n" +
+    "-script SCRIPT\n" +
+    "  Path to SQL script file to execute statement by statement; rows are printed as they are fetched\n" +
+    "-autoBatch\n" +
+    "  Execute consecutive INSERT, UPDATE and DELETE statements of -script that differ only in their literals as batches\n" +
+    "-fetchSize FETCHSIZE\n" +
+    "  Number of rows to fetch per round-trip in -query, -script, -copy, -export and -diff modes; default: 1000\n" +
+    "-output OUTPUT\n" +
+    "  Path to file to write output to, instead of standard output\n" +
+    "-compress COMPRESS\n" +
+    "  Compress the -output file in parallel blocks: gzip, or the faster lz4\n" +
+    "-import IMPORT\n" +
+    "  Path to CSV, TSV or NDJSON file to load into the table specified by -table\n" +
+    "-table TABLE\n" +
+    "  Name of the table to load in -import mode, or to copy into in -copy mode\n" +
+    "-batchSize BATCHSIZE\n" +
+    "  Number of rows per JDBC batch in -import and -copy modes, and of statements with -autoBatch; default: 1000\n" +
+    "-commitInterval COMMITINTERVAL\n" +
+    "  Number of rows per transaction in -import and -copy modes; default: 10000\n" +
+    "-threads THREADS\n" +
+    "  Number of parallel connections in -import, -copy, -export, -diff, -replay, -bench and -connections modes; default: 1\n" +
+    "-bench BENCH\n" +
+    "  SQL statement to benchmark; prints throughput and latency percentiles\n" +
+    "-iterations ITERATIONS\n" +
+    "  Number of measured executions in -bench mode; default: 1000\n" +
+    "-warmup WARMUP\n" +
+    "  Number of unmeasured executions before measuring in -bench mode; default: 100\n" +
+    "-histogram HISTOGRAM\n" +
+    "  Path to file to write the raw latency histogram of -bench mode to\n" +
+    "-connections CONNECTIONS\n" +
+    "  Number of connections to open, timing each phase of connecting; prints the distribution of each\n" +
+    "-poolMinSize POOLMINSIZE\n" +
+    "  Number of idle connections kept open by the connection pool; default: 1\n" +
+    "-poolMaxSize POOLMAXSIZE\n" +
+    "  Maximum number of connections in the connection pool; default: 8\n" +
+    "-validationQuery VALIDATIONQUERY\n" +
+    "  SQL query to validate idle pooled connections with, and to run in -healthCheck mode; default: use Connection.isValid\n" +
+    "-idleTimeout IDLETIMEOUT\n" +
+    "  Seconds after which idle pooled connections are closed; default: 60\n" +
+    "-borrowTimeout BORROWTIMEOUT\n" +
+    "  Seconds to wait for a pooled connection when all are in use; default: 30\n" +
+    "-statementCacheSize STATEMENTCACHESIZE\n" +
+    "  Maximum number of prepared statements cached per connection; default: 100\n" +
+    "-format FORMAT\n" +
+    "  Output format of query results: tsv or table; default: tsv\n" +
+    "-lookahead LOOKAHEAD\n" +
+    "  Number of rows to compute column widths from in table format, 0 to use column display sizes; default: 100\n" +
+    "-maxColumnWidth MAXCOLUMNWIDTH\n" +
+    "  Maximum column width in table format; default: 40\n" +
+    "-overflow OVERFLOW\n" +
+    "  How to print values wider than their column in table format: truncate or wrap; default: truncate\n" +
+    "-copy COPY\n" +
+    "  Table name or query to copy to the database specified by -targetUrl, -targetConfig or -snapshot\n" +
+    "-targetUrl TARGETURL\n" +
+    "  Jdbc Url of the database to copy to in -copy mode, or to compare with in -diff mode\n" +
+    "-targetConfig TARGETCONFIG\n" +
+    "  Path to config.properties file of the database to copy to in -copy mode, or to compare with in -diff mode\n" +
+    "-snapshot SNAPSHOT\n" +
+    "  Path to local H2 database file to copy to in -copy mode, replacing the table if it exists\n" +
+    "-index INDEX\n" +
+    "  Columns to index after copying in -copy mode, comma-separated, and separate indexes separated by semicolons\n" +
+    "-export EXPORT\n" +
+    "  Name of the table to export in parallel, split into -threads ranges of the -partitionColumn key\n" +
+    "-partitionColumn PARTITIONCOLUMN\n" +
+    "  Numeric or date column to split the table into key ranges in -export and -diff modes\n" +
+    "-partFiles\n" +
+    "  Write each key range of -export mode to its own file, named after the -output file\n" +
+    "-diff DIFF\n" +
+    "  Table name or query to compare with the database specified by -targetUrl or -targetConfig, by checksums of -partitionColumn key ranges; prints the rows that differ\n" +
+    "-chunkSize CHUNKSIZE\n" +
+    "  Number of rows of a key range below which differing ranges of -diff mode are compared row by row instead of split further; default: 1000\n" +
+    "-clientChecksums\n" +
+    "  Compute the checksums of -diff mode from the fetched rows instead of in the databases; the default for databases of different kinds\n" +
+    "-replay REPLAY\n" +
+    "  Path to -capture log to replay with its original timing, running sessions concurrently on up to -threads connections; prints latency percentiles per statement shape\n" +
+    "-speed SPEED\n" +
+    "  Factor to shorten the intervals between statements of -replay mode by; default: 1\n" +
+    "-prefetch PREFETCH\n" +
+    "  Number of -fetchSize batches of rows to fetch ahead on a background thread in -query, -script and -export modes, 0 to not fetch ahead; default: 0\n" +
+    "-resultCacheTtl RESULTCACHETTL\n" +
+    "  Seconds to reuse the output of identical read-only queries in -query and -script modes, until a statement writes to their tables; default: no caching\n" +
+    "-resultCacheSize RESULTCACHESIZE\n" +
+    "  Megabytes of query output to keep in memory with -resultCacheTtl; default: 64\n" +
+    "-resultCacheDir RESULTCACHEDIR\n" +
+    "  Path to directory to spill the -resultCacheTtl cache to, and to share it with later runs\n" +
+    "-describe DESCRIBE\n" +
+    "  Name of the table to describe, optionally qualified with its schema; prints its columns and indexes\n" +
+    "-tables TABLES\n" +
+    "  Prefix of the names of the tables to list, '' to list all tables\n" +
+    "-metadataTtl METADATATTL\n" +
+    "  Seconds after which the cached metadata of -describe and -tables is refreshed; default: 86400\n" +
+    "-healthCheck\n" +
+    "  Connect to all the profiles of the -config file concurrently and run -validationQuery; prints a summary\n" +
+    "-connectTimeout CONNECTTIMEOUT\n" +
+    "  Seconds to wait for each connection in -healthCheck mode; default: 5\n" +
+    "-queryTimeout QUERYTIMEOUT\n" +
+    "  Seconds to wait for the validation query of each connection in -healthCheck mode; default: 5\n" +
+    "-deadline DEADLINE\n" +
+    "  Seconds to wait for all checks of -healthCheck mode; default: 30\n" +
+    "-json\n" +
+    "  Print the summary of -healthCheck mode as JSON instead of a table\n" +
+    "-stats\n" +
+    "  Print the time spent connecting, executing, fetching and formatting, and the rows and bytes fetched\n" +
+    "-statsLog STATSLOG\n" +
+    "  Path to file to write the stats of each statement to, as JSON lines\n" +
+    "-capture CAPTURE\n" +
+    "  Path to file to append the statements of -query and -script modes to, with their bind values and timing, for -replay mode\n" +
+    "-daemon\n" +
+    "  Run commands sent with -client in this process, keeping connection pools open between them\n" +
+    "-client\n" +
+    "  Send the command to the running -daemon instead of running it in this process\n" +
     "-help\n" +
     "  Print this help\n";
 
@@ -69,6 +190,55 @@ public class CliApplicationTest {
     return new Object[][]{
       {"-url"},
       {"-config"},
+      {"-profile"},
+      {"-query"},
+      {"-script"},
+      {"-fetchSize"},
+      {"-output"},
+      {"-compress"},
+      {"-import"},
+      {"-table"},
+      {"-batchSize"},
+      {"-commitInterval"},
+      {"-threads"},
+      {"-bench"},
+      {"-iterations"},
+      {"-warmup"},
+      {"-histogram"},
+      {"-connections"},
+      {"-poolMinSize"},
+      {"-poolMaxSize"},
+      {"-validationQuery"},
+      {"-idleTimeout"},
+      {"-borrowTimeout"},
+      {"-statementCacheSize"},
+      {"-format"},
+      {"-lookahead"},
+      {"-maxColumnWidth"},
+      {"-overflow"},
+      {"-copy"},
+      {"-targetUrl"},
+      {"-targetConfig"},
+      {"-snapshot"},
+      {"-index"},
+      {"-export"},
+      {"-partitionColumn"},
+      {"-diff"},
+      {"-chunkSize"},
+      {"-replay"},
+      {"-speed"},
+      {"-prefetch"},
+      {"-resultCacheTtl"},
+      {"-resultCacheSize"},
+      {"-resultCacheDir"},
+      {"-describe"},
+      {"-tables"},
+      {"-metadataTtl"},
+      {"-connectTimeout"},
+      {"-queryTimeout"},
+      {"-deadline"},
+      {"-statsLog"},
+      {"-capture"},
     };
   }
 
@@ -112,7 +282,7 @@ public class CliApplicationTest {
     underTest.run(new String[]{"-url", validUrl});
 
     ArgumentCaptor<ConnectionConfig> connectionConfigArgumentCaptor = ArgumentCaptor.forClass(ConnectionConfig.class);
-    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture());
+    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture(), any(ShellOptions.class));
     ConnectionConfig config = connectionConfigArgumentCaptor.getValue();
     assertThat(config.url).isEqualTo(validUrl);
     assertThat(config.username).isNull();
@@ -162,7 +332,7 @@ public class CliApplicationTest {
     underTest.run(new String[]{"-config", path.toString()});
 
     ArgumentCaptor<ConnectionConfig> connectionConfigArgumentCaptor = ArgumentCaptor.forClass(ConnectionConfig.class);
-    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture());
+    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture(), any(ShellOptions.class));
     ConnectionConfig config = connectionConfigArgumentCaptor.getValue();
     assertThat(config.url).isEqualTo("jdbc:mysql:bar");
     assertThat(config.username).isNull();
@@ -178,7 +348,7 @@ public class CliApplicationTest {
     underTest.run(new String[]{"-config", path.toString()});
 
     ArgumentCaptor<ConnectionConfig> connectionConfigArgumentCaptor = ArgumentCaptor.forClass(ConnectionConfig.class);
-    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture());
+    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture(), any(ShellOptions.class));
     ConnectionConfig config = connectionConfigArgumentCaptor.getValue();
     assertThat(config.url).isEqualTo("jdbc:mysql:bar");
     assertThat(config.username).isEqualTo("foouser");
@@ -190,7 +360,7 @@ public class CliApplicationTest {
   @Test
   public void print_error_when_execution_fails() throws Exception {
     String message = "failed because...";
-    doThrow(new Exception(message)).when(connectionConfigConsumer).execute(same(system2), any());
+    doThrow(new Exception(message)).when(connectionConfigConsumer).execute(same(system2), any(), any());
 
     String validUrl = "jdbc:mysql:bar";
     underTest.run(new String[]{"-url", validUrl});
@@ -205,7 +375,7 @@ public class CliApplicationTest {
       system2.printlnOut("some output");
       system2.printlnErr("some error");
       return null;
-    }).when(connectionConfigConsumer).execute(same(system2), any());
+    }).when(connectionConfigConsumer).execute(same(system2), any(), any());
 
     String validUrl = "jdbc:mysql:bar";
     underTest.run(new String[]{"-url", validUrl});
@@ -214,4 +384,522 @@ public class CliApplicationTest {
     verify(system2).printlnErr("some error");
     verify(system2).exit(0);
   }
+
+  @Test
+  public void pass_query_and_fetch_size_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-fetchSize", "50"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.query).isEqualTo("select 1");
+    assertThat(options.fetchSize).isEqualTo(50);
+
+    verify(system2).exit(0);
+  }
+
+  @Test
+  public void use_default_options_when_not_specified() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.query).isNull();
+    assertThat(options.fetchSize).isEqualTo(ShellOptions.DEFAULT_FETCH_SIZE);
+  }
+
+  @Test
+  @UseDataProvider("invalidFetchSizes")
+  public void print_error_when_fetch_size_invalid(String fetchSize) {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-fetchSize", fetchSize});
+    verify(system2).printlnErr("Expected a positive integer, got: " + fetchSize);
+    verify(system2).exit(1);
+  }
+
+  @DataProvider
+  public static Object[][] invalidFetchSizes() {
+    return new Object[][]{
+      {"0"},
+      {"-1"},
+      {"foo"},
+    };
+  }
+
+  @Test
+  public void print_error_when_fetch_size_used_without_query() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-fetchSize", "10"});
+    verify(system2).printlnErr("Option -fetchSize requires one of these options: -query, -script, -copy, -export, -diff");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void redirect_output_before_running_main_job() throws Exception {
+    Path output = temporaryFolder.getRoot().toPath().resolve("output.txt");
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-output", output.toString()});
+
+    InOrder inOrder = inOrder(system2, connectionConfigConsumer);
+    inOrder.verify(system2).redirectOut(output, null);
+    inOrder.verify(connectionConfigConsumer).execute(same(system2), any(), any());
+    inOrder.verify(system2).exit(0);
+  }
+
+  @Test
+  public void redirect_output_to_compressed_file() throws Exception {
+    Path output = temporaryFolder.getRoot().toPath().resolve("output.tsv.lz4");
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-output", output.toString(), "-compress", "lz4"});
+
+    verify(system2).redirectOut(output, BlockCompressingChannel.Format.LZ4);
+    verify(system2).exit(0);
+  }
+
+  @Test
+  public void print_error_when_compress_without_output() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-compress", "gzip"});
+    verify(system2).printlnErr("Option -compress requires option -output");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_import_options_to_consumer() throws Exception {
+    Path path = temporaryFolder.newFile("data.csv").toPath();
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-import", path.toString(), "-table", "foo",
+      "-batchSize", "10", "-commitInterval", "20", "-threads", "3"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.importPath).isEqualTo(path);
+    assertThat(options.table).isEqualTo("foo");
+    assertThat(options.batchSize).isEqualTo(10);
+    assertThat(options.commitInterval).isEqualTo(20);
+    assertThat(options.threads).isEqualTo(3);
+  }
+
+  @Test
+  public void print_error_when_import_file_nonexistent() throws IOException {
+    String nonexistent = temporaryFolder.newFolder().toPath().resolve("nonexistent").toString();
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-import", nonexistent, "-table", "foo"});
+    verify(system2).printlnErr("Not a readable file: " + nonexistent);
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_import_without_table() throws IOException {
+    String path = temporaryFolder.newFile().toString();
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-import", path});
+    verify(system2).printlnErr("Option -import requires option -table");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_both_query_and_import_specified() throws IOException {
+    String path = temporaryFolder.newFile().toString();
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-import", path, "-table", "foo"});
+    verify(system2).printlnErr("At most one of these options is allowed: -query, -script, -import, -copy, -export, -diff, -replay, -bench, -connections, -describe, -tables, -healthCheck, -daemon");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_connection_pool_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-poolMinSize", "2", "-poolMaxSize", "4",
+      "-validationQuery", "select 1", "-idleTimeout", "5", "-borrowTimeout", "6"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.poolMinSize).isEqualTo(2);
+    assertThat(options.poolMaxSize).isEqualTo(4);
+    assertThat(options.validationQuery).isEqualTo("select 1");
+    assertThat(options.idleTimeoutSeconds).isEqualTo(5);
+    assertThat(options.borrowTimeoutSeconds).isEqualTo(6);
+  }
+
+  @Test
+  public void pass_benchmark_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-bench", "select 1", "-iterations", "10", "-warmup", "0",
+      "-threads", "2", "-histogram", "histogram.txt"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.benchQuery).isEqualTo("select 1");
+    assertThat(options.iterations).isEqualTo(10);
+    assertThat(options.warmupIterations).isZero();
+    assertThat(options.threads).isEqualTo(2);
+    assertThat(options.histogramPath).isEqualTo(Paths.get("histogram.txt"));
+  }
+
+  @Test
+  public void print_error_when_threads_used_without_import_or_bench() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-threads", "2"});
+    verify(system2).printlnErr("Option -threads requires one of these options: -import, -copy, -export, -diff, -replay, -bench, -connections");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_connections_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-connections", "20", "-threads", "4"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.connections).isEqualTo(20);
+    assertThat(options.threads).isEqualTo(4);
+  }
+
+  @Test
+  public void pass_table_format_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-format", "table", "-lookahead", "0",
+      "-maxColumnWidth", "20", "-overflow", "wrap"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.format).isEqualTo(ShellOptions.Format.TABLE);
+    assertThat(options.lookahead).isZero();
+    assertThat(options.maxColumnWidth).isEqualTo(20);
+    assertThat(options.overflow).isEqualTo(TableFormatter.Overflow.WRAP);
+  }
+
+  @Test
+  public void print_error_when_format_unknown() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-format", "xml"});
+    verify(system2).printlnErr("Expected one of tsv, table, got: xml");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_stats_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-stats", "-query", "select 1", "-statsLog", "stats.jsonl"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.stats).isTrue();
+    assertThat(options.statsLogPath).isEqualTo(Paths.get("stats.jsonl"));
+  }
+
+  @Test
+  public void pass_copy_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-copy", "report", "-targetUrl", "jdbc:sqlserver://target", "-threads", "2"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.copySource).isEqualTo("report");
+    assertThat(options.targetConfig.url).isEqualTo("jdbc:sqlserver://target");
+    assertThat(options.threads).isEqualTo(2);
+  }
+
+  @Test
+  public void print_error_when_copy_without_target() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-copy", "report"});
+    verify(system2).printlnErr("Option -copy requires one of these options: -targetUrl, -targetConfig, -snapshot");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_result_cache_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-resultCacheTtl", "10", "-resultCacheSize", "2",
+      "-resultCacheDir", "cache"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.resultCacheTtlSeconds).isEqualTo(10);
+    assertThat(options.resultCacheMaxBytes).isEqualTo(2 * 1024 * 1024);
+    assertThat(options.resultCacheDirectory).isEqualTo(Paths.get("cache"));
+  }
+
+  @Test
+  public void print_error_when_result_cache_dir_without_ttl() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-resultCacheDir", "cache"});
+    verify(system2).printlnErr("Option -resultCacheDir requires option -resultCacheTtl");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_snapshot_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-copy", "select * from orders where day > current_date - 7", "-table", "orders",
+      "-snapshot", "snapshots/orders.mv.db", "-index", "customer_id; region,day"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.snapshotPath).isEqualTo(Paths.get("snapshots/orders"));
+    assertThat(options.targetConfig.url).isEqualTo("jdbc:h2:file:" + Paths.get("snapshots/orders").toAbsolutePath());
+    assertThat(options.indexes).containsExactly(Collections.singletonList("customer_id"), Arrays.asList("region", "day"));
+  }
+
+  @Test
+  public void print_error_when_index_column_invalid() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-copy", "orders", "-snapshot", "orders", "-index", "id,;drop table x"});
+    verify(system2).printlnErr("Invalid index column: '' in: id,;drop table x");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_snapshot_and_target_url() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-copy", "orders", "-snapshot", "orders", "-targetUrl", "jdbc:h2:mem:"});
+    verify(system2).printlnErr("At most one of these options is allowed: -targetUrl, -targetConfig, -snapshot");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_export_options_to_consumer_without_redirecting_output_to_part_files() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-export", "events", "-partitionColumn", "id", "-threads", "8",
+      "-output", "events.tsv", "-partFiles"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.exportTable).isEqualTo("events");
+    assertThat(options.partitionColumn).isEqualTo("id");
+    assertThat(options.partFiles).isTrue();
+    assertThat(options.outputPath).isEqualTo(Paths.get("events.tsv"));
+    verify(system2, never()).redirectOut(any(Path.class), any(BlockCompressingChannel.Format.class));
+  }
+
+  @Test
+  public void print_error_when_part_files_without_output() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:source", "-export", "events", "-partitionColumn", "id", "-partFiles"});
+    verify(system2).printlnErr("Option -partFiles requires option -output");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_diff_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:primary", "-diff", "orders", "-targetUrl", "jdbc:postgresql:replica",
+      "-partitionColumn", "id", "-chunkSize", "500", "-clientChecksums", "-threads", "4"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.diffSource).isEqualTo("orders");
+    assertThat(options.targetConfig.url).isEqualTo("jdbc:postgresql:replica");
+    assertThat(options.partitionColumn).isEqualTo("id");
+    assertThat(options.chunkSize).isEqualTo(500);
+    assertThat(options.clientChecksums).isTrue();
+    assertThat(options.threads).isEqualTo(4);
+  }
+
+  @Test
+  public void print_error_when_diff_without_target() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:primary", "-diff", "orders", "-partitionColumn", "id"});
+    verify(system2).printlnErr("Option -diff requires one of these options: -targetUrl, -targetConfig");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_diff_without_partition_column() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:primary", "-diff", "orders", "-targetUrl", "jdbc:postgresql:replica"});
+    verify(system2).printlnErr("Option -diff requires option -partitionColumn");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_replay_options_to_consumer() throws Exception {
+    Path log = temporaryFolder.newFile().toPath();
+    underTest.run(new String[]{"-url", "jdbc:postgresql:candidate", "-replay", log.toString(), "-speed", "10", "-threads", "16"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.replayPath).isEqualTo(log);
+    assertThat(options.speed).isEqualTo(10);
+    assertThat(options.threads).isEqualTo(16);
+  }
+
+  @Test
+  public void print_error_when_speed_without_replay() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:candidate", "-query", "select 1", "-speed", "10"});
+    verify(system2).printlnErr("Option -speed requires option -replay");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_capture_path_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:primary", "-script", temporaryFolder.newFile().toString(), "-capture", "workload.log"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    assertThat(shellOptionsArgumentCaptor.getValue().capturePath).isEqualTo(Paths.get("workload.log"));
+  }
+
+  @Test
+  public void print_error_when_capture_without_query_or_script() {
+    underTest.run(new String[]{"-url", "jdbc:postgresql:primary", "-bench", "select 1", "-capture", "workload.log"});
+    verify(system2).printlnErr("Option -capture requires one of these options: -query, -script");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_prefetch_depth_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-prefetch", "2"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    assertThat(shellOptionsArgumentCaptor.getValue().prefetchDepth).isEqualTo(2);
+  }
+
+  @Test
+  public void print_error_when_prefetch_without_query_or_export() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-prefetch", "2"});
+    verify(system2).printlnErr("Option -prefetch requires one of these options: -query, -script, -export");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_script_options_to_consumer() throws Exception {
+    Path path = temporaryFolder.newFile("script.sql").toPath();
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-script", path.toString(), "-format", "table", "-stats"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.scriptPath).isEqualTo(path);
+    assertThat(options.format).isEqualTo(ShellOptions.Format.TABLE);
+    assertThat(options.stats).isTrue();
+  }
+
+  @Test
+  public void pass_auto_batch_options_to_consumer() throws Exception {
+    Path path = temporaryFolder.newFile("script.sql").toPath();
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-script", path.toString(), "-autoBatch", "-batchSize", "500"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.autoBatch).isTrue();
+    assertThat(options.batchSize).isEqualTo(500);
+  }
+
+  @Test
+  public void print_error_when_auto_batch_without_script() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-autoBatch"});
+    verify(system2).printlnErr("Option -autoBatch requires option -script");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_describe_options_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-describe", "app.person", "-metadataTtl", "60"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.describeTable).isEqualTo("app.person");
+    assertThat(options.tablePrefix).isNull();
+    assertThat(options.metadataTtlSeconds).isEqualTo(60);
+  }
+
+  @Test
+  public void pass_empty_table_prefix_to_consumer() throws Exception {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-tables", ""});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    assertThat(shellOptionsArgumentCaptor.getValue().tablePrefix).isEmpty();
+    assertThat(shellOptionsArgumentCaptor.getValue().metadataTtlSeconds).isEqualTo(MetadataCache.DEFAULT_TTL_SECONDS);
+  }
+
+  @Test
+  public void print_error_when_metadata_ttl_without_describe_or_tables() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-query", "select 1", "-metadataTtl", "60"});
+    verify(system2).printlnErr("Option -metadataTtl requires one of these options: -describe, -tables");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void use_named_profile_with_default_credentials() throws Exception {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, ("jdbc.username = foouser\njdbc.password = barpass\n"
+      + "prod1.jdbc.url = jdbc:mysql:prod1\n"
+      + "prod2.jdbc.url = jdbc:mysql:prod2\nprod2.jdbc.username = prod2user\n").getBytes());
+    underTest.run(new String[]{"-config", path.toString(), "-profile", "prod2"});
+
+    ArgumentCaptor<ConnectionConfig> connectionConfigArgumentCaptor = ArgumentCaptor.forClass(ConnectionConfig.class);
+    verify(connectionConfigConsumer).execute(same(system2), connectionConfigArgumentCaptor.capture(), any(ShellOptions.class));
+    ConnectionConfig config = connectionConfigArgumentCaptor.getValue();
+    assertThat(config.url).isEqualTo("jdbc:mysql:prod2");
+    assertThat(config.username).isEqualTo("prod2user");
+    assertThat(config.password).isEqualTo("barpass");
+  }
+
+  @Test
+  public void print_error_when_profile_unknown() throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, "prod1.jdbc.url = jdbc:mysql:prod1\nprod2.jdbc.url = jdbc:mysql:prod2\n".getBytes());
+    underTest.run(new String[]{"-config", path.toString(), "-profile", "prod3"});
+    verify(system2).printlnErr("Unknown profile: prod3, expected one of: prod1, prod2");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_only_named_profiles_and_no_profile_selected() throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, "prod1.jdbc.url = jdbc:mysql:prod1\n".getBytes());
+    underTest.run(new String[]{"-config", path.toString()});
+    verify(system2).printlnErr("Missing required configuration: jdbc.url");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_profile_url_malformed() throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, "jdbc.url = jdbc:mysql:bar\nprod1.jdbc.url = foo\n".getBytes());
+    underTest.run(new String[]{"-config", path.toString()});
+    verify(system2).printlnErr("Expected JDBC URL to start with 'jdbc:', got: foo");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void pass_all_profiles_to_consumer_in_health_check_mode() throws Exception {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, "prod2.jdbc.url = jdbc:mysql:prod2\nprod1.jdbc.url = jdbc:mysql:prod1\njdbc.url = jdbc:mysql:bar\n".getBytes());
+    underTest.run(new String[]{"-config", path.toString(), "-healthCheck", "-connectTimeout", "2", "-queryTimeout", "3", "-deadline", "10", "-json"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    ShellOptions options = shellOptionsArgumentCaptor.getValue();
+    assertThat(options.healthCheckTargets).containsOnlyKeys("default", "prod1", "prod2");
+    assertThat(options.healthCheckTargets.keySet()).containsExactly("default", "prod1", "prod2");
+    assertThat(options.connectTimeoutSeconds).isEqualTo(2);
+    assertThat(options.queryTimeoutSeconds).isEqualTo(3);
+    assertThat(options.deadlineSeconds).isEqualTo(10);
+    assertThat(options.json).isTrue();
+  }
+
+  @Test
+  public void print_error_when_health_check_with_url() {
+    underTest.run(new String[]{"-url", "jdbc:mysql:bar", "-healthCheck"});
+    verify(system2).printlnErr("Option -healthCheck requires option -config");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_daemon_with_url() {
+    underTest.run(new String[]{"-daemon", "-url", "jdbc:mysql:bar"});
+    verify(system2).printlnErr("At most one of these options is allowed: -daemon, -config, -url");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void print_error_when_daemon_with_client() {
+    underTest.run(new String[]{"-daemon", "-client"});
+    verify(system2).printlnErr("At most one of these options is allowed: -daemon, -client");
+    verify(system2).exit(1);
+  }
+
+  @Test
+  public void resolve_relative_paths_against_working_directory() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    Files.write(directory.resolve("script.sql"), "select 1;".getBytes());
+    new CliApplication(system2, connectionConfigConsumer, directory).run(new String[]{"-url", "jdbc:mysql:bar", "-script", "script.sql"});
+
+    ArgumentCaptor<ShellOptions> shellOptionsArgumentCaptor = ArgumentCaptor.forClass(ShellOptions.class);
+    verify(connectionConfigConsumer).execute(same(system2), any(ConnectionConfig.class), shellOptionsArgumentCaptor.capture());
+    assertThat(shellOptionsArgumentCaptor.getValue().scriptPath).isEqualTo(directory.resolve("script.sql"));
+  }
 }
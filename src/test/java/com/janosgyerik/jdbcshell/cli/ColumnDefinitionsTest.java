@@ -0,0 +1,41 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Types;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ColumnDefinitionsTest {
+
+  @Test
+  public void map_postgres_types_to_sqlserver() {
+    assertThat(ColumnDefinitions.of("sqlserver", Types.BIT, 1, 0)).isEqualTo("bit");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.VARCHAR, 100, 0)).isEqualTo("nvarchar(100)");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.VARCHAR, Integer.MAX_VALUE, 0)).isEqualTo("nvarchar(max)");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.DOUBLE, 17, 17)).isEqualTo("float");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.TIMESTAMP, 29, 6)).isEqualTo("datetime2");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.BINARY, Integer.MAX_VALUE, 0)).isEqualTo("varbinary(max)");
+  }
+
+  @Test
+  public void map_numeric_beyond_decimal_precision_without_losing_digits() {
+    assertThat(ColumnDefinitions.of("sqlserver", Types.NUMERIC, 12, 2)).isEqualTo("decimal(12, 2)");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.NUMERIC, 50, 4)).isEqualTo("decimal(38, 4)");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.NUMERIC, 1000, 100)).isEqualTo("decimal(38, 38)");
+    assertThat(ColumnDefinitions.of("sqlserver", Types.NUMERIC, 0, 0)).isEqualTo("nvarchar(max)");
+    assertThat(ColumnDefinitions.of("postgresql", Types.NUMERIC, 50, 0)).isEqualTo("text");
+  }
+
+  @Test
+  public void map_unbounded_text_to_varchar_that_h2_can_index() {
+    assertThat(ColumnDefinitions.of("h2", Types.VARCHAR, Integer.MAX_VALUE, 0)).isEqualTo("varchar");
+    assertThat(ColumnDefinitions.of("h2", Types.CLOB, 0, 0)).isEqualTo("varchar");
+    assertThat(ColumnDefinitions.of("h2", Types.TIMESTAMP_WITH_TIMEZONE, 35, 6)).isEqualTo("timestamp with time zone");
+  }
+
+  @Test
+  public void map_unknown_types_to_text() {
+    assertThat(ColumnDefinitions.of("postgresql", Types.OTHER, 0, 0)).isEqualTo("text");
+    assertThat(ColumnDefinitions.of("mysql", Types.ARRAY, 0, 0)).isEqualTo("longtext");
+  }
+}
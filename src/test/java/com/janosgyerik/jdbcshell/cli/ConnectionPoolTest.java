@@ -0,0 +1,166 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConnectionPoolTest {
+
+  private static final ConnectionConfig CONFIG = new ConnectionConfig("jdbc:h2:mem:ConnectionPoolTest;DB_CLOSE_DELAY=-1", null, null);
+
+  private ConnectionPool pool;
+
+  @After
+  public void tearDown() {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  @Test
+  public void reuse_returned_connections() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).build();
+    for (int i = 0; i < 3; i++) {
+      try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+        statement.execute("select 1");
+      }
+    }
+
+    ConnectionPool.Stats stats = pool.stats();
+    assertThat(stats.borrows).isEqualTo(3);
+    assertThat(stats.opened).isEqualTo(1);
+    assertThat(stats.active).isZero();
+    assertThat(stats.idle).isEqualTo(1);
+  }
+
+  @Test
+  public void open_new_connections_while_others_are_in_use() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).setMaxSize(2).build();
+    try (Connection first = pool.borrow(); Connection second = pool.borrow()) {
+      assertThat(first).isNotSameAs(second);
+      assertThat(pool.stats().active).isEqualTo(2);
+    }
+    assertThat(pool.stats().opened).isEqualTo(2);
+    assertThat(pool.stats().peakActive).isEqualTo(2);
+  }
+
+  @Test
+  public void time_out_when_all_connections_in_use() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).setMaxSize(1).setBorrowTimeoutMillis(10).build();
+    try (Connection unused = pool.borrow()) {
+      assertThatThrownBy(pool::borrow)
+        .isInstanceOf(SQLException.class)
+        .hasMessage("Timed out after 10 ms waiting for a connection; all 1 connections are in use");
+    }
+  }
+
+  @Test
+  public void grow_max_size_but_never_shrink_it() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).setMaxSize(1).setBorrowTimeoutMillis(10).build();
+    pool.growMaxSize(2);
+    pool.growMaxSize(1);
+    try (Connection first = pool.borrow(); Connection second = pool.borrow()) {
+      assertThat(pool.maxSize()).isEqualTo(2);
+      assertThatThrownBy(pool::borrow)
+        .isInstanceOf(SQLException.class)
+        .hasMessage("Timed out after 10 ms waiting for a connection; all 2 connections are in use");
+    }
+  }
+
+  @Test
+  public void reject_use_of_returned_connection() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).build();
+    Connection connection = pool.borrow();
+    connection.close();
+    connection.close();
+
+    assertThat(connection.isClosed()).isTrue();
+    assertThatThrownBy(connection::createStatement).isInstanceOf(SQLException.class);
+    assertThat(pool.stats().idle).isEqualTo(1);
+  }
+
+  @Test
+  public void roll_back_and_restore_autocommit_on_return() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).build();
+    try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+      statement.execute("create table if not exists t (id int)");
+      connection.setAutoCommit(false);
+      statement.execute("insert into t values (1)");
+    }
+
+    try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+      assertThat(connection.getAutoCommit()).isTrue();
+      try (ResultSet resultSet = statement.executeQuery("select count(*) from t")) {
+        resultSet.next();
+        assertThat(resultSet.getInt(1)).isZero();
+      }
+      statement.execute("drop table t");
+    }
+  }
+
+  @Test
+  public void evict_idle_connections_above_minimum_size() throws Exception {
+    pool = ConnectionPool.builder(CONFIG).setMinSize(1).setMaxSize(3).setIdleTimeoutMillis(20).build();
+    try (Connection unused1 = pool.borrow(); Connection unused2 = pool.borrow(); Connection unused3 = pool.borrow()) {
+      assertThat(pool.stats().active).isEqualTo(3);
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (pool.stats().idle > 1 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(pool.stats().idle).isEqualTo(1);
+    assertThat(pool.stats().evicted).isEqualTo(2);
+  }
+
+  @Test
+  public void open_minimum_size_when_built() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).setMinSize(2).setMaxSize(3).build();
+    assertThat(pool.stats().opened).isEqualTo(2);
+    assertThat(pool.stats().idle).isEqualTo(2);
+
+    try (Connection unused1 = pool.borrow(); Connection unused2 = pool.borrow()) {
+      assertThat(pool.stats().opened).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void replace_broken_connections_up_to_minimum_size() throws Exception {
+    pool = ConnectionPool.builder(CONFIG).setMinSize(2).setMaxSize(2).setIdleTimeoutMillis(20).build();
+    try (Connection connection = pool.borrow()) {
+      connection.unwrap(Connection.class).close();
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (pool.stats().idle < 2 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(pool.stats().idle).isEqualTo(2);
+    assertThat(pool.stats().opened).isEqualTo(3);
+  }
+
+  @Test
+  public void validate_idle_connections_with_validation_query() throws Exception {
+    pool = ConnectionPool.builder(CONFIG).setValidationQuery("select broken from nowhere").build();
+    try (Connection unused = pool.borrow()) {
+      // just open a connection
+    }
+    Thread.sleep(1100);
+    try (Connection unused = pool.borrow()) {
+      // the idle connection fails validation and is replaced
+    }
+    assertThat(pool.stats().opened).isEqualTo(2);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void reject_min_size_greater_than_max_size() {
+    ConnectionPool.builder(CONFIG).setMinSize(3).setMaxSize(2).build();
+  }
+}
@@ -0,0 +1,45 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.SQLException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ConnectionProfilerTest {
+
+  private final System2 system2 = mock(System2.class);
+
+  @Test
+  public void report_distribution_of_phases() throws Exception {
+    ConnectionConfig config = new ConnectionConfig("jdbc:h2:mem:ConnectionProfilerTest", null, null);
+    new ConnectionProfiler(system2, config, ShellOptions.builder().setConnections(10).setThreads(3).build()).run();
+
+    verify(system2).printlnOut("Connection profile: 10 connection(s) on 3 thread(s), 0 failed");
+    verify(system2).printlnOut(startsWith("driver lookup: min "));
+    verify(system2).printlnOut(startsWith("login:         min "));
+    verify(system2).printlnOut(startsWith("round-trip:    min "));
+    verify(system2).printlnOut(startsWith("total:         min "));
+    // no server address in the url
+    verify(system2, never()).printlnOut(startsWith("tcp connect:"));
+  }
+
+  @Test
+  public void do_not_probe_databases_counting_probes_as_connect_errors() {
+    assertThat(ConnectionProfiler.isProbed(new ConnectionConfig("jdbc:postgresql://db/sonar", null, null))).isTrue();
+    assertThat(ConnectionProfiler.isProbed(new ConnectionConfig("jdbc:mysql://db/sonar", null, null))).isFalse();
+    assertThat(ConnectionProfiler.isProbed(new ConnectionConfig("jdbc:mariadb://db/sonar", null, null))).isFalse();
+  }
+
+  @Test
+  public void fail_when_all_connections_fail() {
+    ConnectionConfig config = new ConnectionConfig("jdbc:h2:mem:ConnectionProfilerTest", null, null);
+    ShellOptions options = ShellOptions.builder().setConnections(2).setValidationQuery("select * from nonexistent").build();
+    assertThatThrownBy(() -> new ConnectionProfiler(system2, config, options).run()).isInstanceOf(SQLException.class);
+    verify(system2).printlnErr(startsWith("First failure of 2: "));
+  }
+}
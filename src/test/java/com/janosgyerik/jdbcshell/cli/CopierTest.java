@@ -0,0 +1,245 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import org.h2.api.Trigger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CopierTest {
+
+  private static final ConnectionConfig SOURCE = new ConnectionConfig("jdbc:h2:mem:CopierSource;DB_CLOSE_DELAY=-1", null, null);
+  private static final ConnectionConfig TARGET = new ConnectionConfig("jdbc:h2:mem:CopierTarget;DB_CLOSE_DELAY=-1", null, null);
+  private static final int ROWS = 2500;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final System2 system2 = mock(System2.class);
+  private ConnectionPool sourcePool;
+
+  @Before
+  public void setUp() throws SQLException {
+    sourcePool = ConnectionPool.builder(SOURCE).build();
+    execute(SOURCE, "create table report (id int primary key, name varchar(20), amount decimal(10, 2), created timestamp, note clob)");
+    execute(SOURCE, "insert into report select x, 'name' || x, x / 100.0, timestamp '2019-01-01 00:00:00', case when mod(x, 2) = 0 then null else 'odd' end"
+      + " from system_range(1, " + ROWS + ")");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    sourcePool.close();
+    execute(SOURCE, "drop all objects");
+    execute(TARGET, "drop all objects");
+  }
+
+  @Test
+  public void copy_table_creating_target_table() throws Exception {
+    copy(ShellOptions.builder().setCopySource("report").setBatchSize(100).setThreads(3));
+
+    assertThat(queryForLong(TARGET, "select count(*) from report")).isEqualTo(ROWS);
+    assertThat(queryForLong(TARGET, "select count(*) from report where note is null")).isEqualTo(ROWS / 2);
+    assertThat(queryForLong(TARGET, "select sum(amount * 100) from report")).isEqualTo((long) ROWS * (ROWS + 1) / 2);
+    verify(system2).printlnOut(startsWith("Copied 2500 row(s) into report in "));
+  }
+
+  @Test
+  public void copy_query_result_into_existing_table() throws Exception {
+    execute(TARGET, "create table summary (id bigint, label varchar(50))");
+    copy(ShellOptions.builder().setCopySource("select id, name as label from report where id <= 10").setTable("summary"));
+
+    assertThat(queryForLong(TARGET, "select count(*) from summary where label like 'name%'")).isEqualTo(10);
+  }
+
+  @Test
+  public void require_target_table_when_copying_query_result() {
+    assertThatThrownBy(() -> copy(ShellOptions.builder().setCopySource("select * from report")))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Option -table is required when copying the result of a query");
+  }
+
+  @Test
+  public void fail_when_writing_fails() throws SQLException {
+    execute(TARGET, "create table report (id int primary key, name varchar(3))");
+    assertThatThrownBy(() -> copy(ShellOptions.builder().setCopySource("select id, name from report").setTable("report").setThreads(2)))
+      .isInstanceOf(SQLException.class);
+  }
+
+  @Test(timeout = 30_000)
+  public void stop_all_writers_when_second_writer_fails_while_queue_is_full() throws SQLException {
+    execute(TARGET, "create table report (id int, name varchar(20))");
+    execute(TARGET, "create trigger slow_or_failing before insert on report for each row call \"" + SlowOrFailingTrigger.class.getName() + "\"");
+
+    assertThatThrownBy(() -> copy(ShellOptions.builder().setCopySource("select id, name from report").setTable("report").setThreads(2).setBatchSize(5)))
+      .isInstanceOf(SQLException.class)
+      .hasMessageContaining("second writer fails");
+    assertThat(queryForLong(TARGET, "select count(*) from report")).isZero();
+  }
+
+  @Test
+  public void roll_back_uncommitted_rows_when_reading_fails() throws SQLException {
+    execute(TARGET, "create table numbers (x bigint)");
+    try (ConnectionPool lazySourcePool = ConnectionPool.builder(new ConnectionConfig(SOURCE.url + ";LAZY_QUERY_EXECUTION=1", null, null)).build()) {
+      ShellOptions options = ShellOptions.builder()
+        .setCopySource("select case when x = 1555 then x / 0 else x end as x from system_range(1, " + ROWS + ")")
+        .setTable("numbers").setBatchSize(10).setCommitInterval(100).build();
+
+      assertThatThrownBy(() -> new Copier(system2, lazySourcePool, SOURCE, TARGET, options).run())
+        .isInstanceOf(SQLException.class)
+        .hasMessageContaining("Division by zero");
+    }
+
+    assertThat(queryForLong(TARGET, "select count(*) from numbers")).isEqualTo(1500);
+  }
+
+  @Test
+  public void quote_columns_of_created_table() throws Exception {
+    copy(ShellOptions.builder().setCopySource("select id as \"order\", name as \"firstName\" from report where id <= 10").setTable("quoted"));
+
+    assertThat(queryForLong(TARGET, "select count(*) from quoted where \"ORDER\" <= 10 and \"firstName\" like 'name%'")).isEqualTo(10);
+  }
+
+  @Test
+  public void match_columns_of_existing_table_ignoring_case() throws Exception {
+    execute(TARGET, "create table summary (\"Id\" bigint, label varchar(50))");
+    copy(ShellOptions.builder().setCopySource("select id as \"id\", name as \"label\" from report where id <= 10").setTable("summary"));
+
+    assertThat(queryForLong(TARGET, "select count(*) from summary where \"Id\" <= 10 and label like 'name%'")).isEqualTo(10);
+  }
+
+  @Test
+  public void fail_when_existing_table_misses_a_column() throws SQLException {
+    execute(TARGET, "create table summary (id bigint)");
+    assertThatThrownBy(() -> copy(ShellOptions.builder().setCopySource("select id, name from report").setTable("summary")))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Column NAME of the source does not exist in table summary");
+  }
+
+  @Test
+  public void replace_table_of_snapshot_and_create_indexes() throws Exception {
+    Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("report");
+    ConnectionConfig snapshot = Copier.snapshotConfig(snapshotPath);
+    ShellOptions.Builder options = ShellOptions.builder()
+      .setCopySource("select id, name, amount from report where id <= 100")
+      .setTable("recent")
+      .setSnapshotPath(snapshotPath)
+      .setIndexes(Arrays.asList(Collections.singletonList("name"), Arrays.asList("amount", "id")));
+
+    new Copier(system2, sourcePool, SOURCE, snapshot, options.build()).run();
+    new Copier(system2, sourcePool, SOURCE, snapshot, options.build()).run();
+
+    assertThat(snapshotPath.resolveSibling("report.mv.db")).exists();
+    assertThat(queryForLong(snapshot, "select count(*) from recent")).isEqualTo(100);
+    assertThat(queryForLong(snapshot, "select count(*) from information_schema.indexes where index_name in ('RECENT_NAME_IDX', 'RECENT_AMOUNT_ID_IDX')"))
+      .isEqualTo(3);
+    verify(system2, times(2)).printlnOut("Snapshot saved in " + snapshotPath + ".mv.db, query it with: -url " + snapshot.url);
+  }
+
+  @Test
+  public void index_unbounded_text_and_quoted_columns_of_snapshot() throws Exception {
+    Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("notes");
+    ConnectionConfig snapshot = Copier.snapshotConfig(snapshotPath);
+    ShellOptions options = ShellOptions.builder()
+      .setCopySource("select id as \"orderId\", note from report")
+      .setTable("notes")
+      .setSnapshotPath(snapshotPath)
+      .setIndexes(Arrays.asList(Collections.singletonList("note"), Collections.singletonList("orderId")))
+      .build();
+
+    new Copier(system2, sourcePool, SOURCE, snapshot, options).run();
+
+    assertThat(queryForLong(snapshot, "select count(*) from notes where note = 'odd' and \"orderId\" > 0")).isEqualTo(ROWS / 2);
+    assertThat(queryForLong(snapshot, "select count(*) from information_schema.indexes where index_name in ('NOTES_NOTE_IDX', 'NOTES_ORDERID_IDX')"))
+      .isEqualTo(2);
+  }
+
+  @Test
+  public void fail_before_loading_on_unknown_index_column() {
+    Path snapshotPath = temporaryFolder.getRoot().toPath().resolve("notes");
+    ShellOptions options = ShellOptions.builder()
+      .setCopySource("select id, note from report")
+      .setTable("notes")
+      .setSnapshotPath(snapshotPath)
+      .setIndexes(Collections.singletonList(Collections.singletonList("missing")))
+      .build();
+
+    assertThatThrownBy(() -> new Copier(system2, sourcePool, SOURCE, Copier.snapshotConfig(snapshotPath), options).run())
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Index column missing is not a column of table notes");
+  }
+
+  @Test
+  public void strip_h2_file_extension_of_snapshot_path() {
+    assertThat(Copier.snapshotPath(Paths.get("dir", "report.mv.db"))).isEqualTo(Paths.get("dir", "report"));
+    assertThat(Copier.snapshotPath(Paths.get("report"))).isEqualTo(Paths.get("report"));
+  }
+
+  /**
+   * Fail the inserts of the second writer thread, and slow down the others, so that the queue is full when it fails.
+   */
+  public static class SlowOrFailingTrigger implements Trigger {
+    @Override
+    public void init(Connection connection, String schemaName, String triggerName, String tableName, boolean before, int type) {
+      // nothing to do
+    }
+
+    @Override
+    public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+      if (Thread.currentThread().getName().endsWith("-thread-2")) {
+        throw new SQLException("The second writer fails");
+      }
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      // nothing to do
+    }
+
+    @Override
+    public void remove() {
+      // nothing to do
+    }
+  }
+
+  private void copy(ShellOptions.Builder options) throws Exception {
+    new Copier(system2, sourcePool, SOURCE, TARGET, options.build()).run();
+  }
+
+  private static void execute(ConnectionConfig config, String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(config.url); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  private static long queryForLong(ConnectionConfig config, String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(config.url);
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery(sql)) {
+      resultSet.next();
+      return resultSet.getLong(1);
+    }
+  }
+}
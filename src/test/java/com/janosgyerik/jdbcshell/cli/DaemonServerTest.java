@@ -0,0 +1,142 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DaemonServerTest {
+
+  private static final String URL = "jdbc:h2:mem:DaemonServerTest;DB_CLOSE_DELAY=-1";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final System2 system2 = mock(System2.class);
+  private final ExecutorService executor = Executors.newSingleThreadExecutor();
+  private Path stateFile;
+  private DaemonServer server;
+
+  @Before
+  public void setUp() throws Exception {
+    stateFile = temporaryFolder.getRoot().toPath().resolve("daemon.properties");
+    server = new DaemonServer(mock(System2.class), stateFile);
+    executor.submit(() -> {
+      server.run();
+      return null;
+    });
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!Files.exists(stateFile) && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    server.close();
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void run_commands_in_daemon_and_reuse_its_connection_pool() throws IOException {
+    DaemonClient client = new DaemonClient(system2, stateFile);
+    Path workingDirectory = temporaryFolder.getRoot().toPath();
+
+    assertThat(client.run(Arrays.asList("-url", URL, "-query", "select 42 as answer"), workingDirectory)).isZero();
+    assertThat(client.run(Arrays.asList("-url", URL, "-query", "select 43 as answer"), workingDirectory)).isZero();
+
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut("ANSWER");
+    inOrder.verify(system2).printlnOut("42");
+    inOrder.verify(system2).printlnOut("43");
+    assertThat(server.poolCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void grow_shared_pool_for_requests_with_more_threads() throws IOException {
+    DaemonClient client = new DaemonClient(system2, stateFile);
+    Path workingDirectory = temporaryFolder.getRoot().toPath();
+
+    assertThat(client.run(Arrays.asList("-url", URL, "-query", "select 1"), workingDirectory)).isZero();
+    int threads = ConnectionPool.DEFAULT_MAX_SIZE + 2;
+    assertThat(client.run(Arrays.asList("-url", URL, "-bench", "select 1", "-threads", Integer.toString(threads), "-iterations", "20",
+      "-warmup", "0"), workingDirectory)).isZero();
+
+    verify(system2).printlnOut(startsWith("Benchmark: 20 iteration(s) on " + threads + " connection(s)"));
+  }
+
+  @Test
+  public void close_pools_not_used_for_a_while() throws IOException {
+    DaemonClient client = new DaemonClient(system2, stateFile);
+    assertThat(client.run(Arrays.asList("-url", URL, "-query", "select 1"), temporaryFolder.getRoot().toPath())).isZero();
+
+    server.closeIdlePools(DaemonServer.POOL_IDLE_TIMEOUT_MILLIS);
+    assertThat(server.poolCount()).isEqualTo(1);
+    server.closeIdlePools(0);
+    assertThat(server.poolCount()).isZero();
+  }
+
+  @Test
+  public void forward_errors_and_exit_status() throws IOException {
+    int status = new DaemonClient(system2, stateFile).run(Arrays.asList("-url", URL, "-query", "select * from nonexistent"),
+      temporaryFolder.getRoot().toPath());
+
+    assertThat(status).isEqualTo(1);
+    verify(system2).printlnErr(startsWith("Table \"NONEXISTENT\" not found"));
+  }
+
+  @Test
+  public void write_output_relative_to_client_working_directory() throws IOException {
+    Path workingDirectory = temporaryFolder.newFolder().toPath();
+    int status = new DaemonClient(system2, stateFile).run(Arrays.asList("-url", URL, "-query", "select 1 as one", "-output", "out.tsv"),
+      workingDirectory);
+
+    assertThat(status).isZero();
+    assertThat(Files.readAllLines(workingDirectory.resolve("out.tsv"), StandardCharsets.UTF_8)).containsExactly("ONE", "1");
+  }
+
+  @Test
+  public void reject_requests_with_wrong_token() throws IOException {
+    Properties state = new Properties();
+    try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.ISO_8859_1)) {
+      state.load(reader);
+    }
+    Path forged = temporaryFolder.newFile().toPath();
+    Files.write(forged, ("port=" + state.getProperty("port") + "\ntoken=forged\n").getBytes(StandardCharsets.ISO_8859_1));
+
+    int status = new DaemonClient(system2, forged).run(Arrays.asList("-url", URL, "-query", "select 1"), temporaryFolder.getRoot().toPath());
+
+    assertThat(status).isEqualTo(1);
+    verify(system2).printlnErr("Invalid daemon token, restart the daemon");
+  }
+
+  @Test
+  public void fail_when_no_daemon_is_running() throws IOException {
+    server.close();
+    assertThat(stateFile).doesNotExist();
+
+    assertThatThrownBy(() -> new DaemonClient(system2, stateFile).run(Arrays.asList("-url", URL), temporaryFolder.getRoot().toPath()))
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("No jdbcshell daemon is running, start one with: jdbcshell -daemon");
+  }
+}
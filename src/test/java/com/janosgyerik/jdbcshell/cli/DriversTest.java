@@ -0,0 +1,40 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DriversTest {
+
+  @Test
+  public void load_driver_of_subprotocol_once() throws SQLException {
+    Driver driver = Drivers.find(new ConnectionConfig("jdbc:h2:mem:DriversTest", null, null));
+    assertThat(driver.getClass().getName()).isEqualTo("org.h2.Driver");
+    assertThat(Drivers.find(new ConnectionConfig("jdbc:h2:mem:other", null, null))).isSameAs(driver);
+  }
+
+  @Test
+  public void connect_with_driver_of_subprotocol() throws SQLException {
+    try (Connection connection = Drivers.connect(new ConnectionConfig("jdbc:h2:mem:DriversTest", "sa", ""))) {
+      assertThat(connection.isValid(1)).isTrue();
+    }
+  }
+
+  @Test
+  public void fall_back_to_driver_manager_when_driver_class_is_missing() {
+    assertThatThrownBy(() -> Drivers.find(new ConnectionConfig("jdbc:oracle:thin:@localhost:1521:xe", null, null)))
+      .isInstanceOf(SQLException.class)
+      .hasMessageContaining("No suitable driver");
+  }
+
+  @Test
+  public void fall_back_to_driver_manager_for_unknown_subprotocol() {
+    assertThatThrownBy(() -> Drivers.find(new ConnectionConfig("jdbc:unknown:db", null, null)))
+      .isInstanceOf(SQLException.class)
+      .hasMessageContaining("No suitable driver");
+  }
+}
@@ -0,0 +1,134 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.BlockCompressingChannel;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ExporterTest {
+
+  private static final ConnectionConfig CONFIG = new ConnectionConfig("jdbc:h2:mem:ExporterTest;DB_CLOSE_DELAY=-1", null, null);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final List<String> lines = new ArrayList<>();
+  private final System2 system2 = mock(System2.class);
+  private ConnectionPool pool;
+
+  @Before
+  public void setUp() throws SQLException {
+    pool = ConnectionPool.builder(CONFIG).build();
+    execute("create table events (id int, name varchar(20))");
+    execute("insert into events select x, 'event' || x from system_range(1, 1000)");
+    execute("insert into events values (null, 'no key')");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    pool.close();
+    execute("drop table events");
+  }
+
+  @Test
+  public void export_ranges_to_single_output_in_order() throws Exception {
+    Path output = temporaryFolder.getRoot().toPath().resolve("events.tsv");
+    System2 fileSystem2 = new System2() {
+      @Override
+      void printlnErr(String s) {
+        lines.add(s);
+      }
+    };
+    fileSystem2.redirectOut(output);
+    new Exporter(fileSystem2, pool, CONFIG, options().setOutputPath(output).build()).run();
+    fileSystem2.flushOut();
+
+    List<String> exported = Files.readAllLines(output);
+    assertThat(exported).hasSize(1 + 1001);
+    assertThat(exported.get(0)).isEqualTo("ID\tNAME");
+    assertThat(exported).containsOnlyOnce("1\tevent1", "1000\tevent1000", "NULL\tno key");
+    // the first range is [1, 251) with the null key, then the other ranges follow in order
+    assertThat(exported.subList(1, 252)).allMatch(line -> line.startsWith("NULL") || Integer.parseInt(line.split("\t")[0]) <= 250);
+    assertThat(exported.subList(752, 1002)).allMatch(line -> Integer.parseInt(line.split("\t")[0]) > 750);
+    assertThat(lines).hasSize(1);
+    assertThat(lines.get(0)).startsWith("Exported 1001 row(s) from events in 4 part(s) in ");
+    try (java.util.stream.Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+      assertThat(files).containsExactly(output);
+    }
+  }
+
+  @Test
+  public void export_ranges_to_part_files() throws Exception {
+    Path output = temporaryFolder.getRoot().toPath().resolve("events.tsv");
+    new Exporter(system2, pool, CONFIG, options().setOutputPath(output).setPartFiles(true).build()).run();
+
+    long rows = 0;
+    for (int part = 1; part <= 4; part++) {
+      List<String> exported = Files.readAllLines(output.resolveSibling(String.format("events-0000%d.tsv", part)));
+      assertThat(exported.get(0)).isEqualTo("ID\tNAME");
+      rows += exported.size() - 1;
+    }
+    assertThat(rows).isEqualTo(1001);
+    assertThat(Files.exists(output)).isFalse();
+    verify(system2).printlnErr(startsWith("Exported 1001 row(s) from events in 4 part(s)"));
+  }
+
+  @Test
+  public void export_ranges_to_compressed_output() throws Exception {
+    Path output = temporaryFolder.getRoot().toPath().resolve("events.tsv.gz");
+    System2 fileSystem2 = new System2() {
+      @Override
+      void printlnErr(String s) {
+        lines.add(s);
+      }
+    };
+    fileSystem2.redirectOut(output, BlockCompressingChannel.Format.GZIP);
+    new Exporter(fileSystem2, pool, CONFIG, options().setOutputPath(output).setCompression(BlockCompressingChannel.Format.GZIP).build()).run();
+    assertThat(fileSystem2.closeOut(0)).isZero();
+
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(Files.newInputStream(output)), StandardCharsets.UTF_8))) {
+      List<String> exported = reader.lines().collect(Collectors.toList());
+      assertThat(exported).hasSize(1 + 1001);
+      assertThat(exported).containsOnlyOnce("ID\tNAME", "1000\tevent1000", "NULL\tno key");
+    }
+  }
+
+  @Test
+  public void name_part_files_after_output_file() {
+    assertThat(Exporter.partPath(Paths.get("out/data.tsv"), 12)).isEqualTo(Paths.get("out/data-00012.tsv"));
+    assertThat(Exporter.partPath(Paths.get("data"), 1)).isEqualTo(Paths.get("data-00001"));
+    assertThat(Exporter.partPath(Paths.get("data.tsv.gz"), 2)).isEqualTo(Paths.get("data-00002.tsv.gz"));
+    assertThat(Exporter.partPath(Paths.get("data.lz4"), 3)).isEqualTo(Paths.get("data-00003.lz4"));
+  }
+
+  private static ShellOptions.Builder options() {
+    return ShellOptions.builder().setExportTable("events").setPartitionColumn("id").setThreads(4).setFetchSize(100);
+  }
+
+  private static void execute(String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(CONFIG.url); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
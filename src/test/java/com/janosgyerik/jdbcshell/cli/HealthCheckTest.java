@@ -0,0 +1,107 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.matches;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class HealthCheckTest {
+
+  private final System2 system2 = mock(System2.class);
+
+  @Test
+  public void check_all_targets_concurrently() {
+    Map<String, ConnectionConfig> targets = new LinkedHashMap<>();
+    targets.put("prod1", config("jdbc:h2:mem:HealthCheckTest1"));
+    targets.put("prod2", config("jdbc:h2:mem:HealthCheckTest2"));
+    HealthCheck healthCheck = new HealthCheck(system2, ShellOptions.builder().setHealthCheckTargets(targets).setValidationQuery("select 1").build());
+
+    healthCheck.run();
+
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut(matches("PROFILE +STATUS +CONNECT_MS +QUERY_MS +MESSAGE"));
+    inOrder.verify(system2).printlnOut(matches("prod1 +OK +[0-9]+ +[0-9]+ +"));
+    inOrder.verify(system2).printlnOut(matches("prod2 +OK +[0-9]+ +[0-9]+ +"));
+    verify(system2).printlnErr(matches("Checked 2 target\\(s\\) in [0-9]+ ms: 2 ok, 0 failed, 0 timed out"));
+  }
+
+  @Test
+  public void report_failed_and_timed_out_targets() throws SQLException {
+    String slowUrl = "jdbc:h2:mem:HealthCheckSlow;DB_CLOSE_DELAY=-1";
+    try (Connection connection = DriverManager.getConnection(slowUrl); Statement statement = connection.createStatement()) {
+      statement.execute("create alias if not exists sleep for \"java.lang.Thread.sleep\"");
+    }
+    Map<String, ConnectionConfig> targets = new LinkedHashMap<>();
+    targets.put("slow", config(slowUrl));
+    targets.put("broken", config("jdbc:h2:mem:HealthCheckBroken;IFEXISTS=TRUE"));
+    ShellOptions options = ShellOptions.builder()
+      .setHealthCheckTargets(targets)
+      .setValidationQuery("call sleep(10000)")
+      .setQueryTimeoutSeconds(1)
+      .build();
+
+    long start = System.nanoTime();
+    List<HealthCheck.Result> results = new HealthCheck(system2, options).check();
+
+    assertThat((System.nanoTime() - start) / 1_000_000).isLessThan(5000);
+    assertThat(results).extracting(result -> result.profile + " " + result.status).containsExactly("slow TIMEOUT", "broken FAILED");
+    assertThat(results.get(0).message).isEqualTo("query timeout of 1 s exceeded");
+    assertThat(results.get(0).connectMillis).isNotNegative();
+    assertThat(results.get(1).connectMillis).isEqualTo(-1);
+  }
+
+  @Test
+  public void stop_at_deadline() throws SQLException {
+    String slowUrl = "jdbc:h2:mem:HealthCheckDeadline;DB_CLOSE_DELAY=-1";
+    try (Connection connection = DriverManager.getConnection(slowUrl); Statement statement = connection.createStatement()) {
+      statement.execute("create alias if not exists sleep for \"java.lang.Thread.sleep\"");
+    }
+    Map<String, ConnectionConfig> targets = new LinkedHashMap<>();
+    targets.put("slow", config(slowUrl));
+    ShellOptions options = ShellOptions.builder()
+      .setHealthCheckTargets(targets)
+      .setValidationQuery("call sleep(10000)")
+      .setDeadlineSeconds(1)
+      .build();
+
+    assertThatThrownBy(() -> new HealthCheck(system2, options).run())
+      .isInstanceOf(IllegalStateException.class)
+      .hasMessage("1 of 1 target(s) are not healthy");
+    verify(system2).printlnOut(matches("slow +TIMEOUT +[0-9]+ +- +deadline of 1 s exceeded"));
+  }
+
+  @Test
+  public void print_summary_as_json() {
+    Map<String, ConnectionConfig> targets = new LinkedHashMap<>();
+    targets.put("prod1", config("jdbc:h2:mem:HealthCheckJson"));
+    targets.put("broken", config("jdbc:h2:mem:HealthCheckBroken;IFEXISTS=TRUE"));
+    HealthCheck healthCheck = new HealthCheck(system2, ShellOptions.builder().setHealthCheckTargets(targets).setJson(true).build());
+
+    assertThatThrownBy(healthCheck::run).isInstanceOf(IllegalStateException.class);
+
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut("[");
+    inOrder.verify(system2).printlnOut(matches(
+      "  \\{\"profile\":\"prod1\",\"url\":\"jdbc:h2:mem:HealthCheckJson\",\"status\":\"OK\",\"connectMillis\":[0-9]+,\"queryMillis\":[0-9]+,\"message\":null},"));
+    inOrder.verify(system2).printlnOut(startsWith("  {\"profile\":\"broken\",\"url\":\"jdbc:h2:mem:HealthCheckBroken;IFEXISTS=TRUE\",\"status\":\"FAILED\","
+      + "\"connectMillis\":null,\"queryMillis\":null,\"message\":\"Database "));
+    inOrder.verify(system2).printlnOut("]");
+  }
+
+  private static ConnectionConfig config(String url) {
+    return new ConnectionConfig(url, null, null);
+  }
+}
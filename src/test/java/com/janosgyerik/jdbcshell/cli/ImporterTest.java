@@ -0,0 +1,183 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ImporterTest {
+
+  private static final String URL = "jdbc:h2:mem:ImporterTest;DB_CLOSE_DELAY=-1";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final System2 system2 = mock(System2.class);
+  private final ConnectionPool pool = ConnectionPool.builder(new ConnectionConfig(URL, null, null)).build();
+
+  @Before
+  public void setUp() throws SQLException {
+    execute("create table person (id int primary key, name varchar(50), score decimal(5, 2), born date)");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    pool.close();
+    execute("drop table person");
+  }
+
+  @Test
+  public void import_csv_with_header_and_typed_values() throws Exception {
+    Path path = write("data.csv", "id,name,score,born\n1,Alice,1.5,2000-01-31\n2,\"Bob, \"\"Jr\"\"\",,\n3,\"multi\nline\",2,1999-12-31\n");
+    newImporter(path, 1).run();
+
+    assertThat(selectAll()).containsExactly(
+      "1|Alice|1.50|2000-01-31",
+      "2|Bob, \"Jr\"|null|null",
+      "3|multi\nline|2.00|1999-12-31");
+    verify(system2).printlnOut(startsWith("Imported 3 row(s) into person in "));
+  }
+
+  @Test
+  public void import_tsv() throws Exception {
+    Path path = write("data.tsv", "name\tid\nAlice\t1\n");
+    newImporter(path, 1).run();
+    assertThat(selectAll()).containsExactly("1|Alice|null|null");
+  }
+
+  @Test
+  public void import_ndjson_using_keys_of_first_object_as_columns() throws Exception {
+    Path path = write("data.ndjson", "{\"id\": 1, \"name\": \"Alice\"}\n\n{\"name\": null, \"id\": 2}\n");
+    newImporter(path, 1).run();
+    assertThat(selectAll()).containsExactly("1|Alice|null|null", "2|null|null|null");
+  }
+
+  @Test
+  public void import_in_parallel_with_small_batches() throws Exception {
+    StringBuilder sb = new StringBuilder("id,name\n");
+    for (int i = 1; i <= 1000; i++) {
+      sb.append(i).append(",name").append(i).append('\n');
+    }
+    Path path = write("data.csv", sb.toString());
+
+    ShellOptions options = ShellOptions.builder().setTable("person").setThreads(4).setBatchSize(7).setCommitInterval(20).build();
+    new Importer(system2, pool, options, path).run();
+
+    assertThat(selectAll()).hasSize(1000);
+    verify(system2).printlnOut(startsWith("Imported 1000 row(s) into person in "));
+  }
+
+  @Test
+  public void import_in_parallel_quoted_values_with_line_breaks() throws Exception {
+    StringBuilder sb = new StringBuilder("id,name\n");
+    for (int i = 1; i <= 100; i++) {
+      sb.append(i).append(",\"name\n").append(i).append("\"\n");
+    }
+    Path path = write("data.csv", sb.toString());
+
+    ShellOptions options = ShellOptions.builder().setTable("person").setThreads(7).setBatchSize(3).build();
+    new Importer(system2, pool, options, path).run();
+
+    List<String> rows = selectAll();
+    assertThat(rows).hasSize(100);
+    for (int i = 1; i <= 100; i++) {
+      assertThat(rows).contains(i + "|name\n" + i + "|null|null");
+    }
+  }
+
+  @Test
+  public void report_byte_offset_of_invalid_record() throws Exception {
+    Path path = write("data.csv", "id,name\n1,Alice\nfoo,Bob\n");
+    assertThatThrownBy(() -> newImporter(path, 1).run())
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessageStartingWith("Invalid record at byte offset 16 of " + path);
+  }
+
+  @Test
+  public void quote_reserved_and_mixed_case_names_of_table_and_columns() throws Exception {
+    execute("create table \"ORDER\" (\"Key\" int, \"GROUP\" varchar(10), active boolean)");
+    try {
+      Path path = write("data.csv", "Key,group,active\n1,a,yes\n2,b,OFF\n3,c,t\n");
+      new Importer(system2, pool, ShellOptions.builder().setTable("order").build(), path).run();
+
+      List<String> rows = new ArrayList<>();
+      try (Connection connection = DriverManager.getConnection(URL);
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery("select \"Key\", \"GROUP\", active from \"ORDER\" order by 1")) {
+        while (resultSet.next()) {
+          rows.add(resultSet.getString(1) + "|" + resultSet.getString(2) + "|" + resultSet.getBoolean(3));
+        }
+      }
+      assertThat(rows).containsExactly("1|a|true", "2|b|false", "3|c|true");
+    } finally {
+      execute("drop table \"ORDER\"");
+    }
+  }
+
+  @Test
+  public void reject_values_of_boolean_columns_that_are_not_booleans() throws Exception {
+    execute("create table flags (id int, active boolean)");
+    try {
+      Path path = write("data.csv", "id,active\n1,yes\n2,maybe\n");
+      assertThatThrownBy(() -> new Importer(system2, pool, ShellOptions.builder().setTable("flags").build(), path).run())
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Invalid record at byte offset 16 of " + path + ": Not a boolean: maybe");
+    } finally {
+      execute("drop table flags");
+    }
+  }
+
+  @Test
+  public void fail_on_column_not_in_table() throws Exception {
+    Path path = write("data.csv", "id,nickname\n1,Al\n");
+    assertThatThrownBy(() -> newImporter(path, 1).run())
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Column nickname of " + path + " does not exist in table person");
+  }
+
+  private Importer newImporter(Path path, int threads) {
+    return new Importer(system2, pool, ShellOptions.builder().setTable("person").setThreads(threads).build(), path);
+  }
+
+  private Path write(String filename, String content) throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve(filename);
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path;
+  }
+
+  private static List<String> selectAll() throws SQLException {
+    List<String> rows = new ArrayList<>();
+    try (Connection connection = DriverManager.getConnection(URL);
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery("select id, name, score, born from person order by id")) {
+      while (resultSet.next()) {
+        rows.add(resultSet.getString(1) + "|" + resultSet.getString(2) + "|" + resultSet.getString(3) + "|" + resultSet.getString(4));
+      }
+    }
+    return rows;
+  }
+
+  private static void execute(String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(URL); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
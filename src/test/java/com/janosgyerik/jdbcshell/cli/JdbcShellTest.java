@@ -0,0 +1,333 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.janosgyerik.jdbcshell.io.JsonObjectParser;
+import com.janosgyerik.jdbcshell.io.SqlScriptReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.matches;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class JdbcShellTest {
+
+  private static final String URL = "jdbc:h2:mem:JdbcShellTest;DB_CLOSE_DELAY=-1";
+
+  private final System2 system2 = mock(System2.class);
+  private final ConnectionConfig config = new ConnectionConfig(URL, null, null);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Before
+  public void setUp() throws SQLException {
+    // rows are printed from a reused buffer, so record them as strings to verify them
+    doAnswer(invocation -> {
+      system2.printlnOut(invocation.getArguments()[0].toString());
+      return null;
+    }).when(system2).printlnOut(any(CharSequence.class));
+    execute("create table person (id int primary key, name varchar(20))");
+    execute("insert into person values (1, 'Alice'), (2, 'Bob'), (3, null)");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    execute("drop table person");
+  }
+
+  @Test
+  public void test_connection_without_username_and_password() throws Exception {
+    try (JdbcShell shell = newShell(ShellOptions.builder().build())) {
+      shell.run();
+    }
+    verify(system2).printlnOut("Connection test successful!");
+  }
+
+  @Test
+  public void print_header_and_rows_of_query() throws Exception {
+    try (JdbcShell shell = newShell(ShellOptions.builder().setQuery("select id, name from person order by id").build())) {
+      shell.run();
+    }
+
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut("ID\tNAME");
+    inOrder.verify(system2).printlnOut("1\tAlice");
+    inOrder.verify(system2).printlnOut("2\tBob");
+    inOrder.verify(system2).printlnOut("3\tNULL");
+  }
+
+  @Test
+  public void execute_query_with_question_mark_operator_as_plain_statement() throws Exception {
+    String sql = "update doc set tagged = true where data ? 'tag'";
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)).thenReturn(statement);
+    when(statement.getUpdateCount()).thenReturn(2, -1);
+    ConnectionPool pool = mock(ConnectionPool.class);
+    when(pool.borrow()).thenReturn(connection);
+
+    try (JdbcShell shell = new JdbcShell(system2, config, ShellOptions.builder().setQuery(sql).build(), pool)) {
+      shell.run();
+    }
+
+    verify(statement).execute(sql);
+    verify(statement).close();
+    verify(connection, never()).prepareStatement(anyString(), anyInt(), anyInt());
+    verify(system2).printlnOut("2 row(s) affected");
+  }
+
+  @Test
+  public void print_every_result_of_a_statement() throws Exception {
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(statement.getUpdateCount()).thenReturn(3, 5, -1);
+    try (JdbcShell shell = new JdbcShell(system2, config, ShellOptions.builder().setQuery("exec two_updates").build(), poolPreparing(statement))) {
+      shell.run();
+    }
+
+    verify(system2).printlnOut("3 row(s) affected");
+    verify(system2).printlnOut("5 row(s) affected");
+  }
+
+  @Test
+  public void fail_without_commit_when_a_later_result_of_a_statement_fails() throws Exception {
+    PreparedStatement statement = mock(PreparedStatement.class);
+    when(statement.getUpdateCount()).thenReturn(3);
+    when(statement.getMoreResults()).thenThrow(new SQLException("second statement failed"));
+    ConnectionPool pool = poolPreparing(statement);
+    try (JdbcShell shell = new JdbcShell(system2, config, ShellOptions.builder().setQuery("exec two_updates").build(), pool)) {
+      assertThatThrownBy(shell::run).isInstanceOf(SQLException.class).hasMessage("second statement failed");
+    }
+
+    verify(pool.borrow(), never()).commit();
+  }
+
+  @Test
+  public void fetch_all_rows_when_fetch_size_smaller_than_result() throws Exception {
+    try (JdbcShell shell = newShell(ShellOptions.builder().setQuery("select id from person").setFetchSize(1).build())) {
+      shell.run();
+    }
+    verify(system2, times(4)).printlnOut(anyString());
+  }
+
+  @Test
+  public void print_update_count_of_non_query_statements() throws Exception {
+    try (JdbcShell shell = newShell(ShellOptions.builder().setQuery("update person set name = 'Carol' where id = 3").build())) {
+      shell.run();
+    }
+    verify(system2).printlnOut("1 row(s) affected");
+  }
+
+  @Test
+  public void reuse_prepared_statement_when_executing_same_query_again() throws Exception {
+    try (JdbcShell shell = newShell(ShellOptions.builder().build())) {
+      shell.executeQuery("select name from person where id = 1");
+      shell.executeQuery("select name from person where id = 1\n");
+    }
+    verify(system2, times(2)).printlnOut("Alice");
+    verify(system2).printlnErr("Statement cache: 1 hit(s), 1 miss(es), 0 eviction(s), 0 invalidation(s)");
+  }
+
+  @Test
+  public void print_stats_summary_and_write_stats_log() throws Exception {
+    Path log = temporaryFolder.getRoot().toPath().resolve("stats.jsonl");
+    try (JdbcShell shell = newShell(ShellOptions.builder().setStats(true).setStatsLogPath(log).build())) {
+      shell.executeQuery("select id, name from person");
+      shell.executeQuery("select id from person where id = 1");
+    }
+    verify(system2).printlnErr(startsWith("Statement stats: 2 statement(s), 4 row(s), ~"));
+    verify(system2).printlnErr(matches("  fetch +[0-9.]+ ms +[0-9.]+%"));
+
+    List<String> lines = Files.readAllLines(log);
+    assertThat(lines).hasSize(2);
+    Map<String, String> members = new LinkedHashMap<>();
+    new JsonObjectParser().parse(lines.get(0), members);
+    assertThat(members).containsEntry("sql", "select id, name from person").containsEntry("rows", "3").containsEntry("bytes", "11");
+    assertThat(members).containsKeys("connectMs", "executeMs", "firstRowMs", "fetchMs", "formatMs", "totalMs");
+  }
+
+  @Test
+  public void print_connection_pool_stats_on_close() throws Exception {
+    try (JdbcShell shell = newShell(ShellOptions.builder().build())) {
+      shell.run();
+    }
+    verify(system2).printlnErr(startsWith("Connection pool: 1 borrow(s), 1 connection(s) opened"));
+  }
+
+  @Test
+  public void execute_script_statement_by_statement() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, ("insert into person values (4, 'Dan;iel');\n"
+      + "-- comment\n"
+      + "select name from person where id = 4;\n").getBytes(StandardCharsets.UTF_8));
+    try (JdbcShell shell = newShell(ShellOptions.builder().setScriptPath(script).build())) {
+      shell.run();
+    }
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut("1 row(s) affected");
+    inOrder.verify(system2).printlnOut("NAME");
+    inOrder.verify(system2).printlnOut("Dan;iel");
+    verify(system2).printlnErr(startsWith("Executed 2 statement(s) from " + script));
+  }
+
+  @Test
+  public void report_line_of_failed_script_statement() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, "select 1;\n\nselect nonexistent\nfrom person;\nselect 3;".getBytes(StandardCharsets.UTF_8));
+    try (JdbcShell shell = newShell(ShellOptions.builder().setScriptPath(script).build())) {
+      assertThatThrownBy(shell::run)
+        .isInstanceOf(SQLException.class)
+        .hasMessageStartingWith("Statement at line 3 of " + script + " failed: ");
+    }
+    verify(system2, never()).printlnOut("3");
+  }
+
+  @Test
+  public void batch_consecutive_statements_of_same_shape() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, ("insert into person values (4, 'Dan');\n"
+      + "insert into person values (5, 'Eve');\n"
+      + "insert into person values (6, 'Fay');\n"
+      + "update person set name = 'Bobby' where id = 2;\n"
+      + "insert into person values (7, 'Gus');\n"
+      + "select count(*) from person;\n").getBytes(StandardCharsets.UTF_8));
+    try (JdbcShell shell = newShell(ShellOptions.builder().setScriptPath(script).setAutoBatch(true).setBatchSize(2).build())) {
+      shell.run();
+    }
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut("2 row(s) affected by 2 statement(s)");
+    inOrder.verify(system2, times(3)).printlnOut("1 row(s) affected by 1 statement(s)");
+    inOrder.verify(system2).printlnOut("7");
+    verify(system2).printlnErr(startsWith("Executed 6 statement(s) from " + script));
+    verify(system2).printlnErr(matches(".*, 5 of them in 4 batch\\(es\\)"));
+  }
+
+  @Test
+  public void batch_statements_of_same_shape_after_ddl_closed_their_prepared_statement() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, ("insert into person values (4, 'Dan');\n"
+      + "create index person_name on person (name);\n"
+      + "insert into person values (5, 'Eve');\n"
+      + "insert into person values (6, 'Fay');\n"
+      + "drop index person_name;\n").getBytes(StandardCharsets.UTF_8));
+    try (JdbcShell shell = newShell(ShellOptions.builder().setScriptPath(script).setAutoBatch(true).build())) {
+      shell.run();
+    }
+    verify(system2).printlnOut("1 row(s) affected by 1 statement(s)");
+    verify(system2).printlnOut("2 row(s) affected by 2 statement(s)");
+    verify(system2).printlnErr(matches(".*, 3 of them in 2 batch\\(es\\)"));
+  }
+
+  @Test
+  public void report_line_of_failed_statement_in_batch() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, ("insert into person values (4, 'Dan');\n"
+      + "insert into person values (1, 'Duplicate');\n"
+      + "insert into person values (5, 'Eve');\n").getBytes(StandardCharsets.UTF_8));
+    try (JdbcShell shell = newShell(ShellOptions.builder().setScriptPath(script).setAutoBatch(true).build())) {
+      assertThatThrownBy(shell::run)
+        .isInstanceOf(SQLException.class)
+        .hasMessageStartingWith("Statement at line 2 of " + script + " failed: ");
+    }
+    // the statements before the failing one are executed again one at a time
+    verify(system2).printlnOut("1 row(s) affected");
+  }
+
+  @Test
+  public void describe_table_from_metadata_cache() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (JdbcShell shell = newShell(ShellOptions.builder().setDescribeTable("person").setMetadataCacheDirectory(directory).build())) {
+      shell.run();
+    }
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2).printlnOut("COLUMN\tTYPE\tNULLABLE");
+    inOrder.verify(system2).printlnOut("ID\tINTEGER\tNO");
+    inOrder.verify(system2).printlnOut("NAME\tVARCHAR(20)\tYES");
+    inOrder.verify(system2).printlnOut("INDEX\tUNIQUE\tCOLUMNS");
+    inOrder.verify(system2).printlnOut(matches(".*\tYES\tID"));
+    assertThat(directory.toFile().list()).hasSize(1);
+  }
+
+  @Test
+  public void invalidate_metadata_cache_on_ddl() throws Exception {
+    Path directory = temporaryFolder.newFolder().toPath();
+    try (JdbcShell shell = newShell(ShellOptions.builder().setTablePrefix("").setMetadataCacheDirectory(directory).build())) {
+      shell.run();
+      shell.executeQuery("create table pet (id int)");
+      shell.listTables("p");
+    } finally {
+      execute("drop table pet");
+    }
+    verify(system2).printlnOut("PUBLIC.PET");
+  }
+
+  @Test
+  public void reuse_cached_query_output_until_table_is_written() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, ("select count(*) as n from person;\n"
+      + "select count(*) as n from person;\n"
+      + "insert into person values (4, 'Dan');\n"
+      + "insert into person values (5, 'Eve');\n"
+      + "select count(*) as n from person;\n").getBytes(StandardCharsets.UTF_8));
+    ShellOptions options = ShellOptions.builder().setScriptPath(script).setAutoBatch(true).setResultCacheTtlSeconds(60).build();
+    try (JdbcShell shell = newShell(options)) {
+      shell.run();
+    }
+    InOrder inOrder = inOrder(system2);
+    inOrder.verify(system2, times(2)).printlnOut("3");
+    inOrder.verify(system2).printlnOut("5");
+    verify(system2).printlnErr("Result cache: 1 hit(s), 2 miss(es), 0 eviction(s), 1 invalidation(s)");
+  }
+
+  @Test
+  public void pick_script_dialect_from_subprotocol() {
+    assertThat(JdbcShell.scriptDialect(new ConnectionConfig("jdbc:mariadb://db/test", null, null))).isEqualTo(SqlScriptReader.Dialect.MYSQL);
+    assertThat(JdbcShell.scriptDialect(new ConnectionConfig("jdbc:postgresql://db/test", null, null))).isEqualTo(SqlScriptReader.Dialect.POSTGRESQL);
+    assertThat(JdbcShell.scriptDialect(new ConnectionConfig("jdbc:sqlserver://db", null, null))).isEqualTo(SqlScriptReader.Dialect.SQLSERVER);
+    assertThat(JdbcShell.scriptDialect(config)).isEqualTo(SqlScriptReader.Dialect.STANDARD);
+  }
+
+  private JdbcShell newShell(ShellOptions options) {
+    return new JdbcShell(system2, config, options);
+  }
+
+  private static ConnectionPool poolPreparing(PreparedStatement statement) throws SQLException {
+    Connection connection = mock(Connection.class);
+    when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+    ConnectionPool pool = mock(ConnectionPool.class);
+    when(pool.borrow()).thenReturn(connection);
+    return pool;
+  }
+
+  private static void execute(String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(URL); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import java.net.InetSocketAddress;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(DataProviderRunner.class)
+public class JdbcUrlsTest {
+
+  @Test
+  @UseDataProvider("urlsWithServerAddress")
+  public void find_server_address(String url, String host, int port) {
+    InetSocketAddress address = JdbcUrls.serverAddress(new ConnectionConfig(url, null, null));
+    assertThat(address).isNotNull();
+    assertThat(address.getHostString()).isEqualTo(host);
+    assertThat(address.getPort()).isEqualTo(port);
+  }
+
+  @DataProvider
+  public static Object[][] urlsWithServerAddress() {
+    return new Object[][]{
+      {"jdbc:mysql://localhost:3307/sonar", "localhost", 3307},
+      {"jdbc:mysql://db1,db2/sonar", "db1", 3306},
+      {"jdbc:postgresql://pg.example.com/sonar?ssl=true", "pg.example.com", 5432},
+      {"jdbc:sqlserver://mssql\\\\instance:1444;databaseName=sonar", "mssql", 1444},
+      {"jdbc:sqlserver://mssql;databaseName=sonar", "mssql", 1433},
+      {"jdbc:postgresql://[::1]:5433/sonar", "::1", 5433},
+      {"jdbc:h2:tcp://localhost/~/test", "localhost", 9092},
+    };
+  }
+
+  @Test
+  @UseDataProvider("urlsWithoutServerAddress")
+  public void return_null_when_url_has_no_server_address(String url) {
+    assertThat(JdbcUrls.serverAddress(new ConnectionConfig(url, null, null))).isNull();
+  }
+
+  @DataProvider
+  public static Object[][] urlsWithoutServerAddress() {
+    return new Object[][]{
+      {"jdbc:h2:mem:test"},
+      {"jdbc:unknown://host/db"},
+      {"jdbc:mysql://host:port/db"},
+    };
+  }
+}
@@ -0,0 +1,109 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class KeyRangesTest {
+
+  @Test
+  public void split_integer_keys_into_contiguous_ranges() {
+    List<KeyRanges.KeyRange> ranges = KeyRanges.split(1, 100, 4);
+    assertThat(ranges).hasSize(4);
+    assertThat(ranges).extracting(range -> range.lower).containsExactly(1, 26L, 51L, 76L);
+    assertThat(ranges).extracting(range -> range.upper).containsExactly(26L, 51L, 76L, 100);
+    assertThat(ranges).extracting(range -> range.first).containsExactly(true, false, false, false);
+    assertThat(ranges).extracting(range -> range.last).containsExactly(false, false, false, true);
+  }
+
+  @Test
+  public void make_no_more_ranges_than_distinct_integer_keys() {
+    assertThat(KeyRanges.split(5L, 7L, 10)).hasSize(3);
+    List<KeyRanges.KeyRange> single = KeyRanges.split(5L, 5L, 10);
+    assertThat(single).hasSize(1);
+    assertThat(single.get(0).first).isTrue();
+    assertThat(single.get(0).last).isTrue();
+  }
+
+  @Test
+  public void split_big_integer_keys_beyond_long() {
+    BigInteger min = BigInteger.valueOf(Long.MAX_VALUE);
+    List<KeyRanges.KeyRange> ranges = KeyRanges.split(min, min.add(BigInteger.valueOf(100)), 2);
+    assertThat(ranges).extracting(range -> range.upper).containsExactly(min.add(BigInteger.valueOf(50)), min.add(BigInteger.valueOf(100)));
+  }
+
+  @Test
+  public void split_decimal_keys() {
+    List<KeyRanges.KeyRange> ranges = KeyRanges.split(new BigDecimal("0.5"), new BigDecimal("1.5"), 2);
+    assertThat(ranges).extracting(range -> range.upper).containsExactly(new BigDecimal("1.0"), new BigDecimal("1.5"));
+  }
+
+  @Test
+  public void split_timestamp_keys() {
+    List<KeyRanges.KeyRange> ranges = KeyRanges.split(new Timestamp(0), new Timestamp(999), 2);
+    assertThat(ranges).extracting(range -> range.upper).containsExactly(new Timestamp(500), new Timestamp(999));
+  }
+
+  @Test
+  public void split_range_keeping_its_bounds() {
+    KeyRanges.KeyRange middle = KeyRanges.split(1, 100, 4).get(1);
+    List<KeyRanges.KeyRange> halves = KeyRanges.split(middle, 2);
+    assertThat(halves).extracting(range -> range.lower).containsExactly(26L, 38L);
+    assertThat(halves).extracting(range -> range.upper).containsExactly(38L, 51L);
+    assertThat(halves).extracting(range -> range.first).containsExactly(false, false);
+    assertThat(halves).extracting(range -> range.last).containsExactly(false, false);
+
+    KeyRanges.KeyRange all = KeyRanges.split(1, 100, 1).get(0);
+    assertThat(KeyRanges.split(all, 2)).extracting(range -> range.first).containsExactly(true, false);
+    assertThat(KeyRanges.split(all, 2)).extracting(range -> range.last).containsExactly(false, true);
+  }
+
+  @Test
+  public void not_split_ranges_of_a_single_key() {
+    KeyRanges.KeyRange range = KeyRanges.split(1, 100, 50).get(1);
+    assertThat(range.upper).isEqualTo(5L);
+    assertThat(KeyRanges.split(KeyRanges.split(range, 2).get(0), 2)).hasSize(1);
+
+    KeyRanges.KeyRange decimal = KeyRanges.split(new BigDecimal("1.5"), new BigDecimal("1.5"), 1).get(0);
+    List<KeyRanges.KeyRange> same = KeyRanges.split(decimal, 2);
+    assertThat(same).hasSize(1);
+    assertThat(same.get(0).lower).isEqualTo(decimal.lower);
+    assertThat(same.get(0).upper).isEqualTo(decimal.upper);
+  }
+
+  @Test
+  public void select_range_with_condition() {
+    List<KeyRanges.KeyRange> ranges = KeyRanges.split(1, 100, 3);
+    assertThat(ranges.get(0).condition("id")).isEqualTo("id IS NULL OR (id >= ? AND id < ?)");
+    assertThat(ranges.get(1).condition("id")).isEqualTo("id >= ? AND id < ?");
+    assertThat(ranges.get(2).condition("id")).isEqualTo("id >= ? AND id <= ?");
+    assertThat(KeyRanges.split(null, null, 3).get(0).condition("id")).isNull();
+  }
+
+  @Test
+  public void combine_bounds_of_keys_of_different_types() {
+    assertThat(KeyRanges.min(5, 3L)).isEqualTo(3L);
+    assertThat(KeyRanges.max(5, 3L)).isEqualTo(5);
+    assertThat(KeyRanges.min(null, 3L)).isEqualTo(3L);
+    assertThat(KeyRanges.max(null, null)).isNull();
+  }
+
+  @Test
+  public void cover_all_rows_when_there_are_no_keys() {
+    List<KeyRanges.KeyRange> ranges = KeyRanges.split(null, null, 4);
+    assertThat(ranges).hasSize(1);
+    assertThat(ranges.get(0).isUnbounded()).isTrue();
+  }
+
+  @Test
+  public void reject_keys_other_than_numbers_and_dates() {
+    assertThatThrownBy(() -> KeyRanges.split("a", "z", 2))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Expected a numeric or date key, got values of type java.lang.String");
+  }
+}
@@ -0,0 +1,217 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetadataCacheTest {
+
+  private static final ConnectionConfig CONFIG = new ConnectionConfig("jdbc:h2:mem:MetadataCacheTest;DB_CLOSE_DELAY=-1", null, null);
+  private static final long TTL_MILLIS = 60_000;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ConnectionPool pool = ConnectionPool.builder(CONFIG).build();
+  private Path directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = temporaryFolder.newFolder().toPath();
+    execute("create table person (id int primary key, name varchar(20) not null, score decimal(5,2))");
+    execute("create index person_name on person (name)");
+    execute("create table product (id int)");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    execute("drop table if exists person");
+    execute("drop table if exists product");
+    pool.close();
+  }
+
+  @Test
+  public void list_tables_by_prefix_ignoring_case() throws SQLException {
+    try (MetadataCache cache = newCache()) {
+      assertThat(names(cache.tables(""))).containsExactly("PUBLIC.PERSON", "PUBLIC.PRODUCT");
+      assertThat(names(cache.tables("pe"))).containsExactly("PUBLIC.PERSON");
+      assertThat(cache.tables("x")).isEmpty();
+    }
+  }
+
+  @Test
+  public void describe_columns_and_indexes() throws SQLException {
+    try (MetadataCache cache = newCache()) {
+      MetadataCache.Description description = cache.describe("person");
+      assertThat(description.columns).extracting(column -> column.name + " " + column.displayType() + " " + column.nullable)
+        .containsExactly("ID INTEGER false", "NAME VARCHAR(20) false", "SCORE DECIMAL(5,2) true");
+      assertThat(description.indexes).extracting(index -> index.unique + " " + index.columns)
+        .contains("true [ID]", "false [NAME]");
+      assertThat(cache.describe("PUBLIC.PERSON")).isSameAs(description);
+    }
+  }
+
+  @Test
+  public void read_persisted_metadata_without_querying_the_database() throws SQLException {
+    try (MetadataCache cache = newCache()) {
+      cache.describe("person");
+    }
+    execute("drop table person");
+
+    try (MetadataCache cache = newCache()) {
+      assertThat(names(cache.tables(""))).containsExactly("PUBLIC.PERSON", "PUBLIC.PRODUCT");
+      assertThat(cache.describe("person").columns).hasSize(3);
+    }
+  }
+
+  @Test
+  public void refresh_table_list_when_table_is_not_found() throws SQLException {
+    try (MetadataCache cache = newCache()) {
+      cache.tables("");
+    }
+    execute("create table address (id int)");
+    try {
+      try (MetadataCache cache = newCache()) {
+        assertThat(cache.describe("address").columns).hasSize(1);
+        assertThatThrownBy(() -> cache.describe("nonexistent"))
+          .isInstanceOf(IllegalArgumentException.class)
+          .hasMessage("Table not found: nonexistent");
+      }
+    } finally {
+      execute("drop table address");
+    }
+  }
+
+  @Test
+  public void delete_file_when_invalidated() throws SQLException, IOException {
+    try (MetadataCache cache = newCache()) {
+      cache.tables("");
+    }
+    assertThat(files()).hasSize(1);
+
+    execute("drop table product");
+    try (MetadataCache cache = newCache()) {
+      cache.invalidate();
+      assertThat(files()).isEmpty();
+      assertThat(names(cache.tables(""))).containsExactly("PUBLIC.PERSON");
+    }
+  }
+
+  @Test
+  public void rebuild_unreadable_file() throws SQLException, IOException {
+    try (MetadataCache cache = newCache()) {
+      cache.tables("");
+    }
+    for (Path file : files()) {
+      Files.write(file, new byte[]{1, 2, 3});
+    }
+
+    try (MetadataCache cache = newCache()) {
+      assertThat(names(cache.tables(""))).containsExactly("PUBLIC.PERSON", "PUBLIC.PRODUCT");
+    }
+  }
+
+  @Test
+  public void save_completed_refreshes_without_waiting_for_the_others_when_closed() throws Exception {
+    try (MetadataCache cache = newCache()) {
+      cache.describe("person");
+    }
+    execute("create table address (id int)");
+    try {
+      CountDownLatch blocked = new CountDownLatch(1);
+      AtomicInteger borrowed = new AtomicInteger();
+      ConnectionPool slowPool = mock(ConnectionPool.class);
+      when(slowPool.borrow()).thenAnswer(invocation -> {
+        if (borrowed.getAndIncrement() == 0) {
+          return pool.borrow();
+        }
+        blocked.countDown();
+        try {
+          new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+          // cancelled by close
+        }
+        throw new SQLException("Cancelled");
+      });
+
+      long start = System.nanoTime();
+      try (MetadataCache cache = new MetadataCache(slowPool, CONFIG, directory, -1)) {
+        // stale: the table list is refreshed, then the description refresh blocks
+        cache.tables("");
+        cache.describe("person");
+        assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+      }
+      assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(10);
+
+      try (MetadataCache cache = new MetadataCache(slowPool, CONFIG, directory, TTL_MILLIS)) {
+        assertThat(names(cache.tables(""))).containsExactly("PUBLIC.ADDRESS", "PUBLIC.PERSON", "PUBLIC.PRODUCT");
+        assertThat(cache.describe("person").columns).hasSize(3);
+      }
+      assertThat(borrowed.get()).isEqualTo(2);
+    } finally {
+      execute("drop table address");
+    }
+  }
+
+  @Test
+  public void describe_only_the_table_whose_name_matches_others_as_a_pattern() throws SQLException {
+    execute("create table a_b (id int, name varchar(10))");
+    execute("create table axb (other int)");
+    execute("create index axb_other on axb (other)");
+    try (MetadataCache cache = newCache()) {
+      MetadataCache.Description description = cache.describe("a_b");
+      assertThat(description.columns).extracting(column -> column.name).containsExactly("ID", "NAME");
+      assertThat(description.indexes).isEmpty();
+    } finally {
+      execute("drop table a_b");
+      execute("drop table axb");
+    }
+  }
+
+  @Test
+  public void escape_wildcards_in_like_patterns() {
+    assertThat(MetadataCache.likePattern("a_b%c", "\\")).isEqualTo("a\\_b\\%c");
+    assertThat(MetadataCache.likePattern("a\\b", "\\")).isEqualTo("a\\\\b");
+    assertThat(MetadataCache.likePattern("a_b", "")).isEqualTo("a_b");
+    assertThat(MetadataCache.likePattern(null, "\\")).isNull();
+  }
+
+  private MetadataCache newCache() {
+    return new MetadataCache(pool, CONFIG, directory, TTL_MILLIS);
+  }
+
+  private List<Path> files() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  private static List<String> names(List<MetadataCache.Table> tables) {
+    return tables.stream().map(MetadataCache.Table::qualifiedName).collect(Collectors.toList());
+  }
+
+  private void execute(String sql) throws SQLException {
+    try (Connection connection = pool.borrow(); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
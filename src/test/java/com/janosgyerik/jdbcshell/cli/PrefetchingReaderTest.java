@@ -0,0 +1,107 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PrefetchingReaderTest {
+
+  private Connection connection;
+  private Statement statement;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:PrefetchingReaderTest");
+    statement = connection.createStatement();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void read_all_rows_in_order_across_batches() throws SQLException {
+    List<String> values = new ArrayList<>();
+    try (ResultSet resultSet = statement.executeQuery("select x, case when mod(x, 2) = 0 then 'even' end from system_range(1, 25)");
+      PrefetchingReader reader = new PrefetchingReader(resultSet, 10, 1)) {
+      RowBatch batch;
+      List<Integer> batchSizes = new ArrayList<>();
+      while ((batch = reader.next()) != null) {
+        batchSizes.add(batch.rowCount());
+        for (int row = 0; row < batch.rowCount(); row++) {
+          values.add(batch.value(row, 0) + ":" + batch.value(row, 1));
+        }
+        reader.release(batch);
+      }
+      assertThat(batchSizes).containsExactly(10, 10, 5);
+      assertThat(reader.next()).isNull();
+    }
+    assertThat(values).hasSize(25);
+    assertThat(values.get(0)).isEqualTo("1:null");
+    assertThat(values.get(1)).isEqualTo("2:even");
+    assertThat(values.get(24)).isEqualTo("25:null");
+  }
+
+  @Test
+  public void print_same_lines_as_without_prefetch() throws SQLException {
+    String sql = "select x, 'name' || x from system_range(1, 100)";
+    List<String> expected = new ArrayList<>();
+    try (ResultSet resultSet = statement.executeQuery(sql)) {
+      new TsvFormatter(line -> expected.add(line.toString())).printRows(resultSet, new StatementStats(sql));
+    }
+
+    List<String> lines = new ArrayList<>();
+    StatementStats stats = new StatementStats(sql);
+    try (ResultSet resultSet = statement.executeQuery(sql); PrefetchingReader reader = new PrefetchingReader(resultSet, 7, 2)) {
+      assertThat(new TsvFormatter(line -> lines.add(line.toString())).printRows(reader, stats)).isEqualTo(100);
+    }
+    assertThat(lines).isEqualTo(expected);
+    assertThat(stats.rows).isEqualTo(100);
+    assertThat(stats.firstRowNanos).isNotNegative();
+  }
+
+  @Test
+  public void throw_fetch_failure_after_fetched_rows() throws SQLException {
+    ResultSet resultSet = mock(ResultSet.class);
+    ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+    when(resultSet.getMetaData()).thenReturn(metaData);
+    when(metaData.getColumnCount()).thenReturn(1);
+    when(resultSet.next()).thenReturn(true, true, true).thenThrow(new SQLException("Connection reset"));
+    when(resultSet.getString(1)).thenReturn("a", "b", "c");
+
+    try (PrefetchingReader reader = new PrefetchingReader(resultSet, 2, 1)) {
+      RowBatch batch = reader.next();
+      assertThat(batch.rowCount()).isEqualTo(2);
+      reader.release(batch);
+      assertThatThrownBy(reader::next).isInstanceOf(SQLException.class).hasMessage("Connection reset");
+    }
+  }
+
+  @Test
+  public void stop_fetching_when_closed_early() throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery("select x from system_range(1, 100000)")) {
+      PrefetchingReader reader = new PrefetchingReader(resultSet, 10, 2);
+      RowBatch batch = reader.next();
+      assertThat(batch.value(0, 0)).isEqualTo("1");
+      reader.close();
+
+      // the result set is usable again, right after the rows the reader fetched
+      assertThat(resultSet.next()).isTrue();
+      assertThat(resultSet.getInt(1)).isGreaterThan(10).isLessThanOrEqualTo(41);
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ResultCacheTest {
+
+  private static final ConnectionConfig CONFIG = new ConnectionConfig("jdbc:h2:mem:ResultCacheTest", null, null);
+  private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+  private static final long MAX_BYTES = 1024 * 1024;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final System2 system2 = mock(System2.class);
+
+  @Test
+  public void reuse_output_of_same_trimmed_query() {
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, null);
+    assertThat(cache.get("select name from person")).isNull();
+    put(cache, "select name from person", "NAME", "Alice");
+
+    assertThat(cache.get(" select name from person\n")).containsExactly("NAME", "Alice");
+    assertThat(cache.stats()).isEqualTo("Result cache: 1 hit(s), 1 miss(es), 0 eviction(s), 0 invalidation(s)");
+    verify(system2).printlnOut("Alice");
+  }
+
+  @Test
+  public void distinguish_queries_differing_in_literals_with_backslash_escapes() {
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, null);
+    put(cache, "SELECT 'it\\'s -- a', 1", "1");
+    assertThat(cache.get("SELECT 'it\\'s -- b', 2")).isNull();
+  }
+
+  @Test
+  public void distinguish_output_variants() {
+    put(new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, null), "select 1", "1");
+    assertThat(new ResultCache(CONFIG, "TABLE", TTL_MILLIS, MAX_BYTES, null).get("select 1")).isNull();
+  }
+
+  @Test
+  public void expire_entries_after_ttl() {
+    ResultCache cache = new ResultCache(CONFIG, "TSV", 0, MAX_BYTES, null);
+    put(cache, "select 1", "1");
+    assertThat(cache.get("select 1")).isNull();
+  }
+
+  @Test
+  public void evict_least_recently_used_entries_beyond_max_size() {
+    // an entry of a short query and a line takes about 300 bytes
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, 1000, null);
+    put(cache, "select 1", "1");
+    put(cache, "select 2", "2");
+    put(cache, "select 3", "3");
+    cache.get("select 1");
+    put(cache, "select 4", "4");
+
+    assertThat(cache.get("select 2")).isNull();
+    assertThat(cache.get("select 1")).containsExactly("1");
+    assertThat(cache.get("select 4")).containsExactly("4");
+  }
+
+  @Test
+  public void do_not_cache_output_larger_than_half_the_max_size() {
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, 1000, null);
+    ResultCache.Recorder recorder = cache.recorder(system2);
+    for (int i = 0; i < 20; i++) {
+      recorder.printlnOut("row " + i);
+    }
+    cache.put("select * from big", recorder);
+
+    assertThat(cache.get("select * from big")).isNull();
+    verify(system2).printlnOut("row 19");
+  }
+
+  @Test
+  public void invalidate_entries_of_written_tables() {
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, null);
+    put(cache, "select * from orders o join customers c on o.customer_id = c.id", "1");
+    put(cache, "select * from products", "2");
+
+    cache.invalidate("update public.customers set name = 'x' where id = 1");
+
+    assertThat(cache.get("select * from orders o join customers c on o.customer_id = c.id")).isNull();
+    assertThat(cache.get("select * from products")).containsExactly("2");
+  }
+
+  @Test
+  public void invalidate_all_entries_on_ddl_and_unknown_writes() {
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, null);
+    put(cache, "select * from products", "1");
+    cache.invalidate("drop view product_view");
+    assertThat(cache.get("select * from products")).isNull();
+
+    put(cache, "select * from products", "1");
+    cache.invalidate("call refresh_products()");
+    assertThat(cache.get("select * from products")).isNull();
+  }
+
+  @Test
+  public void spill_evicted_and_remaining_entries_to_directory_for_later_runs() {
+    Path directory = temporaryFolder.getRoot().toPath();
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, 700, directory);
+    put(cache, "select 1", "1");
+    put(cache, "select 2", "2");
+    put(cache, "select 3", "3");
+    // evicted from memory, read back from its file
+    assertThat(cache.get("select 1")).containsExactly("1");
+    cache.close();
+
+    ResultCache later = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, directory);
+    assertThat(later.get("select 1")).containsExactly("1");
+    assertThat(later.get("select 2")).containsExactly("2");
+    assertThat(later.get("select 3")).containsExactly("3");
+  }
+
+  @Test
+  public void invalidate_spilled_entries() {
+    Path directory = temporaryFolder.getRoot().toPath();
+    ResultCache cache = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, directory);
+    put(cache, "select * from orders", "1");
+    put(cache, "select * from products", "2");
+    cache.close();
+
+    new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, directory).invalidate("delete from orders");
+
+    ResultCache later = new ResultCache(CONFIG, "TSV", TTL_MILLIS, MAX_BYTES, directory);
+    assertThat(later.get("select * from orders")).isNull();
+    assertThat(later.get("select * from products")).containsExactly("2");
+  }
+
+  private void put(ResultCache cache, String sql, String... lines) {
+    ResultCache.Recorder recorder = cache.recorder(system2);
+    for (String line : lines) {
+      recorder.printlnOut(line);
+    }
+    cache.put(sql, recorder);
+  }
+}
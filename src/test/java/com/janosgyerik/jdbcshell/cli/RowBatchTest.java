@@ -0,0 +1,111 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RowBatchTest {
+
+  private Connection connection;
+  private Statement statement;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:RowBatchTest");
+    statement = connection.createStatement();
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void store_integers_as_primitives() throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery(
+      "select cast(1 as smallint), cast(2 as int), cast(3 as bigint), cast(1.5 as double), cast(1.5 as real), cast(1.5 as decimal(3, 1)), 'x'")) {
+      assertThat(RowBatch.columnTypes(resultSet.getMetaData())).containsExactly(
+        RowBatch.ColumnType.INT, RowBatch.ColumnType.INT, RowBatch.ColumnType.LONG, RowBatch.ColumnType.TEXT,
+        RowBatch.ColumnType.TEXT, RowBatch.ColumnType.TEXT, RowBatch.ColumnType.TEXT);
+    }
+  }
+
+  @Test
+  public void store_unsigned_integers_in_wider_types() {
+    assertThat(RowBatch.columnType(Types.INTEGER, false)).isEqualTo(RowBatch.ColumnType.LONG);
+    assertThat(RowBatch.columnType(Types.BIGINT, false)).isEqualTo(RowBatch.ColumnType.TEXT);
+  }
+
+  @Test
+  public void read_values_and_nulls_of_each_type() throws SQLException {
+    String sql = "select cast(x as int), cast(x * 10000000000 as bigint), cast(x * 1.25 as double), 'value' || x from system_range(1, 3)"
+      + " union all select null, null, null, null";
+    try (ResultSet resultSet = statement.executeQuery(sql)) {
+      RowBatch batch = new RowBatch(RowBatch.columnTypes(resultSet.getMetaData()), 4);
+      while (resultSet.next()) {
+        batch.add(resultSet);
+      }
+      assertThat(batch.isFull()).isTrue();
+      assertThat(batch.value(2, 0)).isEqualTo("3");
+      assertThat(batch.value(2, 1)).isEqualTo("30000000000");
+      assertThat(batch.value(2, 2)).isEqualTo("3.75");
+      assertThat(batch.value(2, 3)).isEqualTo("value3");
+      for (int column = 0; column < 4; column++) {
+        assertThat(batch.isNull(1, column)).isFalse();
+        assertThat(batch.isNull(3, column)).isTrue();
+        assertThat(batch.value(3, column)).isNull();
+      }
+    }
+  }
+
+  @Test
+  public void keep_the_text_of_the_driver_for_floating_point_numbers() throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery("select cast(100 as double), cast(1e20 as double), cast(0.1 as real)")) {
+      RowBatch batch = new RowBatch(RowBatch.columnTypes(resultSet.getMetaData()), 1);
+      resultSet.next();
+      batch.add(resultSet);
+      for (int column = 0; column < 3; column++) {
+        assertThat(batch.value(0, column)).isEqualTo(resultSet.getString(column + 1));
+      }
+    }
+  }
+
+  @Test
+  public void reuse_batch_after_clear() throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery("select case when mod(x, 2) = 1 then repeat('a', x * 10) end from system_range(1, 6)")) {
+      RowBatch batch = new RowBatch(RowBatch.columnTypes(resultSet.getMetaData()), 2);
+      StringBuilder sb = new StringBuilder();
+      while (resultSet.next()) {
+        if (batch.isFull()) {
+          batch.clear();
+        }
+        batch.add(resultSet);
+        if (!batch.isNull(batch.rowCount() - 1, 0)) {
+          batch.appendTo(sb, batch.rowCount() - 1, 0);
+        }
+      }
+      assertThat(batch.rowCount()).isEqualTo(2);
+      assertThat(batch.value(0, 0)).hasSize(50);
+      assertThat(batch.value(1, 0)).isNull();
+      assertThat(sb).hasSize(10 + 30 + 50);
+    }
+  }
+
+  @Test
+  public void count_characters_of_text_and_integer_values() throws SQLException {
+    try (ResultSet resultSet = statement.executeQuery("select -12, 'abc', cast(null as varchar), cast(1.5 as double)")) {
+      RowBatch batch = new RowBatch(RowBatch.columnTypes(resultSet.getMetaData()), 1);
+      resultSet.next();
+      batch.add(resultSet);
+      assertThat(batch.bytes()).isEqualTo(3 + 3 + 3);
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SqlTextTest {
+
+  @Test
+  public void collapse_whitespace_and_comments_outside_quotes() {
+    assertThat(SqlText.normalize("  select *\n\tfrom  t -- all rows\n where x = 'a  b' /* block */ ;"))
+      .isEqualTo("select * from t where x = 'a  b'");
+  }
+
+  @Test
+  public void keep_escaped_quotes_in_quoted_text() {
+    assertThat(SqlText.normalize("select 'it''s  here',  \"a  b\" from t")).isEqualTo("select 'it''s  here', \"a  b\" from t");
+  }
+
+  @Test
+  public void keep_optimizer_hints_and_conditional_comments() {
+    assertThat(SqlText.normalize("select /*+ INDEX(t  i) */  * from t /* block */"))
+      .isEqualTo("select /*+ INDEX(t  i) */ * from t");
+    assertThat(SqlText.normalize("select /*!40001 SQL_NO_CACHE */ * from t")).isEqualTo("select /*!40001 SQL_NO_CACHE */ * from t");
+    assertThat(SqlText.normalize("select /*+ FULL(t) */ * from t")).isNotEqualTo(SqlText.normalize("select /*+ INDEX(t i) */ * from t"));
+  }
+
+  @Test
+  public void detect_question_marks_outside_quotes_and_comments() {
+    assertThat(SqlText.hasQuestionMark("select * from t where data ? 'key'")).isTrue();
+    assertThat(SqlText.hasQuestionMark("select * from t where data ?| array['a']")).isTrue();
+    assertThat(SqlText.hasQuestionMark("select 'why?', \"a?\" from t -- really?\n /* ? */")).isFalse();
+  }
+
+  @Test
+  public void quote_identifiers_doubling_quotes() {
+    assertThat(SqlText.quoteIdentifier("order", "\"")).isEqualTo("\"order\"");
+    assertThat(SqlText.quoteIdentifier("a\"b", "\"")).isEqualTo("\"a\"\"b\"");
+    assertThat(SqlText.quoteIdentifier("order", "`")).isEqualTo("`order`");
+    assertThat(SqlText.quoteIdentifier("id", " ")).isEqualTo("id");
+  }
+
+  @Test
+  public void quote_qualified_names_in_stored_case() throws SQLException {
+    DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+    when(metaData.getIdentifierQuoteString()).thenReturn("\"");
+    when(metaData.storesUpperCaseIdentifiers()).thenReturn(true);
+
+    assertThat(SqlText.quoteQualifiedName(metaData, "public.order")).isEqualTo("\"PUBLIC\".\"ORDER\"");
+    assertThat(SqlText.quoteQualifiedName(metaData, "OrderItems")).isEqualTo("\"OrderItems\"");
+    assertThat(SqlText.quoteQualifiedName(metaData, "\"my.table\"")).isEqualTo("\"my.table\"");
+  }
+
+  @Test
+  public void replace_literals_to_shape_statements() {
+    assertThat(SqlText.shape("select *  from t1 where id = 42 and name = 'it''s' -- comment\n and x > -1.5e3;"))
+      .isEqualTo("select * from t1 where id = ? and name = ? and x > -?");
+    assertThat(SqlText.shape("select \"col 1\" from \"T2\" where a in (1, 2) limit 0x10"))
+      .isEqualTo("select \"col 1\" from \"T2\" where a in (?, ?) limit ?");
+  }
+
+  @Test
+  public void find_first_keyword_after_comments() {
+    assertThat(SqlText.firstKeyword("-- comment\n  /* another */ select 1")).isEqualTo("SELECT");
+    assertThat(SqlText.firstKeyword("(select 1)")).isEqualTo("SELECT");
+    assertThat(SqlText.firstKeyword("  ")).isEmpty();
+  }
+
+  @Test
+  public void detect_ddl() {
+    assertThat(SqlText.isDdl("create table t (id int)")).isTrue();
+    assertThat(SqlText.isDdl(" ALTER TABLE t ADD c int")).isTrue();
+    assertThat(SqlText.isDdl("drop index i")).isTrue();
+    assertThat(SqlText.isDdl("insert into t values ('create')")).isFalse();
+    assertThat(SqlText.isDdl("select * from t")).isFalse();
+  }
+
+  @Test
+  public void detect_read_only_queries() {
+    assertThat(SqlText.isReadOnlyQuery("select * from t where name = 'insert'")).isTrue();
+    assertThat(SqlText.isReadOnlyQuery("with x as (select 1) select * from x")).isTrue();
+    assertThat(SqlText.isReadOnlyQuery("select * from t for update")).isFalse();
+    assertThat(SqlText.isReadOnlyQuery("select * into t2 from t")).isFalse();
+    assertThat(SqlText.isReadOnlyQuery("with d as (delete from t returning *) select * from d")).isFalse();
+    assertThat(SqlText.isReadOnlyQuery("select nextval('s')")).isFalse();
+    assertThat(SqlText.isReadOnlyQuery("update t set x = 1")).isFalse();
+  }
+
+  @Test
+  public void find_table_names() {
+    assertThat(SqlText.tableNames("select * from a x, \"Schema\".b as y join c on x.id = c.id where x.v in (select v from d)"))
+      .containsOnly("A", "B", "C", "D");
+    assertThat(SqlText.tableNames("insert into s.t (a, b) select a, b from u")).containsOnly("T", "U");
+    assertThat(SqlText.tableNames("update [dbo].[t] set a = 'from x'")).containsOnly("T");
+    assertThat(SqlText.tableNames("delete from t")).containsOnly("T");
+    assertThat(SqlText.tableNames("call p()")).isEmpty();
+  }
+}
@@ -0,0 +1,130 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatementCacheTest {
+
+  private static final ConnectionConfig CONFIG = new ConnectionConfig("jdbc:h2:mem:StatementCacheTest;DB_CLOSE_DELAY=-1", null, null);
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection(CONFIG.url);
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void reuse_statements_with_same_trimmed_sql() throws SQLException {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      PreparedStatement first = cache.prepare("select ?");
+      PreparedStatement second = cache.prepare("  select ?\n");
+
+      assertThat(second).isSameAs(first);
+      assertThat(cache.stats().hits).isEqualTo(1);
+      assertThat(cache.stats().misses).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void prepare_statements_differing_in_dollar_quoted_literals_separately() throws SQLException {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      PreparedStatement first = cache.prepare("select $$a -- x$$, 1");
+      PreparedStatement second = cache.prepare("select $$a -- y$$, 2");
+
+      assertThat(second).isNotSameAs(first);
+      assertThat(cache.stats().misses).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void prepare_statements_with_different_hints_separately() throws SQLException {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      PreparedStatement first = cache.prepare("select /*+ FIRST */ ?");
+      PreparedStatement second = cache.prepare("select /*+ SECOND */ ?");
+
+      assertThat(second).isNotSameAs(first);
+      assertThat(cache.stats().misses).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void clear_parameters_of_reused_statements() throws SQLException {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      cache.prepare("select ?").setInt(1, 42);
+      PreparedStatement statement = cache.prepare("select ?");
+      statement.setInt(1, 7);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        resultSet.next();
+        assertThat(resultSet.getInt(1)).isEqualTo(7);
+      }
+    }
+  }
+
+  @Test
+  public void evict_and_close_least_recently_used() throws SQLException {
+    try (StatementCache cache = new StatementCache(connection, 2)) {
+      PreparedStatement one = cache.prepare("select 1");
+      PreparedStatement two = cache.prepare("select 2");
+      cache.prepare("select 1");
+      cache.prepare("select 3");
+
+      assertThat(two.isClosed()).isTrue();
+      assertThat(one.isClosed()).isFalse();
+      assertThat(cache.stats().evictions).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void close_statements_on_invalidate() throws SQLException {
+    try (StatementCache cache = new StatementCache(connection, 10)) {
+      PreparedStatement statement = cache.prepare("select 1");
+      cache.invalidate();
+
+      assertThat(statement.isClosed()).isTrue();
+      assertThat(cache.prepare("select 1")).isNotSameAs(statement);
+      assertThat(cache.stats().invalidations).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void session_invalidates_statements_after_ddl() throws SQLException {
+    try (ConnectionPool pool = ConnectionPool.builder(CONFIG).build(); Session session = new Session(pool, 10)) {
+      PreparedStatement statement = session.prepare("select 1");
+      session.prepare("create table t (id int)").execute();
+      session.executed("create table t (id int)");
+      session.prepare("drop table t").execute();
+      session.executed("drop table t");
+
+      assertThat(statement.isClosed()).isTrue();
+      assertThat(session.statementCacheStats().invalidations).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void session_discards_statements_when_connection_is_recycled() throws SQLException {
+    try (ConnectionPool pool = ConnectionPool.builder(CONFIG).build(); Session session = new Session(pool, 10)) {
+      PreparedStatement statement = session.prepare("select 1");
+      session.failed(new SQLException("Connection reset", "08S01"));
+      PreparedStatement recycled = session.prepare("select 1");
+
+      assertThat(statement.isClosed()).isTrue();
+      assertThat(recycled).isNotSameAs(statement);
+      assertThat(session.statementCacheStats().misses).isEqualTo(2);
+      assertThat(pool.stats().borrows).isEqualTo(2);
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StatementShapeTest {
+
+  @Test
+  public void replace_string_and_number_literals_with_parameters() {
+    StatementShape shape = StatementShape.of("INSERT INTO t (a, \"b 1\", c) VALUES ('it''s', -12.5e3, .5)", false);
+    assertThat(shape.sql).isEqualTo("INSERT INTO t (a, \"b 1\", c) VALUES (?, -?, ?)");
+    assertThat(shape.values).containsExactly("it's", "12.5e3", ".5");
+    assertThat(shape.quoted).containsExactly(true, false, false);
+  }
+
+  @Test
+  public void keep_literals_that_cannot_be_parameters() {
+    StatementShape shape = StatementShape.of("update t set d = DATE '2019-01-01', x = 0x1F, n = 2 where name like 'a%' and c1 = 3", false);
+    assertThat(shape.sql).isEqualTo("update t set d = DATE '2019-01-01', x = 0x1F, n = ? where name like 'a%' and c1 = ?");
+    assertThat(shape.values).containsExactly("2", "3");
+  }
+
+  @Test
+  public void keep_numbers_that_are_column_positions_or_row_counts() {
+    StatementShape shape = StatementShape.of("insert into t select a, b, count(*) from u where c > 5 group by 1, 2 order by 1, 2 limit 10", false);
+    assertThat(shape.sql).isEqualTo("insert into t select a, b, count(*) from u where c > ? group by 1, 2 order by 1, 2 limit 10");
+    assertThat(shape.values).containsExactly("5");
+  }
+
+  @Test
+  public void keep_comments() {
+    StatementShape shape = StatementShape.of("delete from t -- where 1 = 1\nwhere id = 1 /* 'x' */", false);
+    assertThat(shape.sql).isEqualTo("delete from t -- where 1 = 1\nwhere id = ? /* 'x' */");
+  }
+
+  @Test
+  public void have_same_shape_for_statements_differing_in_literals() {
+    assertThat(StatementShape.of("insert into t values (1, 'a')", false).sql)
+      .isEqualTo(StatementShape.of("insert into t values (22, 'b c')", false).sql);
+  }
+
+  @Test
+  public void reject_statements_that_cannot_be_batched() {
+    assertThat(StatementShape.of("select * from t where id = 1", false)).isNull();
+    assertThat(StatementShape.of("insert into t select * from u", false)).isNull();
+    assertThat(StatementShape.of("insert into t values (?, 1)", false)).isNull();
+    assertThat(StatementShape.of("insert into t values ($$a$$)", false)).isNull();
+    assertThat(StatementShape.of("insert into t values ('unterminated)", false)).isNull();
+    assertThat(StatementShape.of("insert into t values ('it\\'s')", true)).isNull();
+  }
+}
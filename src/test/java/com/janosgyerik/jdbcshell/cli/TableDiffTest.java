@@ -0,0 +1,188 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Matchers.endsWith;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TableDiffTest {
+
+  private static final ConnectionConfig SOURCE = new ConnectionConfig("jdbc:h2:mem:DiffSource;DB_CLOSE_DELAY=-1", null, null);
+  private static final ConnectionConfig TARGET = new ConnectionConfig("jdbc:h2:mem:DiffTarget;DB_CLOSE_DELAY=-1", null, null);
+  private static final int ROWS = 5000;
+
+  private final System2 system2 = mock(System2.class);
+  private ConnectionPool sourcePool;
+
+  @Before
+  public void setUp() throws SQLException {
+    sourcePool = ConnectionPool.builder(SOURCE).build();
+    for (ConnectionConfig config : Arrays.asList(SOURCE, TARGET)) {
+      execute(config, "create table orders (id int, name varchar(20), amount decimal(10, 2), note varchar(20))");
+      execute(config, "insert into orders select x, 'name' || x, x / 100.0, case when mod(x, 2) = 0 then null else 'odd' end"
+        + " from system_range(1, " + ROWS + ")");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    sourcePool.close();
+    execute(SOURCE, "drop all objects");
+    execute(TARGET, "drop all objects");
+  }
+
+  @Test
+  public void find_no_differences_without_fetching_rows() throws Exception {
+    diff(ShellOptions.builder().setDiffSource("orders").setPartitionColumn("id").setThreads(2));
+
+    assertThat(printedLines()).containsExactly("DIFF\tID\tNAME\tAMOUNT\tNOTE");
+    verify(system2).printlnErr(startsWith("Compared 5000 row(s) of orders in 5 range(s) in "));
+    verify(system2).printlnErr(endsWith(": 0 row(s) differ in source, 0 in target; 10 checksum queries, fetched 0 row(s)"));
+  }
+
+  @Test
+  public void bisect_ranges_to_print_changed_missing_and_extra_rows() throws Exception {
+    execute(TARGET, "update orders set note = 'changed' where id = 1234");
+    execute(TARGET, "delete from orders where id = 4321");
+    execute(TARGET, "insert into orders values (9999, 'extra', 1, null)");
+
+    diff(ShellOptions.builder().setDiffSource("orders").setPartitionColumn("id").setChunkSize(100));
+
+    assertThat(printedLines()).containsExactly(
+      "DIFF\tID\tNAME\tAMOUNT\tNOTE",
+      "<\t1234\tname1234\t12.34\tNULL",
+      ">\t1234\tname1234\t12.34\tchanged",
+      "<\t4321\tname4321\t43.21\todd",
+      ">\t9999\textra\t1\tNULL");
+    ArgumentCaptor<String> summary = ArgumentCaptor.forClass(String.class);
+    verify(system2).printlnErr(summary.capture());
+    assertThat(summary.getValue()).contains(": 2 row(s) differ in source, 2 in target;");
+    // only the rows of the narrowed down ranges are fetched
+    assertThat(fetchedRows(summary.getValue())).isLessThan(ROWS / 10);
+  }
+
+  @Test
+  public void compare_with_client_checksums() throws Exception {
+    execute(TARGET, "update orders set amount = 0 where id = 10");
+
+    diff(ShellOptions.builder().setDiffSource("orders").setPartitionColumn("id").setChunkSize(1000).setClientChecksums(true).setThreads(3));
+
+    assertThat(printedLines()).containsExactly(
+      "DIFF\tID\tNAME\tAMOUNT\tNOTE",
+      "<\t10\tname10\t0.1\tNULL",
+      ">\t10\tname10\t0\tNULL");
+    ArgumentCaptor<String> summary = ArgumentCaptor.forClass(String.class);
+    verify(system2).printlnErr(summary.capture());
+    // all rows are hashed by the client, and the rows of the differing range fetched again on both sides
+    assertThat(fetchedRows(summary.getValue())).isEqualTo(2 * ROWS + 2 * 1000);
+  }
+
+  @Test
+  public void compare_rows_with_null_keys_and_duplicate_keys() throws Exception {
+    execute(SOURCE, "insert into orders values (null, 'no key', 1, null), (7, 'duplicate', 1, null)");
+    execute(TARGET, "insert into orders values (null, 'no key', 2, null), (7, 'duplicate', 1, null)");
+
+    diff(ShellOptions.builder().setDiffSource("orders").setPartitionColumn("id").setChunkSize(10));
+
+    assertThat(printedLines()).containsExactly(
+      "DIFF\tID\tNAME\tAMOUNT\tNOTE",
+      "<\tNULL\tno key\t1\tNULL",
+      ">\tNULL\tno key\t2\tNULL");
+  }
+
+  @Test
+  public void compare_query_results() throws Exception {
+    execute(TARGET, "update orders set name = 'renamed' where id in (5, 500)");
+
+    diff(ShellOptions.builder().setDiffSource("select id, name from orders where id < 100").setPartitionColumn("id").setChunkSize(10));
+
+    assertThat(printedLines()).containsExactly(
+      "DIFF\tID\tNAME",
+      "<\t5\tname5",
+      ">\t5\trenamed");
+  }
+
+  @Test
+  public void quote_reserved_and_mixed_case_column_labels() throws Exception {
+    execute(TARGET, "update orders set name = 'renamed' where id = 5");
+    String query = "select id as \"Id\", name as \"order\", amount as \"Amount\" from orders where id < 100";
+
+    diff(ShellOptions.builder().setDiffSource(query).setPartitionColumn("\"Id\"").setChunkSize(10));
+    diff(ShellOptions.builder().setDiffSource(query).setPartitionColumn("\"Id\"").setChunkSize(10).setClientChecksums(true));
+
+    assertThat(printedLines()).containsExactly(
+      "DIFF\tId\torder\tAmount",
+      "<\t5\tname5\t0.05",
+      ">\t5\trenamed\t0.05",
+      "DIFF\tId\torder\tAmount",
+      "<\t5\tname5\t0.05",
+      ">\t5\trenamed\t0.05");
+  }
+
+  @Test
+  public void compare_values_of_different_types_by_value() throws Exception {
+    execute(SOURCE, "create table typed (id int, amount decimal(10, 2), flag boolean, ratio real, created timestamp(0))");
+    execute(TARGET, "create table typed (id bigint, amount decimal(12, 4), flag bit, ratio double, created timestamp(9))");
+    for (ConnectionConfig config : Arrays.asList(SOURCE, TARGET)) {
+      execute(config, "insert into typed values (1, 1.5, true, 0.5, timestamp '2019-01-01 10:00:00'), (2, 0, false, 2, null)");
+    }
+    execute(TARGET, "insert into typed values (3, 1, 1, 1, null)");
+
+    diff(ShellOptions.builder().setDiffSource("typed").setPartitionColumn("id").setClientChecksums(true));
+
+    assertThat(printedLines()).containsExactly(
+      "DIFF\tID\tAMOUNT\tFLAG\tRATIO\tCREATED",
+      ">\t3\t1\ttrue\t1\tNULL");
+  }
+
+  @Test
+  public void fail_when_partition_column_is_not_compared() {
+    assertThatThrownBy(() -> diff(ShellOptions.builder().setDiffSource("select name from orders").setPartitionColumn("id")))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Partition column id is not a column of select name from orders");
+  }
+
+  @Test
+  public void hash_rows_in_known_databases_only() {
+    assertThat(TableDiff.rowHash("postgresql", Arrays.asList("id", "name")))
+      .isEqualTo("('x' || SUBSTR(MD5(CONCAT_WS('|', COALESCE('v' || CAST(id AS TEXT), 'n'), COALESCE('v' || CAST(name AS TEXT), 'n'))), 1, 15))"
+        + "::BIT(60)::BIGINT");
+    assertThat(TableDiff.rowHash("mysql", Arrays.asList("id")))
+      .isEqualTo("CAST(CONV(SUBSTRING(MD5(CONCAT_WS('|', COALESCE(CONCAT('v', CAST(id AS CHAR)), 'n'))), 1, 15), 16, 10) AS UNSIGNED)");
+    assertThat(TableDiff.rowHash("sqlserver", Arrays.asList("id"))).isNull();
+  }
+
+  private void diff(ShellOptions.Builder options) throws Exception {
+    new TableDiff(system2, sourcePool, SOURCE, TARGET, options.build()).run();
+  }
+
+  private List<String> printedLines() {
+    ArgumentCaptor<String> lines = ArgumentCaptor.forClass(String.class);
+    verify(system2, atLeastOnce()).printlnOut(lines.capture());
+    return lines.getAllValues();
+  }
+
+  private static long fetchedRows(String summary) {
+    return Long.parseLong(summary.replaceAll(".*fetched (\\d+) row\\(s\\)$", "$1"));
+  }
+
+  private static void execute(ConnectionConfig config, String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(config.url); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
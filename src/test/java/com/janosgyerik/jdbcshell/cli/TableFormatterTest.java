@@ -0,0 +1,99 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TableFormatterTest {
+
+  private final List<String> lines = new ArrayList<>();
+  private final System2 system2 = new System2() {
+    @Override
+    void printlnOut(String s) {
+      lines.add(s);
+    }
+  };
+
+  private Connection connection;
+
+  @Before
+  public void setUp() throws SQLException {
+    connection = DriverManager.getConnection("jdbc:h2:mem:TableFormatterTest");
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("create table person (seq int, id int, name varchar(12))");
+      statement.execute("insert into person values (1, 1, 'Alice'), (2, 22, 'Bartholomew'), (3, 3, null)");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void align_columns_to_widest_value_of_lookahead() throws SQLException {
+    print(new TableFormatter(system2, 100, 40, TableFormatter.Overflow.TRUNCATE));
+    assertThat(lines).containsExactly(
+      "+----+-------------+",
+      "| ID | NAME        |",
+      "+----+-------------+",
+      "|  1 | Alice       |",
+      "| 22 | Bartholomew |",
+      "|  3 | NULL        |",
+      "+----+-------------+",
+      "(3 row(s))");
+  }
+
+  @Test
+  public void truncate_values_wider_than_lookahead_rows() throws SQLException {
+    print(new TableFormatter(system2, 1, 40, TableFormatter.Overflow.TRUNCATE));
+    assertThat(lines).containsExactly(
+      "+----+-------+",
+      "| ID | NAME  |",
+      "+----+-------+",
+      "|  1 | Alice |",
+      "| 22 | Bart~ |",
+      "|  3 | NULL  |",
+      "+----+-------+",
+      "(3 row(s))");
+  }
+
+  @Test
+  public void wrap_values_wider_than_max_column_width() throws SQLException {
+    print(new TableFormatter(system2, 100, 5, TableFormatter.Overflow.WRAP));
+    assertThat(lines).containsExactly(
+      "+----+-------+",
+      "| ID | NAME  |",
+      "+----+-------+",
+      "|  1 | Alice |",
+      "| 22 | Barth |",
+      "|    | olome |",
+      "|    | w     |",
+      "|  3 | NULL  |",
+      "+----+-------+",
+      "(3 row(s))");
+  }
+
+  @Test
+  public void use_display_sizes_without_lookahead() throws SQLException {
+    print(new TableFormatter(system2, 0, 8, TableFormatter.Overflow.TRUNCATE));
+    assertThat(lines.get(0)).isEqualTo("+----------+----------+");
+    assertThat(lines.get(4)).isEqualTo("|       22 | Barthol~ |");
+  }
+
+  private void print(TableFormatter formatter) throws SQLException {
+    try (Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery("select id, name from person order by seq")) {
+      formatter.print(resultSet, new StatementStats("test"));
+    }
+  }
+}
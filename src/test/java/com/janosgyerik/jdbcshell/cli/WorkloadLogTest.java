@@ -0,0 +1,96 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class WorkloadLogTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void read_statements_and_batches_of_sessions_appending_to_the_same_log() throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve("workload.log");
+    long start = System.nanoTime();
+    try (WorkloadLog.Writer first = new WorkloadLog.Writer(path, 1); WorkloadLog.Writer second = new WorkloadLog.Writer(path, 42)) {
+      first.statement("select 1", start, 1000);
+      second.statement("select 1", start + 2_000_000, 2000);
+      first.batch(Arrays.asList(shape("insert into t values (?, ?)", "1", "it's"), shape("insert into t values (?, ?)", "2", null)),
+        start + 5_000_000, 3000);
+      first.statement("select 1", start + 7_000_000, 4000);
+    }
+
+    List<WorkloadLog.Entry> entries = readAll(path);
+    assertThat(entries).extracting(entry -> entry.sessionId).containsExactly(1L, 42L, 1L, 1L);
+    assertThat(entries).extracting(entry -> entry.sql).containsExactly("select 1", "select 1", "insert into t values (?, ?)", "select 1");
+    assertThat(entries).extracting(entry -> entry.durationNanos).containsExactly(1000L, 2000L, 3000L, 4000L);
+    assertThat(entries.get(1).startMicros - entries.get(0).startMicros).isBetween(1990L, 2010L);
+    assertThat(entries.get(3).startMicros - entries.get(0).startMicros).isBetween(6990L, 7010L);
+
+    assertThat(entries.get(0).batch).isEmpty();
+    List<StatementShape> batch = entries.get(2).batch;
+    assertThat(batch).extracting(row -> row.values).containsExactly(Arrays.asList("1", "it's"), Arrays.asList("2", null));
+    assertThat(batch.get(0).quoted).containsExactly(false, true);
+  }
+
+  @Test
+  public void ignore_truncated_last_record() throws IOException {
+    Path path = temporaryFolder.getRoot().toPath().resolve("workload.log");
+    try (WorkloadLog.Writer writer = new WorkloadLog.Writer(path, 7)) {
+      writer.statement("select 1", System.nanoTime(), 1000);
+      writer.statement("select 2", System.nanoTime(), 1000);
+    }
+    byte[] bytes = Files.readAllBytes(path);
+    Files.write(path, Arrays.copyOf(bytes, bytes.length - 3));
+
+    assertThat(readAll(path)).extracting(entry -> entry.sql).containsExactly("select 1");
+  }
+
+  @Test
+  public void fail_to_read_file_that_is_not_a_capture_log() throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, "select 1;".getBytes(StandardCharsets.UTF_8));
+
+    assertThatThrownBy(() -> new WorkloadLog.Reader(path))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Not a capture log of this version of jdbcshell: " + path);
+  }
+
+  @Test
+  public void fail_on_negative_session_id() {
+    Path path = temporaryFolder.getRoot().toPath().resolve("workload.log");
+    assertThatThrownBy(() -> new WorkloadLog.Writer(path, -1))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Session id must not be negative: -1");
+  }
+
+  private static StatementShape shape(String sql, String... values) {
+    boolean[] quoted = new boolean[values.length];
+    for (int i = 0; i < values.length; i++) {
+      quoted[i] = values[i] != null && !values[i].matches("\\d+");
+    }
+    return new StatementShape(sql, Arrays.asList(values), quoted);
+  }
+
+  private static List<WorkloadLog.Entry> readAll(Path path) throws IOException {
+    List<WorkloadLog.Entry> entries = new ArrayList<>();
+    try (WorkloadLog.Reader reader = new WorkloadLog.Reader(path)) {
+      WorkloadLog.Entry entry;
+      while ((entry = reader.next()) != null) {
+        entries.add(entry);
+      }
+    }
+    return entries;
+  }
+}
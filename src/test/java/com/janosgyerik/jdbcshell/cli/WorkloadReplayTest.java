@@ -0,0 +1,147 @@
+package com.janosgyerik.jdbcshell.cli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WorkloadReplayTest {
+
+  private static final ConnectionConfig SOURCE = new ConnectionConfig("jdbc:h2:mem:CaptureSource;DB_CLOSE_DELAY=-1", null, null);
+  private static final ConnectionConfig TARGET = new ConnectionConfig("jdbc:h2:mem:ReplayTarget;DB_CLOSE_DELAY=-1", null, null);
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final System2 system2 = mock(System2.class);
+  private Path log;
+
+  @Before
+  public void setUp() throws SQLException {
+    log = temporaryFolder.getRoot().toPath().resolve("workload.log");
+    for (ConnectionConfig config : Arrays.asList(SOURCE, TARGET)) {
+      execute(config, "create table person (id int primary key, name varchar(20))");
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    execute(SOURCE, "drop all objects");
+    execute(TARGET, "drop all objects");
+  }
+
+  @Test
+  public void replay_captured_statements_and_batches_on_target() throws Exception {
+    Path script = temporaryFolder.newFile("script.sql").toPath();
+    Files.write(script, ("insert into person values (1, 'Alice');\n"
+      + "insert into person values (2, 'it''s Bob');\n"
+      + "update person set name = 'Carl' where id = 1;\n"
+      + "select * from person where id = 2;\n").getBytes(StandardCharsets.UTF_8));
+    capture(ShellOptions.builder().setScriptPath(script).setAutoBatch(true));
+    capture(ShellOptions.builder().setQuery("select count(*) from person where id > 0"));
+    capture(ShellOptions.builder().setQuery("select count(*) from person where id > 1"));
+
+    ShellOptions options = ShellOptions.builder().setReplayPath(log).setSpeed(100).setThreads(2).build();
+    try (ConnectionPool pool = JdbcShell.newPool(TARGET, options)) {
+      new WorkloadReplay(system2, pool, log, options).run();
+    }
+
+    assertThat(query(TARGET, "select id, name from person order by id")).containsExactly("1\tCarl", "2\tit's Bob");
+    List<String> lines = printedLines();
+    assertThat(lines.get(0)).isEqualTo("SHAPE\tCOUNT\tFAILED\tP50_MS\tP99_MS\tMAX_MS\tCAPTURED_P50_MS\tCAPTURED_P99_MS");
+    assertThat(lines.subList(1, lines.size())).extracting(line -> line.replaceAll("(\t\\d+\t\\d+)(\t[\\d.]+)+$", "$1")).containsOnly(
+      "insert into person values (?, ?)\t1\t0",
+      "update person set name = ? where id = ?\t1\t0",
+      "select * from person where id = ?\t1\t0",
+      "select count(*) from person where id > ?\t2\t0");
+    verify(system2).printlnErr(startsWith("Replayed 5 statement(s) of 3 session(s) from " + log + " in "));
+    verify(system2).printlnErr(startsWith("Start lag: min "));
+  }
+
+  @Test
+  public void count_failed_statements_per_shape() throws Exception {
+    capture(ShellOptions.builder().setQuery("insert into person values (1, 'Alice')"));
+    execute(TARGET, "insert into person values (1, 'Existing')");
+
+    ShellOptions options = ShellOptions.builder().setReplayPath(log).build();
+    try (ConnectionPool pool = JdbcShell.newPool(TARGET, options)) {
+      new WorkloadReplay(system2, pool, log, options).run();
+    }
+
+    assertThat(printedLines().get(1)).startsWith("insert into person values (?, ?)\t1\t1\t");
+    verify(system2).printlnErr(startsWith("Replayed statement failed: "));
+    verify(system2).printlnErr(startsWith("Replayed 1 statement(s) of 1 session(s) from "));
+  }
+
+  @Test
+  public void replay_statements_with_question_mark_operators_without_preparing_them() throws Exception {
+    String sql = "select id from docs where data ?| array['a']";
+    try (WorkloadLog.Writer writer = new WorkloadLog.Writer(log, 1)) {
+      writer.statement(sql, System.nanoTime(), 1000);
+    }
+    ConnectionPool pool = mock(ConnectionPool.class);
+    Connection connection = mock(Connection.class);
+    Statement statement = mock(Statement.class);
+    when(pool.borrow()).thenReturn(connection);
+    when(connection.createStatement()).thenReturn(statement);
+
+    new WorkloadReplay(system2, pool, log, ShellOptions.builder().setReplayPath(log).build()).run();
+
+    verify(statement).execute(sql);
+    verify(connection, never()).prepareStatement(anyString());
+    verify(connection).commit();
+    verify(system2).printlnErr(startsWith("Replayed 1 statement(s) of 1 session(s) from "));
+  }
+
+  private void capture(ShellOptions.Builder options) throws Exception {
+    try (JdbcShell shell = new JdbcShell(mock(System2.class), SOURCE, options.setCapturePath(log).build())) {
+      shell.run();
+    }
+  }
+
+  private List<String> printedLines() {
+    ArgumentCaptor<String> lines = ArgumentCaptor.forClass(String.class);
+    verify(system2, atLeastOnce()).printlnOut(lines.capture());
+    return lines.getAllValues();
+  }
+
+  private static List<String> query(ConnectionConfig config, String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(config.url);
+      Statement statement = connection.createStatement();
+      ResultSet resultSet = statement.executeQuery(sql)) {
+      List<String> rows = new ArrayList<>();
+      while (resultSet.next()) {
+        rows.add(resultSet.getString(1) + "\t" + resultSet.getString(2));
+      }
+      return rows;
+    }
+  }
+
+  private static void execute(ConnectionConfig config, String sql) throws SQLException {
+    try (Connection connection = DriverManager.getConnection(config.url); Statement statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BlockCompressingChannelTest {
+
+  private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test
+  public void compress_blocks_in_parallel_into_concatenated_gzip_members_in_order() throws IOException {
+    byte[] data = tsv(5000);
+    write(BlockCompressingChannel.Format.GZIP, data, 1000);
+
+    assertThat(gunzip(compressed.toByteArray())).isEqualTo(data);
+    assertThat(compressed.size()).isLessThan(data.length / 2);
+  }
+
+  @Test
+  public void write_valid_gzip_stream_without_data() throws IOException {
+    write(BlockCompressingChannel.Format.GZIP, new byte[0], 1000);
+    assertThat(gunzip(compressed.toByteArray())).isEmpty();
+  }
+
+  @Test
+  public void compress_blocks_into_lz4_frame() throws IOException {
+    byte[] data = tsv(5000);
+    write(BlockCompressingChannel.Format.LZ4, data, 1000);
+
+    byte[] frame = compressed.toByteArray();
+    assertThat(Arrays.copyOf(frame, 4)).containsExactly(0x04, 0x22, 0x4D, 0x18);
+    assertThat(unlz4(frame)).isEqualTo(data);
+    assertThat(frame.length).isLessThan(data.length / 2);
+  }
+
+  @Test
+  public void store_incompressible_lz4_blocks_as_is() throws IOException {
+    byte[] data = new byte[3000];
+    new Random(42).nextBytes(data);
+    write(BlockCompressingChannel.Format.LZ4, data, 1024);
+
+    assertThat(unlz4(compressed.toByteArray())).isEqualTo(data);
+    assertThat(compressed.size()).isEqualTo(7 + 3 * 4 + data.length + 4);
+  }
+
+  @Test
+  public void compress_long_matches_and_literal_runs() throws IOException {
+    byte[] data = new byte[Lz4.MAX_BLOCK_SIZE];
+    Random random = new Random(7);
+    for (int i = 0; i < data.length; i++) {
+      // runs of random bytes followed by long runs of a repeated byte
+      data[i] = (i / 700) % 2 == 0 ? (byte) random.nextInt() : (byte) 'x';
+    }
+    write(BlockCompressingChannel.Format.LZ4, data, Lz4.MAX_BLOCK_SIZE);
+
+    assertThat(unlz4(compressed.toByteArray())).isEqualTo(data);
+  }
+
+  @Test
+  public void checksum_frame_header_with_xxhash32() {
+    // the header of the default settings of the lz4 command: 04 22 4D 18 64 40 A7
+    assertThat((Lz4.xxHash32(new byte[]{0x64, 0x40}) >>> 8) & 0xFF).isEqualTo(0xA7);
+    assertThat(Lz4.xxHash32(new byte[0])).isEqualTo(0x02CC5D05);
+  }
+
+  @Test
+  public void reject_lz4_blocks_larger_than_maximum() {
+    assertThatThrownBy(() -> new BlockCompressingChannel(Channels.newChannel(compressed), BlockCompressingChannel.Format.LZ4, pool,
+      Lz4.MAX_BLOCK_SIZE + 1))
+      .isInstanceOf(IllegalArgumentException.class)
+      .hasMessage("Invalid block size for LZ4: 1048577");
+  }
+
+  private void write(BlockCompressingChannel.Format format, byte[] data, int blockSize) throws IOException {
+    try (BlockCompressingChannel channel = new BlockCompressingChannel(Channels.newChannel(compressed), format, pool, blockSize)) {
+      // in uneven slices, to cross block boundaries
+      for (int offset = 0; offset < data.length; offset += 333) {
+        channel.write(ByteBuffer.wrap(data, offset, Math.min(333, data.length - offset)));
+      }
+    }
+  }
+
+  private static byte[] tsv(int rows) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < rows; i++) {
+      sb.append(i).append("\tname").append(i % 100).append("\t2019-01-01\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] gunzip(byte[] bytes) throws IOException {
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) > 0) {
+        out.write(buffer, 0, read);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * Decode an LZ4 frame of independent blocks without checksums.
+   */
+  private static byte[] unlz4(byte[] frame) {
+    ByteBuffer in = ByteBuffer.wrap(frame).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    assertThat(in.getInt()).isEqualTo(Lz4.MAGIC);
+    byte flags = in.get();
+    byte blockDescriptor = in.get();
+    assertThat(in.get()).isEqualTo((byte) (Lz4.xxHash32(new byte[]{flags, blockDescriptor}) >>> 8));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int size;
+    while ((size = in.getInt()) != 0) {
+      byte[] block = new byte[size & ~Lz4.UNCOMPRESSED_FLAG];
+      in.get(block);
+      if ((size & Lz4.UNCOMPRESSED_FLAG) != 0) {
+        out.write(block, 0, block.length);
+      } else {
+        decodeBlock(block, out);
+      }
+    }
+    assertThat(in.hasRemaining()).isFalse();
+    return out.toByteArray();
+  }
+
+  private static void decodeBlock(byte[] block, ByteArrayOutputStream out) {
+    byte[] decoded = new byte[Lz4.MAX_BLOCK_SIZE];
+    int op = 0;
+    int ip = 0;
+    while (true) {
+      int token = block[ip++] & 0xFF;
+      int literalLength = token >>> 4;
+      if (literalLength == 15) {
+        int b;
+        do {
+          b = block[ip++] & 0xFF;
+          literalLength += b;
+        } while (b == 255);
+      }
+      System.arraycopy(block, ip, decoded, op, literalLength);
+      ip += literalLength;
+      op += literalLength;
+      if (ip == block.length) {
+        break;
+      }
+      int offset = (block[ip] & 0xFF) | (block[ip + 1] & 0xFF) << 8;
+      ip += 2;
+      int matchLength = token & 0x0F;
+      if (matchLength == 15) {
+        int b;
+        do {
+          b = block[ip++] & 0xFF;
+          matchLength += b;
+        } while (b == 255);
+      }
+      matchLength += 4;
+      for (int i = 0; i < matchLength; i++) {
+        decoded[op] = decoded[op - offset];
+        op++;
+      }
+    }
+    out.write(decoded, 0, op);
+  }
+}
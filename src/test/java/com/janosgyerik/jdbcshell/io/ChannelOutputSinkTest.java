@@ -0,0 +1,109 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ChannelOutputSinkTest {
+
+  private static final String NEWLINE = System.lineSeparator();
+
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void append_file_after_buffered_output() throws IOException {
+    Path file = temporaryFolder.newFile().toPath();
+    Files.write(file, ("bar" + NEWLINE).getBytes(StandardCharsets.UTF_8));
+
+    ChannelOutputSink sink = new ChannelOutputSink(Channels.newChannel(bytes), StandardCharsets.UTF_8, 1024);
+    sink.println("foo");
+    sink.append(file);
+    sink.println("baz");
+    sink.flush();
+    assertThat(output()).isEqualTo("foo" + NEWLINE + "bar" + NEWLINE + "baz" + NEWLINE);
+  }
+
+  @Test
+  public void buffer_output_until_flushed() {
+    ChannelOutputSink sink = new ChannelOutputSink(Channels.newChannel(bytes), StandardCharsets.UTF_8, 1024);
+    sink.println("foo");
+    sink.println("bar");
+    assertThat(bytes.size()).isZero();
+
+    sink.flush();
+    assertThat(output()).isEqualTo("foo" + NEWLINE + "bar" + NEWLINE);
+  }
+
+  @Test
+  public void write_lines_longer_than_buffer() {
+    ChannelOutputSink sink = new ChannelOutputSink(Channels.newChannel(bytes), StandardCharsets.UTF_8, 4);
+    sink.println("0123456789");
+    sink.close();
+    assertThat(output()).isEqualTo("0123456789" + NEWLINE);
+  }
+
+  @Test
+  public void encode_non_ascii_characters() {
+    ChannelOutputSink sink = new ChannelOutputSink(Channels.newChannel(bytes), StandardCharsets.UTF_8, 3);
+    String accented = "\u00e1rv\u00edzt\u0171r\u0151";
+    String japanese = "\u65e5\u672c\u8a9e";
+    sink.println(accented);
+    sink.println(japanese);
+    sink.close();
+    assertThat(output()).isEqualTo(accented + NEWLINE + japanese + NEWLINE);
+  }
+
+  @Test
+  public void encode_with_non_ascii_compatible_charset() {
+    ChannelOutputSink sink = new ChannelOutputSink(Channels.newChannel(bytes), StandardCharsets.UTF_16BE, 5);
+    sink.println("foo");
+    sink.close();
+    assertThat(new String(bytes.toByteArray(), StandardCharsets.UTF_16BE)).isEqualTo("foo" + NEWLINE);
+  }
+
+  @Test
+  public void discard_pending_output_when_write_fails() {
+    ChannelOutputSink sink = new ChannelOutputSink(new FailingChannel(), StandardCharsets.UTF_8, 1024);
+    sink.println("foo");
+    assertThatThrownBy(sink::flush).isInstanceOf(UncheckedIOException.class);
+
+    // expected to run without exceptions
+    sink.flush();
+  }
+
+  private String output() {
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static class FailingChannel implements WritableByteChannel {
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      throw new IOException("Broken pipe");
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+      // nothing to close
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DelimitedRecordParserTest {
+
+  private final DelimitedRecordParser parser = new DelimitedRecordParser(',');
+  private final List<String> fields = new ArrayList<>();
+
+  @Test
+  public void split_fields_on_delimiter() {
+    assertThat(parser.parse("foo,bar,baz", fields)).isTrue();
+    assertThat(fields).containsExactly("foo", "bar", "baz");
+  }
+
+  @Test
+  public void parse_empty_unquoted_fields_as_null_and_empty_quoted_fields_as_empty() {
+    assertThat(parser.parse(",\"\",", fields)).isTrue();
+    assertThat(fields).containsExactly(null, "", null);
+  }
+
+  @Test
+  public void keep_delimiters_and_escaped_quotes_inside_quotes() {
+    assertThat(parser.parse("\"foo, \"\"bar\"\"\",baz", fields)).isTrue();
+    assertThat(fields).containsExactly("foo, \"bar\"", "baz");
+  }
+
+  @Test
+  public void report_incomplete_record_when_line_ends_inside_quotes() {
+    assertThat(parser.parse("foo,\"bar", fields)).isFalse();
+    assertThat(parser.parse("foo,\"bar\nbaz\"", fields)).isTrue();
+    assertThat(fields).containsExactly("foo", "bar\nbaz");
+  }
+
+  @Test
+  public void use_specified_delimiter() {
+    assertThat(new DelimitedRecordParser('\t').parse("foo,bar\tbaz", fields)).isTrue();
+    assertThat(fields).containsExactly("foo,bar", "baz");
+  }
+}
@@ -0,0 +1,55 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class JsonObjectParserTest {
+
+  private final JsonObjectParser parser = new JsonObjectParser();
+  private final Map<String, String> members = new LinkedHashMap<>();
+
+  @Test
+  public void parse_members_in_order() {
+    parser.parse("{\"id\": 1, \"name\": \"Alice\", \"score\": -1.5e3, \"active\": true, \"email\": null}", members);
+    assertThat(members).containsExactly(
+      entry("id", "1"),
+      entry("name", "Alice"),
+      entry("score", "-1.5e3"),
+      entry("active", "true"),
+      entry("email", null));
+  }
+
+  @Test
+  public void unescape_strings() {
+    parser.parse("{\"s\":\"a\\\"b\\\\c\\nd\\u00e9\"}", members);
+    assertThat(members).containsExactly(entry("s", "a\"b\\c\nd\u00e9"));
+  }
+
+  @Test
+  public void keep_nested_values_as_raw_json() {
+    parser.parse("{\"tags\": [\"a\", \"]\"], \"meta\": {\"x\": {}}}", members);
+    assertThat(members).containsExactly(
+      entry("tags", "[\"a\", \"]\"]"),
+      entry("meta", "{\"x\": {}}"));
+  }
+
+  @Test
+  public void parse_empty_object() {
+    parser.parse(" {} ", members);
+    assertThat(members).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void raise_error_for_truncated_object() {
+    parser.parse("{\"id\": 1", members);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void raise_error_for_content_after_object() {
+    parser.parse("{} {}", members);
+  }
+}
@@ -0,0 +1,34 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonObjectWriterTest {
+
+  private final JsonObjectWriter writer = new JsonObjectWriter();
+
+  @Test
+  public void write_members_in_order() {
+    String json = writer.begin().add("sql", "select 1").add("rows", 3L).add("ms", 1.5).add("ok", true).add("error", (String) null).end();
+    assertThat(json).isEqualTo("{\"sql\":\"select 1\",\"rows\":3,\"ms\":1.500,\"ok\":true,\"error\":null}");
+  }
+
+  @Test
+  public void escape_strings_readable_by_parser() {
+    String value = "a \"quoted\"\tline\nwith \\ and \u0001";
+    String json = writer.begin().add("value", value).end();
+
+    Map<String, String> members = new LinkedHashMap<>();
+    new JsonObjectParser().parse(json, members);
+    assertThat(members).containsEntry("value", value);
+  }
+
+  @Test
+  public void reuse_buffer_for_next_object() {
+    writer.begin().add("a", 1L).end();
+    assertThat(writer.begin().add("b", 2L).end()).isEqualTo("{\"b\":2}");
+  }
+}
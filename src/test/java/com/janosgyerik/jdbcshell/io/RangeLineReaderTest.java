@@ -0,0 +1,115 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RangeLineReaderTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void read_all_lines_of_whole_file() throws IOException {
+    Path path = write("foo\r\nbar\n\nbaz");
+    assertThat(readRanges(path, 1)).containsExactly("foo", "bar", "", "baz");
+  }
+
+  @Test
+  public void read_every_line_exactly_once_regardless_of_split() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      String line = "line" + i + "-\u00e9";
+      expected.add(line);
+      sb.append(line).append('\n');
+    }
+    Path path = write(sb.toString());
+
+    for (int parts = 1; parts <= 17; parts++) {
+      assertThat(readRanges(path, parts)).containsExactlyElementsOf(expected);
+    }
+  }
+
+  @Test
+  public void read_continuation_lines_past_end_of_range() throws IOException {
+    Path path = write("foo\nbar\nbaz\n");
+    try (FileChannel channel = FileChannel.open(path)) {
+      RangeLineReader reader = new RangeLineReader(channel, 0, 2);
+      assertThat(reader.readLine()).isEqualTo("foo");
+      assertThat(reader.readLine()).isNull();
+      assertThat(reader.readContinuationLine()).isEqualTo("bar");
+      assertThat(reader.position()).isEqualTo(8);
+    }
+  }
+
+  @Test
+  public void split_range_into_parts() {
+    assertThat(RangeLineReader.split(10, 20, 3)).containsExactly(10, 13, 16, 20);
+    assertThat(RangeLineReader.split(0, 2, 4)).containsExactly(0, 0, 1, 1, 2);
+  }
+
+  @Test
+  public void split_records_at_line_breaks_outside_of_quoted_values() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    Set<Long> recordStarts = new HashSet<>();
+    for (int i = 0; i < 200; i++) {
+      recordStarts.add((long) sb.toString().getBytes(StandardCharsets.UTF_8).length);
+      sb.append(i).append(",\"multi\nline, \"\"quoted\"\"\n\u00e9\",a\"b\n");
+    }
+    Path path = write(sb.toString());
+
+    try (FileChannel channel = FileChannel.open(path)) {
+      for (int parts = 1; parts <= 17; parts++) {
+        long[] boundaries = RangeLineReader.splitRecords(channel, 0, channel.size(), parts, ',');
+        assertThat(boundaries).hasSize(parts + 1);
+        assertThat(boundaries[0]).isEqualTo(0);
+        assertThat(boundaries[parts]).isEqualTo(channel.size());
+        for (int i = 1; i < parts; i++) {
+          assertThat(recordStarts).contains(boundaries[i]);
+          assertThat(boundaries[i]).isGreaterThanOrEqualTo(boundaries[i - 1]);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void put_boundaries_after_unterminated_quoted_value_at_end() throws IOException {
+    Path path = write("1,a\n2,\"b\n3,c\n4,d\n");
+    try (FileChannel channel = FileChannel.open(path)) {
+      assertThat(RangeLineReader.splitRecords(channel, 0, channel.size(), 3, ',')).containsExactly(0, 17, 17, 17);
+    }
+  }
+
+  private Path write(String content) throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path;
+  }
+
+  private static List<String> readRanges(Path path, int parts) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path)) {
+      long[] boundaries = RangeLineReader.split(0, channel.size(), parts);
+      for (int i = 0; i < parts; i++) {
+        RangeLineReader reader = new RangeLineReader(channel, boundaries[i], boundaries[i + 1]);
+        String line;
+        while ((line = reader.readLine()) != null) {
+          lines.add(line);
+        }
+      }
+    }
+    return lines;
+  }
+}
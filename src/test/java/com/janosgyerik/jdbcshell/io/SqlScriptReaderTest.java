@@ -0,0 +1,132 @@
+package com.janosgyerik.jdbcshell.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlScriptReaderTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void split_statements_on_semicolons() throws IOException {
+    assertThat(split("select 1;\nselect 2 ;select 3\n\n", SqlScriptReader.Dialect.STANDARD))
+      .containsExactly("1: select 1", "2: select 2", "2: select 3");
+  }
+
+  @Test
+  public void ignore_semicolons_in_quotes_and_comments() throws IOException {
+    String script = "insert into t values ('a;b', 'it''s;');\n"
+      + "select \"weird;name\" from t; -- trailing; comment\n"
+      + "/* leading; comment */ select 3 /* inner; */ from t;\n";
+    assertThat(split(script, SqlScriptReader.Dialect.STANDARD)).containsExactly(
+      "1: insert into t values ('a;b', 'it''s;')",
+      "2: select \"weird;name\" from t",
+      "3: select 3 /* inner; */ from t");
+  }
+
+  @Test
+  public void keep_line_comments_within_statements() throws IOException {
+    assertThat(split("select 1 -- one; two\n, 2;", SqlScriptReader.Dialect.STANDARD))
+      .containsExactly("1: select 1 -- one; two\n, 2");
+  }
+
+  @Test
+  public void drop_comments_between_statements() throws IOException {
+    assertThat(split("-- only a comment\n/* and; another */\n;\n", SqlScriptReader.Dialect.STANDARD)).isEmpty();
+  }
+
+  @Test
+  public void count_lines_in_multi_line_values() throws IOException {
+    assertThat(split("insert into t values ('a\nb');\n\nselect 2;", SqlScriptReader.Dialect.STANDARD))
+      .containsExactly("1: insert into t values ('a\nb')", "4: select 2");
+  }
+
+  @Test
+  public void handle_backslash_escapes_and_hash_comments_of_mysql() throws IOException {
+    String script = "insert into t values ('it\\'s; fine');\n# a comment;\nselect 2;\n/*!40101 SET NAMES utf8 */;";
+    assertThat(split(script, SqlScriptReader.Dialect.MYSQL))
+      .containsExactly("1: insert into t values ('it\\'s; fine')", "3: select 2", "4: /*!40101 SET NAMES utf8 */");
+  }
+
+  @Test
+  public void switch_delimiter_with_mysql_delimiter_command() throws IOException {
+    String script = "DELIMITER //\n"
+      + "create procedure p() begin select 1; select 2; end//\n"
+      + "delimiter ;\n"
+      + "call p();";
+    assertThat(split(script, SqlScriptReader.Dialect.MYSQL))
+      .containsExactly("2: create procedure p() begin select 1; select 2; end", "4: call p()");
+  }
+
+  @Test
+  public void read_dollar_quoted_strings_of_postgresql() throws IOException {
+    String script = "create function f() returns int as $body$ begin return 1; end; $body$ language plpgsql;\n"
+      + "select $$a;b$$, $1;\n"
+      + "select a$b from t;";
+    assertThat(split(script, SqlScriptReader.Dialect.POSTGRESQL)).containsExactly(
+      "1: create function f() returns int as $body$ begin return 1; end; $body$ language plpgsql",
+      "2: select $$a;b$$, $1",
+      "3: select a$b from t");
+  }
+
+  @Test
+  public void split_batches_on_go_lines_of_sqlserver() throws IOException {
+    String script = "create procedure p as\nbegin\n  select 1;\n  select 2;\nend\nGO\n  go  \ninsert into t values ('GO');\nselect 3\n";
+    assertThat(split(script, SqlScriptReader.Dialect.SQLSERVER)).containsExactly(
+      "1: create procedure p as\nbegin\n  select 1;\n  select 2;\nend",
+      "8: insert into t values ('GO');\nselect 3");
+  }
+
+  @Test
+  public void read_statements_across_mapped_windows() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      String sql = "insert into t values (" + i + ", '\u00e9t\u00e9;" + i + "', $$x" + i + "$$)";
+      expected.add((i + 1) + ": " + sql);
+      sb.append(sql).append(";\n");
+    }
+    Path path = write(sb.toString());
+    for (int windowSize = 256; windowSize < 300; windowSize += 7) {
+      assertThat(split(path, SqlScriptReader.Dialect.POSTGRESQL, windowSize)).containsExactlyElementsOf(expected);
+    }
+  }
+
+  @Test
+  public void read_empty_file() throws IOException {
+    assertThat(split("", SqlScriptReader.Dialect.STANDARD)).isEmpty();
+  }
+
+  private List<String> split(String script, SqlScriptReader.Dialect dialect) throws IOException {
+    return split(write(script), dialect, SqlScriptReader.DEFAULT_WINDOW_SIZE);
+  }
+
+  private static List<String> split(Path path, SqlScriptReader.Dialect dialect, int windowSize) throws IOException {
+    List<String> statements = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(path)) {
+      SqlScriptReader reader = new SqlScriptReader(channel, dialect, windowSize);
+      SqlScriptReader.Statement statement;
+      while ((statement = reader.next()) != null) {
+        statements.add(statement.toString());
+      }
+    }
+    return statements;
+  }
+
+  private Path write(String content) throws IOException {
+    Path path = temporaryFolder.newFile().toPath();
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    return path;
+  }
+}
@@ -0,0 +1,79 @@
+package com.janosgyerik.jdbcshell.stats;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+  private final LatencyHistogram histogram = new LatencyHistogram();
+
+  @Test
+  public void report_zeros_when_empty() {
+    assertThat(histogram.totalCount()).isZero();
+    assertThat(histogram.min()).isZero();
+    assertThat(histogram.max()).isZero();
+    assertThat(histogram.valueAtPercentile(50)).isZero();
+  }
+
+  @Test
+  public void record_small_values_exactly() {
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+    assertThat(histogram.totalCount()).isEqualTo(100);
+    assertThat(histogram.min()).isEqualTo(1);
+    assertThat(histogram.max()).isEqualTo(100);
+    assertThat(histogram.valueAtPercentile(50)).isEqualTo(50);
+    assertThat(histogram.valueAtPercentile(99)).isEqualTo(99);
+    assertThat(histogram.valueAtPercentile(100)).isEqualTo(100);
+    assertThat(histogram.mean()).isEqualTo(50.5);
+  }
+
+  @Test
+  public void report_large_values_within_precision() {
+    for (long i = 1; i <= 10_000; i++) {
+      histogram.record(i * 1_000_000);
+    }
+    assertThat((double) histogram.valueAtPercentile(50)).isCloseTo(5_000_000_000d, within(5_000_000_000d / 64));
+    assertThat((double) histogram.valueAtPercentile(99.9)).isCloseTo(9_990_000_000d, within(9_990_000_000d / 64));
+    assertThat(histogram.max()).isEqualTo(10_000_000_000L);
+  }
+
+  @Test
+  public void keep_exact_max_of_values_above_highest_trackable_value() {
+    long huge = LatencyHistogram.HIGHEST_TRACKABLE_VALUE * 4;
+    histogram.record(huge);
+    assertThat(histogram.max()).isEqualTo(huge);
+    assertThat(histogram.valueAtPercentile(100)).isLessThanOrEqualTo(huge);
+  }
+
+  @Test
+  public void add_other_histogram() {
+    LatencyHistogram other = new LatencyHistogram();
+    histogram.record(10);
+    other.record(1000);
+    other.record(5);
+    histogram.add(other);
+
+    assertThat(histogram.totalCount()).isEqualTo(3);
+    assertThat(histogram.min()).isEqualTo(5);
+    assertThat(histogram.max()).isEqualTo(1000);
+  }
+
+  @Test
+  public void write_non_empty_buckets() throws IOException {
+    histogram.record(3);
+    histogram.record(3);
+    histogram.record(200);
+    StringWriter writer = new StringWriter();
+    histogram.writeTo(writer);
+
+    assertThat(writer.toString()).endsWith("# lowestValue\thighestValue\tcount\n" +
+      "3\t3\t2\n" +
+      "200\t201\t1\n");
+  }
+}